@@ -24,11 +24,16 @@ import static com.spotify.styx.util.Connections.createBigTableConnection;
 import static com.spotify.styx.util.Connections.createDatastore;
 import static java.util.Objects.requireNonNull;
 
+import com.codahale.metrics.Gauge;
 import com.google.cloud.datastore.Datastore;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.spotify.apollo.AppInit;
 import com.spotify.apollo.Environment;
 import com.spotify.apollo.route.Route;
+import com.spotify.metrics.core.MetricId;
+import com.spotify.metrics.core.SemanticMetricRegistry;
+import com.spotify.styx.api.ActiveStatesView;
 import com.spotify.styx.api.CliResource;
 import com.spotify.styx.api.StyxConfigResource;
 import com.spotify.styx.api.WorkflowResource;
@@ -40,6 +45,10 @@ import com.spotify.styx.util.Singleton;
 import com.spotify.styx.util.StorageFactory;
 import com.typesafe.config.Config;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import org.apache.hadoop.hbase.client.Connection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,8 +63,18 @@ public class StyxApi implements AppInit {
   public static final String SCHEDULER_SERVICE_BASE_URL = "styx.scheduler.base-url";
   public static final String DEFAULT_SCHEDULER_SERVICE_BASE_URL = "http://localhost:8080";
 
+  public static final String ACTIVE_STATES_REFRESH_INTERVAL = "styx.active-states-refresh-interval";
+
   public static final Duration DEFAULT_RETRY_BASE_DELAY_BT = Duration.ofSeconds(1);
 
+  private static final MetricId ACTIVE_STATES_VIEW_STALENESS = MetricId.build("styx")
+      .tagged("what", "active-states-view-staleness")
+      .tagged("unit", "ms");
+
+  private static final MetricId ACTIVE_STATES_VIEW_REFRESH_DURATION = MetricId.build("styx")
+      .tagged("what", "active-states-view-refresh-duration")
+      .tagged("unit", "ms");
+
   private static final Logger LOG = LoggerFactory.getLogger(StyxApi.class);
 
   public static class Builder {
@@ -102,13 +121,22 @@ public class StyxApi implements AppInit {
     final String schedulerServiceBaseUrl = config.hasPath(SCHEDULER_SERVICE_BASE_URL)
         ? config.getString(SCHEDULER_SERVICE_BASE_URL)
         : DEFAULT_SCHEDULER_SERVICE_BASE_URL;
+    final Duration activeStatesRefreshInterval = config.hasPath(ACTIVE_STATES_REFRESH_INTERVAL)
+        ? Duration.parse(config.getString(ACTIVE_STATES_REFRESH_INTERVAL))
+        : ActiveStatesView.DEFAULT_REFRESH_INTERVAL;
 
     final Storage storage = storageFactory.apply(environment);
     final EventStorage eventStorage = eventStorageFactory.apply(environment);
 
     final WorkflowResource workflowResource = new WorkflowResource(storage);
     final StyxConfigResource styxConfigResource = new StyxConfigResource(storage);
-    final CliResource cliResource = new CliResource(schedulerServiceBaseUrl, eventStorage);
+    final ActiveStatesView activeStatesView =
+        environment.closer().register(new ActiveStatesView(eventStorage, Instant::now));
+    final CliResource cliResource =
+        new CliResource(schedulerServiceBaseUrl, eventStorage, activeStatesView);
+
+    startActiveStatesRefresher(activeStatesView, activeStatesRefreshInterval, environment.closer());
+    setupMetrics(activeStatesView, environment.resolve(SemanticMetricRegistry.class));
 
     environment.routingEngine()
         .registerAutoRoute(Route.sync("GET", "/ping", rc -> "pong"))
@@ -117,6 +145,38 @@ public class StyxApi implements AppInit {
         .registerRoutes(cliResource.routes());
   }
 
+  private static void startActiveStatesRefresher(
+      ActiveStatesView activeStatesView,
+      Duration refreshInterval,
+      Closer closer) {
+    final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("styx-api-active-states-%d")
+            .build());
+    closer.register(executor::shutdownNow);
+
+    executor.scheduleWithFixedDelay(
+        () -> {
+          try {
+            activeStatesView.refresh();
+          } catch (Throwable t) {
+            LOG.warn("Failed to refresh active states, staleness is {} ms",
+                     activeStatesView.stalenessMillis(), t);
+          }
+        },
+        0,
+        refreshInterval.toMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  private static void setupMetrics(ActiveStatesView activeStatesView, SemanticMetricRegistry registry) {
+    registry.register(
+        ACTIVE_STATES_VIEW_STALENESS, (Gauge<Long>) activeStatesView::stalenessMillis);
+    registry.register(
+        ACTIVE_STATES_VIEW_REFRESH_DURATION, (Gauge<Long>) activeStatesView::lastRefreshDurationMillis);
+  }
+
   private static AggregateStorage storage(Environment environment) {
     final Config config = environment.config();
     final Closer closer = environment.closer();
@@ -0,0 +1,322 @@
+/*-
+ * -\-\-
+ * Spotify Styx API Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+
+package com.spotify.styx.api;
+
+import static com.spotify.styx.model.EventSerializer.convertEventToPersistentEvent;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.styx.api.cli.ActiveStatesPayload.ActiveState;
+import com.spotify.styx.model.EventSerializer.PersistentEvent;
+import com.spotify.styx.model.EventVisitor;
+import com.spotify.styx.model.ExecutionDescription;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.RunStateSnapshot;
+import com.spotify.styx.storage.EventStorage;
+import com.spotify.styx.util.ReplayEvents;
+import com.spotify.styx.util.Time;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A materialized view of the {@link ActiveState}s of all active workflow instances.
+ *
+ * <p>The view is kept up to date by calling {@link #refresh()} periodically. A refresh reads the
+ * active workflow instances and their {@link RunStateSnapshot}s, and only reads the events of
+ * instances that are new or whose last consumed event counter changed since the previous refresh.
+ * All other instances keep their entry from the previous refresh. Reads are served from memory,
+ * and only the very first read waits for a refresh if none has completed yet.
+ *
+ * <p>The events are read on a fixed number of threads owned by the view, which are stopped by
+ * {@link #close()}.
+ */
+public class ActiveStatesView implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ActiveStatesView.class);
+
+  public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(5);
+  public static final int DEFAULT_LOAD_THREADS = 16;
+
+  private static final EventVisitor<Boolean> LAST_EXECUTION_EVENT_VISITOR = new LastExecutionEventVisitor();
+
+  private final EventStorage eventStorage;
+  private final Time time;
+  private final long createdMillis;
+  private final ExecutorService loadExecutor;
+
+  private volatile Snapshot snapshot;
+  private volatile long lastRefreshDurationMillis;
+
+  public ActiveStatesView(EventStorage eventStorage, Time time) {
+    this(eventStorage, time, DEFAULT_LOAD_THREADS);
+  }
+
+  public ActiveStatesView(EventStorage eventStorage, Time time, int loadThreads) {
+    if (loadThreads < 1) {
+      throw new IllegalArgumentException("loadThreads must be positive");
+    }
+    this.eventStorage = Objects.requireNonNull(eventStorage);
+    this.time = Objects.requireNonNull(time);
+    this.loadExecutor = Executors.newFixedThreadPool(loadThreads, new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("styx-api-active-states-load-%d")
+        .build());
+
+    this.createdMillis = time.get().toEpochMilli();
+  }
+
+  /**
+   * Returns the active states of all workflow instances.
+   */
+  public List<ActiveState> activeStates() {
+    return ensureLoaded().entries.values().stream()
+        .map(entry -> entry.activeState)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Returns the active states of the workflow instances of a component.
+   *
+   * @param componentId  The component to get the active states for
+   */
+  public List<ActiveState> activeStates(String componentId) {
+    return ensureLoaded().entries.values().stream()
+        .map(entry -> entry.activeState)
+        .filter(state -> componentId.equals(state.workflowInstance().workflowId().componentId()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Brings the view up to date with storage. Concurrent refreshes are serialized.
+   */
+  public synchronized void refresh() throws IOException {
+    final long startMillis = time.get().toEpochMilli();
+
+    final Map<WorkflowInstance, Long> activeInstances = eventStorage.readActiveWorkflowInstances();
+    final Map<WorkflowInstance, RunStateSnapshot> snapshots = eventStorage.readActiveStateSnapshots();
+    final Map<WorkflowInstance, Entry> previous = snapshot == null ? ImmutableMap.of() : snapshot.entries;
+
+    final Map<WorkflowInstance, Entry> entries = Maps.newHashMapWithExpectedSize(activeInstances.size());
+    final List<Future<Entry>> loads = Lists.newArrayList();
+    activeInstances.forEach((workflowInstance, counter) -> {
+      final Entry entry = previous.get(workflowInstance);
+      if (entry != null && entry.counter == counter) {
+        entries.put(workflowInstance, entry);
+      } else {
+        final Optional<RunStateSnapshot> runStateSnapshot = Optional.ofNullable(snapshots.get(workflowInstance));
+        loads.add(loadExecutor.submit(() -> load(workflowInstance, counter, runStateSnapshot)));
+      }
+    });
+
+    try {
+      for (Future<Entry> load : loads) {
+        final Entry entry = load.get();
+        entries.put(entry.activeState.workflowInstance(), entry);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while refreshing active states");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      loads.forEach(load -> load.cancel(true));
+    }
+
+    final long loadedMillis = time.get().toEpochMilli();
+    snapshot = new Snapshot(ImmutableMap.copyOf(entries), loadedMillis);
+    lastRefreshDurationMillis = loadedMillis - startMillis;
+    LOG.debug("Refreshed {} active states in {} ms", entries.size(), lastRefreshDurationMillis);
+  }
+
+  /**
+   * The time since the view was last refreshed, or since it was created if it has not been
+   * refreshed yet.
+   */
+  public long stalenessMillis() {
+    final Snapshot current = snapshot;
+    final long loadedMillis = current == null ? createdMillis : current.loadedMillis;
+    return time.get().toEpochMilli() - loadedMillis;
+  }
+
+  /**
+   * The time the last successful refresh took.
+   */
+  public long lastRefreshDurationMillis() {
+    return lastRefreshDurationMillis;
+  }
+
+  private Snapshot ensureLoaded() {
+    Snapshot current = snapshot;
+    if (current != null) {
+      return current;
+    }
+
+    synchronized (this) {
+      if (snapshot == null) {
+        try {
+          refresh();
+        } catch (IOException e) {
+          throw Throwables.propagate(e);
+        }
+      }
+      return snapshot;
+    }
+  }
+
+  @Override
+  public void close() {
+    loadExecutor.shutdownNow();
+  }
+
+  private Entry load(WorkflowInstance workflowInstance, long counter, Optional<RunStateSnapshot> runStateSnapshot)
+      throws IOException {
+    final SortedSet<SequenceEvent> sequenceEvents = eventStorage.readEvents(workflowInstance);
+
+    final RunState state =
+        ReplayEvents.replayState(workflowInstance, counter, runStateSnapshot, sequenceEvents, false);
+    final Optional<PersistentEvent> previousExecutionLastEvent = sequenceEvents.stream()
+        .filter(sequenceEvent -> sequenceEvent.event().accept(LAST_EXECUTION_EVENT_VISITOR))
+        .reduce((a, b) -> b)
+        .map(sequenceEvent -> convertEventToPersistentEvent(sequenceEvent.event()));
+
+    return new Entry(counter, ActiveState.create(
+        workflowInstance,
+        state.state().toString(),
+        state.executionId().orElse("<no execution id>"),
+        previousExecutionLastEvent));
+  }
+
+  private static class Snapshot {
+
+    final Map<WorkflowInstance, Entry> entries;
+    final long loadedMillis;
+
+    Snapshot(Map<WorkflowInstance, Entry> entries, long loadedMillis) {
+      this.entries = entries;
+      this.loadedMillis = loadedMillis;
+    }
+  }
+
+  private static class Entry {
+
+    final long counter;
+    final ActiveState activeState;
+
+    Entry(long counter, ActiveState activeState) {
+      this.counter = counter;
+      this.activeState = activeState;
+    }
+  }
+
+  private static class LastExecutionEventVisitor implements EventVisitor<Boolean> {
+
+    @Override
+    public Boolean timeTrigger(WorkflowInstance workflowInstance) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean triggerExecution(WorkflowInstance workflowInstance, String triggerId) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean submit(WorkflowInstance workflowInstance, ExecutionDescription executionDescription) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean submitted(WorkflowInstance workflowInstance, String executionId) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean started(WorkflowInstance workflowInstance) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean terminate(WorkflowInstance workflowInstance, int exitCode) {
+      return Boolean.TRUE;
+    }
+
+    @Override
+    public Boolean runError(WorkflowInstance workflowInstance, String message) {
+      return Boolean.TRUE;
+    }
+
+    @Override
+    public Boolean success(WorkflowInstance workflowInstance) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean retryAfter(WorkflowInstance workflowInstance, long delayMillis) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean retry(WorkflowInstance workflowInstance) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean stop(WorkflowInstance workflowInstance) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean timeout(WorkflowInstance workflowInstance) {
+      return Boolean.FALSE;
+    }
+
+    @Override
+    public Boolean halt(WorkflowInstance workflowInstance) {
+      return Boolean.FALSE;
+    }
+  }
+}
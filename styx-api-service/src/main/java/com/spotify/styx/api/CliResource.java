@@ -21,10 +21,8 @@
 package com.spotify.styx.api;
 
 import static com.spotify.styx.model.EventSerializer.convertEventToPersistentEvent;
-import static com.spotify.styx.util.ReplayEvents.replayActiveStates;
 import static com.spotify.styx.util.StreamUtil.cat;
 
-import com.google.api.client.util.Lists;
 import com.google.common.base.Throwables;
 import com.spotify.apollo.Client;
 import com.spotify.apollo.Request;
@@ -38,22 +36,16 @@ import com.spotify.apollo.route.Route;
 import com.spotify.styx.api.cli.ActiveStatesPayload;
 import com.spotify.styx.api.cli.EventsPayload;
 import com.spotify.styx.api.cli.EventsPayload.TimestampedPersistentEvent;
-import com.spotify.styx.model.EventSerializer.PersistentEvent;
-import com.spotify.styx.model.EventVisitor;
-import com.spotify.styx.model.ExecutionDescription;
 import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
-import com.spotify.styx.state.RunState;
 import com.spotify.styx.storage.EventStorage;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.SortedSet;
 import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -69,12 +61,15 @@ public class CliResource {
 
   private final String schedulerServiceBaseUrl;
   private final EventStorage eventStorage;
+  private final ActiveStatesView activeStatesView;
 
-  private final EventVisitor<Boolean> lastExecutionEventVisitor = new CliResource.LastExecutionEventVisitor();
-
-  public CliResource(String schedulerServiceBaseUrl, EventStorage eventStorage) {
+  public CliResource(
+      String schedulerServiceBaseUrl,
+      EventStorage eventStorage,
+      ActiveStatesView activeStatesView) {
     this.schedulerServiceBaseUrl = Objects.requireNonNull(schedulerServiceBaseUrl);
     this.eventStorage = Objects.requireNonNull(eventStorage);
+    this.activeStatesView = Objects.requireNonNull(activeStatesView);
   }
 
   public Stream<? extends Route<? extends AsyncHandler<? extends Response<ByteString>>>> routes() {
@@ -117,49 +112,9 @@ public class CliResource {
   private ActiveStatesPayload activeStates(RequestContext requestContext) {
     final Optional<String> componentOpt = requestContext.request().parameter("component");
 
-    final List<ActiveStatesPayload.ActiveState> runStates = Lists.newArrayList();
-    try {
-
-      final Map<WorkflowInstance, Long> activeStates = componentOpt.isPresent()
-          ? eventStorage.readActiveWorkflowInstances(componentOpt.get())
-          : eventStorage.readActiveWorkflowInstances();
-
-      final Map<RunState, Long> map = replayActiveStates(activeStates, eventStorage, false);
-      runStates.addAll(
-          map.keySet().stream().map(this::runStateToActiveState).collect(Collectors.toList()));
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
-    }
-
-    return ActiveStatesPayload.create(runStates);
-  }
-
-  private ActiveStatesPayload.ActiveState runStateToActiveState(RunState state) {
-    return ActiveStatesPayload.ActiveState.create(
-        state.workflowInstance(),
-        state.state().toString(),
-        state.executionId().orElse("<no execution id>"),
-        getPreviousExecutionLastEvent(state)
-    );
-  }
-
-  private Optional<PersistentEvent> getPreviousExecutionLastEvent(RunState state) {
-    Optional<PersistentEvent> lastEvent;
-    try {
-      final SortedSet<SequenceEvent> sequenceEvents = eventStorage.readEvents(state.workflowInstance());
-      final Optional<SequenceEvent> lastExecutionSequenceEvent = sequenceEvents
-          .stream()
-          .filter((sequenceEvent) -> sequenceEvent.event().accept(lastExecutionEventVisitor))
-          .reduce((a, b) -> b);
-      if (lastExecutionSequenceEvent.isPresent()) {
-        lastEvent = Optional.of(convertEventToPersistentEvent(lastExecutionSequenceEvent.get().event()));
-      } else {
-        lastEvent = Optional.empty();
-      }
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
-    }
-    return lastEvent;
+    return ActiveStatesPayload.create(componentOpt.isPresent()
+        ? activeStatesView.activeStates(componentOpt.get())
+        : activeStatesView.activeStates());
   }
 
   private EventsPayload eventsForWorkflowInstance(String cid, String eid, String iid) {
@@ -195,77 +150,4 @@ public class CliResource {
 
     return client.send(proxyRequest);
   }
-
-  private class LastExecutionEventVisitor implements EventVisitor<Boolean> {
-
-    @Override
-    public Boolean timeTrigger(WorkflowInstance workflowInstance) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean triggerExecution(WorkflowInstance workflowInstance, String triggerId) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean submit(WorkflowInstance workflowInstance, ExecutionDescription executionDescription) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean submitted(WorkflowInstance workflowInstance, String executionId) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean started(WorkflowInstance workflowInstance) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean terminate(WorkflowInstance workflowInstance, int exitCode) {
-      return Boolean.TRUE;
-    }
-
-    @Override
-    public Boolean runError(WorkflowInstance workflowInstance, String message) {
-      return Boolean.TRUE;
-    }
-
-    @Override
-    public Boolean success(WorkflowInstance workflowInstance) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean retryAfter(WorkflowInstance workflowInstance, long delayMillis) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean retry(WorkflowInstance workflowInstance) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean stop(WorkflowInstance workflowInstance) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean timeout(WorkflowInstance workflowInstance) {
-      return Boolean.FALSE;
-    }
-
-    @Override
-    public Boolean halt(WorkflowInstance workflowInstance) {
-      return Boolean.FALSE;
-    }
-  }
 }
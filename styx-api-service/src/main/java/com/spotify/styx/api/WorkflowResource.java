@@ -40,6 +40,8 @@ import com.spotify.styx.storage.Storage;
 import com.spotify.styx.util.Json;
 import com.spotify.styx.util.ResourceNotFoundException;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
@@ -52,6 +54,9 @@ public final class WorkflowResource {
   public static final String BASE = "/workflows";
   public static final ObjectMapper OBJECT_MAPPER = Json.OBJECT_MAPPER;
 
+  public static final int DEFAULT_INSTANCES_LIMIT = 1000;
+  public static final int MAX_INSTANCES_LIMIT = 10_000;
+
   private final Storage storage;
 
   public WorkflowResource(Storage storage) {
@@ -83,7 +88,7 @@ public final class WorkflowResource {
     final List<Route<AsyncHandler<Response<ByteString>>>> v1 = Arrays.asList(
         Route.with(
             json(), "GET", BASE + "/<cid>/<eid>/instances",
-            rc -> instances(arg("cid", rc), arg("eid", rc))),
+            rc -> instances(arg("cid", rc), arg("eid", rc), rc.request())),
         Route.with(
             json(), "GET", BASE + "/<cid>/<eid>/instances/<iid>",
             rc -> instance(arg("cid", rc), arg("eid", rc), arg("iid", rc)))
@@ -196,17 +201,69 @@ public final class WorkflowResource {
     return Response.forPayload(workflowState);
   }
 
-  private Response<List<WorkflowInstanceExecutionData>> instances(String componentId, String endpointId) {
+  /**
+   * Lists the instances of a workflow in parameter order, one page at a time. {@code start} and
+   * {@code end} restrict the parameters to a range, inclusive and exclusive respectively. The next
+   * page is requested by passing the parameter of the last instance as {@code after}. A full page
+   * comes with a {@code Link} header pointing to the next page, which may be empty.
+   */
+  private Response<List<WorkflowInstanceExecutionData>> instances(
+      String componentId,
+      String endpointId,
+      Request request) {
     final WorkflowId workflowId = WorkflowId.create(componentId, endpointId);
     final List<WorkflowInstanceExecutionData> data;
 
+    final int limit;
     try {
-      data = storage.executionData(workflowId);
+      limit = request.parameter("limit").map(Integer::parseInt).orElse(DEFAULT_INSTANCES_LIMIT);
+    } catch (NumberFormatException e) {
+      return Response.forStatus(Status.BAD_REQUEST.withReasonPhrase("Invalid limit."));
+    }
+    if (limit < 1 || limit > MAX_INSTANCES_LIMIT) {
+      return Response.forStatus(Status.BAD_REQUEST.withReasonPhrase(
+          "Limit must be between 1 and " + MAX_INSTANCES_LIMIT + "."));
+    }
+
+    try {
+      data = storage.executionData(
+          workflowId,
+          request.parameter("start"),
+          request.parameter("end"),
+          request.parameter("after"),
+          limit);
     } catch (IOException e) {
       return Response.forStatus(
           Status.INTERNAL_SERVER_ERROR.withReasonPhrase("Couldn't fetch execution info."));
     }
-    return Response.forPayload(data);
+
+    final Response<List<WorkflowInstanceExecutionData>> response = Response.forPayload(data);
+    if (data.size() < limit) {
+      return response;
+    }
+    final String lastParameter = data.get(data.size() - 1).workflowInstance().parameter();
+    return response.withHeader("Link", "<" + nextPageUri(request, lastParameter) + ">; rel=\"next\"");
+  }
+
+  private static String nextPageUri(Request request, String after) {
+    final String uri = request.uri();
+    final int queryStart = uri.indexOf('?');
+    final StringBuilder nextPage = new StringBuilder(queryStart < 0 ? uri : uri.substring(0, queryStart))
+        .append('?');
+    request.parameters().forEach((name, values) -> {
+      if (!"after".equals(name)) {
+        values.forEach(value -> nextPage.append(urlEncode(name)).append('=').append(urlEncode(value)).append('&'));
+      }
+    });
+    return nextPage.append("after=").append(urlEncode(after)).toString();
+  }
+
+  private static String urlEncode(String value) {
+    try {
+      return URLEncoder.encode(value, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw Throwables.propagate(e);
+    }
   }
 
   private Response<WorkflowInstanceExecutionData> instance(
@@ -0,0 +1,204 @@
+/*-
+ * -\-\-
+ * Spotify Styx API Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+
+package com.spotify.styx.api;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import com.spotify.styx.api.cli.ActiveStatesPayload.ActiveState;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.RunStateSnapshot;
+import com.spotify.styx.storage.InMemStorage;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActiveStatesViewTest {
+
+  private static final WorkflowInstance WFI =
+      WorkflowInstance.create(WorkflowId.create("styx", "test"), "1234");
+  private static final WorkflowInstance OTHER_WFI =
+      WorkflowInstance.create(WorkflowId.create("styx-other", "test"), "1234");
+
+  private InMemStorage storage;
+  private Instant now = Instant.parse("2016-12-01T10:00:00Z");
+
+  private ActiveStatesView view;
+
+  @Before
+  public void setUp() throws Exception {
+    storage = spy(new InMemStorage());
+    view = new ActiveStatesView(storage, () -> now);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    view.close();
+  }
+
+  @Test
+  public void shouldLoadOnFirstRead() throws Exception {
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI, "trig"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.created(WFI, "exec0", "img0"), 1L, 1L));
+    storage.writeEvent(SequenceEvent.create(Event.started(WFI), 2L, 2L));
+    storage.writeActiveState(WFI, 2L);
+
+    final List<ActiveState> activeStates = view.activeStates();
+
+    assertThat(activeStates, hasSize(1));
+    assertThat(activeStates.get(0).workflowInstance(), is(WFI));
+    assertThat(activeStates.get(0).state(), is("RUNNING"));
+    assertThat(activeStates.get(0).lastExecutionId(), is("exec0"));
+    assertThat(activeStates.get(0).previousExecutionLastEvent(), is(Optional.empty()));
+  }
+
+  @Test
+  public void shouldIncludePreviousExecutionLastEvent() throws Exception {
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI, "trig"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.created(WFI, "exec0", "img0"), 1L, 1L));
+    storage.writeEvent(SequenceEvent.create(Event.started(WFI), 2L, 2L));
+    storage.writeEvent(SequenceEvent.create(Event.terminate(WFI, 20), 3L, 3L));
+    storage.writeActiveState(WFI, 3L);
+
+    final ActiveState activeState = view.activeStates().get(0);
+
+    assertThat(activeState.state(), is("TERMINATED"));
+    assertThat(activeState.previousExecutionLastEvent().isPresent(), is(true));
+  }
+
+  @Test
+  public void shouldServeSnapshotUntilRefreshed() throws Exception {
+    storage.writeActiveState(WFI, 0L);
+    assertThat(view.activeStates(), hasSize(1));
+
+    storage.writeActiveState(OTHER_WFI, 0L);
+    assertThat(view.activeStates(), hasSize(1));
+
+    view.refresh();
+    assertThat(instances(view.activeStates()), containsInAnyOrder(WFI, OTHER_WFI));
+
+    storage.deleteActiveState(WFI);
+    view.refresh();
+    assertThat(instances(view.activeStates()), contains(OTHER_WFI));
+  }
+
+  @Test
+  public void shouldFilterOnComponent() throws Exception {
+    storage.writeActiveState(WFI, 0L);
+    storage.writeActiveState(OTHER_WFI, 0L);
+
+    assertThat(instances(view.activeStates("styx")), contains(WFI));
+    assertThat(instances(view.activeStates("styx-other")), contains(OTHER_WFI));
+    assertThat(view.activeStates("unknown"), is(empty()));
+  }
+
+  @Test
+  public void shouldOnlyReadEventsOfChangedInstances() throws Exception {
+    storage.writeActiveState(WFI, 0L);
+    storage.writeActiveState(OTHER_WFI, 0L);
+
+    view.refresh();
+    view.refresh();
+    verify(storage, times(1)).readEvents(WFI);
+    verify(storage, times(1)).readEvents(OTHER_WFI);
+
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI, "trig"), 1L, 1L));
+    storage.writeActiveState(WFI, 1L);
+
+    view.refresh();
+    verify(storage, times(2)).readEvents(WFI);
+    verify(storage, times(1)).readEvents(OTHER_WFI);
+    assertThat(view.activeStates("styx").get(0).state(), is("PREPARE"));
+  }
+
+  @Test
+  public void shouldStartFromSnapshot() throws Exception {
+    final RunStateSnapshot snapshot = RunStateSnapshot.create(
+        7L, RunState.State.RUNNING, 0L, 1, 0.0, 0L, -1, Optional.of("exec7"), Optional.empty());
+    storage.writeActiveStates(ImmutableMap.of(WFI, snapshot));
+
+    final ActiveState activeState = view.activeStates().get(0);
+
+    assertThat(activeState.state(), is("RUNNING"));
+    assertThat(activeState.lastExecutionId(), is("exec7"));
+  }
+
+  @Test
+  public void shouldReportStaleness() throws Exception {
+    assertThat(view.stalenessMillis(), is(0L));
+
+    now = now.plusMillis(500);
+    assertThat(view.stalenessMillis(), is(500L));
+
+    view.refresh();
+    assertThat(view.stalenessMillis(), is(0L));
+
+    now = now.plusMillis(200);
+    assertThat(view.stalenessMillis(), is(200L));
+  }
+
+  private static List<WorkflowInstance> instances(List<ActiveState> activeStates) {
+    return activeStates.stream()
+        .map(ActiveState::workflowInstance)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void shouldReadEventsOnOwnThreads() throws Exception {
+    final List<String> threadNames = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(invocation -> {
+      threadNames.add(Thread.currentThread().getName());
+      return invocation.callRealMethod();
+    }).when(storage).readEvents(any(WorkflowInstance.class));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI, "trig"), 0L, 0L));
+    storage.writeActiveState(WFI, 0L);
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(OTHER_WFI, "trig"), 0L, 0L));
+    storage.writeActiveState(OTHER_WFI, 0L);
+
+    view.refresh();
+
+    assertThat(threadNames, hasSize(2));
+    assertThat(threadNames, everyItem(startsWith("styx-api-active-states-load-")));
+  }
+}
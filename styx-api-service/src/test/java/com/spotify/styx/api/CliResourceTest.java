@@ -42,6 +42,7 @@ import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.storage.EventStorage;
 import com.spotify.styx.storage.InMemStorage;
 import com.spotify.styx.util.Json;
+import java.time.Instant;
 import java.util.Collection;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
@@ -88,7 +89,8 @@ public class CliResourceTest {
   }
 
   private void init(Environment environment) {
-    final CliResource cliResource = new CliResource(SCHEDULER_BASE, eventStorage);
+    final ActiveStatesView activeStatesView = new ActiveStatesView(eventStorage, Instant::now);
+    final CliResource cliResource = new CliResource(SCHEDULER_BASE, eventStorage, activeStatesView);
 
     environment.routingEngine()
         .registerRoutes(cliResource.routes());
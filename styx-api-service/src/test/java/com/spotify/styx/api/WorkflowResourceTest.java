@@ -21,6 +21,7 @@
 package com.spotify.styx.api;
 
 import static com.spotify.apollo.test.unit.ResponseMatchers.hasHeader;
+import static com.spotify.apollo.test.unit.ResponseMatchers.hasNoHeader;
 import static com.spotify.apollo.test.unit.ResponseMatchers.hasNoPayload;
 import static com.spotify.apollo.test.unit.ResponseMatchers.hasStatus;
 import static com.spotify.apollo.test.unit.StatusTypeMatchers.withCode;
@@ -32,6 +33,9 @@ import static com.spotify.styx.api.JsonMatchers.assertNoJson;
 import static com.spotify.styx.model.SequenceEvent.create;
 import static com.spotify.styx.model.WorkflowState.patchDockerImage;
 import static java.util.Optional.empty;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
@@ -51,6 +55,7 @@ import com.spotify.styx.model.WorkflowState;
 import com.spotify.styx.storage.InMemStorage;
 import java.net.URI;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.concurrent.CompletionStage;
@@ -351,6 +356,64 @@ public class WorkflowResourceTest {
     assertJson(response, "[0].triggers.[0].executions.[0].statuses.[1].status", is("STARTED"));
   }
 
+  @Test
+  public void shouldPageWorkflowInstancesData() throws Exception {
+    assumeThat(version, isAtLeast(Api.Version.V1));
+
+    for (String parameter : Arrays.asList("2016-08-10", "2016-08-11", "2016-08-12")) {
+      WorkflowInstance wfi = WorkflowInstance.create(WORKFLOW.id(), parameter);
+      storage.writeEvent(create(Event.triggerExecution(wfi, "trig"), 0L, ms("07:00:00")));
+    }
+
+    Response<ByteString> firstPage =
+        awaitResponse(serviceHelper.request("GET", path("/foo/bar/instances?limit=2")));
+
+    assertThat(firstPage, hasStatus(withCode(Status.OK)));
+    assertJson(firstPage, "[*]", hasSize(2));
+    assertJson(firstPage, "[0].workflow_instance.parameter", is("2016-08-10"));
+    assertJson(firstPage, "[1].workflow_instance.parameter", is("2016-08-11"));
+    assertThat(firstPage, hasHeader("Link", allOf(
+        containsString("/foo/bar/instances?limit=2&after=2016-08-11>"), endsWith("; rel=\"next\""))));
+
+    Response<ByteString> secondPage =
+        awaitResponse(serviceHelper.request("GET", path("/foo/bar/instances?limit=2&after=2016-08-11")));
+
+    assertThat(secondPage, hasStatus(withCode(Status.OK)));
+    assertJson(secondPage, "[*]", hasSize(1));
+    assertJson(secondPage, "[0].workflow_instance.parameter", is("2016-08-12"));
+    assertThat(secondPage, hasNoHeader("Link"));
+  }
+
+  @Test
+  public void shouldReturnWorkflowInstancesDataInParameterRange() throws Exception {
+    assumeThat(version, isAtLeast(Api.Version.V1));
+
+    for (String parameter : Arrays.asList("2016-08-10", "2016-08-11", "2016-08-12")) {
+      WorkflowInstance wfi = WorkflowInstance.create(WORKFLOW.id(), parameter);
+      storage.writeEvent(create(Event.triggerExecution(wfi, "trig"), 0L, ms("07:00:00")));
+    }
+
+    Response<ByteString> response = awaitResponse(
+        serviceHelper.request("GET", path("/foo/bar/instances?start=2016-08-11&end=2016-08-12")));
+
+    assertThat(response, hasStatus(withCode(Status.OK)));
+    assertJson(response, "[*]", hasSize(1));
+    assertJson(response, "[0].workflow_instance.parameter", is("2016-08-11"));
+  }
+
+  @Test
+  public void shouldRejectInvalidInstancesLimit() throws Exception {
+    assumeThat(version, isAtLeast(Api.Version.V1));
+
+    Response<ByteString> notANumber =
+        awaitResponse(serviceHelper.request("GET", path("/foo/bar/instances?limit=many")));
+    Response<ByteString> tooLarge =
+        awaitResponse(serviceHelper.request("GET", path("/foo/bar/instances?limit=10001")));
+
+    assertThat(notANumber, hasStatus(withCode(Status.BAD_REQUEST)));
+    assertThat(tooLarge, hasStatus(withCode(Status.BAD_REQUEST)));
+  }
+
   @Test
   public void shouldReturnWorkflowInstanceData() throws Exception {
     assumeThat(version, isAtLeast(Api.Version.V1));
@@ -0,0 +1,48 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+
+package com.spotify.styx.benchmark;
+
+import com.google.common.collect.Lists;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks with the JMH command line, writing the results as JSON unless another
+ * result format is asked for.
+ *
+ * <p>The results end up in {@code jmh-result.json} in the working directory. Pass
+ * {@code -rff <file>} to keep the results of different commits apart, for example
+ * {@code java -jar benchmarks.jar -rff jmh-$(git rev-parse --short HEAD).json}.
+ */
+public final class BenchmarkMain {
+
+  private BenchmarkMain() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    final List<String> options = Lists.newArrayList(args);
+    if (!options.contains("-rf")) {
+      options.addAll(0, Arrays.asList("-rf", "json"));
+    }
+    org.openjdk.jmh.Main.main(options.toArray(new String[options.size()]));
+  }
+}
@@ -0,0 +1,137 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.benchmark;
+
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.OutputHandler;
+import com.spotify.styx.state.QueuedStateManager;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.TimeoutConfig;
+import com.spotify.styx.storage.NoopEventStorage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the latency of a single event, from {@code receive} until the output handler of the
+ * resulting state has run, while a number of other instances are active but idle.
+ *
+ * <p>{@code scan} is the dispatch loop that visits every active state on each iteration,
+ * {@code ready} is the ready queue based {@link QueuedStateManager}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DispatcherBenchmark {
+
+  private static final WorkflowId WORKFLOW_ID = WorkflowId.create("benchmark", "dispatch");
+
+  @Param({"1000", "10000", "100000"})
+  public int activeStates;
+
+  @Param({"scan", "ready"})
+  public String dispatcher;
+
+  private final AtomicLong transitions = new AtomicLong();
+
+  private ExecutorService workerPool;
+  private Closeable closeable;
+  private Consumer<Event> receiver;
+  private Event hotEvent;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    workerPool = Executors.newFixedThreadPool(16);
+
+    final OutputHandler counter = (state) -> transitions.incrementAndGet();
+    final WorkflowInstance hot = instance(0);
+    hotEvent = Event.timeout(hot);
+
+    switch (dispatcher) {
+      case "scan":
+        final ScanningDispatcher scanning = new ScanningDispatcher(workerPool, counter);
+        for (int i = 0; i < activeStates; i++) {
+          scanning.restore(RunState.fresh(instance(i), Instant::now, counter));
+        }
+        receiver = scanning;
+        closeable = scanning;
+        break;
+
+      case "ready":
+        final QueuedStateManager stateManager = new QueuedStateManager(
+            TimeoutConfig.createWithDefaultTtl(Duration.ofDays(1)), Instant::now, workerPool,
+            new NoopEventStorage());
+        for (int i = 0; i < activeStates; i++) {
+          stateManager.restore(RunState.fresh(instance(i), Instant::now, counter), -1L);
+        }
+        receiver = stateManager::receiveIgnoreClosed;
+        closeable = stateManager;
+        break;
+
+      default:
+        throw new IllegalArgumentException("Unknown dispatcher " + dispatcher);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    closeable.close();
+    workerPool.shutdownNow();
+  }
+
+  @Benchmark
+  public long singleEvent() {
+    final long target = transitions.get() + 1;
+    receiver.accept(hotEvent);
+    while (transitions.get() < target) {
+      Thread.yield();
+    }
+    return target;
+  }
+
+  private static WorkflowInstance instance(int i) {
+    return WorkflowInstance.create(WORKFLOW_ID, "param-" + i);
+  }
+}
@@ -0,0 +1,146 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.benchmark;
+
+import com.spotify.styx.model.DataEndpoint;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.EventCodec;
+import com.spotify.styx.model.EventSerializer;
+import com.spotify.styx.model.ExecutionDescription;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares encoding and decoding event table values with the JSON {@link EventSerializer} and the
+ * binary {@link EventCodec}.
+ *
+ * <p>Every invocation handles one execution's worth of events, from trigger to success. The
+ * average encoded size per event of each codec is reported as the {@code bytesPerEvent} secondary
+ * result of {@code encode}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EventCodecBenchmark {
+
+  private static final WorkflowInstance INSTANCE = WorkflowInstance.create(
+      WorkflowId.create("benchmark-component", "event-codec"), "2016-10-17T15");
+
+  private static final List<Event> EVENTS = Arrays.asList(
+      Event.triggerExecution(INSTANCE, "natural-trigger"),
+      Event.submit(INSTANCE, ExecutionDescription.create(
+          "gcr.io/benchmark/event-codec:1.2.3",
+          Arrays.asList("--date", "2016-10-17T15", "--output", "gs://benchmark/output"),
+          Optional.of(DataEndpoint.Secret.create("benchmark-secret", "/etc/benchmark")),
+          Optional.of("00000ef508c1cb905e360590ce3e7e9193f6b370"))),
+      Event.submitted(INSTANCE, "styx-run-8c8d0d40-13b7-4fd8-a5e7-2ec8a6c8e4e5"),
+      Event.started(INSTANCE),
+      Event.terminate(INSTANCE, 0),
+      Event.success(INSTANCE));
+
+  @Param({"json", "binary"})
+  public String codec;
+
+  private final EventSerializer serializer = new EventSerializer();
+  private final EventCodec eventCodec = new EventCodec();
+
+  private byte[][] encoded;
+  private double bytesPerEvent;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class EncodedSize {
+    public double bytesPerEvent;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    encoded = new byte[EVENTS.size()][];
+    long bytes = 0;
+    for (int i = 0; i < EVENTS.size(); i++) {
+      encoded[i] = encodeEvent(EVENTS.get(i));
+      bytes += encoded[i].length;
+    }
+    bytesPerEvent = (double) bytes / EVENTS.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(6)
+  public void encode(Blackhole blackhole, EncodedSize size) {
+    for (Event event : EVENTS) {
+      blackhole.consume(encodeEvent(event));
+    }
+    size.bytesPerEvent = bytesPerEvent;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(6)
+  public void decode(Blackhole blackhole) {
+    for (byte[] value : encoded) {
+      blackhole.consume(decodeEvent(value));
+    }
+  }
+
+  private byte[] encodeEvent(Event event) {
+    switch (codec) {
+      case "json":
+        return serializer.convert(event).toByteArray();
+      case "binary":
+        return eventCodec.encode(event);
+      default:
+        throw new IllegalArgumentException("Unknown codec " + codec);
+    }
+  }
+
+  private Event decodeEvent(byte[] value) {
+    switch (codec) {
+      case "json":
+        return serializer.convert(ByteString.of(value));
+      case "binary":
+        return eventCodec.decode(INSTANCE, value);
+      default:
+        throw new IllegalArgumentException("Unknown codec " + codec);
+    }
+  }
+}
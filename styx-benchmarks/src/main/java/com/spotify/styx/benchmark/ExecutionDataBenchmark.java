@@ -0,0 +1,101 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+
+package com.spotify.styx.benchmark;
+
+import com.google.common.collect.Lists;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.model.WorkflowInstanceExecutionData;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures building the {@link WorkflowInstanceExecutionData} of an instance from its events, which
+ * the api service does for every instance it returns.
+ *
+ * <p>The history is {@code triggers} triggers, each retried {@code retriesPerTrigger} times
+ * before it succeeds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ExecutionDataBenchmark {
+
+  private static final WorkflowInstance INSTANCE =
+      WorkflowInstance.create(WorkflowId.create("benchmark", "execution-data"), "2016-10-17T15");
+
+  @Param({"1", "10"})
+  public int triggers;
+
+  @Param({"3"})
+  public int retriesPerTrigger;
+
+  private List<SequenceEvent> events;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    events = Lists.newArrayList();
+    for (int trigger = 0; trigger < triggers; trigger++) {
+      add(Event.triggerExecution(INSTANCE, "trigger-" + trigger));
+      for (int attempt = 0; attempt <= retriesPerTrigger; attempt++) {
+        final String executionId = "execution-" + trigger + "-" + attempt;
+        add(Event.created(INSTANCE, executionId, "busybox"));
+        add(Event.started(INSTANCE));
+        if (attempt < retriesPerTrigger) {
+          add(Event.terminate(INSTANCE, 1));
+          add(Event.retryAfter(INSTANCE, 1000L));
+          add(Event.retry(INSTANCE));
+        } else {
+          add(Event.terminate(INSTANCE, 0));
+          add(Event.success(INSTANCE));
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public WorkflowInstanceExecutionData fromEvents() {
+    return WorkflowInstanceExecutionData.fromEvents(events);
+  }
+
+  private void add(Event event) {
+    final long counter = events.size();
+    events.add(SequenceEvent.create(event, counter, counter * 1000L));
+  }
+}
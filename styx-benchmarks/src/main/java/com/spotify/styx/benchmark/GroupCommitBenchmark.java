@@ -0,0 +1,121 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.benchmark;
+
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.monitoring.Stats;
+import com.spotify.styx.state.OutputHandler;
+import com.spotify.styx.state.QueuedStateManager;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.TimeoutConfig;
+import com.spotify.styx.storage.NoopEventStorage;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures transitions per second through {@link QueuedStateManager} when every storage call
+ * costs a fixed round trip.
+ *
+ * <p>Each invocation sends one event to each of {@link #INSTANCES} active instances and waits for
+ * all output handlers to run. With {@code flushMaxBatchSize} 1 every transition pays its own
+ * round trips, which is how transitions were persisted before group commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GroupCommitBenchmark {
+
+  private static final WorkflowId WORKFLOW_ID = WorkflowId.create("benchmark", "group-commit");
+  private static final int INSTANCES = 1000;
+
+  @Param({"1", "5"})
+  public int writeLatencyMillis;
+
+  @Param({"1", "500"})
+  public int flushMaxBatchSize;
+
+  private final AtomicLong transitions = new AtomicLong();
+
+  private ExecutorService workerPool;
+  private QueuedStateManager stateManager;
+  private Event[] events;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    workerPool = Executors.newFixedThreadPool(16);
+
+    final OutputHandler counter = (state) -> transitions.incrementAndGet();
+    stateManager = new QueuedStateManager(
+        TimeoutConfig.createWithDefaultTtl(Duration.ofDays(1)), Instant::now, workerPool,
+        new LatencyInjectingEventStorage(new NoopEventStorage(), Duration.ofMillis(writeLatencyMillis)),
+        flushMaxBatchSize, Duration.ZERO, Stats.NOOP);
+
+    events = new Event[INSTANCES];
+    for (int i = 0; i < INSTANCES; i++) {
+      final WorkflowInstance instance = WorkflowInstance.create(WORKFLOW_ID, "param-" + i);
+      stateManager.restore(RunState.fresh(instance, Instant::now, counter), -1L);
+      events[i] = Event.timeout(instance);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    stateManager.close();
+    workerPool.shutdownNow();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(INSTANCES)
+  public long transitions() {
+    final long target = transitions.get() + INSTANCES;
+    for (Event event : events) {
+      stateManager.receiveIgnoreClosed(event);
+    }
+    while (transitions.get() < target) {
+      Thread.yield();
+    }
+    return target;
+  }
+}
@@ -0,0 +1,147 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.benchmark;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigtable.hbase.adapters.read.RowCell;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.common.collect.Lists;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.EventCodec;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.model.WorkflowInstanceExecutionData;
+import com.spotify.styx.storage.AggregateStorage;
+import com.spotify.styx.storage.BigtableMocker;
+import com.spotify.styx.storage.BigtableStorage;
+import com.spotify.styx.storage.Storage;
+import com.spotify.styx.util.Json;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what the {@code /workflows/<cid>/<eid>/instances} endpoint does for an hourly workflow
+ * with a long history: reading the execution data of the instances and serializing it to JSON.
+ *
+ * <p>{@code all} reads every instance like the endpoint did before paging, {@code page} reads the
+ * default page size. Run with {@code -prof gc} to compare the allocated heap per request. The
+ * response size of each mode is reported as the {@code bytesPerResponse} secondary result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class InstancesBenchmark {
+
+  private static final WorkflowId WORKFLOW_ID = WorkflowId.create("benchmark", "instances");
+  private static final Instant FIRST_PARAMETER = Instant.parse("2015-01-01T00:00:00Z");
+  private static final int PAGE_SIZE = 1000;
+
+  @Param({"10000"})
+  public int instances;
+
+  @Param({"all", "page"})
+  public String read;
+
+  private Storage storage;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class ResponseSize {
+    public long bytesPerResponse;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    final Connection bigtable = mock(Connection.class);
+    final BigtableMocker mocker = new BigtableMocker(bigtable)
+        .setupTable(BigtableStorage.EVENTS_TABLE_NAME);
+
+    final EventCodec codec = new EventCodec();
+    final List<Cell> cells = Lists.newArrayList();
+    for (int i = 0; i < instances; i++) {
+      final String parameter = FIRST_PARAMETER.plus(i, ChronoUnit.HOURS).toString().substring(0, 13);
+      final WorkflowInstance instance = WorkflowInstance.create(WORKFLOW_ID, parameter);
+      final List<Event> events = Lists.newArrayList(
+          Event.triggerExecution(instance, "natural-trigger"),
+          Event.created(instance, "execution-" + i, "busybox"),
+          Event.started(instance),
+          Event.terminate(instance, 0),
+          Event.success(instance));
+      for (int counter = 0; counter < events.size(); counter++) {
+        final byte[] row = Bytes.toBytes(String.format("%s#%08d", instance.toKey(), counter));
+        cells.add(new RowCell(
+            row, BigtableStorage.EVENT_CF, BigtableStorage.EVENT_QUALIFIER, counter,
+            codec.encode(events.get(counter))));
+      }
+    }
+    mocker.addRowsToTable(BigtableStorage.EVENTS_TABLE_NAME, cells);
+
+    final Datastore datastore = mock(Datastore.class);
+    when(datastore.newKeyFactory()).thenAnswer(invocation -> new KeyFactory("styx-benchmark"));
+    storage = new AggregateStorage(bigtable, datastore, Duration.ZERO);
+  }
+
+  @Benchmark
+  public byte[] instances(ResponseSize size) throws IOException {
+    final List<WorkflowInstanceExecutionData> data;
+    switch (read) {
+      case "all":
+        data = storage.executionData(WORKFLOW_ID);
+        break;
+      case "page":
+        data = storage.executionData(
+            WORKFLOW_ID, Optional.empty(), Optional.empty(), Optional.empty(), PAGE_SIZE);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown read " + read);
+    }
+    final byte[] response = Json.OBJECT_MAPPER.writeValueAsBytes(data);
+    size.bytesPerResponse = response.length;
+    return response;
+  }
+}
@@ -0,0 +1,126 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.benchmark;
+
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunStateSnapshot;
+import com.spotify.styx.storage.EventStorage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link EventStorage} that adds a fixed delay to every call before passing it on to a
+ * delegate, standing in for the round trip to a remote backend.
+ */
+public class LatencyInjectingEventStorage implements EventStorage {
+
+  private final EventStorage delegate;
+  private final long latencyNanos;
+
+  public LatencyInjectingEventStorage(EventStorage delegate, Duration latency) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.latencyNanos = latency.toNanos();
+  }
+
+  @Override
+  public SortedSet<SequenceEvent> readEvents(WorkflowInstance workflowInstance) throws IOException {
+    roundTrip();
+    return delegate.readEvents(workflowInstance);
+  }
+
+  @Override
+  public void writeEvent(SequenceEvent sequenceEvent) throws IOException {
+    roundTrip();
+    delegate.writeEvent(sequenceEvent);
+  }
+
+  @Override
+  public void writeEvents(List<SequenceEvent> sequenceEvents) throws IOException {
+    roundTrip();
+    delegate.writeEvents(sequenceEvents);
+  }
+
+  @Override
+  public Optional<Long> getLatestStoredCounter(WorkflowInstance workflowInstance)
+      throws IOException {
+    roundTrip();
+    return delegate.getLatestStoredCounter(workflowInstance);
+  }
+
+  @Override
+  public void writeActiveState(WorkflowInstance workflowInstance, long counter) throws IOException {
+    roundTrip();
+    delegate.writeActiveState(workflowInstance, counter);
+  }
+
+  @Override
+  public void writeActiveStates(Map<WorkflowInstance, RunStateSnapshot> snapshots) throws IOException {
+    roundTrip();
+    delegate.writeActiveStates(snapshots);
+  }
+
+  @Override
+  public void deleteActiveState(WorkflowInstance workflowInstance) throws IOException {
+    roundTrip();
+    delegate.deleteActiveState(workflowInstance);
+  }
+
+  @Override
+  public void deleteActiveStates(Set<WorkflowInstance> workflowInstances) throws IOException {
+    roundTrip();
+    delegate.deleteActiveStates(workflowInstances);
+  }
+
+  @Override
+  public Map<WorkflowInstance, Long> readActiveWorkflowInstances() throws IOException {
+    roundTrip();
+    return delegate.readActiveWorkflowInstances();
+  }
+
+  @Override
+  public Map<WorkflowInstance, Long> readActiveWorkflowInstances(String componentId) throws IOException {
+    roundTrip();
+    return delegate.readActiveWorkflowInstances(componentId);
+  }
+
+  @Override
+  public Map<WorkflowInstance, RunStateSnapshot> readActiveStateSnapshots() throws IOException {
+    roundTrip();
+    return delegate.readActiveStateSnapshots();
+  }
+
+  private void roundTrip() throws IOException {
+    try {
+      TimeUnit.NANOSECONDS.sleep(latencyNanos);
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException();
+    }
+  }
+}
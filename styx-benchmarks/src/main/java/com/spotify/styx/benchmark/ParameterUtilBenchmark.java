@@ -0,0 +1,89 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+
+package com.spotify.styx.benchmark;
+
+import com.spotify.styx.model.Partitioning;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.workflow.ParameterUtil;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import javaslang.control.Either;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures formatting instants as workflow instance parameters and parsing them back, which the
+ * scheduler does for every trigger and backfill.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParameterUtilBenchmark {
+
+  private static final WorkflowId WORKFLOW_ID = WorkflowId.create("benchmark", "parameter-util");
+  private static final Instant INSTANT = Instant.parse("2016-10-17T15:00:00Z");
+
+  @Param({"HOURS", "DAYS", "WEEKS"})
+  public Partitioning partitioning;
+
+  private WorkflowInstance workflowInstance;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    workflowInstance = WorkflowInstance.create(WORKFLOW_ID, format());
+  }
+
+  @Benchmark
+  public String formatParameter() {
+    return format();
+  }
+
+  @Benchmark
+  public Either<String, Instant> parseParameter() {
+    return ParameterUtil.instantFromWorkflowInstance(workflowInstance, partitioning);
+  }
+
+  @Benchmark
+  public Instant incrementInstant() {
+    return ParameterUtil.incrementInstant(INSTANT, partitioning);
+  }
+
+  private String format() {
+    return partitioning == Partitioning.HOURS
+        ? ParameterUtil.formatDateHour(INSTANT)
+        : ParameterUtil.formatDate(INSTANT);
+  }
+}
@@ -0,0 +1,120 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+
+package com.spotify.styx.benchmark;
+
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.storage.EventStorage;
+import com.spotify.styx.storage.InMemStorage;
+import com.spotify.styx.util.ReplayEvents;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ReplayEvents#replayActiveStates} replaying the full history of every active
+ * instance from an {@link InMemStorage}, with every read delayed by {@code readLatencyMillis}.
+ *
+ * <p>With no latency this is the cost of reading and transitioning, with latency it shows how much
+ * the parallel replay hides the round trips to the event table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReplayBenchmark {
+
+  private static final WorkflowId WORKFLOW_ID = WorkflowId.create("benchmark", "replay");
+
+  @Param({"1000"})
+  public int instances;
+
+  @Param({"50"})
+  public int eventsPerInstance;
+
+  @Param({"0", "2"})
+  public int readLatencyMillis;
+
+  private EventStorage storage;
+  private Map<WorkflowInstance, Long> activeInstances;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    final InMemStorage inMemStorage = new InMemStorage();
+    for (int i = 0; i < instances; i++) {
+      final WorkflowInstance instance = WorkflowInstance.create(WORKFLOW_ID, "param-" + i);
+      for (int counter = 0; counter < eventsPerInstance; counter++) {
+        inMemStorage.writeEvent(SequenceEvent.create(event(instance, counter), counter, counter));
+      }
+      inMemStorage.writeActiveState(instance, eventsPerInstance - 1L);
+    }
+
+    storage = new LatencyInjectingEventStorage(inMemStorage, Duration.ofMillis(readLatencyMillis));
+    activeInstances = inMemStorage.readActiveWorkflowInstances();
+  }
+
+  @Benchmark
+  public Map<RunState, Long> replayActiveStates() throws IOException {
+    return ReplayEvents.replayActiveStates(activeInstances, storage, false);
+  }
+
+  /**
+   * A valid history of retried executions: a trigger followed by repeated
+   * created, started, terminate, retryAfter and retry events.
+   */
+  private static Event event(WorkflowInstance instance, int counter) {
+    if (counter == 0) {
+      return Event.triggerExecution(instance, "trigger");
+    }
+
+    switch ((counter - 1) % 5) {
+      case 0:
+        return Event.created(instance, "execution-" + counter, "busybox");
+      case 1:
+        return Event.started(instance);
+      case 2:
+        return Event.terminate(instance, 1);
+      case 3:
+        return Event.retryAfter(instance, 1000L);
+      default:
+        return Event.retry(instance);
+    }
+  }
+}
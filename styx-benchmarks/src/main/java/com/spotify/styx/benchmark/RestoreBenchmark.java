@@ -0,0 +1,171 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.benchmark;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.bigtable.hbase.adapters.read.RowCell;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.EventSerializer;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.RunStateSnapshot;
+import com.spotify.styx.storage.AggregateStorage;
+import com.spotify.styx.storage.BigtableMocker;
+import com.spotify.styx.storage.BigtableStorage;
+import com.spotify.styx.storage.EventStorage;
+import com.spotify.styx.util.Json;
+import com.spotify.styx.util.ReplayEvents;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures restoring the active states on startup from an event table mocked with
+ * {@link BigtableMocker}.
+ *
+ * <p>{@code replay} reads and replays the full event history of every instance, {@code snapshot}
+ * parses the stored {@link RunStateSnapshot} JSON of every instance and replays nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RestoreBenchmark {
+
+  private static final WorkflowId WORKFLOW_ID = WorkflowId.create("benchmark", "restore");
+
+  @Param({"10000"})
+  public int instances;
+
+  @Param({"200"})
+  public int eventsPerInstance;
+
+  @Param({"replay", "snapshot"})
+  public String restore;
+
+  private EventStorage storage;
+  private Map<WorkflowInstance, Long> activeInstances;
+  private Map<WorkflowInstance, String> snapshotJson;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    final Connection bigtable = mock(Connection.class);
+    final BigtableMocker mocker = new BigtableMocker(bigtable)
+        .setupTable(BigtableStorage.EVENTS_TABLE_NAME);
+
+    final EventSerializer serializer = new EventSerializer();
+    final List<Cell> cells = Lists.newArrayListWithCapacity(instances * eventsPerInstance);
+    activeInstances = Maps.newHashMap();
+    for (int i = 0; i < instances; i++) {
+      final WorkflowInstance instance = WorkflowInstance.create(WORKFLOW_ID, "param-" + i);
+      for (int counter = 0; counter < eventsPerInstance; counter++) {
+        final byte[] row = Bytes.toBytes(String.format("%s#%08d", instance.toKey(), counter));
+        final byte[] value = serializer.convert(event(instance, counter)).toByteArray();
+        cells.add(new RowCell(
+            row, BigtableStorage.EVENT_CF, BigtableStorage.EVENT_QUALIFIER, counter, value));
+      }
+      activeInstances.put(instance, eventsPerInstance - 1L);
+    }
+    mocker.addRowsToTable(BigtableStorage.EVENTS_TABLE_NAME, cells);
+
+    final Datastore datastore = mock(Datastore.class);
+    when(datastore.newKeyFactory()).thenAnswer(invocation -> new KeyFactory("styx-benchmark"));
+    storage = new AggregateStorage(bigtable, datastore, Duration.ZERO);
+
+    // the snapshots are what the state manager would have stored after the last event
+    snapshotJson = Maps.newHashMap();
+    final Map<RunState, Long> replayed =
+        ReplayEvents.replayActiveStates(activeInstances, storage, false);
+    for (Map.Entry<RunState, Long> entry : replayed.entrySet()) {
+      snapshotJson.put(
+          entry.getKey().workflowInstance(),
+          Json.OBJECT_MAPPER.writeValueAsString(RunStateSnapshot.of(entry.getKey(), entry.getValue())));
+    }
+  }
+
+  @Benchmark
+  public Map<RunState, Long> restoreActiveStates() throws IOException {
+    switch (restore) {
+      case "replay":
+        return ReplayEvents.replayActiveStates(activeInstances, storage, false);
+
+      case "snapshot":
+        final Map<WorkflowInstance, RunStateSnapshot> snapshots = Maps.newHashMap();
+        for (Map.Entry<WorkflowInstance, String> entry : snapshotJson.entrySet()) {
+          snapshots.put(
+              entry.getKey(), Json.OBJECT_MAPPER.readValue(entry.getValue(), RunStateSnapshot.class));
+        }
+        return ReplayEvents.replayActiveStates(activeInstances, snapshots, storage, false);
+
+      default:
+        throw new IllegalArgumentException("Unknown restore " + restore);
+    }
+  }
+
+  /**
+   * A valid history of retried executions: a trigger followed by repeated
+   * created, started, terminate, retryAfter and retry events.
+   */
+  private static Event event(WorkflowInstance instance, int counter) {
+    if (counter == 0) {
+      return Event.triggerExecution(instance, "trigger");
+    }
+
+    switch ((counter - 1) % 5) {
+      case 0:
+        return Event.created(instance, "execution-" + counter, "busybox");
+      case 1:
+        return Event.started(instance);
+      case 2:
+        return Event.terminate(instance, 1);
+      case 3:
+        return Event.retryAfter(instance, 1000L);
+      default:
+        return Event.retry(instance);
+    }
+  }
+}
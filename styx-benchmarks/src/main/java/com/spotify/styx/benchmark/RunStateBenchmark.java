@@ -0,0 +1,117 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+
+package com.spotify.styx.benchmark;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.util.ReplayEvents;
+import com.spotify.styx.util.Time;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the in-memory cost of {@link RunState#transition(Event)} and of
+ * {@link ReplayEvents#replayState} over an already read event history, without any storage.
+ *
+ * <p>{@code transition} drives one state through a retried execution, {@code replay} restores a
+ * state from {@code eventsPerInstance} events. Run with {@code -prof gc} to see the allocation
+ * rate, which should be close to one {@link RunState} per event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RunStateBenchmark {
+
+  private static final WorkflowInstance INSTANCE =
+      WorkflowInstance.create(WorkflowId.create("benchmark", "run-state"), "2016-10-17T15");
+
+  private static final Time TIME = () -> Instant.EPOCH;
+
+  // a failed execution that is retried, leaving the state in PREPARE again
+  private static final List<Event> RETRY_CYCLE = Arrays.asList(
+      Event.created(INSTANCE, "execution", "busybox"),
+      Event.started(INSTANCE),
+      Event.terminate(INSTANCE, 1),
+      Event.retryAfter(INSTANCE, 1000L),
+      Event.retry(INSTANCE));
+
+  @Param({"200"})
+  public int eventsPerInstance;
+
+  private RunState prepared;
+  private SortedSet<SequenceEvent> history;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    prepared = RunState.fresh(INSTANCE, TIME).transition(Event.triggerExecution(INSTANCE, "trigger"));
+
+    final ImmutableSortedSet.Builder<SequenceEvent> builder =
+        ImmutableSortedSet.orderedBy(Comparator.comparingLong(SequenceEvent::counter));
+    builder.add(SequenceEvent.create(Event.triggerExecution(INSTANCE, "trigger"), 0L, 0L));
+    for (int counter = 1; counter < eventsPerInstance; counter++) {
+      final Event event = RETRY_CYCLE.get((counter - 1) % RETRY_CYCLE.size());
+      builder.add(SequenceEvent.create(event, counter, counter * 1000L));
+    }
+    history = builder.build();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(5)
+  public void transition(Blackhole blackhole) {
+    RunState state = prepared;
+    for (Event event : RETRY_CYCLE) {
+      state = state.transition(event);
+      blackhole.consume(state);
+    }
+  }
+
+  @Benchmark
+  public RunState replay() {
+    return ReplayEvents.replayState(INSTANCE, eventsPerInstance - 1L, Optional.empty(), history, false);
+  }
+}
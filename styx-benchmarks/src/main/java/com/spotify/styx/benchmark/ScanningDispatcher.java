@@ -0,0 +1,133 @@
+/*-
+ * -\-\-
+ * Spotify Styx Benchmarks
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.benchmark;
+
+import com.google.common.collect.Maps;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.OutputHandler;
+import com.spotify.styx.state.RunState;
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * The dispatch loop of {@link com.spotify.styx.state.QueuedStateManager} as it was before the
+ * ready queue was introduced: every loop calls {@code mutexPoll()} on all active states and then
+ * waits up to {@link #POLL_TIMEOUT_MILLIS} on a shared monitor.
+ *
+ * <p>Storage writes are left out, so only the cost of dispatching is compared. Kept as a baseline
+ * for {@link DispatcherBenchmark}.
+ */
+final class ScanningDispatcher implements Consumer<Event>, Closeable {
+
+  private static final int EVENT_QUEUE_SIZE = 1024;
+  private static final int POLL_TIMEOUT_MILLIS = 10;
+
+  private final Executor workerPool;
+  private final OutputHandler outputHandler;
+  private final ConcurrentMap<WorkflowInstance, ScanState> states = Maps.newConcurrentMap();
+  private final Object signal = new Object();
+  private final Thread dispatcherThread;
+
+  private volatile boolean running = true;
+
+  ScanningDispatcher(Executor workerPool, OutputHandler outputHandler) {
+    this.workerPool = workerPool;
+    this.outputHandler = outputHandler;
+    this.dispatcherThread = new Thread(this::dispatch);
+    dispatcherThread.setName("styx-benchmark-scanning-dispatcher");
+    dispatcherThread.start();
+  }
+
+  void restore(RunState runState) {
+    states.put(runState.workflowInstance(), new ScanState(runState));
+  }
+
+  @Override
+  public void accept(Event event) {
+    final ScanState state = states.get(event.workflowInstance());
+    state.queue.add(() -> {
+      final RunState nextState = state.runState.transition(event);
+      state.runState = nextState;
+      workerPool.execute(() -> outputHandler.transitionInto(nextState));
+    });
+
+    synchronized (signal) {
+      signal.notifyAll();
+    }
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    dispatcherThread.interrupt();
+  }
+
+  private void dispatch() {
+    while (running) {
+      states.values().forEach(this::mutexPoll);
+      synchronized (signal) {
+        try {
+          signal.wait(POLL_TIMEOUT_MILLIS);
+        } catch (InterruptedException ignored) {
+        }
+      }
+    }
+  }
+
+  private void mutexPoll(ScanState state) {
+    if (state.queue.isEmpty()) {
+      return;
+    }
+
+    if (state.mutex.tryAcquire()) {
+      workerPool.execute(() -> {
+        try {
+          final Runnable poll = state.queue.poll();
+          if (poll != null) {
+            poll.run();
+          }
+        } finally {
+          state.mutex.release();
+        }
+
+        mutexPoll(state);
+      });
+    }
+  }
+
+  private static final class ScanState {
+
+    final Queue<Runnable> queue = new LinkedBlockingQueue<>(EVENT_QUEUE_SIZE);
+    final Semaphore mutex = new Semaphore(1);
+
+    volatile RunState runState;
+
+    ScanState(RunState runState) {
+      this.runState = runState;
+    }
+  }
+}
@@ -0,0 +1,350 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import okio.ByteString;
+
+/**
+ * A compact binary encoding of {@link Event}s for the event table.
+ *
+ * <p>An encoded event is a {@link #MAGIC} byte, a {@link #VERSION} byte, a type tag byte and the
+ * fields of the event. Strings are written as a varint length followed by UTF-8 bytes, numbers as
+ * zigzag varints. The {@link WorkflowInstance} of the event is not written since it is already part
+ * of the row key, and has to be passed to {@link #decode(WorkflowInstance, byte[])} instead.
+ *
+ * <p>Values that do not start with {@link #MAGIC} are legacy {@link EventSerializer} JSON and are
+ * decoded as such. The magic byte is a UTF-8 continuation byte, so it can never start JSON text.
+ */
+public final class EventCodec {
+
+  public static final byte MAGIC = (byte) 0x9e;
+  public static final byte VERSION = 1;
+
+  // type tags are persisted, never change or reuse them
+  private static final byte TRIGGER_EXECUTION = 1;
+  private static final byte SUBMIT = 2;
+  private static final byte SUBMITTED = 3;
+  private static final byte STARTED = 4;
+  private static final byte TERMINATE = 5;
+  private static final byte RUN_ERROR = 6;
+  private static final byte SUCCESS = 7;
+  private static final byte RETRY_AFTER = 8;
+  private static final byte RETRY = 9;
+  private static final byte STOP = 10;
+  private static final byte TIMEOUT = 11;
+  private static final byte HALT = 12;
+  private static final byte TIME_TRIGGER = 13;
+  private static final byte CREATED = 14;
+
+  private static final int INITIAL_BUFFER_SIZE = 64;
+
+  private final EventSerializer legacySerializer = new EventSerializer();
+
+  public byte[] encode(Event event) {
+    final Writer writer = new Writer();
+    writer.writeByte(MAGIC);
+    writer.writeByte(VERSION);
+    event.accept(writer);
+    return writer.toByteArray();
+  }
+
+  public Event decode(WorkflowInstance workflowInstance, byte[] bytes) {
+    if (bytes.length == 0 || bytes[0] != MAGIC) {
+      return legacySerializer.convert(ByteString.of(bytes));
+    }
+
+    final Reader reader = new Reader(bytes, 1);
+    final byte version = reader.readByte();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported event encoding version " + version);
+    }
+
+    final Event event = readEvent(workflowInstance, reader);
+    if (reader.remaining() != 0) {
+      throw new IllegalArgumentException(reader.remaining() + " trailing bytes after event");
+    }
+    return event;
+  }
+
+  private static Event readEvent(WorkflowInstance workflowInstance, Reader reader) {
+    final byte type = reader.readByte();
+    switch (type) {
+      case TRIGGER_EXECUTION:
+        return Event.triggerExecution(workflowInstance, reader.readString());
+      case SUBMIT:
+        return Event.submit(workflowInstance, reader.readExecutionDescription());
+      case SUBMITTED:
+        return Event.submitted(workflowInstance, reader.readString());
+      case STARTED:
+        return Event.started(workflowInstance);
+      case TERMINATE:
+        return Event.terminate(workflowInstance, (int) reader.readSignedVarint());
+      case RUN_ERROR:
+        return Event.runError(workflowInstance, reader.readString());
+      case SUCCESS:
+        return Event.success(workflowInstance);
+      case RETRY_AFTER:
+        return Event.retryAfter(workflowInstance, reader.readSignedVarint());
+      case RETRY:
+        return Event.retry(workflowInstance);
+      case STOP:
+        return Event.stop(workflowInstance);
+      case TIMEOUT:
+        return Event.timeout(workflowInstance);
+      case HALT:
+        return Event.halt(workflowInstance);
+      case TIME_TRIGGER:
+        return Event.timeTrigger(workflowInstance);
+      case CREATED:
+        return Event.created(workflowInstance, reader.readString(), reader.readString());
+
+      default:
+        throw new IllegalArgumentException("Unknown event type tag " + type);
+    }
+  }
+
+  private static final class Writer implements EventVisitor<Void> {
+
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int position;
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buffer, position);
+    }
+
+    void writeByte(byte b) {
+      ensureCapacity(1);
+      buffer[position++] = b;
+    }
+
+    void writeVarint(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buffer[position++] = (byte) value;
+    }
+
+    void writeSignedVarint(long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeString(String value) {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarint(bytes.length);
+      ensureCapacity(bytes.length);
+      System.arraycopy(bytes, 0, buffer, position, bytes.length);
+      position += bytes.length;
+    }
+
+    void writeOptionalString(Optional<String> value) {
+      writeByte((byte) (value.isPresent() ? 1 : 0));
+      if (value.isPresent()) {
+        writeString(value.get());
+      }
+    }
+
+    private void ensureCapacity(int bytes) {
+      if (position + bytes > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+      }
+    }
+
+    private Void tag(byte type) {
+      writeByte(type);
+      return null;
+    }
+
+    @Override
+    public Void triggerExecution(WorkflowInstance workflowInstance, String triggerId) {
+      tag(TRIGGER_EXECUTION);
+      writeString(triggerId);
+      return null;
+    }
+
+    @Override
+    public Void submit(WorkflowInstance workflowInstance, ExecutionDescription executionDescription) {
+      tag(SUBMIT);
+      writeString(executionDescription.dockerImage());
+      writeVarint(executionDescription.dockerArgs().size());
+      executionDescription.dockerArgs().forEach(this::writeString);
+      final Optional<DataEndpoint.Secret> secret = executionDescription.secret();
+      writeByte((byte) (secret.isPresent() ? 1 : 0));
+      if (secret.isPresent()) {
+        writeString(secret.get().name());
+        writeString(secret.get().mountPath());
+      }
+      writeOptionalString(executionDescription.commitSha());
+      return null;
+    }
+
+    @Override
+    public Void submitted(WorkflowInstance workflowInstance, String executionId) {
+      tag(SUBMITTED);
+      writeString(executionId);
+      return null;
+    }
+
+    @Override
+    public Void started(WorkflowInstance workflowInstance) {
+      return tag(STARTED);
+    }
+
+    @Override
+    public Void terminate(WorkflowInstance workflowInstance, int exitCode) {
+      tag(TERMINATE);
+      writeSignedVarint(exitCode);
+      return null;
+    }
+
+    @Override
+    public Void runError(WorkflowInstance workflowInstance, String message) {
+      tag(RUN_ERROR);
+      writeString(message);
+      return null;
+    }
+
+    @Override
+    public Void success(WorkflowInstance workflowInstance) {
+      return tag(SUCCESS);
+    }
+
+    @Override
+    public Void retryAfter(WorkflowInstance workflowInstance, long delayMillis) {
+      tag(RETRY_AFTER);
+      writeSignedVarint(delayMillis);
+      return null;
+    }
+
+    @Override
+    public Void retry(WorkflowInstance workflowInstance) {
+      return tag(RETRY);
+    }
+
+    @Override
+    public Void stop(WorkflowInstance workflowInstance) {
+      return tag(STOP);
+    }
+
+    @Override
+    public Void timeout(WorkflowInstance workflowInstance) {
+      return tag(TIMEOUT);
+    }
+
+    @Override
+    public Void halt(WorkflowInstance workflowInstance) {
+      return tag(HALT);
+    }
+
+    @Override
+    public Void timeTrigger(WorkflowInstance workflowInstance) {
+      return tag(TIME_TRIGGER);
+    }
+
+    @Override
+    public Void created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
+      tag(CREATED);
+      writeString(executionId);
+      writeString(dockerImage);
+      return null;
+    }
+  }
+
+  private static final class Reader {
+
+    private final byte[] bytes;
+    private int position;
+
+    Reader(byte[] bytes, int position) {
+      this.bytes = bytes;
+      this.position = position;
+    }
+
+    int remaining() {
+      return bytes.length - position;
+    }
+
+    byte readByte() {
+      require(1);
+      return bytes[position++];
+    }
+
+    long readVarint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        final byte b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint");
+    }
+
+    long readSignedVarint() {
+      final long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    String readString() {
+      final long length = readVarint();
+      if (length < 0 || length > remaining()) {
+        throw new IllegalArgumentException("Truncated event, string of " + length + " bytes");
+      }
+      final String value = new String(bytes, position, (int) length, StandardCharsets.UTF_8);
+      position += (int) length;
+      return value;
+    }
+
+    Optional<String> readOptionalString() {
+      return readByte() != 0 ? Optional.of(readString()) : Optional.empty();
+    }
+
+    ExecutionDescription readExecutionDescription() {
+      final String dockerImage = readString();
+      final long argCount = readVarint();
+      if (argCount < 0 || argCount > remaining()) {
+        throw new IllegalArgumentException("Truncated event, " + argCount + " docker args");
+      }
+      final List<String> dockerArgs = new ArrayList<>((int) argCount);
+      for (int i = 0; i < argCount; i++) {
+        dockerArgs.add(readString());
+      }
+      final Optional<DataEndpoint.Secret> secret = readByte() != 0
+          ? Optional.of(DataEndpoint.Secret.create(readString(), readString()))
+          : Optional.empty();
+      final Optional<String> commitSha = readOptionalString();
+      return ExecutionDescription.create(dockerImage, dockerArgs, secret, commitSha);
+    }
+
+    private void require(int count) {
+      if (remaining() < count) {
+        throw new IllegalArgumentException("Truncated event");
+      }
+    }
+  }
+}
@@ -60,7 +60,67 @@ public abstract class RunState {
   public static final double FAILURE_COST = 1.0;
   public static final double MISSING_DEPS_COST = 0.1;
 
-  private final EventVisitor<RunState> visitor = new TransitionVisitor();
+  private static final EventVisitor<Input> INPUT = new InputVisitor();
+
+  private static final EventVisitor<String> EXECUTION_ID = new FieldVisitor<String>() {
+    @Override
+    public String created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
+      return executionId;
+    }
+
+    @Override
+    public String submitted(WorkflowInstance workflowInstance, String executionId) {
+      return executionId;
+    }
+  };
+
+  private static final EventVisitor<String> DOCKER_IMAGE = new FieldVisitor<String>() {
+    @Override
+    public String created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
+      return dockerImage;
+    }
+  };
+
+  private static final EventVisitor<ExecutionDescription> EXECUTION_DESCRIPTION =
+      new FieldVisitor<ExecutionDescription>() {
+        @Override
+        public ExecutionDescription submit(
+            WorkflowInstance workflowInstance,
+            ExecutionDescription executionDescription) {
+          return executionDescription;
+        }
+      };
+
+  private static final EventVisitor<Integer> EXIT_CODE = new FieldVisitor<Integer>() {
+    @Override
+    public Integer terminate(WorkflowInstance workflowInstance, int exitCode) {
+      return exitCode;
+    }
+  };
+
+  /**
+   * The state an {@link Input} leads to, indexed by input and current state ordinal. A missing
+   * entry means that the input is not accepted in that state.
+   */
+  private static final State[][] TRANSITIONS = new State[Input.values().length][State.values().length];
+
+  static {
+    accept(Input.TIME_TRIGGER, SUBMITTED, State.NEW); // for backwards compatibility
+    accept(Input.TRIGGER_EXECUTION, PREPARE, State.NEW);
+    accept(Input.CREATED, SUBMITTED, PREPARE);
+    accept(Input.SUBMIT, SUBMITTING, PREPARE);
+    accept(Input.SUBMITTED, SUBMITTED, SUBMITTING);
+    accept(Input.STARTED, RUNNING, SUBMITTED, PREPARE);
+    accept(Input.TERMINATE, TERMINATED, RUNNING);
+    accept(Input.RUN_ERROR, FAILED, SUBMITTING, SUBMITTED, RUNNING, PREPARE);
+    accept(Input.SUCCESS, DONE, TERMINATED);
+    accept(Input.RETRY_AFTER, AWAITING_RETRY, TERMINATED, FAILED);
+    // TERMINATED and FAILED for backwards compatibility
+    accept(Input.RETRY, PREPARE, TERMINATED, FAILED, AWAITING_RETRY);
+    accept(Input.STOP, ERROR, TERMINATED, FAILED);
+    accept(Input.TIMEOUT, FAILED, State.values());
+    accept(Input.HALT, ERROR, State.values());
+  }
 
   public enum State {
     NEW(false),
@@ -117,7 +177,60 @@ public abstract class RunState {
   }
 
   public RunState transition(Event event) {
-    return event.accept(visitor);
+    final Input input = event.accept(INPUT);
+    final State next = TRANSITIONS[input.ordinal()][state().ordinal()];
+    if (next == null) {
+      throw illegalTransition(input.eventName);
+    }
+
+    switch (input) {
+      case CREATED:
+        return state(
+            next, field(event, input, EXECUTION_ID),
+            ExecutionDescription.forImage(field(event, input, DOCKER_IMAGE)));
+
+      case SUBMIT:
+        return state(next, field(event, input, EXECUTION_DESCRIPTION));
+
+      case SUBMITTED:
+        return state(next, field(event, input, EXECUTION_ID));
+
+      case TERMINATE:
+        final int exitCode = field(event, input, EXIT_CODE);
+        final double cost = (exitCode == MISSING_DEPS_EXIT_CODE) ? MISSING_DEPS_COST : FAILURE_COST;
+        return state(next, tries() + 1, retryCost() + cost, exitCode);
+
+      case RUN_ERROR:
+        return state(next, tries() + 1, retryCost() + FAILURE_COST, INITIAL_EXIT);
+
+      case RETRY_AFTER:
+        final RetryDelayVisitor retryDelay = new RetryDelayVisitor();
+        field(event, input, retryDelay);
+        return state(next, retryDelay.delayMillis);
+
+      case TIMEOUT:
+        return state(next, tries() + 1);
+
+      default:
+        return state(next);
+    }
+  }
+
+  /**
+   * Read a field of an event, treating an event that does not carry it as an illegal transition.
+   */
+  private <R> R field(Event event, Input input, EventVisitor<R> visitor) {
+    final R value = event.accept(visitor);
+    if (value == null) {
+      throw illegalTransition(input.eventName);
+    }
+    return value;
+  }
+
+  private static void accept(Input input, State next, State... from) {
+    for (State state : from) {
+      TRANSITIONS[input.ordinal()][state.ordinal()] = next;
+    }
   }
 
   public RunState withHandlers(OutputHandler[] outputHandlers) {
@@ -134,198 +247,232 @@ public abstract class RunState {
 
   private RunState state(State state) {
     return new AutoValue_RunState(
-        workflowInstance(), state, time().get().toEpochMilli(), tries(), retryCost(),
+        workflowInstance(), state, time().millis(), tries(), retryCost(),
         retryDelayMillis(), lastExit(), executionId(), executionDescription(), time(), outputHandler());
   }
 
   private RunState state(State state, ExecutionDescription executionDescription) {
     return new AutoValue_RunState(
-        workflowInstance(), state, time().get().toEpochMilli(), tries(), retryCost(),
+        workflowInstance(), state, time().millis(), tries(), retryCost(),
         retryDelayMillis(), lastExit(), executionId(), of(executionDescription), time(), outputHandler());
   }
 
   private RunState state(State state, String executionId) {
     return new AutoValue_RunState(
-        workflowInstance(), state, time().get().toEpochMilli(), tries(), retryCost(),
+        workflowInstance(), state, time().millis(), tries(), retryCost(),
         retryDelayMillis(), lastExit(), of(executionId), executionDescription(), time(), outputHandler());
   }
 
   private RunState state(State state, String executionId, ExecutionDescription executionDescription) {
     return new AutoValue_RunState(
-        workflowInstance(), state, time().get().toEpochMilli(), tries(), retryCost(),
+        workflowInstance(), state, time().millis(), tries(), retryCost(),
         retryDelayMillis(), lastExit(), of(executionId), of(executionDescription), time(), outputHandler());
   }
 
   private RunState state(State state, long retryDelayMillis) {
     return new AutoValue_RunState(
-        workflowInstance(), state, time().get().toEpochMilli(), tries(), retryCost(),
+        workflowInstance(), state, time().millis(), tries(), retryCost(),
         retryDelayMillis, lastExit(), executionId(), executionDescription(), time(), outputHandler());
   }
 
   private RunState state(State state, int tries) {
     return new AutoValue_RunState(
-        workflowInstance(), state, time().get().toEpochMilli(), tries, retryCost(),
+        workflowInstance(), state, time().millis(), tries, retryCost(),
         retryDelayMillis(), lastExit(), executionId(), executionDescription(), time(), outputHandler());
   }
 
   private RunState state(State state, int tries, double retryCost, int lastExit) {
     return new AutoValue_RunState(
-        workflowInstance(), state, time().get().toEpochMilli(), tries, retryCost,
+        workflowInstance(), state, time().millis(), tries, retryCost,
         retryDelayMillis(), lastExit, executionId(), executionDescription(), time(), outputHandler());
   }
 
-  private class TransitionVisitor implements EventVisitor<RunState> {
+  /**
+   * The inputs of the state machine, one for each type of {@link Event}.
+   */
+  private enum Input {
+    TIME_TRIGGER("timeTrigger"),
+    TRIGGER_EXECUTION("triggerExecution"),
+    CREATED("created"),
+    SUBMIT("submit"),
+    SUBMITTED("submitted"),
+    STARTED("started"),
+    TERMINATE("terminate"),
+    RUN_ERROR("runError"),
+    SUCCESS("success"),
+    RETRY_AFTER("retryAfter"),
+    RETRY("retry"),
+    STOP("stop"),
+    TIMEOUT("timeout"),
+    HALT("halt");
+
+    private final String eventName;
+
+    Input(String eventName) {
+      this.eventName = eventName;
+    }
+  }
+
+  private static class InputVisitor implements EventVisitor<Input> {
 
     @Override
-    public RunState timeTrigger(WorkflowInstance workflowInstance) {
-      switch (state()) {
-        case NEW:
-          return state(SUBMITTED); // for backwards compatibility
+    public Input timeTrigger(WorkflowInstance workflowInstance) {
+      return Input.TIME_TRIGGER;
+    }
 
-        default:
-          throw illegalTransition("timeTrigger");
-      }
+    @Override
+    public Input triggerExecution(WorkflowInstance workflowInstance, String triggerId) {
+      return Input.TRIGGER_EXECUTION;
     }
 
     @Override
-    public RunState triggerExecution(WorkflowInstance workflowInstance, String triggerId) {
-      switch (state()) {
-        case NEW:
-          return state(PREPARE);
+    public Input created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
+      return Input.CREATED;
+    }
 
-        default:
-          throw illegalTransition("triggerExecution");
-      }
+    @Override
+    public Input submit(WorkflowInstance workflowInstance, ExecutionDescription executionDescription) {
+      return Input.SUBMIT;
     }
 
     @Override
-    public RunState created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
-      switch (state()) {
-        case PREPARE:
-          return state(SUBMITTED, executionId, ExecutionDescription.forImage(dockerImage));
+    public Input submitted(WorkflowInstance workflowInstance, String executionId) {
+      return Input.SUBMITTED;
+    }
 
-        default:
-          throw illegalTransition("created");
-      }
+    @Override
+    public Input started(WorkflowInstance workflowInstance) {
+      return Input.STARTED;
     }
 
     @Override
-    public RunState submit(WorkflowInstance workflowInstance, ExecutionDescription executionDescription) {
-      switch (state()) {
-        case PREPARE:
-          return state(SUBMITTING, executionDescription);
+    public Input terminate(WorkflowInstance workflowInstance, int exitCode) {
+      return Input.TERMINATE;
+    }
 
-        default:
-          throw illegalTransition("submit");
-      }
+    @Override
+    public Input runError(WorkflowInstance workflowInstance, String message) {
+      return Input.RUN_ERROR;
     }
 
     @Override
-    public RunState submitted(WorkflowInstance workflowInstance, String executionId) {
-      switch (state()) {
-        case SUBMITTING:
-          return state(SUBMITTED, executionId);
+    public Input success(WorkflowInstance workflowInstance) {
+      return Input.SUCCESS;
+    }
 
-        default:
-          throw illegalTransition("submitted");
-      }
+    @Override
+    public Input retryAfter(WorkflowInstance workflowInstance, long delayMillis) {
+      return Input.RETRY_AFTER;
+    }
+
+    @Override
+    public Input retry(WorkflowInstance workflowInstance) {
+      return Input.RETRY;
     }
 
     @Override
-    public RunState started(WorkflowInstance workflowInstance) {
-      switch (state()) {
-        case SUBMITTED:
-        case PREPARE:
-          return state(RUNNING);
+    public Input stop(WorkflowInstance workflowInstance) {
+      return Input.STOP;
+    }
+
+    @Override
+    public Input timeout(WorkflowInstance workflowInstance) {
+      return Input.TIMEOUT;
+    }
+
+    @Override
+    public Input halt(WorkflowInstance workflowInstance) {
+      return Input.HALT;
+    }
+  }
 
-        default:
-          throw illegalTransition("started");
-      }
+  /**
+   * Reads one field of the events that carry it, and null from any other event.
+   */
+  private abstract static class FieldVisitor<R> implements EventVisitor<R> {
+
+    @Override
+    public R timeTrigger(WorkflowInstance workflowInstance) {
+      return null;
     }
 
     @Override
-    public RunState terminate(WorkflowInstance workflowInstance, int exitCode) {
-      switch (state()) {
-        case RUNNING:
-          return (exitCode == MISSING_DEPS_EXIT_CODE)
-                 ? state(TERMINATED, tries() + 1, retryCost() + MISSING_DEPS_COST, exitCode)
-                 : state(TERMINATED, tries() + 1, retryCost() + FAILURE_COST, exitCode);
+    public R triggerExecution(WorkflowInstance workflowInstance, String triggerId) {
+      return null;
+    }
 
-        default:
-          throw illegalTransition("terminate");
-      }
+    @Override
+    public R created(WorkflowInstance workflowInstance, String executionId, String dockerImage) {
+      return null;
     }
 
     @Override
-    public RunState runError(WorkflowInstance workflowInstance, String message) {
-      switch (state()) {
-        case SUBMITTING:
-        case SUBMITTED:
-        case RUNNING:
-        case PREPARE:
-          return state(FAILED, tries() + 1, retryCost() + FAILURE_COST, INITIAL_EXIT);
+    public R submit(WorkflowInstance workflowInstance, ExecutionDescription executionDescription) {
+      return null;
+    }
 
-        default:
-          throw illegalTransition("runError");
-      }
+    @Override
+    public R submitted(WorkflowInstance workflowInstance, String executionId) {
+      return null;
     }
 
     @Override
-    public RunState success(WorkflowInstance workflowInstance) {
-      switch (state()) {
-        case TERMINATED:
-          return state(DONE);
+    public R started(WorkflowInstance workflowInstance) {
+      return null;
+    }
 
-        default:
-          throw illegalTransition("success");
-      }
+    @Override
+    public R terminate(WorkflowInstance workflowInstance, int exitCode) {
+      return null;
     }
 
     @Override
-    public RunState retryAfter(WorkflowInstance workflowInstance, long delayMillis) {
-      switch (state()) {
-        case TERMINATED:
-        case FAILED:
-          return state(AWAITING_RETRY, delayMillis);
+    public R runError(WorkflowInstance workflowInstance, String message) {
+      return null;
+    }
 
-        default:
-          throw illegalTransition("retryAfter");
-      }
+    @Override
+    public R success(WorkflowInstance workflowInstance) {
+      return null;
     }
 
     @Override
-    public RunState retry(WorkflowInstance workflowInstance) {
-      switch (state()) {
-        case TERMINATED: // for backwards compatibility
-        case FAILED:     // for backwards compatibility
-        case AWAITING_RETRY:
-          return state(PREPARE);
+    public R retryAfter(WorkflowInstance workflowInstance, long delayMillis) {
+      return null;
+    }
 
-        default:
-          throw illegalTransition("retry");
-      }
+    @Override
+    public R retry(WorkflowInstance workflowInstance) {
+      return null;
     }
 
     @Override
-    public RunState stop(WorkflowInstance workflowInstance) {
-      switch (state()) {
-        case TERMINATED:
-        case FAILED:
-          return state(ERROR);
+    public R stop(WorkflowInstance workflowInstance) {
+      return null;
+    }
 
-        default:
-          throw illegalTransition("stop");
-      }
+    @Override
+    public R timeout(WorkflowInstance workflowInstance) {
+      return null;
     }
 
     @Override
-    public RunState timeout(WorkflowInstance workflowInstance) {
-      return state(FAILED, tries() + 1);
+    public R halt(WorkflowInstance workflowInstance) {
+      return null;
     }
+  }
+
+  /**
+   * Reads the retry delay of a retryAfter event without boxing it.
+   */
+  private static final class RetryDelayVisitor extends FieldVisitor<Boolean> {
+
+    private long delayMillis;
 
     @Override
-    public RunState halt(WorkflowInstance workflowInstance) {
-      return state(ERROR);
+    public Boolean retryAfter(WorkflowInstance workflowInstance, long delayMillis) {
+      this.delayMillis = delayMillis;
+      return Boolean.TRUE;
     }
   }
 
@@ -0,0 +1,104 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.state;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.spotify.styx.model.ExecutionDescription;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.util.Time;
+import java.util.Optional;
+
+/**
+ * A serializable snapshot of a {@link RunState} after the event with sequence number
+ * {@link #counter()} has been applied.
+ *
+ * <p>Snapshots are persisted together with the active state of a {@link WorkflowInstance} so that
+ * restoring it only needs to replay the events after {@link #counter()}.
+ */
+@AutoValue
+@JsonIgnoreProperties(ignoreUnknown = true)
+public abstract class RunStateSnapshot {
+
+  @JsonProperty
+  public abstract long counter();
+
+  @JsonProperty
+  public abstract RunState.State state();
+
+  @JsonProperty
+  public abstract long timestamp();
+
+  @JsonProperty
+  public abstract int tries();
+
+  @JsonProperty
+  public abstract double retryCost();
+
+  @JsonProperty
+  public abstract long retryDelayMillis();
+
+  @JsonProperty
+  public abstract int lastExit();
+
+  @JsonProperty
+  public abstract Optional<String> executionId();
+
+  @JsonProperty
+  public abstract Optional<ExecutionDescription> executionDescription();
+
+  @JsonCreator
+  public static RunStateSnapshot create(
+      @JsonProperty("counter") long counter,
+      @JsonProperty("state") RunState.State state,
+      @JsonProperty("timestamp") long timestamp,
+      @JsonProperty("tries") int tries,
+      @JsonProperty("retry_cost") double retryCost,
+      @JsonProperty("retry_delay_millis") long retryDelayMillis,
+      @JsonProperty("last_exit") int lastExit,
+      @JsonProperty("execution_id") Optional<String> executionId,
+      @JsonProperty("execution_description") Optional<ExecutionDescription> executionDescription) {
+    return new AutoValue_RunStateSnapshot(
+        counter, state, timestamp, tries, retryCost, retryDelayMillis, lastExit, executionId,
+        executionDescription);
+  }
+
+  public static RunStateSnapshot of(RunState runState, long counter) {
+    return create(
+        counter, runState.state(), runState.timestamp(), runState.tries(), runState.retryCost(),
+        runState.retryDelayMillis(), runState.lastExit(), runState.executionId(),
+        runState.executionDescription());
+  }
+
+  /**
+   * Recreates the {@link RunState} of the snapshot for a workflow instance.
+   *
+   * @param workflowInstance  The workflow instance the snapshot was taken of
+   * @param time              The time source of the restored state
+   */
+  public RunState toRunState(WorkflowInstance workflowInstance, Time time) {
+    return new AutoValue_RunState(
+        workflowInstance, state(), timestamp(), tries(), retryCost(), retryDelayMillis(),
+        lastExit(), executionId(), executionDescription(), time, OutputHandler.NOOP);
+  }
+}
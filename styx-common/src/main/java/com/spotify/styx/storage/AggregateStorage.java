@@ -21,12 +21,16 @@
 package com.spotify.styx.storage;
 
 import com.google.cloud.datastore.Datastore;
+import com.google.common.collect.ImmutableList;
 import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.StyxConfig;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.model.WorkflowInstanceExecutionData;
 import com.spotify.styx.model.WorkflowState;
+import com.spotify.styx.state.RunStateSnapshot;
+import com.spotify.styx.util.RetryPolicy;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
@@ -65,21 +69,41 @@ public class AggregateStorage implements Storage, EventStorage {
     return datastoreStorage.activeStates(componentId);
   }
 
+  @Override
+  public Map<WorkflowInstance, RunStateSnapshot> readActiveStateSnapshots() throws IOException {
+    return datastoreStorage.activeStateSnapshots();
+  }
+
   @Override
   public void writeEvent(SequenceEvent sequenceEvent) throws IOException {
     bigtableStorage.writeEvent(sequenceEvent);
   }
 
+  @Override
+  public void writeEvents(List<SequenceEvent> sequenceEvents) throws IOException {
+    bigtableStorage.writeEvents(sequenceEvents);
+  }
+
   @Override
   public void writeActiveState(WorkflowInstance workflowInstance, long counter) throws IOException {
     datastoreStorage.writeActiveState(workflowInstance, counter);
   }
 
+  @Override
+  public void writeActiveStates(Map<WorkflowInstance, RunStateSnapshot> snapshots) throws IOException {
+    datastoreStorage.writeActiveStates(snapshots);
+  }
+
   @Override
   public void deleteActiveState(WorkflowInstance workflowInstance) throws IOException {
     datastoreStorage.deleteActiveState(workflowInstance);
   }
 
+  @Override
+  public void deleteActiveStates(Set<WorkflowInstance> workflowInstances) throws IOException {
+    datastoreStorage.deleteActiveStates(workflowInstances);
+  }
+
   @Override
   public boolean globalEnabled() throws IOException {
     return datastoreStorage.globalEnabled();
@@ -95,12 +119,27 @@ public class AggregateStorage implements Storage, EventStorage {
     return datastoreStorage.globalDockerRunnerId();
   }
 
+  @Override
+  public StyxConfig config() throws IOException {
+    return datastoreStorage.config();
+  }
+
   @Override
   public List<WorkflowInstanceExecutionData> executionData(WorkflowId workflowId)
       throws IOException {
     return bigtableStorage.executionData(workflowId);
   }
 
+  @Override
+  public List<WorkflowInstanceExecutionData> executionData(
+      WorkflowId workflowId,
+      Optional<String> start,
+      Optional<String> end,
+      Optional<String> after,
+      int limit) throws IOException {
+    return bigtableStorage.executionData(workflowId, start, end, after, limit);
+  }
+
   @Override
   public boolean enabled(WorkflowId workflowId) throws IOException {
     return datastoreStorage.enabled(workflowId);
@@ -142,6 +181,11 @@ public class AggregateStorage implements Storage, EventStorage {
     datastoreStorage.updateNextNaturalTrigger(workflowId, nextNaturalTrigger);
   }
 
+  @Override
+  public void updateNextNaturalTriggers(Map<WorkflowId, Instant> nextNaturalTriggers) throws IOException {
+    datastoreStorage.updateNextNaturalTriggers(nextNaturalTriggers);
+  }
+
   @Override
   public Map<Workflow, Optional<Instant>> workflowsWithNextNaturalTrigger()
       throws IOException {
@@ -167,4 +211,9 @@ public class AggregateStorage implements Storage, EventStorage {
   public WorkflowState workflowState(WorkflowId workflowId) throws IOException {
     return datastoreStorage.workflowState(workflowId);
   }
+
+  @Override
+  public List<RetryPolicy> retryPolicies() {
+    return ImmutableList.of(bigtableStorage.retryPolicy(), datastoreStorage.retryPolicy());
+  }
 }
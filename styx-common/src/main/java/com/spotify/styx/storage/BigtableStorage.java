@@ -21,44 +21,41 @@
 package com.spotify.styx.storage;
 
 import com.google.cloud.datastore.DatastoreException;
-import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.spotify.styx.model.Event;
-import com.spotify.styx.model.EventSerializer;
+import com.spotify.styx.model.EventCodec;
 import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.model.WorkflowInstanceExecutionData;
 import com.spotify.styx.util.ResourceNotFoundException;
+import com.spotify.styx.util.RetryPolicy;
 import com.spotify.styx.util.RunnableWithException;
 import java.io.IOException;
 import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
-import okio.ByteString;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.util.Bytes;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * A backend for {@link AggregateStorage} backed by Google Bigtable
  */
 public class BigtableStorage {
 
-  private static final Logger LOG = LoggerFactory.getLogger(BigtableStorage.class);
-
   public static final TableName EVENTS_TABLE_NAME = TableName.valueOf("styx_events");
 
   public static final byte[] EVENT_CF = Bytes.toBytes("event");
@@ -67,13 +64,24 @@ public class BigtableStorage {
   public static final int MAX_BIGTABLE_RETRIES = 100;
 
   private final Connection connection;
-  private final Duration retryBaseDelay;
+  private final RetryPolicy retryPolicy;
 
-  private final EventSerializer eventSerializer = new EventSerializer();
+  private final EventCodec eventCodec = new EventCodec();
 
   BigtableStorage(Connection connection, Duration retryBaseDelay) {
+    this(connection, RetryPolicy.builder("bigtable")
+        .maxAttempts(MAX_BIGTABLE_RETRIES)
+        .baseDelay(retryBaseDelay)
+        .build());
+  }
+
+  BigtableStorage(Connection connection, RetryPolicy retryPolicy) {
     this.connection = Objects.requireNonNull(connection);
-    this.retryBaseDelay = Objects.requireNonNull(retryBaseDelay);
+    this.retryPolicy = Objects.requireNonNull(retryPolicy);
+  }
+
+  RetryPolicy retryPolicy() {
+    return retryPolicy;
   }
 
   SortedSet<SequenceEvent> readEvents(WorkflowInstance workflowInstance) throws IOException {
@@ -93,54 +101,111 @@ public class BigtableStorage {
   void writeEvent(SequenceEvent sequenceEvent) throws IOException {
     storeWithRetries(() -> {
       final Table eventsTable = connection.getTable(EVENTS_TABLE_NAME);
+      eventsTable.put(eventPut(sequenceEvent));
+    });
+  }
 
-      final String workflowInstanceKey = sequenceEvent.event().workflowInstance().toKey();
-      final String
-          keyString =
-          String.format("%s#%08d", workflowInstanceKey, sequenceEvent.counter());
-      final byte[] key = Bytes.toBytes(keyString);
-      final Put put = new Put(key, sequenceEvent.timestamp());
+  void writeEvents(List<SequenceEvent> sequenceEvents) throws IOException {
+    if (sequenceEvents.isEmpty()) {
+      return;
+    }
 
-      final byte[] eventBytes = eventSerializer.convert(sequenceEvent.event()).toByteArray();
-      put.addColumn(EVENT_CF, EVENT_QUALIFIER, eventBytes);
-      eventsTable.put(put);
+    final List<Put> puts = Lists.newArrayListWithCapacity(sequenceEvents.size());
+    for (SequenceEvent sequenceEvent : sequenceEvents) {
+      puts.add(eventPut(sequenceEvent));
+    }
+
+    storeWithRetries(() -> {
+      final Table eventsTable = connection.getTable(EVENTS_TABLE_NAME);
+      eventsTable.put(puts);
     });
   }
 
   List<WorkflowInstanceExecutionData> executionData(WorkflowId workflowId)
       throws IOException {
+    return executionData(
+        workflowId, Optional.empty(), Optional.empty(), Optional.empty(), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reads the events of the instances of a workflow in a single scan. The rows of an instance are
+   * consecutive in the table, so each instance is complete once a row of the next one is read.
+   */
+  List<WorkflowInstanceExecutionData> executionData(
+      WorkflowId workflowId,
+      Optional<String> start,
+      Optional<String> end,
+      Optional<String> after,
+      int limit) throws IOException {
     final Table eventsTable = connection.getTable(EVENTS_TABLE_NAME);
+    final String prefix = workflowId.toKey() + '#';
 
     final Scan scan = new Scan()
-        .setRowPrefixFilter(Bytes.toBytes(workflowId.toKey() + '#'))
-        .setFilter(new FirstKeyOnlyFilter());
-
-    final Set<WorkflowInstance> workflowInstancesSet = Sets.newHashSet();
-    for (Result result : eventsTable.getScanner(scan)) {
-      final String key = new String(result.getRow());
-      final int lastHash = key.lastIndexOf('#');
-      final WorkflowInstance wfi = WorkflowInstance.parseKey(key.substring(0, lastHash));
-      workflowInstancesSet.add(wfi);
+        .setRowPrefixFilter(Bytes.toBytes(prefix));
+    byte[] startRow = scan.getStartRow();
+    if (start.isPresent()) {
+      startRow = max(startRow, Bytes.toBytes(prefix + start.get()));
     }
+    if (after.isPresent()) {
+      // '$' sorts right after '#', so this skips every row of the instance with that parameter
+      startRow = max(startRow, Bytes.toBytes(prefix + after.get() + '$'));
+    }
+    if (end.isPresent()) {
+      scan.setStopRow(Bytes.toBytes(prefix + end.get()));
+    }
+    if (Bytes.compareTo(startRow, scan.getStopRow()) >= 0) {
+      return Lists.newArrayList();
+    }
+    scan.setStartRow(startRow);
 
     final List<WorkflowInstanceExecutionData> workflowInstanceDataList = Lists.newArrayList();
-    for (WorkflowInstance workflowInstance : workflowInstancesSet) {
-      workflowInstanceDataList.add(executionData(workflowInstance));
+    final List<SequenceEvent> instanceEvents = Lists.newArrayList();
+    String instanceKey = null;
+
+    try (ResultScanner scanner = eventsTable.getScanner(scan)) {
+      for (Result result : scanner) {
+        final String key = new String(result.getRow());
+        final String rowInstanceKey = key.substring(0, key.lastIndexOf('#'));
+        if (!rowInstanceKey.equals(instanceKey)) {
+          if (!instanceEvents.isEmpty()) {
+            workflowInstanceDataList.add(WorkflowInstanceExecutionData.fromEvents(instanceEvents));
+            instanceEvents.clear();
+          }
+          if (workflowInstanceDataList.size() >= limit) {
+            break;
+          }
+          instanceKey = rowInstanceKey;
+        }
+        instanceEvents.add(parseEventResult(result));
+      }
+    }
+
+    if (!instanceEvents.isEmpty() && workflowInstanceDataList.size() < limit) {
+      workflowInstanceDataList.add(WorkflowInstanceExecutionData.fromEvents(instanceEvents));
     }
-    workflowInstanceDataList.sort(WorkflowInstanceExecutionData.COMPARATOR);
 
     return workflowInstanceDataList;
   }
 
   Optional<Long> getLatestStoredCounter(WorkflowInstance workflowInstance)
       throws IOException {
-    final Set<SequenceEvent> storedEvents = readEvents(workflowInstance);
-    final Optional<SequenceEvent> lastStoredEvent = storedEvents.stream().reduce((a, b) -> b);
-    if (lastStoredEvent.isPresent()) {
-      return Optional.of(lastStoredEvent.get().counter());
-    } else {
-      return Optional.empty();
+    final Table eventsTable = connection.getTable(EVENTS_TABLE_NAME);
+
+    // bigtable can't scan in reverse, so read only the row keys and parse the counters from them
+    final Scan scan = new Scan()
+        .setRowPrefixFilter(Bytes.toBytes(workflowInstance.toKey() + '#'))
+        .setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter()));
+
+    long latestCounter = -1;
+    try (ResultScanner scanner = eventsTable.getScanner(scan)) {
+      for (Result result : scanner) {
+        final String key = new String(result.getRow());
+        final long counter = Long.parseLong(key.substring(key.lastIndexOf('#') + 1));
+        latestCounter = Math.max(latestCounter, counter);
+      }
     }
+
+    return latestCounter < 0 ? Optional.empty() : Optional.of(latestCounter);
   }
 
   WorkflowInstanceExecutionData executionData(WorkflowInstance workflowInstance) throws IOException {
@@ -152,37 +217,43 @@ public class BigtableStorage {
     return WorkflowInstanceExecutionData.fromEvents(events);
   }
 
+  private Put eventPut(SequenceEvent sequenceEvent) {
+    final String workflowInstanceKey = sequenceEvent.event().workflowInstance().toKey();
+    final String
+        keyString =
+        String.format("%s#%08d", workflowInstanceKey, sequenceEvent.counter());
+    final byte[] key = Bytes.toBytes(keyString);
+    final Put put = new Put(key, sequenceEvent.timestamp());
+
+    final byte[] eventBytes = eventCodec.encode(sequenceEvent.event());
+    put.addColumn(EVENT_CF, EVENT_QUALIFIER, eventBytes);
+    return put;
+  }
+
   private SequenceEvent parseEventResult(Result r) throws IOException {
     final String key = new String(r.getRow());
     final long timestamp = r.getColumnLatestCell(EVENT_CF, EVENT_QUALIFIER).getTimestamp();
     final byte[] value = r.getValue(EVENT_CF, EVENT_QUALIFIER);
-    final Event event = eventSerializer.convert(ByteString.of(value));
+    final WorkflowInstance workflowInstance =
+        WorkflowInstance.parseKey(key.substring(0, key.lastIndexOf('#')));
+    final Event event = eventCodec.decode(workflowInstance, value);
     return SequenceEvent.parseKey(key, event, timestamp);
   }
 
   private void storeWithRetries(RunnableWithException<IOException> storingOperation) throws IOException {
-    int storeRetries = 0;
-    boolean succeeded = false;
-
-    while (storeRetries < MAX_BIGTABLE_RETRIES && !succeeded) {
-      try {
-        storingOperation.run();
-        succeeded = true;
-      } catch (ResourceNotFoundException e) {
-        throw e;
-      } catch (DatastoreException | IOException e) {
-        storeRetries++;
-        if (storeRetries == MAX_BIGTABLE_RETRIES) {
-          throw e;
-        }
-        LOG.warn(String.format("Failed to read/write from/to Bigtable (attempt #%d)", storeRetries), e);
-        try {
-          Thread.sleep(retryBaseDelay.toMillis());
-        } catch (InterruptedException e1) {
-          throw Throwables.propagate(e1);
-        }
-      }
-    }
+    retryPolicy.call(() -> {
+      storingOperation.run();
+      return null;
+    }, BigtableStorage::isRetryable);
+  }
+
+  private static boolean isRetryable(Throwable e) {
+    return (e instanceof DatastoreException || e instanceof IOException)
+           && !(e instanceof ResourceNotFoundException);
+  }
+
+  private static byte[] max(byte[] a, byte[] b) {
+    return Bytes.compareTo(a, b) >= 0 ? a : b;
   }
 
   private static TreeSet<SequenceEvent> newSortedEventSet() {
@@ -20,6 +20,9 @@
 
 package com.spotify.styx.storage;
 
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.DatastoreException;
 import com.google.cloud.datastore.DatastoreReader;
@@ -31,23 +34,30 @@ import com.google.cloud.datastore.KeyFactory;
 import com.google.cloud.datastore.PathElement;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
+import com.google.cloud.datastore.StringValue;
 import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.spotify.styx.model.StyxConfig;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.model.WorkflowState;
+import com.spotify.styx.state.RunStateSnapshot;
 import com.spotify.styx.util.FnWithException;
 import com.spotify.styx.util.Json;
 import com.spotify.styx.util.ResourceNotFoundException;
+import com.spotify.styx.util.RetryPolicy;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
@@ -78,6 +88,7 @@ class DatastoreStorage {
   public static final String PROPERTY_WORKFLOW = "workflow";
   public static final String PROPERTY_PARAMETER = "parameter";
   public static final String PROPERTY_COMMIT_SHA = "commitSha";
+  public static final String PROPERTY_SNAPSHOT = "snapshot";
 
   public static final String KEY_GLOBAL_CONFIG = "styxGlobal";
 
@@ -86,17 +97,26 @@ class DatastoreStorage {
   public static final boolean DEFAULT_WORKFLOW_ENABLED = false;
 
   public static final int MAX_RETRIES = 100;
+  public static final int MAX_BATCH_MUTATIONS = 500;
+  public static final int MAX_TRANSACTION_ENTITY_GROUPS = 25;
 
   private final Datastore datastore;
-  private final Duration retryBaseDelay;
+  private final RetryPolicy retryPolicy;
   private final KeyFactory componentKeyFactory;
 
   @VisibleForTesting
   final Key globalConfigKey;
 
   DatastoreStorage(Datastore datastore, Duration retryBaseDelay) {
+    this(datastore, RetryPolicy.builder("datastore")
+        .maxAttempts(MAX_RETRIES)
+        .baseDelay(retryBaseDelay)
+        .build());
+  }
+
+  DatastoreStorage(Datastore datastore, RetryPolicy retryPolicy) {
     this.datastore = Objects.requireNonNull(datastore);
-    this.retryBaseDelay = Objects.requireNonNull(retryBaseDelay);
+    this.retryPolicy = Objects.requireNonNull(retryPolicy);
 
     this.componentKeyFactory = datastore.newKeyFactory().kind(KIND_COMPONENT);
     this.globalConfigKey = datastore.newKeyFactory().kind(KIND_STYX_CONFIG).newKey(KEY_GLOBAL_CONFIG);
@@ -124,6 +144,19 @@ class DatastoreStorage {
     return readConfigString(PROPERTY_CONFIG_DOCKER_RUNNER_ID, DEFAULT_CONFIG_DOCKER_RUNNER_ID);
   }
 
+  StyxConfig config() throws IOException {
+    final Optional<Entity> config = getOpt(datastore, globalConfigKey);
+    final boolean enabled = config
+        .filter(c -> c.contains(PROPERTY_CONFIG_ENABLED))
+        .map(c -> c.getBoolean(PROPERTY_CONFIG_ENABLED))
+        .orElse(DEFAULT_CONFIG_ENABLED);
+    final String dockerRunnerId = config
+        .filter(c -> c.contains(PROPERTY_CONFIG_DOCKER_RUNNER_ID))
+        .map(c -> c.getString(PROPERTY_CONFIG_DOCKER_RUNNER_ID))
+        .orElse(DEFAULT_CONFIG_DOCKER_RUNNER_ID);
+    return StyxConfig.create(enabled, dockerRunnerId);
+  }
+
   boolean setGlobalEnabled(boolean globalEnabled) throws IOException {
     return storeWithRetries(() -> datastore.runInTransaction(transaction -> {
       final Optional<Entity> configOpt = getOpt(transaction, globalConfigKey);
@@ -191,7 +224,11 @@ class DatastoreStorage {
 
   Optional<Workflow> workflow(WorkflowId workflowId) throws IOException {
     final Key workflowKey = workflowKey(workflowId);
-    return getOpt(datastore, workflowKey)
+    return parseWorkflow(workflowId, getOpt(datastore, workflowKey));
+  }
+
+  private Optional<Workflow> parseWorkflow(WorkflowId workflowId, Optional<Entity> workflowEntity) {
+    return workflowEntity
         .filter(e -> e.contains(PROPERTY_WORKFLOW_JSON))
         .map(e -> {
           try {
@@ -227,6 +264,38 @@ class DatastoreStorage {
     }));
   }
 
+  /**
+   * Update the next natural trigger of many workflows. Workflows that share a component are in the
+   * same entity group, so the updates are grouped by component into transactions that each touch
+   * at most {@link #MAX_TRANSACTION_ENTITY_GROUPS} entity groups and {@link #MAX_BATCH_MUTATIONS}
+   * entities.
+   */
+  void updateNextNaturalTriggers(Map<WorkflowId, Instant> nextNaturalTriggers) throws IOException {
+    for (List<WorkflowId> batch : transactionBatches(nextNaturalTriggers.keySet())) {
+      storeWithRetries(() -> datastore.runInTransaction(transaction -> {
+        final Key[] keys = batch.stream().map(this::workflowKey).toArray(Key[]::new);
+        final List<Entity> workflows = transaction.fetch(keys);
+
+        final List<Entity> updated = Lists.newArrayListWithCapacity(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+          final Entity workflow = workflows.get(i);
+          if (workflow == null) {
+            LOG.debug("Not updating next natural trigger of missing workflow {}", keys[i]);
+            continue;
+          }
+          updated.add(Entity.builder(workflow)
+              .set(PROPERTY_NEXT_EXECUTION, instantToDatetime(nextNaturalTriggers.get(batch.get(i))))
+              .build());
+        }
+
+        if (!updated.isEmpty()) {
+          transaction.put(updated.toArray(new Entity[updated.size()]));
+        }
+        return null;
+      }));
+    }
+  }
+
   public Map<Workflow, Optional<Instant>> workflowsWithNextNaturalTrigger()
       throws IOException {
     Map<Workflow, Optional<Instant>> map = Maps.newHashMap();
@@ -268,6 +337,30 @@ class DatastoreStorage {
     return queryActiveStates(query);
   }
 
+  Map<WorkflowInstance, RunStateSnapshot> activeStateSnapshots() throws IOException {
+    final EntityQuery query =
+        Query.entityQueryBuilder().kind(KIND_ACTIVE_WORKFLOW_INSTANCE).build();
+
+    final ImmutableMap.Builder<WorkflowInstance, RunStateSnapshot> mapBuilder = ImmutableMap.builder();
+    final QueryResults<Entity> results = datastore.run(query);
+    while (results.hasNext()) {
+      final Entity entity = results.next();
+      if (!entity.contains(PROPERTY_SNAPSHOT)) {
+        continue;
+      }
+
+      final WorkflowInstance instance = parseWorkflowInstance(entity);
+      try {
+        mapBuilder.put(instance, Json.OBJECT_MAPPER.readValue(
+            entity.getString(PROPERTY_SNAPSHOT), RunStateSnapshot.class));
+      } catch (IOException e) {
+        LOG.warn("Failed to read state snapshot of {}, it will be replayed", instance.toKey(), e);
+      }
+    }
+
+    return mapBuilder.build();
+  }
+
   private Map<WorkflowInstance, Long> queryActiveStates(EntityQuery activeStatesQuery) throws IOException {
     final ImmutableMap.Builder<WorkflowInstance, Long> mapBuilder = ImmutableMap.builder();
     final QueryResults<Entity> results = datastore.run(activeStatesQuery);
@@ -283,17 +376,22 @@ class DatastoreStorage {
   }
 
   void writeActiveState(WorkflowInstance workflowInstance, long counter) throws IOException {
-    storeWithRetries(() -> {
-      final Key key = activeWorkflowInstanceKey(workflowInstance);
-      final Entity entity = Entity.builder(key)
-          .set(PROPERTY_COMPONENT, workflowInstance.workflowId().componentId())
-          .set(PROPERTY_WORKFLOW, workflowInstance.workflowId().endpointId())
-          .set(PROPERTY_PARAMETER, workflowInstance.parameter())
-          .set(PROPERTY_COUNTER, counter)
-          .build();
+    storeWithRetries(() -> datastore.put(activeWorkflowInstanceEntity(workflowInstance, counter)));
+  }
 
-      return datastore.put(entity);
-    });
+  void writeActiveStates(Map<WorkflowInstance, RunStateSnapshot> snapshots) throws IOException {
+    final List<Entity> entities = Lists.newArrayListWithCapacity(snapshots.size());
+    for (Map.Entry<WorkflowInstance, RunStateSnapshot> entry : snapshots.entrySet()) {
+      final RunStateSnapshot snapshot = entry.getValue();
+      final String json = Json.OBJECT_MAPPER.writeValueAsString(snapshot);
+      entities.add(Entity.builder(activeWorkflowInstanceEntity(entry.getKey(), snapshot.counter()))
+          .set(PROPERTY_SNAPSHOT, StringValue.builder(json).excludeFromIndexes(true).build())
+          .build());
+    }
+
+    for (List<Entity> batch : Lists.partition(entities, MAX_BATCH_MUTATIONS)) {
+      storeWithRetries(() -> datastore.put(batch.toArray(new Entity[batch.size()])));
+    }
   }
 
   void deleteActiveState(WorkflowInstance workflowInstance) throws IOException {
@@ -303,6 +401,19 @@ class DatastoreStorage {
     });
   }
 
+  void deleteActiveStates(Set<WorkflowInstance> workflowInstances) throws IOException {
+    final List<Key> keys = workflowInstances.stream()
+        .map(this::activeWorkflowInstanceKey)
+        .collect(toList());
+
+    for (List<Key> batch : Lists.partition(keys, MAX_BATCH_MUTATIONS)) {
+      storeWithRetries(() -> {
+        datastore.delete(batch.toArray(new Key[batch.size()]));
+        return null;
+      });
+    }
+  }
+
   void patchState(WorkflowId workflowId, WorkflowState state) throws IOException {
     storeWithRetries(() -> datastore.runInTransaction(transaction -> {
       final Key workflowKey = workflowKey(workflowId);
@@ -338,68 +449,110 @@ class DatastoreStorage {
   }
 
   Optional<String> getDockerImage(WorkflowId workflowId) throws IOException {
+    final List<Optional<Entity>> entities = workflowAndComponent(workflowId);
+    return dockerImage(workflowId, entities.get(0), entities.get(1));
+  }
+
+  public WorkflowState workflowState(WorkflowId workflowId) throws IOException {
+    final List<Optional<Entity>> entities = workflowAndComponent(workflowId);
+    final Optional<Entity> workflow = entities.get(0);
+    final Optional<Entity> component = entities.get(1);
+
+    final boolean enabled = workflow
+        .filter(w -> w.contains(PROPERTY_WORKFLOW_ENABLED))
+        .map(w -> w.getBoolean(PROPERTY_WORKFLOW_ENABLED))
+        .orElse(DEFAULT_WORKFLOW_ENABLED);
+
+    return
+        WorkflowState.create(
+            Optional.of(enabled),
+            dockerImage(workflowId, workflow, component),
+            commitSha(workflow, component));
+  }
+
+  /**
+   * Get the workflow and component entities of a workflow with a single batch get.
+   *
+   * @return a list with the optional workflow entity followed by the optional component entity
+   */
+  private List<Optional<Entity>> workflowAndComponent(WorkflowId workflowId) {
     final Key workflowKey = workflowKey(workflowId);
-    Optional<String> dockerImage = getOptStringProperty(datastore, workflowKey, PROPERTY_DOCKER_IMAGE);
+    final Key componentKey = componentKeyFactory.newKey(workflowId.componentId());
+    return datastore.fetch(workflowKey, componentKey).stream()
+        .map(Optional::ofNullable)
+        .collect(toList());
+  }
+
+  private Optional<String> dockerImage(WorkflowId workflowId, Optional<Entity> workflow,
+                                       Optional<Entity> component) {
+    Optional<String> dockerImage = stringProperty(workflow, PROPERTY_DOCKER_IMAGE);
     if (dockerImage.isPresent()) {
       return dockerImage;
     }
 
-    final Key componentKey = componentKeyFactory.newKey(workflowId.componentId());
-    dockerImage = getOptStringProperty(datastore, componentKey, PROPERTY_DOCKER_IMAGE);
+    dockerImage = stringProperty(component, PROPERTY_DOCKER_IMAGE);
     if (dockerImage.isPresent()) {
       return dockerImage;
     }
 
-    return workflow(workflowId).flatMap(wf -> wf.schedule().dockerImage());
+    return parseWorkflow(workflowId, workflow).flatMap(wf -> wf.schedule().dockerImage());
   }
 
-  public WorkflowState workflowState(WorkflowId workflowId) throws IOException {
-    return
-        WorkflowState.create(
-            Optional.of(enabled(workflowId)),
-            getDockerImage(workflowId),
-            getCommitSha(workflowId));
-  }
-
-  private Optional<String> getCommitSha(WorkflowId workflowId) {
-    final Key workflowKey = workflowKey(workflowId);
-    Optional<String> commitSha = getOptStringProperty(datastore, workflowKey, PROPERTY_COMMIT_SHA);
+  private Optional<String> commitSha(Optional<Entity> workflow, Optional<Entity> component) {
+    final Optional<String> commitSha = stringProperty(workflow, PROPERTY_COMMIT_SHA);
     if (commitSha.isPresent()) {
       return commitSha;
     }
 
-    final Key componentKey = componentKeyFactory.newKey(workflowId.componentId());
-    return getOptStringProperty(datastore, componentKey, PROPERTY_COMMIT_SHA);
+    return stringProperty(component, PROPERTY_COMMIT_SHA);
   }
 
-  private <T> T storeWithRetries(FnWithException<T, IOException> storingOperation) throws IOException {
-    int storeRetries = 0;
+  RetryPolicy retryPolicy() {
+    return retryPolicy;
+  }
 
-    while (storeRetries < MAX_RETRIES) {
+  private <T> T storeWithRetries(FnWithException<T, IOException> storingOperation) throws IOException {
+    return retryPolicy.call(() -> {
       try {
         return storingOperation.apply();
-      } catch (ResourceNotFoundException e) {
-        throw e;
       } catch (DatastoreException | IOException e) {
+        // transactions wrap exceptions thrown from within them
         if (e.getCause() instanceof ResourceNotFoundException) {
           throw (ResourceNotFoundException) e.getCause();
         }
+        throw e;
+      }
+    }, DatastoreStorage::isRetryable);
+  }
 
-        storeRetries++;
-        if (storeRetries == MAX_RETRIES) {
-          throw e;
-        }
+  private static boolean isRetryable(Throwable e) {
+    return (e instanceof DatastoreException || e instanceof IOException)
+           && !(e instanceof ResourceNotFoundException);
+  }
 
-        LOG.warn(String.format("Failed to read/write from/to Datastore (attempt #%d)", storeRetries), e);
-        try {
-          Thread.sleep(retryBaseDelay.toMillis());
-        } catch (InterruptedException e1) {
-          throw Throwables.propagate(e1);
+  private static List<List<WorkflowId>> transactionBatches(Collection<WorkflowId> workflowIds) {
+    final Map<String, List<WorkflowId>> byComponent = workflowIds.stream()
+        .collect(groupingBy(WorkflowId::componentId, LinkedHashMap::new, toList()));
+
+    final List<List<WorkflowId>> batches = Lists.newArrayList();
+    List<WorkflowId> batch = Lists.newArrayList();
+    int entityGroups = 0;
+    for (List<WorkflowId> component : byComponent.values()) {
+      for (List<WorkflowId> part : Lists.partition(component, MAX_BATCH_MUTATIONS)) {
+        if (entityGroups == MAX_TRANSACTION_ENTITY_GROUPS
+            || batch.size() + part.size() > MAX_BATCH_MUTATIONS) {
+          batches.add(batch);
+          batch = Lists.newArrayList();
+          entityGroups = 0;
         }
+        batch.addAll(part);
+        entityGroups++;
       }
     }
-
-    throw new IOException("This should never happen");
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    return batches;
   }
 
   private Key workflowKey(WorkflowId workflowId) {
@@ -415,6 +568,15 @@ class DatastoreStorage {
         .newKey(workflowInstance.toKey());
   }
 
+  private Entity activeWorkflowInstanceEntity(WorkflowInstance workflowInstance, long counter) {
+    return Entity.builder(activeWorkflowInstanceKey(workflowInstance))
+        .set(PROPERTY_COMPONENT, workflowInstance.workflowId().componentId())
+        .set(PROPERTY_WORKFLOW, workflowInstance.workflowId().endpointId())
+        .set(PROPERTY_PARAMETER, workflowInstance.parameter())
+        .set(PROPERTY_COUNTER, counter)
+        .build();
+  }
+
   private WorkflowInstance parseWorkflowInstance(Entity activeWorkflowInstance) {
     final String componentId = activeWorkflowInstance.getString(PROPERTY_COMPONENT);
     final String workflowId = activeWorkflowInstance.getString(PROPERTY_WORKFLOW);
@@ -442,13 +604,12 @@ class DatastoreStorage {
   }
 
   /**
-   * Optionally get a value for an {@link Entity}'s property from a {@link DatastoreReader}.
+   * Optionally get a value for an optional {@link Entity}'s property.
    *
    * @return an optional containing the property value if it existed, empty otherwise.
    */
-  private Optional<String> getOptStringProperty(DatastoreReader datastoreReader, Key key,
-                                                String property) {
-    return getOpt(datastoreReader, key)
+  private static Optional<String> stringProperty(Optional<Entity> entity, String property) {
+    return entity
         .filter(e -> e.contains(property))
         .map(e -> e.getString(property));
   }
@@ -22,9 +22,14 @@ package com.spotify.styx.storage;
 
 import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunStateSnapshot;
+import com.spotify.styx.util.RetryPolicy;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
 
 /**
@@ -46,6 +51,14 @@ public interface EventStorage {
    */
   void writeEvent(SequenceEvent sequenceEvent) throws IOException;
 
+  /**
+   * Stores a batch of {@link com.spotify.styx.model.Event}s in as few round trips as the backend
+   * allows.
+   *
+   * @param sequenceEvents  The events together with their sequence numbers to be stored
+   */
+  void writeEvents(List<SequenceEvent> sequenceEvents) throws IOException;
+
   /**
    * Returns the latest counter from the events of a {@link WorkflowInstance}. The returned
    * Optional is empty if no event is found for the {@link WorkflowInstance} specified.
@@ -62,6 +75,15 @@ public interface EventStorage {
    */
   void writeActiveState(WorkflowInstance workflowInstance, long counter) throws IOException;
 
+  /**
+   * Stores information about a batch of active {@link WorkflowInstance}s to be tracked, together
+   * with a snapshot of their current {@link com.spotify.styx.state.RunState}. The last processed
+   * event count of each instance is the {@link RunStateSnapshot#counter()} of its snapshot.
+   *
+   * @param snapshots  The current state snapshot for each {@link WorkflowInstance}
+   */
+  void writeActiveStates(Map<WorkflowInstance, RunStateSnapshot> snapshots) throws IOException;
+
   /**
    * Removes a reference to active {@link WorkflowInstance}, to be called when the instance enters
    * a final state in Styx and it shouldn't be tracked anymore.
@@ -70,6 +92,13 @@ public interface EventStorage {
    */
   void deleteActiveState(WorkflowInstance workflowInstance) throws IOException;
 
+  /**
+   * Removes references to a batch of active {@link WorkflowInstance}s.
+   *
+   * @param workflowInstances  The {@link WorkflowInstance}s that entered a final state
+   */
+  void deleteActiveStates(Set<WorkflowInstance> workflowInstances) throws IOException;
+
   /**
    * Return a map of all active {@link WorkflowInstance}s to their last consumed sequence count.
    *
@@ -94,4 +123,19 @@ public interface EventStorage {
    * @return The map of workflow instances to sequence counts
    */
   Map<WorkflowInstance, Long> readActiveWorkflowInstances(String componentId) throws IOException;
+
+  /**
+   * Return a map of active {@link WorkflowInstance}s to the latest {@link RunStateSnapshot} stored
+   * with {@link #writeActiveStates(Map)}. Active instances without a snapshot are not included.
+   *
+   * @return The map of workflow instances to state snapshots
+   */
+  Map<WorkflowInstance, RunStateSnapshot> readActiveStateSnapshots() throws IOException;
+
+  /**
+   * Returns the {@link RetryPolicy}s guarding the backends of this storage, for monitoring.
+   */
+  default List<RetryPolicy> retryPolicies() {
+    return Collections.emptyList();
+  }
 }
@@ -24,15 +24,19 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.StyxConfig;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.model.WorkflowInstanceExecutionData;
 import com.spotify.styx.model.WorkflowState;
+import com.spotify.styx.state.RunStateSnapshot;
 import com.spotify.styx.util.ResourceNotFoundException;
+import com.spotify.styx.util.RetryPolicy;
 import com.spotify.styx.util.WorkflowStateUtil;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -54,9 +58,12 @@ public class InMemStorage implements Storage, EventStorage {
   private final ConcurrentMap<WorkflowId, String> dockerImagesPerWorkflowId = Maps.newConcurrentMap();
   private final ConcurrentMap<String, String> dockerImagesPerComponent = Maps.newConcurrentMap();
   private final ConcurrentMap<WorkflowId, WorkflowState> workflowStatePerWorkflowId = Maps.newConcurrentMap();
+  private final ConcurrentMap<WorkflowId, Instant> nextNaturalTriggers = Maps.newConcurrentMap();
+  private final ConcurrentMap<WorkflowInstance, Long> latestCounters = Maps.newConcurrentMap();
 
   public final List<SequenceEvent> writtenEvents = Lists.newCopyOnWriteArrayList();
-  public final Map<WorkflowInstance, Long> activeStatesMap = Maps.newHashMap();
+  public final Map<WorkflowInstance, Long> activeStatesMap = Maps.newConcurrentMap();
+  public final Map<WorkflowInstance, RunStateSnapshot> activeStateSnapshots = Maps.newConcurrentMap();
 
   public final CountDownLatch countDown;
 
@@ -85,6 +92,11 @@ public class InMemStorage implements Storage, EventStorage {
     return "default";
   }
 
+  @Override
+  public StyxConfig config() throws IOException {
+    return StyxConfig.create(globalEnabled(), globalDockerRunnerId());
+  }
+
   @Override
   public void store(Workflow workflow) throws IOException {
     workflowStore.put(workflow.id(), workflow);
@@ -103,13 +115,29 @@ public class InMemStorage implements Storage, EventStorage {
 
   @Override
   public void updateNextNaturalTrigger(WorkflowId workflowId, Instant nextNaturalTrigger) throws IOException {
-    throw new UnsupportedOperationException("Unsupported Operation!");
+    if (!workflowStore.containsKey(workflowId)) {
+      throw new ResourceNotFoundException(
+          String.format("%s:%s doesn't exist.", workflowId.componentId(), workflowId.endpointId()));
+    }
+    nextNaturalTriggers.put(workflowId, nextNaturalTrigger);
+  }
+
+  @Override
+  public void updateNextNaturalTriggers(Map<WorkflowId, Instant> nextNaturalTriggers) throws IOException {
+    nextNaturalTriggers.forEach((workflowId, nextNaturalTrigger) -> {
+      if (workflowStore.containsKey(workflowId)) {
+        this.nextNaturalTriggers.put(workflowId, nextNaturalTrigger);
+      }
+    });
   }
 
   @Override
   public Map<Workflow, Optional<Instant>> workflowsWithNextNaturalTrigger()
       throws IOException {
-    throw new UnsupportedOperationException("Unsupported Operation!");
+    final Map<Workflow, Optional<Instant>> map = Maps.newHashMap();
+    workflowStore.forEach((workflowId, workflow) ->
+        map.put(workflow, Optional.ofNullable(nextNaturalTriggers.get(workflowId))));
+    return map;
   }
 
   @Override
@@ -125,16 +153,32 @@ public class InMemStorage implements Storage, EventStorage {
   @Override
   public List<WorkflowInstanceExecutionData> executionData(WorkflowId workflowId)
       throws IOException {
-    final Set<WorkflowInstance> workflowInstances = writtenEvents.stream()
+    return executionData(
+        workflowId, Optional.empty(), Optional.empty(), Optional.empty(), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<WorkflowInstanceExecutionData> executionData(
+      WorkflowId workflowId,
+      Optional<String> start,
+      Optional<String> end,
+      Optional<String> after,
+      int limit) throws IOException {
+    final List<WorkflowInstance> workflowInstances = writtenEvents.stream()
         .map(e -> e.event().workflowInstance())
         .filter(wfi -> wfi.workflowId().equals(workflowId))
-        .collect(Collectors.toSet());
+        .filter(wfi -> !start.isPresent() || wfi.parameter().compareTo(start.get()) >= 0)
+        .filter(wfi -> !end.isPresent() || wfi.parameter().compareTo(end.get()) < 0)
+        .filter(wfi -> !after.isPresent() || wfi.parameter().compareTo(after.get()) > 0)
+        .distinct()
+        .sorted(WorkflowInstance.KEY_COMPARATOR)
+        .limit(limit)
+        .collect(Collectors.toList());
 
     final List<WorkflowInstanceExecutionData> workflowInstanceDataList = Lists.newArrayList();
     for (WorkflowInstance workflowInstance : workflowInstances) {
       workflowInstanceDataList.add(executionData(workflowInstance));
     }
-    workflowInstanceDataList.sort(WorkflowInstanceExecutionData.COMPARATOR);
 
     return workflowInstanceDataList;
   }
@@ -216,29 +260,44 @@ public class InMemStorage implements Storage, EventStorage {
   @Override
   public void writeEvent(SequenceEvent sequenceEvent) {
     writtenEvents.add(sequenceEvent);
+    latestCounters.merge(sequenceEvent.event().workflowInstance(), sequenceEvent.counter(), Math::max);
     activeStatesMap.computeIfPresent(sequenceEvent.event().workflowInstance(), (k, v) -> v + 1);
   }
 
+  @Override
+  public void writeEvents(List<SequenceEvent> sequenceEvents) {
+    sequenceEvents.forEach(this::writeEvent);
+  }
+
   @Override
   public Optional<Long> getLatestStoredCounter(WorkflowInstance workflowInstance)
       throws IOException {
-    final SortedSet<SequenceEvent> storedEvents = readEvents(workflowInstance);
-    if (storedEvents.isEmpty()) {
-      return Optional.empty();
-    } else {
-      final SequenceEvent lastStoredEvent = storedEvents.last();
-      return Optional.of(lastStoredEvent.counter());
-    }
+    return Optional.ofNullable(latestCounters.get(workflowInstance));
   }
 
   @Override
   public void writeActiveState(WorkflowInstance workflowInstance, long counter) {
     activeStatesMap.put(workflowInstance, counter);
+    activeStateSnapshots.remove(workflowInstance);
+  }
+
+  @Override
+  public void writeActiveStates(Map<WorkflowInstance, RunStateSnapshot> snapshots) {
+    snapshots.forEach((workflowInstance, snapshot) -> {
+      activeStatesMap.put(workflowInstance, snapshot.counter());
+      activeStateSnapshots.put(workflowInstance, snapshot);
+    });
   }
 
   @Override
   public void deleteActiveState(WorkflowInstance workflowInstance) {
     activeStatesMap.remove(workflowInstance);
+    activeStateSnapshots.remove(workflowInstance);
+  }
+
+  @Override
+  public void deleteActiveStates(Set<WorkflowInstance> workflowInstances) {
+    workflowInstances.forEach(this::deleteActiveState);
   }
 
   @Override
@@ -253,7 +312,17 @@ public class InMemStorage implements Storage, EventStorage {
         .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
   }
 
+  @Override
+  public Map<WorkflowInstance, RunStateSnapshot> readActiveStateSnapshots() throws IOException {
+    return activeStateSnapshots;
+  }
+
   public Optional<Long> getCounterFromActiveStates(WorkflowInstance workflowInstance) throws IOException {
     return Optional.ofNullable(activeStatesMap.get(workflowInstance));
   }
+
+  @Override
+  public List<RetryPolicy> retryPolicies() {
+    return Collections.emptyList();
+  }
 }
@@ -24,9 +24,12 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunStateSnapshot;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
 
 public class NoopEventStorage implements EventStorage {
@@ -40,6 +43,10 @@ public class NoopEventStorage implements EventStorage {
   public void writeEvent(SequenceEvent sequenceEvent) throws IOException {
   }
 
+  @Override
+  public void writeEvents(List<SequenceEvent> sequenceEvents) throws IOException {
+  }
+
   @Override
   public Optional<Long> getLatestStoredCounter(WorkflowInstance workflowInstance)
       throws IOException {
@@ -50,10 +57,18 @@ public class NoopEventStorage implements EventStorage {
   public void writeActiveState(WorkflowInstance workflowInstance, long counter) throws IOException {
   }
 
+  @Override
+  public void writeActiveStates(Map<WorkflowInstance, RunStateSnapshot> snapshots) throws IOException {
+  }
+
   @Override
   public void deleteActiveState(WorkflowInstance workflowInstance) throws IOException {
   }
 
+  @Override
+  public void deleteActiveStates(Set<WorkflowInstance> workflowInstances) throws IOException {
+  }
+
   @Override
   public Map<WorkflowInstance, Long> readActiveWorkflowInstances() throws IOException {
     return ImmutableMap.of();
@@ -63,4 +78,9 @@ public class NoopEventStorage implements EventStorage {
   public Map<WorkflowInstance, Long> readActiveWorkflowInstances(String componentId) throws IOException {
     return ImmutableMap.of();
   }
+
+  @Override
+  public Map<WorkflowInstance, RunStateSnapshot> readActiveStateSnapshots() throws IOException {
+    return ImmutableMap.of();
+  }
 }
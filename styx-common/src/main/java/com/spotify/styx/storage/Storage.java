@@ -20,13 +20,16 @@
 
 package com.spotify.styx.storage;
 
+import com.spotify.styx.model.StyxConfig;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.model.WorkflowInstanceExecutionData;
 import com.spotify.styx.model.WorkflowState;
+import com.spotify.styx.util.RetryPolicy;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -55,6 +58,11 @@ public interface Storage {
    */
   String globalDockerRunnerId() throws IOException;
 
+  /**
+   * Get the global Styx configuration with a single read.
+   */
+  StyxConfig config() throws IOException;
+
   /**
    * Stores a Workflow definition.
    *
@@ -86,6 +94,14 @@ public interface Storage {
    */
   void updateNextNaturalTrigger(WorkflowId workflowId, Instant nextNaturalTrigger) throws IOException;
 
+  /**
+   * Updates the next natural triggers for many {@link Workflow}s in as few storage operations as
+   * possible. Workflows that do not exist are skipped.
+   *
+   * @param nextNaturalTriggers The next natural trigger instant for each {@link WorkflowId}
+   */
+  void updateNextNaturalTriggers(Map<WorkflowId, Instant> nextNaturalTriggers) throws IOException;
+
   /**
    * Get all {@link Workflow}s with their respective nextNaturalTrigger,
    * which is empty if it hasn't been initialized before.
@@ -108,6 +124,25 @@ public interface Storage {
    */
   List<WorkflowInstanceExecutionData> executionData(WorkflowId workflowId) throws IOException;
 
+  /**
+   * Get execution information for a page of the {@link WorkflowInstance}s of the specified
+   * {@link WorkflowId}, in instance key order.
+   *
+   * @param workflowId  The workflowId to get execution information for
+   * @param start       Only return instances with a parameter from this one, inclusive
+   * @param end         Only return instances with a parameter before this one, exclusive
+   * @param after       Only return instances with a parameter after this one, typically the last
+   *                    instance of the previous page
+   * @param limit       The maximum number of instances to return
+   * @return A {@link WorkflowInstanceExecutionData} of each instance in the page
+   */
+  List<WorkflowInstanceExecutionData> executionData(
+      WorkflowId workflowId,
+      Optional<String> start,
+      Optional<String> end,
+      Optional<String> after,
+      int limit) throws IOException;
+
   /**
    * Use workflowState instead.
    * Get enabled flag for a {@link Workflow}.
@@ -165,4 +200,11 @@ public interface Storage {
    * @return workflow state.
    */
   WorkflowState workflowState(WorkflowId workflowId) throws IOException;
+
+  /**
+   * Returns the {@link RetryPolicy}s guarding the backends of this storage, for monitoring.
+   */
+  default List<RetryPolicy> retryPolicies() {
+    return Collections.emptyList();
+  }
 }
@@ -23,14 +23,17 @@ package com.spotify.styx.util;
 import static java.lang.String.format;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.state.OutputHandler;
 import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.RunStateSnapshot;
 import com.spotify.styx.storage.EventStorage;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.Map;
+import java.util.Optional;
 import java.util.SortedSet;
 import java.util.stream.Collectors;
 import javaslang.Tuple;
@@ -49,55 +52,111 @@ public final class ReplayEvents {
       Map<WorkflowInstance, Long> instances,
       EventStorage eventStorage,
       boolean printLogs) throws IOException {
-    LOG.info("Replaying active states");
+    return replayActiveStates(instances, ImmutableMap.of(), eventStorage, printLogs);
+  }
 
-    final OutputHandler replayLogger = printLogs ? transitionLogger("  ") : OutputHandler.NOOP;
+  /**
+   * Restores the {@link RunState} of active workflow instances.
+   *
+   * <p>Instances with a {@link RunStateSnapshot} start from the snapshot and only replay the events
+   * after its counter, which means no events are read at all when the snapshot is up to date.
+   * Instances without a usable snapshot are replayed from their full event history.
+   *
+   * @param instances     The active instances and their last consumed event counter
+   * @param snapshots     State snapshots for some or all of the active instances
+   * @param eventStorage  The storage to read events from
+   * @param printLogs     Whether to log every replayed transition
+   */
+  public static Map<RunState, Long> replayActiveStates(
+      Map<WorkflowInstance, Long> instances,
+      Map<WorkflowInstance, RunStateSnapshot> snapshots,
+      EventStorage eventStorage,
+      boolean printLogs) throws IOException {
+    LOG.info("Replaying active states");
 
     return instances.entrySet().parallelStream().map(entry -> {
       final WorkflowInstance workflowInstance = entry.getKey();
       final long lastConsumedEvent = entry.getValue();
-      final SettableTime time = new SettableTime();
       if (printLogs) {
         LOG.info("Replaying {} up to #{}", workflowInstance.toKey(), lastConsumedEvent);
       }
 
+      final Optional<RunStateSnapshot> snapshot = Optional.ofNullable(snapshots.get(workflowInstance));
+      if (snapshot.isPresent() && snapshot.get().counter() == lastConsumedEvent) {
+        return Tuple.of(snapshot.get().toRunState(workflowInstance, new SettableTime()), lastConsumedEvent);
+      }
+
       final SortedSet<SequenceEvent> sequenceEvents;
       try {
         sequenceEvents = eventStorage.readEvents(workflowInstance);
       } catch (IOException e) {
         throw Throwables.propagate(e);
       }
-      RunState restoreState = RunState.fresh(workflowInstance, time);
-
-      for (SequenceEvent sequenceEvent : sequenceEvents) {
-        // At the time of writing, we don't expect to get events while Styx is not running.
-        // That is because the only event producers are going to be in the same process.
-        // Thus, we don't expect any event in the sequence to be later than the last consumed
-        // event. We will treat this as an error for now and skip the rest of the events.
-        if (sequenceEvent.counter() > lastConsumedEvent) {
-          LOG.error("Got unexpected newer event than the last consumed event {} > {} for {}",
-                    sequenceEvent.counter(), lastConsumedEvent, workflowInstance.toKey());
-          break;
-        }
-
-        time.set(Instant.ofEpochMilli(sequenceEvent.timestamp()));
-
-        if ("triggerExecution".equals(EventUtil.name(sequenceEvent.event()))) {
-          restoreState = RunState.fresh(workflowInstance, time);
-        }
-
-        if (printLogs) {
-          LOG.info("  replaying #{} {}", sequenceEvent.counter(), sequenceEvent.event());
-        }
-        restoreState = restoreState.transition(sequenceEvent.event());
-        replayLogger.transitionInto(restoreState);
-      }
 
+      final RunState restoreState =
+          replayState(workflowInstance, lastConsumedEvent, snapshot, sequenceEvents, printLogs);
       return Tuple.of(restoreState, lastConsumedEvent);
     })
     .collect(Collectors.toMap(Tuple2::_1, Tuple2::_2));
   }
 
+  /**
+   * Restores the {@link RunState} of a single workflow instance from events that have already
+   * been read.
+   *
+   * @param workflowInstance   The workflow instance to restore
+   * @param lastConsumedEvent  The last consumed event counter of the instance
+   * @param snapshot           A state snapshot to start from, used if it is not newer than
+   *                           {@code lastConsumedEvent}
+   * @param sequenceEvents     The events of the instance in counter order
+   * @param printLogs          Whether to log every replayed transition
+   */
+  public static RunState replayState(
+      WorkflowInstance workflowInstance,
+      long lastConsumedEvent,
+      Optional<RunStateSnapshot> snapshot,
+      SortedSet<SequenceEvent> sequenceEvents,
+      boolean printLogs) {
+    final OutputHandler replayLogger = printLogs ? transitionLogger("  ") : OutputHandler.NOOP;
+    final SettableTime time = new SettableTime();
+
+    final boolean useSnapshot = snapshot.isPresent() && snapshot.get().counter() <= lastConsumedEvent;
+    final long snapshotCounter = useSnapshot ? snapshot.get().counter() : -1;
+    RunState restoreState = useSnapshot
+        ? snapshot.get().toRunState(workflowInstance, time)
+        : RunState.fresh(workflowInstance, time);
+
+    for (SequenceEvent sequenceEvent : sequenceEvents) {
+      if (sequenceEvent.counter() <= snapshotCounter) {
+        continue;
+      }
+
+      // At the time of writing, we don't expect to get events while Styx is not running.
+      // That is because the only event producers are going to be in the same process.
+      // Thus, we don't expect any event in the sequence to be later than the last consumed
+      // event. We will treat this as an error for now and skip the rest of the events.
+      if (sequenceEvent.counter() > lastConsumedEvent) {
+        LOG.error("Got unexpected newer event than the last consumed event {} > {} for {}",
+                  sequenceEvent.counter(), lastConsumedEvent, workflowInstance.toKey());
+        break;
+      }
+
+      time.set(sequenceEvent.timestamp());
+
+      if ("triggerExecution".equals(EventUtil.name(sequenceEvent.event()))) {
+        restoreState = RunState.fresh(workflowInstance, time);
+      }
+
+      if (printLogs) {
+        LOG.info("  replaying #{} {}", sequenceEvent.counter(), sequenceEvent.event());
+      }
+      restoreState = restoreState.transition(sequenceEvent.event());
+      replayLogger.transitionInto(restoreState);
+    }
+
+    return restoreState;
+  }
+
   public static OutputHandler transitionLogger(String prefix) {
     return (state) -> {
       final String instanceKey = state.workflowInstance().toKey();
@@ -133,15 +192,20 @@ public final class ReplayEvents {
 
   private static final class SettableTime implements Time {
 
-    private Instant now = Instant.now();
+    private long nowMillis = System.currentTimeMillis();
 
     @Override
     public Instant get() {
-      return now;
+      return Instant.ofEpochMilli(nowMillis);
+    }
+
+    @Override
+    public long millis() {
+      return nowMillis;
     }
 
-    void set(Instant time) {
-      now = time;
+    void set(long millis) {
+      nowMillis = millis;
     }
   }
 }
@@ -0,0 +1,366 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.styx.util;
+
+import com.google.common.base.Throwables;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A policy for retrying storage operations with exponential backoff, jitter and an overall
+ * deadline, guarded by a circuit breaker.
+ *
+ * <p>The circuit breaker counts calls that failed after all their retries. Once
+ * {@code failureThreshold} calls in a row have failed the circuit opens, and calls fail fast with
+ * a {@link CircuitOpenException} for {@code openDuration}. After that a single trial call is let
+ * through, which closes the circuit if it succeeds and opens it again if it fails in any way. If
+ * the trial has not finished after another {@code openDuration}, a new trial is let through.
+ *
+ * <p>{@link #call(FnWithException, Predicate)} sleeps between attempts on the calling thread,
+ * while {@link #callAsync(Supplier, Predicate, ScheduledExecutorService)} schedules the attempts
+ * on an executor instead.
+ */
+public class RetryPolicy {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RetryPolicy.class);
+
+  /**
+   * States of the circuit breaker, in order of severity.
+   */
+  public enum CircuitState {
+    CLOSED, HALF_OPEN, OPEN
+  }
+
+  private final String name;
+  private final int maxAttempts;
+  private final long baseDelayMillis;
+  private final long maxDelayMillis;
+  private final long deadlineNanos;
+  private final int failureThreshold;
+  private final long openDurationNanos;
+
+  private final LongAdder retries = new LongAdder();
+
+  // guarded by this
+  private CircuitState state = CircuitState.CLOSED;
+  private int consecutiveFailures;
+  private long openedAtNanos;
+
+  private RetryPolicy(Builder builder) {
+    this.name = builder.name;
+    this.maxAttempts = builder.maxAttempts;
+    this.baseDelayMillis = builder.baseDelay.toMillis();
+    this.maxDelayMillis = builder.maxDelay.toMillis();
+    this.deadlineNanos = builder.deadline.toNanos();
+    this.failureThreshold = builder.failureThreshold;
+    this.openDurationNanos = builder.openDuration.toNanos();
+  }
+
+  public String name() {
+    return name;
+  }
+
+  /**
+   * Returns the total number of retries made under this policy.
+   */
+  public long retries() {
+    return retries.sum();
+  }
+
+  public synchronized CircuitState circuitState() {
+    return state;
+  }
+
+  /**
+   * Run an operation, retrying exceptions that match {@code retryable}.
+   *
+   * @param operation  The operation to run
+   * @param retryable  Whether an exception thrown by the operation should be retried
+   * @return the value returned from the operation
+   * @throws IOException the last exception thrown by the operation once attempts or the deadline
+   *     are exhausted, or a {@link CircuitOpenException} if the circuit is open
+   */
+  public <T> T call(FnWithException<T, IOException> operation, Predicate<Throwable> retryable)
+      throws IOException {
+    acquirePermit();
+
+    // anything that escapes the loop without setting this, errors included, counts as a failure
+    boolean succeeded = false;
+    try {
+      final long deadline = System.nanoTime() + deadlineNanos;
+      int attempt = 1;
+      while (true) {
+        try {
+          final T value = operation.apply();
+          succeeded = true;
+          return value;
+        } catch (IOException | RuntimeException e) {
+          if (!retryable.test(e)) {
+            succeeded = true;
+            throw e;
+          }
+
+          final long delayMillis = delayMillis(attempt);
+          if (attempt >= maxAttempts
+              || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) > deadline) {
+            throw e;
+          }
+
+          retries.increment();
+          LOG.warn(String.format("Failed to read/write from/to %s (attempt #%d)", name, attempt), e);
+          try {
+            Thread.sleep(delayMillis);
+          } catch (InterruptedException e1) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e1);
+          }
+          attempt++;
+        }
+      }
+    } finally {
+      if (succeeded) {
+        onSuccess();
+      } else {
+        onFailure();
+      }
+    }
+  }
+
+  /**
+   * Run an asynchronous operation, retrying failures that match {@code retryable}. Retries are
+   * scheduled on the given executor, so no thread is blocked while backing off.
+   *
+   * <p>The first attempt is started on the calling thread. If starting it throws, the exception is
+   * thrown from this method and the call is not counted by the circuit breaker.
+   *
+   * @param operation  The operation to run, invoked once per attempt
+   * @param retryable  Whether a failure of the operation should be retried
+   * @param executor   The executor to schedule retries on
+   * @return a stage completing with the value of the first successful attempt, or exceptionally
+   *     with the last failure or a {@link CircuitOpenException} if the circuit is open
+   */
+  public <T> CompletionStage<T> callAsync(
+      Supplier<CompletionStage<T>> operation,
+      Predicate<Throwable> retryable,
+      ScheduledExecutorService executor) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    try {
+      acquirePermit();
+    } catch (CircuitOpenException e) {
+      result.completeExceptionally(e);
+      return result;
+    }
+
+    final long deadline = System.nanoTime() + deadlineNanos;
+    whenAttemptCompletes(operation.get(), operation, retryable, executor, result, 1, deadline);
+    return result;
+  }
+
+  private <T> void attemptAsync(
+      Supplier<CompletionStage<T>> operation,
+      Predicate<Throwable> retryable,
+      ScheduledExecutorService executor,
+      CompletableFuture<T> result,
+      int attempt,
+      long deadline) {
+    CompletionStage<T> stage;
+    try {
+      stage = operation.get();
+    } catch (Throwable e) {
+      final CompletableFuture<T> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      stage = failed;
+    }
+    whenAttemptCompletes(stage, operation, retryable, executor, result, attempt, deadline);
+  }
+
+  private <T> void whenAttemptCompletes(
+      CompletionStage<T> stage,
+      Supplier<CompletionStage<T>> operation,
+      Predicate<Throwable> retryable,
+      ScheduledExecutorService executor,
+      CompletableFuture<T> result,
+      int attempt,
+      long deadline) {
+    stage.whenComplete((value, t) -> {
+      if (t == null) {
+        onSuccess();
+        result.complete(value);
+        return;
+      }
+
+      final Throwable cause = (t instanceof CompletionException && t.getCause() != null)
+          ? t.getCause()
+          : t;
+      if (!retryable.test(cause)) {
+        onSuccess();
+        result.completeExceptionally(cause);
+        return;
+      }
+
+      final long delayMillis = delayMillis(attempt);
+      if (attempt >= maxAttempts
+          || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis) > deadline) {
+        onFailure();
+        result.completeExceptionally(cause);
+        return;
+      }
+
+      retries.increment();
+      LOG.warn(String.format("Failed to read/write from/to %s (attempt #%d)", name, attempt), cause);
+      try {
+        executor.schedule(
+            () -> attemptAsync(operation, retryable, executor, result, attempt + 1, deadline),
+            delayMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        onFailure();
+        result.completeExceptionally(cause);
+      }
+    });
+  }
+
+  /**
+   * Exponential backoff from the base delay, capped at the max delay, with equal jitter: half of
+   * the delay is kept and the other half is randomized.
+   */
+  private long delayMillis(int attempt) {
+    final long exponential = baseDelayMillis << Math.min(attempt - 1, 30);
+    final long capped = exponential < 0 ? maxDelayMillis : Math.min(maxDelayMillis, exponential);
+    final long half = capped / 2;
+    return half + ThreadLocalRandom.current().nextLong(capped - half + 1);
+  }
+
+  private synchronized void acquirePermit() throws CircuitOpenException {
+    switch (state) {
+      case CLOSED:
+        return;
+
+      case OPEN:
+      case HALF_OPEN:
+      default:
+        // let a single trial call through, or another one if the last trial has not finished
+        if (System.nanoTime() - openedAtNanos >= openDurationNanos) {
+          state = CircuitState.HALF_OPEN;
+          openedAtNanos = System.nanoTime();
+          return;
+        }
+        throw new CircuitOpenException(name);
+    }
+  }
+
+  private synchronized void onSuccess() {
+    consecutiveFailures = 0;
+    state = CircuitState.CLOSED;
+  }
+
+  private synchronized void onFailure() {
+    consecutiveFailures++;
+    if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      if (state != CircuitState.OPEN) {
+        LOG.warn("Opening circuit for {} after {} failed calls", name, consecutiveFailures);
+      }
+      state = CircuitState.OPEN;
+      openedAtNanos = System.nanoTime();
+    }
+  }
+
+  public static Builder builder(String name) {
+    return new Builder(name);
+  }
+
+  /**
+   * Thrown when a call is rejected because the circuit is open.
+   */
+  public static class CircuitOpenException extends IOException {
+
+    CircuitOpenException(String name) {
+      super("Circuit for " + name + " is open");
+    }
+  }
+
+  public static class Builder {
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+    private static final Duration DEFAULT_BASE_DELAY = Duration.ofSeconds(1);
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+    private static final Duration DEFAULT_DEADLINE = Duration.ofSeconds(30);
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(10);
+
+    private final String name;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private Duration baseDelay = DEFAULT_BASE_DELAY;
+    private Duration maxDelay = DEFAULT_MAX_DELAY;
+    private Duration deadline = DEFAULT_DEADLINE;
+    private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private Duration openDuration = DEFAULT_OPEN_DURATION;
+
+    private Builder(String name) {
+      this.name = Objects.requireNonNull(name);
+    }
+
+    public Builder maxAttempts(int maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    public Builder baseDelay(Duration baseDelay) {
+      this.baseDelay = Objects.requireNonNull(baseDelay);
+      return this;
+    }
+
+    public Builder maxDelay(Duration maxDelay) {
+      this.maxDelay = Objects.requireNonNull(maxDelay);
+      return this;
+    }
+
+    public Builder deadline(Duration deadline) {
+      this.deadline = Objects.requireNonNull(deadline);
+      return this;
+    }
+
+    public Builder failureThreshold(int failureThreshold) {
+      this.failureThreshold = failureThreshold;
+      return this;
+    }
+
+    public Builder openDuration(Duration openDuration) {
+      this.openDuration = Objects.requireNonNull(openDuration);
+      return this;
+    }
+
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+}
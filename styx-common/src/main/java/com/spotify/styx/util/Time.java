@@ -24,4 +24,12 @@ import java.time.Instant;
 import java.util.function.Supplier;
 
 public interface Time extends Supplier<Instant> {
+
+  /**
+   * The current time in milliseconds since the epoch. Implementations that can tell without
+   * creating an {@link Instant} should override this.
+   */
+  default long millis() {
+    return get().toEpochMilli();
+  }
 }
@@ -0,0 +1,140 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import org.junit.Test;
+
+public class EventCodecTest {
+
+  private static final WorkflowId WORKFLOW1 = WorkflowId.create("component", "endpoint1");
+  private static final String PARAMETER1 = "2016-01-01";
+  private static final String TRIGGER1 = "trig1";
+  private static final WorkflowInstance INSTANCE1 = WorkflowInstance.create(WORKFLOW1, PARAMETER1);
+  private static final String POD_NAME = "test-event";
+  private static final String DOCKER_IMAGE = "busybox:1.1";
+  private static final String COMMIT_SHA = "00000ef508c1cb905e360590ce3e7e9193f6b370";
+  private static final ExecutionDescription EXECUTION_DESCRIPTION = ExecutionDescription.create(
+      DOCKER_IMAGE,
+      Arrays.asList("foo", "bar"),
+      Optional.of(DataEndpoint.Secret.create("secret", "/dev/null")),
+      Optional.of(COMMIT_SHA));
+
+  EventCodec eventCodec = new EventCodec();
+  EventSerializer eventSerializer = new EventSerializer();
+
+  @Test
+  public void testRoundtripAllEvents() {
+    assertRoundtrip(Event.timeTrigger(INSTANCE1));
+    assertRoundtrip(Event.triggerExecution(INSTANCE1, TRIGGER1));
+    assertRoundtrip(Event.created(INSTANCE1, POD_NAME, DOCKER_IMAGE));
+    assertRoundtrip(Event.started(INSTANCE1));
+    assertRoundtrip(Event.terminate(INSTANCE1, 20));
+    assertRoundtrip(Event.runError(INSTANCE1, "ErrorMessage"));
+    assertRoundtrip(Event.success(INSTANCE1));
+    assertRoundtrip(Event.retryAfter(INSTANCE1, 12345));
+    assertRoundtrip(Event.retry(INSTANCE1));
+    assertRoundtrip(Event.stop(INSTANCE1));
+    assertRoundtrip(Event.timeout(INSTANCE1));
+    assertRoundtrip(Event.halt(INSTANCE1));
+    assertRoundtrip(Event.submit(INSTANCE1, EXECUTION_DESCRIPTION));
+    assertRoundtrip(Event.submitted(INSTANCE1, POD_NAME));
+  }
+
+  @Test
+  public void testRoundtripEdgeValues() {
+    assertRoundtrip(Event.terminate(INSTANCE1, -1));
+    assertRoundtrip(Event.terminate(INSTANCE1, Integer.MIN_VALUE));
+    assertRoundtrip(Event.terminate(INSTANCE1, Integer.MAX_VALUE));
+    assertRoundtrip(Event.retryAfter(INSTANCE1, Long.MAX_VALUE));
+    assertRoundtrip(Event.retryAfter(INSTANCE1, Long.MIN_VALUE));
+    assertRoundtrip(Event.runError(INSTANCE1, ""));
+    assertRoundtrip(Event.runError(INSTANCE1, "f\u00f6\u00f6 \ud83d\ude80"));
+    assertRoundtrip(Event.runError(INSTANCE1, String.join("", Collections.nCopies(1000, "error "))));
+    assertRoundtrip(Event.submit(INSTANCE1, ExecutionDescription.forImage(DOCKER_IMAGE)));
+  }
+
+  @Test
+  public void testDecodeLegacyJson() {
+    for (Event event : Arrays.asList(
+        Event.triggerExecution(INSTANCE1, TRIGGER1),
+        Event.submit(INSTANCE1, EXECUTION_DESCRIPTION),
+        Event.terminate(INSTANCE1, 20),
+        Event.halt(INSTANCE1))) {
+      final byte[] json = eventSerializer.convert(event).toByteArray();
+      assertThat(eventCodec.decode(INSTANCE1, json), is(event));
+    }
+  }
+
+  @Test
+  public void testEncodesWithMagicAndVersion() {
+    final byte[] bytes = eventCodec.encode(Event.started(INSTANCE1));
+
+    assertThat(bytes.length, is(3));
+    assertThat(bytes[0], is(EventCodec.MAGIC));
+    assertThat(bytes[1], is(EventCodec.VERSION));
+  }
+
+  @Test
+  public void testEncodedSmallerThanJson() {
+    final Event event = Event.submit(INSTANCE1, EXECUTION_DESCRIPTION);
+
+    assertThat(eventCodec.encode(event).length, lessThan(eventSerializer.convert(event).size()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsUnknownVersion() {
+    final byte[] bytes = eventCodec.encode(Event.started(INSTANCE1));
+    bytes[1] = (byte) (EventCodec.VERSION + 1);
+
+    eventCodec.decode(INSTANCE1, bytes);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsUnknownType() {
+    eventCodec.decode(INSTANCE1, new byte[] {EventCodec.MAGIC, EventCodec.VERSION, 127});
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsTruncatedEvent() {
+    final byte[] bytes = eventCodec.encode(Event.runError(INSTANCE1, "ErrorMessage"));
+
+    eventCodec.decode(INSTANCE1, Arrays.copyOf(bytes, bytes.length - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsTrailingBytes() {
+    final byte[] bytes = eventCodec.encode(Event.started(INSTANCE1));
+
+    eventCodec.decode(INSTANCE1, Arrays.copyOf(bytes, bytes.length + 1));
+  }
+
+  private void assertRoundtrip(Event event) {
+    final byte[] bytes = eventCodec.encode(event);
+    assertThat(eventCodec.decode(INSTANCE1, bytes), is(event));
+  }
+}
@@ -27,18 +27,22 @@ import static com.spotify.styx.state.RunState.State.FAILED;
 import static com.spotify.styx.state.RunState.State.PREPARE;
 import static com.spotify.styx.state.RunState.State.RUNNING;
 import static com.spotify.styx.state.RunState.State.SUBMITTED;
+import static com.spotify.styx.state.RunState.State.SUBMITTING;
 import static com.spotify.styx.state.RunState.State.TERMINATED;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertThat;
 
 import com.spotify.styx.WorkflowInstanceEventFactory;
+import com.spotify.styx.model.ExecutionDescription;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.testdata.TestData;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 public class RunStateTest {
 
@@ -54,6 +58,9 @@ public class RunStateTest {
   private WorkflowInstanceEventFactory eventFactory =
       new WorkflowInstanceEventFactory(WORKFLOW_INSTANCE);
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   List<RunState.State> outputs = new LinkedList<>();
   StateTransitioner transitioner = new StateTransitioner();
 
@@ -402,4 +409,37 @@ public class RunStateTest {
         transitioner.get(WORKFLOW_INSTANCE).executionDescription().get().dockerImage(),
         equalTo(DOCKER_IMAGE + "2"));
   }
+
+  @Test
+  public void testSubmitAndSubmitted() throws Exception {
+    final ExecutionDescription executionDescription = ExecutionDescription.forImage(DOCKER_IMAGE);
+
+    transitioner.initialize(RunState.fresh(WORKFLOW_INSTANCE, this::record));
+    transitioner.receive(eventFactory.triggerExecution("trig"));
+    transitioner.receive(eventFactory.submit(executionDescription));
+    transitioner.receive(eventFactory.submitted(TEST_EXECUTION_ID_1));
+
+    final RunState state = transitioner.get(WORKFLOW_INSTANCE);
+    assertThat(outputs, contains(PREPARE, SUBMITTING, SUBMITTED));
+    assertThat(state.executionId(), equalTo(Optional.of(TEST_EXECUTION_ID_1)));
+    assertThat(state.executionDescription(), equalTo(Optional.of(executionDescription)));
+  }
+
+  @Test
+  public void testHaltFromAnyState() throws Exception {
+    for (RunState.State state : RunState.State.values()) {
+      final RunState runState = RunState.create(WORKFLOW_INSTANCE, state);
+      assertThat(runState.transition(eventFactory.halt()).state(), equalTo(ERROR));
+    }
+  }
+
+  @Test
+  public void testRejectsIllegalTransition() throws Exception {
+    final RunState running = RunState.create(WORKFLOW_INSTANCE, RUNNING);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage(WORKFLOW_INSTANCE.toKey() + " received success while in RUNNING");
+
+    running.transition(eventFactory.success());
+  }
 }
@@ -0,0 +1,45 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.storage;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.KeyFactory;
+import java.time.Duration;
+import org.apache.hadoop.hbase.client.Connection;
+
+public class AggregateEventStorageContractTest extends EventStorageContractTest {
+
+  @Override
+  protected EventStorage createStorage() throws Exception {
+    final Connection bigtable = mock(Connection.class);
+    new BigtableMocker(bigtable)
+        .setupTable(BigtableStorage.EVENTS_TABLE_NAME)
+        .finalizeMocking();
+
+    final Datastore datastore = mock(Datastore.class);
+    when(datastore.newKeyFactory()).thenAnswer(invocation -> new KeyFactory("styx-test"));
+
+    return new AggregateStorage(bigtable, datastore, Duration.ZERO);
+  }
+}
@@ -21,10 +21,12 @@
 package com.spotify.styx.storage;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 
+import com.google.common.collect.ImmutableList;
 import com.spotify.styx.model.Event;
 import com.spotify.styx.model.ExecStatus;
 import com.spotify.styx.model.SequenceEvent;
@@ -35,6 +37,7 @@ import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import org.apache.hadoop.hbase.client.Connection;
 import org.junit.Rule;
 import org.junit.Test;
@@ -44,10 +47,14 @@ public class BigTableStorageTest {
 
   private static final String PARAMETER1 = "2016-01-01";
   private static final String PARAMETER2 = "2016-01-02";
+  private static final String PARAMETER3 = "2016-01-03";
 
   private static final WorkflowId WORKFLOW_ID1 = WorkflowId.create("component", "endpoint1");
+  private static final WorkflowId WORKFLOW_ID2 = WorkflowId.create("component", "endpoint2");
   private static final WorkflowInstance WFI1 = WorkflowInstance.create(WORKFLOW_ID1, PARAMETER1);
   private static final WorkflowInstance WFI2 = WorkflowInstance.create(WORKFLOW_ID1, PARAMETER2);
+  private static final WorkflowInstance WFI3 = WorkflowInstance.create(WORKFLOW_ID1, PARAMETER3);
+  private static final WorkflowInstance OTHER_WFI = WorkflowInstance.create(WORKFLOW_ID2, PARAMETER1);
 
   @Rule
   public ExpectedException thrown = ExpectedException.none();
@@ -116,6 +123,69 @@ public class BigTableStorageTest {
 
   }
 
+  @Test
+  public void shouldPageExecutionDataForWorkflow() throws Exception {
+    setUp(0);
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI1, "triggerId1"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.created(WFI1, "execId1", "img1"), 1L, 1L));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI2, "triggerId2"), 0L, 2L));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI3, "triggerId3"), 0L, 3L));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(OTHER_WFI, "triggerId4"), 0L, 4L));
+
+    List<WorkflowInstanceExecutionData> firstPage =
+        storage.executionData(WORKFLOW_ID1, Optional.empty(), Optional.empty(), Optional.empty(), 2);
+    assertThat(firstPage.size(), is(2));
+    assertThat(firstPage.get(0).workflowInstance(), is(WFI1));
+    assertThat(firstPage.get(0).triggers().get(0).executions().get(0).executionId(), is("execId1"));
+    assertThat(firstPage.get(1).workflowInstance(), is(WFI2));
+
+    List<WorkflowInstanceExecutionData> secondPage =
+        storage.executionData(WORKFLOW_ID1, Optional.empty(), Optional.empty(), Optional.of(PARAMETER2), 2);
+    assertThat(secondPage.size(), is(1));
+    assertThat(secondPage.get(0).workflowInstance(), is(WFI3));
+    assertThat(secondPage.get(0).triggers().get(0).triggerId(), is("triggerId3"));
+
+    assertThat(
+        storage.executionData(WORKFLOW_ID1, Optional.empty(), Optional.empty(), Optional.of(PARAMETER3), 2),
+        is(empty()));
+  }
+
+  @Test
+  public void shouldReturnExecutionDataForParameterRange() throws Exception {
+    setUp(0);
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI1, "triggerId1"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI2, "triggerId2"), 0L, 1L));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI3, "triggerId3"), 0L, 2L));
+
+    List<WorkflowInstanceExecutionData> range = storage.executionData(
+        WORKFLOW_ID1, Optional.of(PARAMETER2), Optional.of(PARAMETER3), Optional.empty(), 10);
+    assertThat(range.size(), is(1));
+    assertThat(range.get(0).workflowInstance(), is(WFI2));
+
+    List<WorkflowInstanceExecutionData> fromStart = storage.executionData(
+        WORKFLOW_ID1, Optional.of("2016-01"), Optional.empty(), Optional.of(PARAMETER1), 10);
+    assertThat(fromStart.size(), is(2));
+    assertThat(fromStart.get(0).workflowInstance(), is(WFI2));
+    assertThat(fromStart.get(1).workflowInstance(), is(WFI3));
+
+    assertThat(
+        storage.executionData(WORKFLOW_ID1, Optional.of(PARAMETER3), Optional.of(PARAMETER1), Optional.empty(), 10),
+        is(empty()));
+  }
+
+  @Test
+  public void shouldWriteEventsInBatch() throws Exception {
+    setUp(0);
+    storage.writeEvents(ImmutableList.of(
+        SequenceEvent.create(Event.triggerExecution(WFI1, "triggerId1"), 0L, 0L),
+        SequenceEvent.create(Event.triggerExecution(WFI2, "triggerId2"), 0L, 1L),
+        SequenceEvent.create(Event.created(WFI1, "execId1", "img1"), 1L, 2L)));
+
+    assertThat(storage.readEvents(WFI1).size(), is(2));
+    assertThat(storage.readEvents(WFI2).size(), is(1));
+    assertThat(storage.readEvents(WFI1).last().counter(), is(1L));
+  }
+
   @Test
   public void shouldProduceIOExceptionIfTooManyPutRetries() throws Exception {
     setUp(BigtableStorage.MAX_BIGTABLE_RETRIES);
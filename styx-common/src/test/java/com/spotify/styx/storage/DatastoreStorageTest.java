@@ -44,17 +44,24 @@ import com.google.cloud.datastore.KeyQuery;
 import com.google.cloud.datastore.Query;
 import com.google.cloud.datastore.QueryResults;
 import com.google.cloud.datastore.testing.LocalDatastoreHelper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.spotify.styx.model.DataEndpoint;
+import com.spotify.styx.model.ExecutionDescription;
 import com.spotify.styx.model.Partitioning;
+import com.spotify.styx.model.StyxConfig;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.model.WorkflowState;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.RunStateSnapshot;
 import com.spotify.styx.util.ResourceNotFoundException;
 import java.net.URI;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -168,6 +175,37 @@ public class DatastoreStorageTest {
     assertThat(result, hasEntry(WORKFLOW_WITH_DOCKER_IMAGE, Optional.of(NEXT_EXECUTION)));
   }
 
+  @Test
+  public void shouldPersistNextScheduledRunsInBatch() throws Exception {
+    final Map<WorkflowId, Instant> nextNaturalTriggers = new HashMap<>();
+    final Map<Workflow, Optional<Instant>> expected = new HashMap<>();
+    // spans several entity groups per transaction and more than one transaction
+    for (int i = 0; i < DatastoreStorage.MAX_TRANSACTION_ENTITY_GROUPS * 2; i++) {
+      final Workflow workflow = Workflow.create("comp" + i, URI.create("http://foo"), FULL_DATA_ENDPOINT);
+      storage.store(workflow);
+      nextNaturalTriggers.put(workflow.id(), NEXT_EXECUTION.plusSeconds(i));
+      expected.put(workflow, Optional.of(NEXT_EXECUTION.plusSeconds(i)));
+    }
+
+    storage.updateNextNaturalTriggers(nextNaturalTriggers);
+
+    assertThat(storage.workflowsWithNextNaturalTrigger(), is(expected));
+  }
+
+  @Test
+  public void shouldSkipMissingWorkflowsWhenPersistingNextScheduledRuns() throws Exception {
+    storage.store(WORKFLOW_WITH_DOCKER_IMAGE);
+
+    storage.updateNextNaturalTriggers(ImmutableMap.of(
+        WORKFLOW_WITH_DOCKER_IMAGE.id(), NEXT_EXECUTION,
+        WORKFLOW_ID_NO_STATE, NEXT_EXECUTION));
+
+    final Map<Workflow, Optional<Instant>> result = storage.workflowsWithNextNaturalTrigger();
+    assertThat(result.size(), is(1));
+    assertThat(result, hasEntry(WORKFLOW_WITH_DOCKER_IMAGE, Optional.of(NEXT_EXECUTION)));
+    assertThat(entitiesOfKind(DatastoreStorage.KIND_WORKFLOW), hasSize(1));
+  }
+
   @Test
   public void shouldNotRemoveWorkflowWhenSettingDockerImage() throws Exception {
     Workflow workflow = Workflow.create("test", URI.create("http://foo"), FULL_DATA_ENDPOINT);
@@ -438,6 +476,52 @@ public class DatastoreStorageTest {
     assertThat(entitiesOfKind(DatastoreStorage.KIND_ACTIVE_WORKFLOW_INSTANCE), hasSize(1));
   }
 
+  @Test
+  public void shouldWriteActiveStatesInBatch() throws Exception {
+    storage.writeActiveStates(ImmutableMap.of(
+        WORKFLOW_INSTANCE1, snapshot(WORKFLOW_INSTANCE1, 42L),
+        WORKFLOW_INSTANCE2, snapshot(WORKFLOW_INSTANCE2, 84L)));
+
+    Map<WorkflowInstance, Long> activeStates = storage.allActiveStates();
+    assertThat(activeStates.entrySet(), hasSize(2));
+    assertThat(activeStates, hasEntry(WORKFLOW_INSTANCE1, 42L));
+    assertThat(activeStates, hasEntry(WORKFLOW_INSTANCE2, 84L));
+  }
+
+  @Test
+  public void shouldReturnActiveStateSnapshots() throws Exception {
+    final RunStateSnapshot snapshot = RunStateSnapshot.of(
+        RunState.newRunning(WORKFLOW_INSTANCE1, "exec-id", ExecutionDescription.forImage("busybox")), 42L);
+    storage.writeActiveStates(ImmutableMap.of(WORKFLOW_INSTANCE1, snapshot));
+    storage.writeActiveState(WORKFLOW_INSTANCE2, 84L);
+
+    Map<WorkflowInstance, RunStateSnapshot> snapshots = storage.activeStateSnapshots();
+    assertThat(snapshots.entrySet(), hasSize(1));
+    assertThat(snapshots, hasEntry(WORKFLOW_INSTANCE1, snapshot));
+  }
+
+  @Test
+  public void shouldDropSnapshotWhenWritingCounterOnly() throws Exception {
+    storage.writeActiveStates(ImmutableMap.of(WORKFLOW_INSTANCE1, snapshot(WORKFLOW_INSTANCE1, 42L)));
+    storage.writeActiveState(WORKFLOW_INSTANCE1, 43L);
+
+    assertThat(storage.activeStateSnapshots().entrySet(), hasSize(0));
+    assertThat(storage.allActiveStates(), hasEntry(WORKFLOW_INSTANCE1, 43L));
+  }
+
+  @Test
+  public void shouldDeleteActiveStatesInBatch() throws Exception {
+    storage.writeActiveState(WORKFLOW_INSTANCE1, 42L);
+    storage.writeActiveState(WORKFLOW_INSTANCE2, 84L);
+    storage.writeActiveState(WORKFLOW_INSTANCE3, 21L);
+
+    storage.deleteActiveStates(ImmutableSet.of(WORKFLOW_INSTANCE1, WORKFLOW_INSTANCE3));
+
+    Map<WorkflowInstance, Long> activeStates = storage.allActiveStates();
+    assertThat(activeStates.entrySet(), hasSize(1));
+    assertThat(activeStates, hasEntry(WORKFLOW_INSTANCE2, 84L));
+  }
+
   @Test
   public void shouldReturnAllActiveStates() throws Exception {
     storage.writeActiveState(WORKFLOW_INSTANCE1, 42L);
@@ -469,6 +553,10 @@ public class DatastoreStorageTest {
     assertThat(entitiesOfKind(DatastoreStorage.KIND_ACTIVE_WORKFLOW_INSTANCE), hasSize(2));
   }
 
+  private static RunStateSnapshot snapshot(WorkflowInstance workflowInstance, long counter) {
+    return RunStateSnapshot.of(RunState.create(workflowInstance, RunState.State.PREPARE), counter);
+  }
+
   private List<Entity> entitiesOfKind(String kind) {
     Datastore datastore = helper.options().service();
     EntityQuery query = Query.entityQueryBuilder().kind(kind).build();
@@ -508,6 +596,22 @@ public class DatastoreStorageTest {
     assertThat(storage.globalDockerRunnerId(), is("foobar"));
   }
 
+  @Test
+  public void shouldReadDefaultConfig() throws Exception {
+    assertThat(storage.config(), is(StyxConfig.create(true, "default")));
+  }
+
+  @Test
+  public void shouldReadConfig() throws Exception {
+    Entity config = Entity.builder(storage.globalConfigKey)
+        .set(DatastoreStorage.PROPERTY_CONFIG_ENABLED, false)
+        .set(DatastoreStorage.PROPERTY_CONFIG_DOCKER_RUNNER_ID, "foobar")
+        .build();
+    helper.options().service().put(config);
+
+    assertThat(storage.config(), is(StyxConfig.create(false, "foobar")));
+  }
+
   private Workflow workflow(WorkflowId workflowId) {
     return Workflow.create(
         workflowId.componentId(),
@@ -0,0 +1,106 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.storage;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Behaviour every {@link EventStorage} implementation must have. Subclasses provide the storage.
+ */
+public abstract class EventStorageContractTest {
+
+  private static final WorkflowId WORKFLOW_ID = WorkflowId.create("component", "endpoint");
+  private static final WorkflowInstance WFI1 = WorkflowInstance.create(WORKFLOW_ID, "2016-01-01");
+  private static final WorkflowInstance WFI2 = WorkflowInstance.create(WORKFLOW_ID, "2016-01-02");
+
+  private EventStorage storage;
+
+  protected abstract EventStorage createStorage() throws Exception;
+
+  @Before
+  public void setUp() throws Exception {
+    storage = createStorage();
+  }
+
+  @Test
+  public void shouldReadEventsInCounterOrder() throws Exception {
+    storage.writeEvents(ImmutableList.of(
+        SequenceEvent.create(Event.started(WFI1), 2L, 2L),
+        SequenceEvent.create(Event.triggerExecution(WFI1, "trig"), 0L, 0L),
+        SequenceEvent.create(Event.triggerExecution(WFI2, "trig"), 0L, 0L),
+        SequenceEvent.create(Event.submitted(WFI1, "exec"), 1L, 1L)));
+
+    assertThat(storage.readEvents(WFI1), contains(
+        SequenceEvent.create(Event.triggerExecution(WFI1, "trig"), 0L, 0L),
+        SequenceEvent.create(Event.submitted(WFI1, "exec"), 1L, 1L),
+        SequenceEvent.create(Event.started(WFI1), 2L, 2L)));
+  }
+
+  @Test
+  public void shouldHaveNoLatestCounterWithoutEvents() throws Exception {
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI2, "trig"), 0L, 0L));
+
+    assertThat(storage.getLatestStoredCounter(WFI1), is(Optional.empty()));
+  }
+
+  @Test
+  public void shouldReturnLatestCounter() throws Exception {
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WFI1, "trig"), 0L, 0L));
+    assertThat(storage.getLatestStoredCounter(WFI1), is(Optional.of(0L)));
+
+    storage.writeEvents(ImmutableList.of(
+        SequenceEvent.create(Event.submitted(WFI1, "exec"), 1L, 1L),
+        SequenceEvent.create(Event.started(WFI1), 2L, 2L),
+        SequenceEvent.create(Event.triggerExecution(WFI2, "trig"), 7L, 3L)));
+    assertThat(storage.getLatestStoredCounter(WFI1), is(Optional.of(2L)));
+    assertThat(storage.getLatestStoredCounter(WFI2), is(Optional.of(7L)));
+  }
+
+  @Test
+  public void shouldReturnHighestCounterWhenWrittenOutOfOrder() throws Exception {
+    storage.writeEvent(SequenceEvent.create(Event.started(WFI1), 12L, 2L));
+    storage.writeEvent(SequenceEvent.create(Event.submitted(WFI1, "exec"), 9L, 1L));
+
+    assertThat(storage.getLatestStoredCounter(WFI1), is(Optional.of(12L)));
+  }
+
+  @Test
+  public void shouldMatchLastReadEventCounter() throws Exception {
+    for (long counter = 0; counter < 120; counter++) {
+      storage.writeEvent(SequenceEvent.create(Event.retry(WFI1), counter, counter));
+    }
+
+    assertThat(
+        storage.getLatestStoredCounter(WFI1),
+        is(Optional.of(storage.readEvents(WFI1).last().counter())));
+  }
+}
@@ -23,16 +23,26 @@ package com.spotify.styx.storage;
 import static com.spotify.styx.model.Partitioning.HOURS;
 import static com.spotify.styx.model.WorkflowState.patchEnabled;
 import static java.util.Optional.empty;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import com.google.common.collect.ImmutableMap;
 import com.spotify.styx.model.DataEndpoint;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.model.WorkflowInstanceExecutionData;
 import com.spotify.styx.model.WorkflowState;
 import java.io.IOException;
 import java.net.URI;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 import org.junit.Test;
 
 /**
@@ -73,6 +83,52 @@ public class InMemoryStorageTest {
     assertThat(storage.globalEnabled(), is(true));
   }
 
+  @Test
+  public void testUpdateNextNaturalTriggers() throws IOException {
+    Storage storage = new InMemStorage();
+
+    WorkflowId id1 = WorkflowId.create("someComponent1", "someEndpoint1");
+    WorkflowId id2 = WorkflowId.create("someComponent2", "someEndpoint2");
+    WorkflowId missing = WorkflowId.create("someComponent3", "someEndpoint3");
+    Instant nextNaturalTrigger = Instant.parse("2016-03-14T14:00:00Z");
+
+    storage.store(workflow(id1));
+    storage.store(workflow(id2));
+    storage.updateNextNaturalTriggers(ImmutableMap.of(id1, nextNaturalTrigger, missing, nextNaturalTrigger));
+
+    assertThat(storage.workflowsWithNextNaturalTrigger(), is(ImmutableMap.of(
+        workflow(id1), Optional.of(nextNaturalTrigger),
+        workflow(id2), Optional.empty())));
+  }
+
+  @Test
+  public void testPageExecutionData() throws IOException {
+    InMemStorage storage = new InMemStorage();
+
+    WorkflowId id = WorkflowId.create("someComponent1", "someEndpoint1");
+    WorkflowInstance wfi1 = WorkflowInstance.create(id, "2016-01-01");
+    WorkflowInstance wfi2 = WorkflowInstance.create(id, "2016-01-02");
+    WorkflowInstance wfi3 = WorkflowInstance.create(id, "2016-01-03");
+
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(wfi3, "trig"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(wfi1, "trig"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(wfi2, "trig"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.started(wfi1), 1L, 1L));
+
+    assertThat(instances(storage.executionData(id, empty(), empty(), empty(), 2)), contains(wfi1, wfi2));
+    assertThat(instances(storage.executionData(id, empty(), empty(), Optional.of("2016-01-02"), 2)), contains(wfi3));
+    assertThat(
+        instances(storage.executionData(id, Optional.of("2016-01-02"), Optional.of("2016-01-03"), empty(), 2)),
+        contains(wfi2));
+    assertThat(instances(storage.executionData(id)), contains(wfi1, wfi2, wfi3));
+  }
+
+  private static List<WorkflowInstance> instances(List<WorkflowInstanceExecutionData> data) {
+    return data.stream()
+        .map(WorkflowInstanceExecutionData::workflowInstance)
+        .collect(toList());
+  }
+
   private Workflow workflow(WorkflowId workflowId) {
     return Workflow.create(
         workflowId.componentId(),
@@ -0,0 +1,114 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.util;
+
+import static com.spotify.styx.testdata.TestData.WORKFLOW_INSTANCE;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.RunStateSnapshot;
+import com.spotify.styx.storage.EventStorage;
+import com.spotify.styx.storage.InMemStorage;
+import java.util.Map;
+import org.junit.Test;
+
+public class ReplayEventsTest {
+
+  private final InMemStorage storage = new InMemStorage();
+
+  private void writeEvents() throws Exception {
+    storage.writeEvent(SequenceEvent.create(Event.triggerExecution(WORKFLOW_INSTANCE, "trig"), 0L, 0L));
+    storage.writeEvent(SequenceEvent.create(Event.created(WORKFLOW_INSTANCE, "exec", "img"), 1L, 1L));
+    storage.writeEvent(SequenceEvent.create(Event.started(WORKFLOW_INSTANCE), 2L, 2L));
+    storage.writeEvent(SequenceEvent.create(Event.terminate(WORKFLOW_INSTANCE, 1), 3L, 3L));
+  }
+
+  @Test
+  public void shouldReplayFullHistoryWithoutSnapshot() throws Exception {
+    writeEvents();
+
+    Map<RunState, Long> states = ReplayEvents.replayActiveStates(
+        ImmutableMap.of(WORKFLOW_INSTANCE, 3L), storage, false);
+
+    RunState state = Iterables.getOnlyElement(states.keySet());
+    assertThat(state.state(), is(RunState.State.TERMINATED));
+    assertThat(state.tries(), is(1));
+    assertThat(state.executionId().get(), is("exec"));
+    assertThat(states.get(state), is(3L));
+  }
+
+  @Test
+  public void shouldReplayOnlyEventsAfterSnapshot() throws Exception {
+    writeEvents();
+    // a snapshot that disagrees with the stored history before its counter shows it was used
+    RunStateSnapshot snapshot = RunStateSnapshot.of(
+        RunState.create(WORKFLOW_INSTANCE, "snapshot-exec", RunState.State.SUBMITTED), 1L);
+
+    Map<RunState, Long> states = ReplayEvents.replayActiveStates(
+        ImmutableMap.of(WORKFLOW_INSTANCE, 3L), ImmutableMap.of(WORKFLOW_INSTANCE, snapshot),
+        storage, false);
+
+    RunState state = Iterables.getOnlyElement(states.keySet());
+    assertThat(state.state(), is(RunState.State.TERMINATED));
+    assertThat(state.executionId().get(), is("snapshot-exec"));
+  }
+
+  @Test
+  public void shouldNotReadEventsWhenSnapshotIsCurrent() throws Exception {
+    EventStorage eventStorage = mock(EventStorage.class);
+    RunStateSnapshot snapshot = RunStateSnapshot.of(
+        RunState.create(WORKFLOW_INSTANCE, "exec", RunState.State.RUNNING), 3L);
+
+    Map<RunState, Long> states = ReplayEvents.replayActiveStates(
+        ImmutableMap.of(WORKFLOW_INSTANCE, 3L), ImmutableMap.of(WORKFLOW_INSTANCE, snapshot),
+        eventStorage, false);
+
+    RunState state = Iterables.getOnlyElement(states.keySet());
+    assertThat(state.state(), is(RunState.State.RUNNING));
+    assertThat(state.timestamp(), is(snapshot.timestamp()));
+    assertThat(states.get(state), is(3L));
+    verify(eventStorage, never()).readEvents(any(WorkflowInstance.class));
+  }
+
+  @Test
+  public void shouldIgnoreSnapshotNewerThanLastConsumedEvent() throws Exception {
+    writeEvents();
+    RunStateSnapshot snapshot = RunStateSnapshot.of(
+        RunState.create(WORKFLOW_INSTANCE, RunState.State.DONE), 5L);
+
+    Map<RunState, Long> states = ReplayEvents.replayActiveStates(
+        ImmutableMap.of(WORKFLOW_INSTANCE, 3L), ImmutableMap.of(WORKFLOW_INSTANCE, snapshot),
+        storage, false);
+
+    RunState state = Iterables.getOnlyElement(states.keySet());
+    assertThat(state.state(), is(RunState.State.TERMINATED));
+  }
+}
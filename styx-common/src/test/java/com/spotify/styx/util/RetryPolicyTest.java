@@ -0,0 +1,314 @@
+/*-
+ * -\-\-
+ * Spotify Styx Common
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.styx.util;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class RetryPolicyTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+  private final AtomicInteger attempts = new AtomicInteger();
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void shouldRetryUntilSuccess() throws Exception {
+    final RetryPolicy retryPolicy = policy().maxAttempts(5).build();
+
+    assertThat(retryPolicy.call(failing(3), e -> true), is("done"));
+    assertThat(attempts.get(), is(4));
+    assertThat(retryPolicy.retries(), is(3L));
+  }
+
+  @Test
+  public void shouldThrowLastExceptionAfterMaxAttempts() throws Exception {
+    final RetryPolicy retryPolicy = policy().maxAttempts(3).build();
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("failure 3");
+    retryPolicy.call(failing(10), e -> true);
+  }
+
+  @Test
+  public void shouldNotRetryNonRetryableExceptions() throws Exception {
+    final RetryPolicy retryPolicy = policy().maxAttempts(3).build();
+
+    try {
+      retryPolicy.call(failing(10), e -> false);
+    } catch (IOException e) {
+      assertThat(attempts.get(), is(1));
+      assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.CLOSED));
+      return;
+    }
+    throw new AssertionError("expected IOException");
+  }
+
+  @Test
+  public void shouldGiveUpAtDeadline() throws Exception {
+    final RetryPolicy retryPolicy = policy()
+        .maxAttempts(100)
+        .baseDelay(Duration.ofMillis(20))
+        .maxDelay(Duration.ofMillis(20))
+        .deadline(Duration.ofMillis(50))
+        .build();
+
+    thrown.expect(IOException.class);
+    try {
+      retryPolicy.call(failing(100), e -> true);
+    } finally {
+      assertThat(attempts.get() < 10, is(true));
+    }
+  }
+
+  @Test
+  public void shouldOpenCircuitAfterFailedCalls() throws Exception {
+    final RetryPolicy retryPolicy = policy()
+        .maxAttempts(1)
+        .failureThreshold(2)
+        .openDuration(Duration.ofMinutes(1))
+        .build();
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        retryPolicy.call(failing(100), e -> true);
+      } catch (IOException ignored) {
+      }
+    }
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.OPEN));
+
+    thrown.expect(RetryPolicy.CircuitOpenException.class);
+    try {
+      retryPolicy.call(failing(0), e -> true);
+    } finally {
+      assertThat(attempts.get(), is(2));
+    }
+  }
+
+  @Test
+  public void shouldCloseCircuitAfterSuccessfulTrial() throws Exception {
+    final RetryPolicy retryPolicy = policy()
+        .maxAttempts(1)
+        .failureThreshold(1)
+        .openDuration(Duration.ZERO)
+        .build();
+
+    try {
+      retryPolicy.call(failing(1), e -> true);
+    } catch (IOException ignored) {
+    }
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.OPEN));
+
+    assertThat(retryPolicy.call(failing(0), e -> true), is("done"));
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.CLOSED));
+  }
+
+  @Test
+  public void shouldReopenCircuitWhenTrialThrowsError() throws Exception {
+    final RetryPolicy retryPolicy = policy()
+        .maxAttempts(1)
+        .failureThreshold(1)
+        .openDuration(Duration.ZERO)
+        .build();
+
+    try {
+      retryPolicy.call(failing(1), e -> true);
+    } catch (IOException ignored) {
+    }
+
+    try {
+      retryPolicy.call(() -> {
+        throw new AssertionError("boom");
+      }, e -> true);
+    } catch (AssertionError ignored) {
+    }
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.OPEN));
+
+    assertThat(retryPolicy.call(failing(0), e -> true), is("done"));
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.CLOSED));
+  }
+
+  @Test
+  public void shouldLetNewTrialThroughWhenTrialDoesNotFinish() throws Exception {
+    final RetryPolicy retryPolicy = policy()
+        .maxAttempts(1)
+        .failureThreshold(1)
+        .openDuration(Duration.ofMillis(50))
+        .build();
+
+    try {
+      retryPolicy.call(failing(1), e -> true);
+    } catch (IOException ignored) {
+    }
+
+    final CountDownLatch trialStarted = new CountDownLatch(1);
+    final CountDownLatch trialBlocked = new CountDownLatch(1);
+    Thread.sleep(60);
+    executor.submit(() -> retryPolicy.call(() -> {
+      trialStarted.countDown();
+      Uninterruptibles.awaitUninterruptibly(trialBlocked);
+      return "done";
+    }, e -> true));
+    assertThat(trialStarted.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.HALF_OPEN));
+
+    Thread.sleep(60);
+    assertThat(retryPolicy.call(failing(0), e -> true), is("done"));
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.CLOSED));
+    trialBlocked.countDown();
+  }
+
+  @Test
+  public void shouldRestoreInterruptWhenInterruptedWhileBackingOff() throws Exception {
+    final RetryPolicy retryPolicy = policy()
+        .maxAttempts(2)
+        .baseDelay(Duration.ofSeconds(10))
+        .maxDelay(Duration.ofSeconds(10))
+        .failureThreshold(1)
+        .build();
+
+    Thread.currentThread().interrupt();
+    try {
+      retryPolicy.call(failing(10), e -> true);
+      throw new AssertionError("expected RuntimeException");
+    } catch (RuntimeException e) {
+      assertThat(e.getCause(), is(instanceOf(InterruptedException.class)));
+    }
+
+    assertThat(Thread.interrupted(), is(true));
+    assertThat(attempts.get(), is(1));
+    assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.OPEN));
+  }
+
+  @Test
+  public void shouldRetryAsyncUntilSuccess() throws Exception {
+    final RetryPolicy retryPolicy = policy().maxAttempts(5).build();
+
+    final CompletionStage<String> result =
+        retryPolicy.callAsync(async(failing(3)), e -> true, executor);
+
+    assertThat(result.toCompletableFuture().get(5, TimeUnit.SECONDS), is("done"));
+    assertThat(attempts.get(), is(4));
+  }
+
+  @Test
+  public void shouldFailAsyncAfterMaxAttempts() throws Exception {
+    final RetryPolicy retryPolicy = policy().maxAttempts(2).failureThreshold(1).build();
+
+    final CompletionStage<String> result =
+        retryPolicy.callAsync(async(failing(10)), e -> true, executor);
+
+    try {
+      result.toCompletableFuture().get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(IOException.class)));
+      assertThat(attempts.get(), is(2));
+      assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.OPEN));
+      return;
+    }
+    throw new AssertionError("expected failure");
+  }
+
+  @Test
+  public void shouldFailAsyncWhenRetryCannotBeScheduled() throws Exception {
+    final RetryPolicy retryPolicy = policy().maxAttempts(5).failureThreshold(1).build();
+    executor.shutdown();
+
+    final CompletionStage<String> result =
+        retryPolicy.callAsync(async(failing(10)), e -> true, executor);
+
+    try {
+      result.toCompletableFuture().get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), is(instanceOf(IOException.class)));
+      assertThat(attempts.get(), is(1));
+      assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.OPEN));
+      return;
+    }
+    throw new AssertionError("expected failure");
+  }
+
+  @Test
+  public void shouldThrowWhenFirstAsyncAttemptCannotStart() throws Exception {
+    final RetryPolicy retryPolicy = policy().maxAttempts(5).failureThreshold(1).build();
+
+    thrown.expect(RejectedExecutionException.class);
+    try {
+      retryPolicy.callAsync(() -> {
+        throw new RejectedExecutionException();
+      }, e -> true, executor);
+    } finally {
+      assertThat(retryPolicy.circuitState(), is(RetryPolicy.CircuitState.CLOSED));
+    }
+  }
+
+  private static RetryPolicy.Builder policy() {
+    return RetryPolicy.builder("test")
+        .baseDelay(Duration.ZERO);
+  }
+
+  private FnWithException<String, IOException> failing(int failures) {
+    return () -> {
+      final int attempt = attempts.incrementAndGet();
+      if (attempt <= failures) {
+        throw new IOException("failure " + attempt);
+      }
+      return "done";
+    };
+  }
+
+  private static <T> Supplier<CompletionStage<T>> async(
+      FnWithException<T, IOException> operation) {
+    return () -> {
+      final CompletableFuture<T> future = new CompletableFuture<>();
+      try {
+        future.complete(operation.apply());
+      } catch (IOException e) {
+        future.completeExceptionally(e);
+      }
+      return future;
+    };
+  }
+}
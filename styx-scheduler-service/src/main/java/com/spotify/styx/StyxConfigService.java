@@ -0,0 +1,154 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx;
+
+import com.google.common.base.Throwables;
+import com.spotify.styx.model.StyxConfig;
+import com.spotify.styx.storage.Storage;
+import com.spotify.styx.util.Time;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the global {@link StyxConfig} from an in-memory snapshot that is refreshed in the
+ * background.
+ *
+ * <p>Only the very first read waits for {@link Storage#config()}. After that reads always return
+ * the current snapshot, and a snapshot older than the refresh interval makes the read kick off an
+ * asynchronous refresh. Refreshes are single-flight: at most one load is in progress at any time,
+ * however many callers ask for it. If a refresh fails the previous snapshot keeps being served.
+ */
+public class StyxConfigService implements Supplier<StyxConfig> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StyxConfigService.class);
+
+  public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofSeconds(10);
+
+  private final Storage storage;
+  private final Executor executor;
+  private final Time time;
+  private final long refreshIntervalMillis;
+  private final long createdMillis;
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+  private final AtomicReference<CompletableFuture<StyxConfig>> inFlight = new AtomicReference<>();
+
+  public StyxConfigService(Storage storage, Executor executor, Time time, Duration refreshInterval) {
+    this.storage = Objects.requireNonNull(storage);
+    this.executor = Objects.requireNonNull(executor);
+    this.time = Objects.requireNonNull(time);
+    this.refreshIntervalMillis = Objects.requireNonNull(refreshInterval).toMillis();
+
+    this.createdMillis = time.get().toEpochMilli();
+  }
+
+  @Override
+  public StyxConfig get() {
+    final Snapshot current = snapshot.get();
+
+    if (current == null) {
+      // nothing to serve yet, load on the calling thread
+      try {
+        return refresh(Runnable::run).join();
+      } catch (CompletionException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+
+    if (time.get().toEpochMilli() - current.loadedMillis > refreshIntervalMillis) {
+      refresh();
+    }
+
+    return current.config;
+  }
+
+  /**
+   * Refresh the snapshot asynchronously, joining the refresh that is already in progress if any.
+   *
+   * @return a future that completes with the loaded configuration
+   */
+  public CompletableFuture<StyxConfig> refresh() {
+    return refresh(executor);
+  }
+
+  /**
+   * The time since the current snapshot was loaded, or since this service was created if no
+   * snapshot has been loaded yet.
+   */
+  public long stalenessMillis() {
+    final Snapshot current = snapshot.get();
+    final long loadedMillis = current == null ? createdMillis : current.loadedMillis;
+    return time.get().toEpochMilli() - loadedMillis;
+  }
+
+  private CompletableFuture<StyxConfig> refresh(Executor loadExecutor) {
+    final CompletableFuture<StyxConfig> future = new CompletableFuture<>();
+    while (!inFlight.compareAndSet(null, future)) {
+      final CompletableFuture<StyxConfig> running = inFlight.get();
+      if (running != null) {
+        return running;
+      }
+    }
+
+    try {
+      loadExecutor.execute(() -> load(future));
+    } catch (RejectedExecutionException e) {
+      inFlight.compareAndSet(future, null);
+      future.completeExceptionally(e);
+    }
+    return future;
+  }
+
+  private void load(CompletableFuture<StyxConfig> future) {
+    final StyxConfig config;
+    try {
+      config = storage.config();
+    } catch (Throwable e) {
+      LOG.warn("Failed to refresh styx config, staleness is {} ms", stalenessMillis(), e);
+      inFlight.compareAndSet(future, null);
+      future.completeExceptionally(e);
+      return;
+    }
+
+    snapshot.set(new Snapshot(config, time.get().toEpochMilli()));
+    inFlight.compareAndSet(future, null);
+    future.complete(config);
+  }
+
+  private static class Snapshot {
+
+    final StyxConfig config;
+    final long loadedMillis;
+
+    Snapshot(StyxConfig config, long loadedMillis) {
+      this.config = config;
+      this.loadedMillis = loadedMillis;
+    }
+  }
+}
@@ -49,6 +49,7 @@ import com.spotify.styx.api.SchedulerResource;
 import com.spotify.styx.docker.DockerRunner;
 import com.spotify.styx.docker.WorkflowValidator;
 import com.spotify.styx.model.Event;
+import com.spotify.styx.model.StyxConfig;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
@@ -61,9 +62,11 @@ import com.spotify.styx.monitoring.Stats;
 import com.spotify.styx.publisher.Publisher;
 import com.spotify.styx.schedule.ScheduleSource;
 import com.spotify.styx.schedule.ScheduleSourceFactory;
+import com.spotify.styx.state.AsyncOutputHandler;
 import com.spotify.styx.state.OutputHandler;
 import com.spotify.styx.state.QueuedStateManager;
 import com.spotify.styx.state.RunState;
+import com.spotify.styx.state.RunStateSnapshot;
 import com.spotify.styx.state.StaleStateReaper;
 import com.spotify.styx.state.StateManager;
 import com.spotify.styx.state.StateRetrier;
@@ -73,6 +76,7 @@ import com.spotify.styx.state.handlers.ExecutionDescriptionHandler;
 import com.spotify.styx.state.handlers.PublisherHandler;
 import com.spotify.styx.state.handlers.TerminationHandler;
 import com.spotify.styx.storage.AggregateStorage;
+import com.spotify.styx.storage.CachingStorage;
 import com.spotify.styx.storage.EventStorage;
 import com.spotify.styx.storage.InMemStorage;
 import com.spotify.styx.storage.NoopEventStorage;
@@ -117,12 +121,20 @@ public class StyxScheduler implements AppInit {
 
   public static final String STYX_STALE_STATE_TTL_CONFIG = "styx.stale-state-ttls";
   public static final String STYX_MODE = "styx.mode";
+  public static final String STYX_EVENT_FLUSH_MAX_BATCH_SIZE = "styx.event-flush.max-batch-size";
+  public static final String STYX_EVENT_FLUSH_INTERVAL = "styx.event-flush.interval";
+  public static final String STYX_STATE_MANAGER_SHARDS = "styx.state-manager.shards";
+  public static final String STYX_STORAGE_CACHE_MAX_SIZE = "styx.storage-cache.max-size";
+  public static final String STYX_STORAGE_CACHE_TTL = "styx.storage-cache.ttl";
+  public static final String STYX_CONFIG_REFRESH_INTERVAL = "styx.config-refresh-interval";
+  public static final String STYX_OUTPUT_HANDLERS = "styx.output-handlers";
   public static final String STYX_MODE_DEVELOPMENT = "development";
 
-  public static final int STATE_REAP_INTERVAL_SECONDS = 30;
-  public static final int STATE_RETRY_CHECK_INTERVAL_SECONDS = 2;
   public static final Duration DEFAULT_RETRY_BASE_DELAY = Duration.ofMinutes(3);
   public static final int DEFAULT_RETRY_MAX_EXPONENT = 6;
+  // the publisher is not run through an output handler executor, so this only needs to cover a
+  // pod creation or an execution description lookup
+  public static final Duration DEFAULT_OUTPUT_HANDLER_TIMEOUT = Duration.ofMinutes(5);
   public static final Duration DEFAULT_RETRY_BASE_DELAY_BT = Duration.ofSeconds(1);
 
   private static final Logger LOG = LoggerFactory.getLogger(StyxScheduler.class);
@@ -274,56 +286,105 @@ public class StyxScheduler implements AppInit {
         .setUncaughtExceptionHandler(uncaughtExceptionHandler)
         .build();
 
+    final ThreadFactory outputTimerTf = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("styx-output-timer-%d")
+        .setUncaughtExceptionHandler(uncaughtExceptionHandler)
+        .build();
+    final ThreadFactory publisherTf = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("styx-publisher-%d")
+        .setUncaughtExceptionHandler(uncaughtExceptionHandler)
+        .build();
+
     final ScheduledExecutorService executor = executorFactory.create(3, schedulerTf);
     final ExecutorService eventWorker = Executors.newFixedThreadPool(16, eventTf);
+    final ScheduledExecutorService outputTimer = Executors.newSingleThreadScheduledExecutor(outputTimerTf);
+    final ScheduledExecutorService publisherExecutor = Executors.newSingleThreadScheduledExecutor(publisherTf);
     closer.register(executorCloser("scheduler", executor));
     closer.register(executorCloser("event-worker", eventWorker));
+    closer.register(executorCloser("output-timer", outputTimer));
+    closer.register(executorCloser("publisher", publisherExecutor));
 
     final Stats stats = statsFactory.apply(environment);
-    final Storage storage = new MeteredStorage(storageFactory.apply(environment), stats, time);
+    final long storageCacheMaxSize = config.hasPath(STYX_STORAGE_CACHE_MAX_SIZE)
+        ? config.getLong(STYX_STORAGE_CACHE_MAX_SIZE)
+        : CachingStorage.DEFAULT_MAX_SIZE;
+    final Duration storageCacheTtl = config.hasPath(STYX_STORAGE_CACHE_TTL)
+        ? Duration.parse(config.getString(STYX_STORAGE_CACHE_TTL))
+        : CachingStorage.DEFAULT_TTL;
+    final Storage storage = new CachingStorage(
+        new MeteredStorage(storageFactory.apply(environment), stats, time),
+        stats, time, storageCacheMaxSize, storageCacheTtl);
     final EventStorage eventStorage = new MeteredEventStorage(eventStorageFactory.apply(environment),
                                                               stats, time);
 
     final Config staleStateTtlConfig = config.getConfig(STYX_STALE_STATE_TTL_CONFIG);
     final TimeoutConfig timeoutConfig = TimeoutConfig.createFromConfig(staleStateTtlConfig);
+    final int flushMaxBatchSize = config.hasPath(STYX_EVENT_FLUSH_MAX_BATCH_SIZE)
+        ? config.getInt(STYX_EVENT_FLUSH_MAX_BATCH_SIZE)
+        : QueuedStateManager.DEFAULT_FLUSH_MAX_BATCH_SIZE;
+    final Duration flushInterval = config.hasPath(STYX_EVENT_FLUSH_INTERVAL)
+        ? Duration.parse(config.getString(STYX_EVENT_FLUSH_INTERVAL))
+        : QueuedStateManager.DEFAULT_FLUSH_INTERVAL;
+    final int stateManagerShards = config.hasPath(STYX_STATE_MANAGER_SHARDS)
+        ? config.getInt(STYX_STATE_MANAGER_SHARDS)
+        : QueuedStateManager.DEFAULT_SHARDS;
     final QueuedStateManager stateManager = closer.register(new QueuedStateManager(
-        timeoutConfig, time, eventWorker, eventStorage));
+        timeoutConfig, time, eventWorker, eventStorage, flushMaxBatchSize, flushInterval, stats,
+        stateManagerShards));
+
+    final Duration configRefreshInterval = config.hasPath(STYX_CONFIG_REFRESH_INTERVAL)
+        ? Duration.parse(config.getString(STYX_CONFIG_REFRESH_INTERVAL))
+        : StyxConfigService.DEFAULT_REFRESH_INTERVAL;
+    final StyxConfigService styxConfig =
+        new StyxConfigService(storage, executor, time, configRefreshInterval);
 
-    final Supplier<String> dockerId = new CachedSupplier<>(storage::globalDockerRunnerId, time);
+    final Supplier<String> dockerId = () -> styxConfig.get().globalDockerRunnerId();
     final DockerRunner routingDockerRunner = DockerRunner.routing(
         id -> dockerRunnerFactory.create(id, environment, stateManager, executor, stats),
         dockerId);
     final DockerRunner dockerRunner = new MeteredDockerRunner(routingDockerRunner, stats, time);
     final Publisher publisher = publisherFactory.apply(environment);
+    final PublisherHandler publisherHandler =
+        closer.register(new PublisherHandler(publisher, publisherExecutor, time, stats));
+    publisherHandler.start();
 
+    // handlers that block on external systems run on their own executors
     final OutputHandler[] outputHandlers = new OutputHandler[] {
         transitionLogger(""),
-        new DockerRunnerHandler(dockerRunner, stateManager),
+        closer.register(asyncOutputHandler(
+            "docker-runner", new DockerRunnerHandler(dockerRunner, stateManager),
+            config, outputTimer, stats)),
         new TerminationHandler(
             DEFAULT_RETRY_BASE_DELAY,
             DEFAULT_RETRY_MAX_EXPONENT,
             stateManager),
         new MonitoringHandler(time, stats),
-        new PublisherHandler(publisher),
-        new ExecutionDescriptionHandler(storage, stateManager)
+        publisherHandler,
+        closer.register(asyncOutputHandler(
+            "execution-description", new ExecutionDescriptionHandler(storage, stateManager),
+            config, outputTimer, stats))
     };
     final StateFactory stateFactory =
         (workflowInstance) -> RunState.fresh(workflowInstance, time, outputHandlers);
 
-    final TriggerListener trigger = trigger(storage, stateFactory, stateManager);
-    final TriggerManager triggerManager = new TriggerManager(executor, trigger, time, storage);
+    final TriggerListener trigger = trigger(storage, styxConfig, stateFactory, stateManager);
+    final TriggerManager triggerManager = new TriggerManager(executor, trigger, time, storage, stats);
 
     final WorkflowCache cache = new InMemWorkflowCache();
     final Consumer<Workflow> workflowChangeListener = workflowChanged(cache, storage,
-                                                                      stats, stateManager);
-    final Consumer<Workflow> workflowRemoveListener = workflowRemoved(storage);
+                                                                      stats, stateManager,
+                                                                      triggerManager);
+    final Consumer<Workflow> workflowRemoveListener = workflowRemoved(storage, triggerManager);
 
     restoreState(eventStorage, outputHandlers, stateManager);
     triggerManager.start();
     startScheduleSources(environment, executor, workflowChangeListener, workflowRemoveListener);
     startRetryChecker(stateManager, executor);
     startStateReaper(stateManager, executor);
-    setupMetrics(stateManager, cache, storage, stats);
+    startConfigRefresher(styxConfig, configRefreshInterval, executor);
+    setupMetrics(stateManager, cache, storage, styxConfig, stats);
 
     final SchedulerResource schedulerResource = new SchedulerResource(stateManager, trigger, storage, time);
 
@@ -349,8 +410,11 @@ public class StyxScheduler implements AppInit {
     try {
       final Map<WorkflowInstance, Long> activeInstances =
           eventStorage.readActiveWorkflowInstances();
+      final Map<WorkflowInstance, RunStateSnapshot> snapshots =
+          eventStorage.readActiveStateSnapshots();
+      LOG.info("Restoring {} active states, {} from snapshots", activeInstances.size(), snapshots.size());
 
-      replayActiveStates(activeInstances, eventStorage, true)
+      replayActiveStates(activeInstances, snapshots, eventStorage, true)
           .entrySet().stream()
           .collect(toMap(
               e -> e.getKey()
@@ -380,20 +444,32 @@ public class StyxScheduler implements AppInit {
     }
   }
 
+  // the timing wheels only fire deadlines as they are advanced, so advance them every tick
   private static void startRetryChecker(StateRetrier retrier, ScheduledExecutorService exec) {
     exec.scheduleWithFixedDelay(
         guard(retrier::triggerRetries),
-        STATE_RETRY_CHECK_INTERVAL_SECONDS,
-        STATE_RETRY_CHECK_INTERVAL_SECONDS,
-        TimeUnit.SECONDS);
+        QueuedStateManager.TIMER_TICK_MILLIS,
+        QueuedStateManager.TIMER_TICK_MILLIS,
+        TimeUnit.MILLISECONDS);
   }
 
   private static void startStateReaper(StaleStateReaper reaper, ScheduledExecutorService exec) {
     exec.scheduleWithFixedDelay(
         guard(reaper::triggerTimeouts),
-        STATE_REAP_INTERVAL_SECONDS,
-        STATE_REAP_INTERVAL_SECONDS,
-        TimeUnit.SECONDS);
+        QueuedStateManager.TIMER_TICK_MILLIS,
+        QueuedStateManager.TIMER_TICK_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private static void startConfigRefresher(
+      StyxConfigService styxConfig,
+      Duration refreshInterval,
+      ScheduledExecutorService exec) {
+    exec.scheduleWithFixedDelay(
+        guard(styxConfig::refresh),
+        refreshInterval.toMillis(),
+        refreshInterval.toMillis(),
+        TimeUnit.MILLISECONDS);
   }
 
   static Runnable guard(Runnable delegate) {
@@ -410,6 +486,7 @@ public class StyxScheduler implements AppInit {
       StateManager stateManager,
       WorkflowCache workflowCache,
       Storage storage,
+      StyxConfigService styxConfig,
       Stats stats) {
 
     final Gauge<Long> queuedEventsCount = stateManager::getQueuedEventsCount;
@@ -418,6 +495,7 @@ public class StyxScheduler implements AppInit {
     final Gauge<Long> configuredWorkflowsCount = () -> workflowCache.all().stream()
         .filter(WorkflowValidator::hasDockerConfiguration)
         .count();
+    final Gauge<Long> configStaleness = styxConfig::stalenessMillis;
     final Gauge<Long> configuredEnabledWorkflowsCount = () -> {
       try {
         final Set<WorkflowId> enabledWorkflowsSet = storage.enabled();
@@ -436,10 +514,12 @@ public class StyxScheduler implements AppInit {
     stats.registerWorkflowCount("all", allWorkflowsCount);
     stats.registerWorkflowCount("configured", configuredWorkflowsCount);
     stats.registerWorkflowCount("enabled", configuredEnabledWorkflowsCount);
+    stats.registerConfigStaleness(configStaleness);
   }
 
   private TriggerListener trigger(
       Storage storage,
+      Supplier<StyxConfig> styxConfig,
       StateFactory stateFactory,
       StateManager stateManager) {
     final TriggerListener stateInitializingTrigger =
@@ -447,7 +527,7 @@ public class StyxScheduler implements AppInit {
 
     return (workflow, triggerId, instant) -> {
       try {
-        if (!storage.enabled(workflow.id()) || !storage.globalEnabled()) {
+        if (!styxConfig.get().globalEnabled() || !storage.enabled(workflow.id())) {
           LOG.info("Triggered disabled workflow {}", workflow.endpointId());
           return;
         }
@@ -463,7 +543,8 @@ public class StyxScheduler implements AppInit {
       WorkflowCache cache,
       Storage storage,
       Stats stats,
-      StateManager stateManager) {
+      StateManager stateManager,
+      TriggerManager triggerManager) {
 
     return (workflow) -> {
       stats.registerActiveStates(
@@ -476,16 +557,18 @@ public class StyxScheduler implements AppInit {
       } catch (IOException e) {
         LOG.warn("Failed to store workflow " + workflow, e);
       }
+      triggerManager.workflowChanged(workflow);
     };
   }
 
-  private static Consumer<Workflow> workflowRemoved(Storage storage) {
+  private static Consumer<Workflow> workflowRemoved(Storage storage, TriggerManager triggerManager) {
     return workflow -> {
       try {
         storage.delete(workflow.id());
       } catch (IOException e) {
         LOG.warn("Couldn't remove workflow {}. ", workflow.id());
       }
+      triggerManager.workflowRemoved(workflow.id());
     };
   }
 
@@ -538,7 +621,7 @@ public class StyxScheduler implements AppInit {
       return closer.register(DockerRunner.local(scheduler, stateManager));
     } else {
       final KubernetesClient kubernetes = closer.register(getKubernetesClient(config, id));
-      return closer.register(DockerRunner.kubernetes(kubernetes, stateManager, stats));
+      return closer.register(DockerRunner.kubernetes(id, kubernetes, stateManager, stats));
     }
   }
 
@@ -575,6 +658,24 @@ public class StyxScheduler implements AppInit {
     }
   }
 
+  private static AsyncOutputHandler asyncOutputHandler(
+      String name,
+      OutputHandler outputHandler,
+      Config config,
+      ScheduledExecutorService timer,
+      Stats stats) {
+    final String threadsPath = STYX_OUTPUT_HANDLERS + "." + name + ".threads";
+    final String timeoutPath = STYX_OUTPUT_HANDLERS + "." + name + ".timeout";
+    final int threads = config.hasPath(threadsPath)
+        ? config.getInt(threadsPath)
+        : AsyncOutputHandler.DEFAULT_THREADS;
+    final Duration timeout = config.hasPath(timeoutPath)
+        ? Duration.parse(config.getString(timeoutPath))
+        : DEFAULT_OUTPUT_HANDLER_TIMEOUT;
+    return new AsyncOutputHandler(
+        name, outputHandler, timer, timeout, stats, threads, AsyncOutputHandler.DEFAULT_QUEUE_SIZE);
+  }
+
   private static Closeable executorCloser(String name, ExecutorService executor) {
     return () -> {
       LOG.info("Shutting down executor: {}", name);
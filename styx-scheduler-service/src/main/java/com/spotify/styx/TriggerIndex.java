@@ -0,0 +1,170 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.spotify.styx.model.Workflow;
+import com.spotify.styx.model.WorkflowId;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * In-memory index of {@link Workflow}s ordered by their next natural trigger, used by
+ * {@link TriggerManager} to find the workflows that are due without reading them from storage.
+ *
+ * <p>Workflows without a stored next natural trigger are always due. The index is loaded from and
+ * periodically reconciled with storage using {@link #reconcile(Map, long)}. Changes made after a
+ * reconciliation started, as identified by {@link #version()}, are kept over the stored values,
+ * except that a kept workflow without a next natural trigger takes the stored one.
+ */
+class TriggerIndex {
+
+  private static final Comparator<Entry> BY_NEXT_TRIGGER = Comparator
+      .comparing((Entry entry) -> entry.nextNaturalTrigger.get())
+      .thenComparing(entry -> entry.workflow.id(), WorkflowId.KEY_COMPARATOR);
+
+  private final Map<WorkflowId, Entry> entries = Maps.newHashMap();
+  private final NavigableSet<Entry> byNextTrigger = Sets.newTreeSet(BY_NEXT_TRIGGER);
+  private final Set<Entry> untriggered = Sets.newLinkedHashSet();
+
+  // the version at which each workflow was last changed, since the last reconciliation
+  private final Map<WorkflowId, Long> changed = Maps.newHashMap();
+  private long version;
+
+  /**
+   * Add or replace a workflow, keeping its next natural trigger if it is already indexed.
+   */
+  synchronized void put(Workflow workflow) {
+    final Entry current = entries.get(workflow.id());
+    final Optional<Instant> nextNaturalTrigger = current != null
+        ? current.nextNaturalTrigger
+        : Optional.empty();
+    index(workflow.id(), new Entry(workflow, nextNaturalTrigger));
+  }
+
+  synchronized void remove(WorkflowId workflowId) {
+    index(workflowId, null);
+  }
+
+  synchronized void updateNextNaturalTrigger(WorkflowId workflowId, Instant nextNaturalTrigger) {
+    final Entry current = entries.get(workflowId);
+    if (current != null) {
+      index(workflowId, new Entry(current.workflow, Optional.of(nextNaturalTrigger)));
+    }
+  }
+
+  /**
+   * Get the workflows with a next natural trigger at or before the given time, in trigger order.
+   * Workflows without a next natural trigger come first.
+   */
+  synchronized Map<Workflow, Optional<Instant>> due(Instant now) {
+    final Map<Workflow, Optional<Instant>> due = Maps.newLinkedHashMap();
+    untriggered.forEach(entry -> due.put(entry.workflow, entry.nextNaturalTrigger));
+    for (Entry entry : byNextTrigger) {
+      if (entry.nextNaturalTrigger.get().isAfter(now)) {
+        break;
+      }
+      due.put(entry.workflow, entry.nextNaturalTrigger);
+    }
+    return due;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  synchronized long version() {
+    return version;
+  }
+
+  /**
+   * Replace the contents of the index with workflows read from storage.
+   *
+   * @param stored       The workflows and their next natural triggers, as read from storage
+   * @param readVersion  The {@link #version()} of the index from before storage was read
+   */
+  synchronized void reconcile(Map<Workflow, Optional<Instant>> stored, long readVersion) {
+    final Map<WorkflowId, Entry> keep = Maps.newHashMap();
+    changed.forEach((workflowId, changedVersion) -> {
+      if (changedVersion > readVersion) {
+        keep.put(workflowId, entries.get(workflowId));
+      }
+    });
+
+    entries.clear();
+    byNextTrigger.clear();
+    untriggered.clear();
+    stored.forEach((workflow, nextNaturalTrigger) -> {
+      if (!keep.containsKey(workflow.id())) {
+        add(new Entry(workflow, nextNaturalTrigger));
+        return;
+      }
+
+      // a workflow put while storage was read has no trigger of its own unless one was updated
+      final Entry kept = keep.get(workflow.id());
+      if (kept != null && !kept.nextNaturalTrigger.isPresent() && nextNaturalTrigger.isPresent()) {
+        keep.put(workflow.id(), new Entry(kept.workflow, nextNaturalTrigger));
+      }
+    });
+    keep.values().stream()
+        .filter(entry -> entry != null)
+        .forEach(this::add);
+
+    changed.values().removeIf(changedVersion -> changedVersion <= readVersion);
+  }
+
+  private void index(WorkflowId workflowId, Entry entry) {
+    final Entry current = entries.remove(workflowId);
+    if (current != null) {
+      byNextTrigger.remove(current);
+      untriggered.remove(current);
+    }
+    if (entry != null) {
+      add(entry);
+    }
+    changed.put(workflowId, ++version);
+  }
+
+  private void add(Entry entry) {
+    entries.put(entry.workflow.id(), entry);
+    if (entry.nextNaturalTrigger.isPresent()) {
+      byNextTrigger.add(entry);
+    } else {
+      untriggered.add(entry);
+    }
+  }
+
+  private static class Entry {
+
+    final Workflow workflow;
+    final Optional<Instant> nextNaturalTrigger;
+
+    Entry(Workflow workflow, Optional<Instant> nextNaturalTrigger) {
+      this.workflow = workflow;
+      this.nextNaturalTrigger = nextNaturalTrigger;
+    }
+  }
+}
@@ -27,14 +27,19 @@ import static com.spotify.styx.workflow.ParameterUtil.truncateInstant;
 import static java.util.Objects.requireNonNull;
 
 import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.spotify.styx.model.Partitioning;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.monitoring.Stats;
 import com.spotify.styx.storage.Storage;
 import com.spotify.styx.util.AlreadyInitializedException;
 import com.spotify.styx.util.Time;
 import java.io.IOException;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -45,6 +50,16 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Triggers natural executions for {@link Workflow}s.
+ *
+ * <p>Workflows and their next natural triggers are kept in a {@link TriggerIndex}, so that a tick
+ * only visits the workflows that are due. The index is loaded from {@link Storage} on the first
+ * tick and reconciled with it every {@link #RECONCILE_INTERVAL_SECONDS}. In between, it is kept up
+ * to date through {@link #workflowChanged(Workflow)}, {@link #workflowRemoved(WorkflowId)} and the
+ * next natural triggers stored by the ticks themselves.
+ *
+ * <p>Due workflows are triggered in chunks of {@link #COMMIT_CHUNK_SIZE}. The next natural
+ * triggers of a chunk are stored together with {@link Storage#updateNextNaturalTriggers(Map)}
+ * before the next chunk is triggered.
  */
 public class TriggerManager {
 
@@ -52,20 +67,36 @@ public class TriggerManager {
 
   private static final int INITIAL_DELAY_SECONDS = 1;
   private static final int TICK_INTERVAL_SECONDS = 1;
+  static final int RECONCILE_INTERVAL_SECONDS = 300;
+  static final int COMMIT_CHUNK_SIZE = 100;
 
   private final ScheduledExecutorService executor;
   private final TriggerListener triggerListener;
   private final Time time;
   private final Storage storage;
+  private final Stats stats;
+  private final TriggerIndex index = new TriggerIndex();
+
+  // only accessed from tick(), which never runs concurrently with itself
+  private Instant lastReconcile;
 
   public TriggerManager(ScheduledExecutorService exec,
                         TriggerListener triggerListener,
                         Time time,
                         Storage storage) {
+    this(exec, triggerListener, time, storage, Stats.NOOP);
+  }
+
+  public TriggerManager(ScheduledExecutorService exec,
+                        TriggerListener triggerListener,
+                        Time time,
+                        Storage storage,
+                        Stats stats) {
     this.executor = requireNonNull(exec);
     this.triggerListener = requireNonNull(triggerListener);
     this.time = requireNonNull(time);
     this.storage = requireNonNull(storage);
+    this.stats = requireNonNull(stats);
   }
 
   public void start() {
@@ -76,47 +107,109 @@ public class TriggerManager {
         TimeUnit.SECONDS);
   }
 
+  /**
+   * Add or update a workflow in the trigger index. Its next natural trigger is left untouched.
+   */
+  public void workflowChanged(Workflow workflow) {
+    index.put(workflow);
+  }
+
+  /**
+   * Remove a workflow from the trigger index.
+   */
+  public void workflowRemoved(WorkflowId workflowId) {
+    index.remove(workflowId);
+  }
+
   void tick() {
-    Map<Workflow, Optional<Instant>> map;
+    final Instant t0 = time.get();
+
+    if (lastReconcile == null
+        || !t0.isBefore(lastReconcile.plusSeconds(RECONCILE_INTERVAL_SECONDS))) {
+      final long readVersion = index.version();
+      try {
+        index.reconcile(storage.workflowsWithNextNaturalTrigger(), readVersion);
+        lastReconcile = t0;
+        LOG.debug("Reconciled trigger index with storage, {} workflows", index.size());
+      } catch (IOException e) {
+        if (lastReconcile == null) {
+          LOG.warn("Couldn't fetch workflows to trigger, skipping this run.");
+          return;
+        }
+        LOG.warn("Couldn't reconcile workflows to trigger, using the current index.", e);
+      }
+    }
+
+    final Instant now = time.get();
+    final Map<Workflow, Optional<Instant>> map = index.due(now);
+    try {
+      trigger(map, now);
+    } finally {
+      final long durationMillis = t0.until(time.get(), ChronoUnit.MILLIS);
+      stats.triggerTick(durationMillis, map.size());
+    }
+  }
+
+  private void trigger(Map<Workflow, Optional<Instant>> map, Instant now) {
+    if (map.isEmpty()) {
+      return;
+    }
+
     Set<WorkflowId> enabled;
     try {
-      map = storage.workflowsWithNextNaturalTrigger();
       enabled = storage.enabled();
     } catch (IOException e) {
       LOG.warn("Couldn't fetch workflows to trigger, skipping this run.");
       return;
     }
 
-    Instant now = time.get();
-    map.entrySet().forEach(entry -> {
-      Workflow workflow = entry.getKey();
-      Partitioning partitioning = workflow.schedule().partitioning();
-      Instant naturalTrigger = entry.getValue().orElse(truncateInstant(now, partitioning));
+    final List<Map.Entry<Workflow, Optional<Instant>>> due = Lists.newArrayList(map.entrySet());
+    for (List<Map.Entry<Workflow, Optional<Instant>>> chunk : Lists.partition(due, COMMIT_CHUNK_SIZE)) {
+      final Map<WorkflowId, Instant> nextNaturalTriggers = Maps.newLinkedHashMap();
+      chunk.forEach(entry -> {
+        Workflow workflow = entry.getKey();
+        Partitioning partitioning = workflow.schedule().partitioning();
+        Instant naturalTrigger = entry.getValue().orElse(truncateInstant(now, partitioning));
 
-      if (naturalTrigger.isAfter(now)) {
-        return;
-      }
+        if (naturalTrigger.isAfter(now)) {
+          return;
+        }
 
-      if (enabled.contains(workflow.id())) {
-        try {
-          triggerListener.event(
-              workflow,
-              "natural-trigger",
-              decrementInstant(naturalTrigger, partitioning));
-        } catch (AlreadyInitializedException e) {
-          LOG.warn("{}", e.getMessage());
+        if (enabled.contains(workflow.id())) {
+          try {
+            triggerListener.event(
+                workflow,
+                "natural-trigger",
+                decrementInstant(naturalTrigger, partitioning));
+          } catch (AlreadyInitializedException e) {
+            LOG.warn("{}", e.getMessage());
+          }
         }
-      }
 
-      Instant nextNaturalTrigger = incrementInstant(naturalTrigger, partitioning);
-      try {
-        storage.updateNextNaturalTrigger(workflow.id(), nextNaturalTrigger);
-      } catch (IOException e) {
-        LOG.error(
-            "Sent trigger for workflow {}, but didn't succeed storing next scheduled run {}.",
-            workflow.id(), nextNaturalTrigger);
-        throw Throwables.propagate(e);
-      }
-    });
+        nextNaturalTriggers.put(workflow.id(), incrementInstant(naturalTrigger, partitioning));
+      });
+
+      commit(nextNaturalTriggers);
+    }
+  }
+
+  private void commit(Map<WorkflowId, Instant> nextNaturalTriggers) {
+    if (nextNaturalTriggers.isEmpty()) {
+      return;
+    }
+
+    final Instant t0 = time.get();
+    try {
+      storage.updateNextNaturalTriggers(nextNaturalTriggers);
+    } catch (IOException e) {
+      LOG.error(
+          "Sent triggers for workflows {}, but didn't succeed storing next scheduled runs {}.",
+          nextNaturalTriggers.keySet(), nextNaturalTriggers.values());
+      throw Throwables.propagate(e);
+    }
+    final long durationMillis = t0.until(time.get(), ChronoUnit.MILLIS);
+    stats.triggerCommit(durationMillis, nextNaturalTriggers.size());
+
+    nextNaturalTriggers.forEach(index::updateNextNaturalTrigger);
   }
 }
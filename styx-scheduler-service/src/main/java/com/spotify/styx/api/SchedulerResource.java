@@ -22,6 +22,7 @@ package com.spotify.styx.api;
 
 import static com.spotify.apollo.Status.BAD_REQUEST;
 import static com.spotify.apollo.Status.INTERNAL_SERVER_ERROR;
+import static com.spotify.apollo.Status.SERVICE_UNAVAILABLE;
 import static com.spotify.styx.workflow.ParameterUtil.instantFromWorkflowInstance;
 
 import com.spotify.apollo.Response;
@@ -44,6 +45,7 @@ import java.io.IOException;
 import java.time.Instant;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 import javaslang.control.Either;
 import okio.ByteString;
@@ -52,6 +54,7 @@ public class SchedulerResource {
 
   public static final String BASE = "/api/v0";
   private static final String AD_HOC_CLI_TRIGGER_PREFIX = "ad-hoc-cli";
+  private static final int EVENT_ADMISSION_TIMEOUT_SECONDS = 1;
 
   private final StateManager stateManager;
   private final TriggerListener triggerListener;
@@ -95,9 +98,14 @@ public class SchedulerResource {
     }
 
     try {
-      stateManager.receive(event);
+      if (!stateManager.offer(event, EVENT_ADMISSION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        return Response.forStatus(SERVICE_UNAVAILABLE.withReasonPhrase("Event queue is full"));
+      }
     } catch (StateManager.IsClosed isClosed) {
       return Response.forStatus(INTERNAL_SERVER_ERROR);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return Response.forStatus(INTERNAL_SERVER_ERROR);
     }
 
     return Response.forPayload(persistentEvent);
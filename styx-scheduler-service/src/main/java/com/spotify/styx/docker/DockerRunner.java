@@ -89,9 +89,19 @@ public interface DockerRunner extends Closeable {
     return new LocalDockerRunner(executorService, stateManager);
   }
 
-  static DockerRunner kubernetes(KubernetesClient kubernetesClient, StateManager stateManager, Stats stats) {
+  /**
+   * A runner for a Kubernetes cluster. Each runner has its own executors and watch, so that a
+   * slow cluster does not hold back the others.
+   *
+   * @param id The id of the runner, used to tell clusters apart in thread names and metrics
+   */
+  static DockerRunner kubernetes(
+      String id,
+      KubernetesClient kubernetesClient,
+      StateManager stateManager,
+      Stats stats) {
     final KubernetesDockerRunner dockerRunner =
-        new KubernetesDockerRunner(kubernetesClient, stateManager, stats);
+        new KubernetesDockerRunner(id, kubernetesClient, stateManager, stats);
 
     dockerRunner.init();
 
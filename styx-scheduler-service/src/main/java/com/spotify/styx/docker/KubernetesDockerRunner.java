@@ -23,7 +23,10 @@ package com.spotify.styx.docker;
 import static com.spotify.styx.docker.KubernetesPodEventTranslator.translate;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.spotify.styx.model.DataEndpoint;
 import com.spotify.styx.model.Event;
@@ -33,26 +36,56 @@ import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.monitoring.Stats;
 import com.spotify.styx.state.RunState;
 import com.spotify.styx.state.StateManager;
+import com.spotify.styx.util.FnWithException;
+import com.spotify.styx.util.RetryPolicy;
+import com.spotify.styx.util.Time;
 import io.fabric8.kubernetes.api.model.EnvVar;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodBuilder;
+import io.fabric8.kubernetes.api.model.PodCondition;
 import io.fabric8.kubernetes.api.model.PodFluent;
 import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.api.model.PodSpecFluent;
+import io.fabric8.kubernetes.api.model.PodStatus;
 import io.fabric8.kubernetes.api.model.VolumeMount;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.Watch;
 import io.fabric8.kubernetes.client.Watcher;
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.net.ProtocolException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * A {@link DockerRunner} implementation that submits container executions to a Kubernetes cluster.
@@ -61,41 +94,123 @@ class KubernetesDockerRunner implements DockerRunner {
 
   static final String NAMESPACE = "default";
   static final String STYX_RUN = "styx-run";
+  static final String STYX_RUN_LABEL_VALUE = "true";
+  static final String STYX_EXECUTION_ID_LABEL = "styx-execution-id";
   static final String STYX_WORKFLOW_INSTANCE_ANNOTATION = "styx-workflow-instance";
   static final String COMPONENT_ID = "STYX_COMPONENT_ID";
   static final String ENDPOINT_ID = "STYX_ENDPOINT_ID";
   static final String WORKFLOW_ID = "STYX_WORKFLOW_ID";
   static final String PARAMETER = "STYX_PARAMETER";
   static final String EXECUTION_ID = "STYX_EXECUTION_ID";
-  static final int POLL_PODS_INTERVAL_SECONDS = 60;
-
-  private static final ScheduledExecutorService EXECUTOR =
-      Executors.newSingleThreadScheduledExecutor(
-          new ThreadFactoryBuilder()
-              .setDaemon(true)
-              .setNameFormat("k8s-scheduler-thread-%d")
-              .build());
-
+  static final int RESYNC_PODS_INTERVAL_SECONDS = 60;
+  static final Duration BASE_RECONNECT_BACKOFF = Duration.ofSeconds(1);
+  static final Duration MAX_RECONNECT_BACKOFF = Duration.ofSeconds(30);
+  static final int EVENT_ADMISSION_TIMEOUT_SECONDS = 1;
+  static final int SUBMIT_THREADS = 8;
+  static final int SUBMIT_QUEUE_SIZE = 1024;
+  static final double API_REQUESTS_PER_SECOND = 20;
+  static final int HTTP_TOO_MANY_REQUESTS = 429;
+  static final int REAPER_INTERVAL_MILLIS = 1000;
+  static final int REAPER_BATCH_SIZE = 50;
+  static final int REAPER_QUEUE_SIZE = 10_000;
+  static final Duration ORPHAN_GRACE_PERIOD = Duration.ofMinutes(5);
+  static final int LABEL_ATTEMPTS = 3;
+
+  private final String id;
   private final KubernetesClient client;
   private final StateManager stateManager;
   private final Stats stats;
+  private final Time time;
+  private final ScheduledExecutorService executor;
+  private final ExecutorService submitExecutor;
+  private final RetryPolicy apiRetryPolicy;
+  private final RateLimiter apiRateLimiter;
+  private final PodCache podCache = new PodCache();
+  private final AtomicInteger podOperationsInFlight = new AtomicInteger();
+  private final Queue<String> reaperQueue = new ConcurrentLinkedQueue<>();
+  private final Set<String> pendingReaps = ConcurrentHashMap.newKeySet();
+
+  private volatile Watch watch;
+  private volatile boolean closed;
+  private final Set<String> unlabeledPods = ConcurrentHashMap.newKeySet();
+  private ScheduledFuture<?> resync;
+  private ScheduledFuture<?> reaper;
+
+  KubernetesDockerRunner(String id, KubernetesClient client, StateManager stateManager, Stats stats) {
+    this(id, client, stateManager, stats, Instant::now,
+         Executors.newSingleThreadScheduledExecutor(
+             new ThreadFactoryBuilder()
+                 .setDaemon(true)
+                 .setNameFormat("k8s-" + id + "-scheduler-thread-%d")
+                 .build()),
+         createSubmitExecutor(id),
+         RetryPolicy.builder("kubernetes-" + id)
+             .maxAttempts(5)
+             .maxDelay(Duration.ofSeconds(10))
+             .deadline(Duration.ofMinutes(1))
+             .build(),
+         RateLimiter.create(API_REQUESTS_PER_SECOND));
+  }
 
-  private Watch watch;
-
-  KubernetesDockerRunner(KubernetesClient client, StateManager stateManager, Stats stats) {
+  /**
+   * The runner owns the given executors and shuts them down when closed.
+   *
+   * @param executor       Runs the watch reconnects, the resync and the pod reaper
+   * @param submitExecutor Runs the Kubernetes API requests that create and delete pods
+   */
+  @VisibleForTesting
+  KubernetesDockerRunner(
+      String id,
+      KubernetesClient client,
+      StateManager stateManager,
+      Stats stats,
+      Time time,
+      ScheduledExecutorService executor,
+      ExecutorService submitExecutor,
+      RetryPolicy apiRetryPolicy,
+      RateLimiter apiRateLimiter) {
+    this.id = Objects.requireNonNull(id);
     this.stateManager = Objects.requireNonNull(stateManager);
     this.client = Objects.requireNonNull(client).inNamespace(NAMESPACE);
     this.stats = Objects.requireNonNull(stats);
+    this.time = Objects.requireNonNull(time);
+    this.executor = Objects.requireNonNull(executor);
+    this.submitExecutor = Objects.requireNonNull(submitExecutor);
+    this.apiRetryPolicy = Objects.requireNonNull(apiRetryPolicy);
+    this.apiRateLimiter = Objects.requireNonNull(apiRateLimiter);
+  }
+
+  private static ExecutorService createSubmitExecutor(String id) {
+    return new ThreadPoolExecutor(
+        SUBMIT_THREADS, SUBMIT_THREADS,
+        0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(SUBMIT_QUEUE_SIZE),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("k8s-" + id + "-submit-thread-%d")
+            .build());
   }
 
+  /**
+   * Creates the pod for an execution in the background and returns its name right away. If the pod
+   * can not be created, a {@link Event#runError(WorkflowInstance, String)} is sent to the
+   * {@link StateManager} once retries are exhausted.
+   *
+   * @throws IOException if too many pod operations are already queued
+   */
   @Override
   public String start(WorkflowInstance workflowInstance, RunSpec runSpec) throws IOException {
+    final Pod pod = createPod(workflowInstance, runSpec);
+    final String podName = pod.getMetadata().getName();
     try {
-      Pod pod = client.pods().create(createPod(workflowInstance, runSpec));
-      return pod.getMetadata().getName();
-    } catch (KubernetesClientException kce) {
-      throw new IOException("Failed to create Kubernetes pod", kce);
+      submit("create-pod", () -> client.pods().create(pod), (e) -> {
+        LOG.warn("Failed to create pod {} for {}", podName, workflowInstance, e);
+        emit(Event.runError(workflowInstance, "Failed to create Kubernetes pod: " + e.getMessage()));
+      });
+    } catch (RejectedExecutionException e) {
+      throw new IOException("Too many Kubernetes pod operations in flight", e);
     }
+    return podName;
   }
 
   @VisibleForTesting
@@ -126,6 +241,8 @@ class KubernetesDockerRunner implements DockerRunner {
     PodBuilder podBuilder = new PodBuilder()
         .withNewMetadata()
         .withName(podName)
+        .addToLabels(STYX_RUN, STYX_RUN_LABEL_VALUE)
+        .addToLabels(STYX_EXECUTION_ID_LABEL, podName)
         .addToAnnotations(STYX_WORKFLOW_INSTANCE_ANNOTATION, workflowInstance.toKey())
         .endMetadata();
     PodFluent.SpecNested<PodBuilder> spec = podBuilder.withNewSpec()
@@ -154,51 +271,336 @@ class KubernetesDockerRunner implements DockerRunner {
     return spec.endSpec().build();
   }
 
+  /**
+   * Queues the pod of an execution for deletion by the pod reaper.
+   */
   @Override
   public void cleanup(String executionId) {
-    client.pods().withName(executionId).delete();
+    reap(executionId);
+  }
+
+  private void reap(String podName) {
+    if (pendingReaps.size() >= REAPER_QUEUE_SIZE) {
+      LOG.warn("Pod reaper backlog is full, leaving pod {} to the orphan sweep", podName);
+      return;
+    }
+    if (pendingReaps.add(podName)) {
+      reaperQueue.add(podName);
+    }
+  }
+
+  /**
+   * Deletes the next batch of queued pods with a single request, selecting them by their execution
+   * id label. Pods that could not be given that label are deleted by name instead.
+   */
+  @VisibleForTesting
+  void reapPods() {
+    stats.podReaperBacklog(pendingReaps.size());
+
+    final List<String> batch = new ArrayList<>();
+    String podName;
+    while (batch.size() < REAPER_BATCH_SIZE && (podName = reaperQueue.poll()) != null) {
+      pendingReaps.remove(podName);
+      batch.add(podName);
+    }
+    batch.removeIf(this::reapUnlabeledPod);
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    try {
+      submit("delete-pods",
+             () -> client.pods()
+                 .withLabelIn(STYX_EXECUTION_ID_LABEL, batch.toArray(new String[batch.size()]))
+                 .delete(),
+             (e) -> LOG.warn("Failed to delete pods {}", batch, e));
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Too many Kubernetes pod operations in flight, deferring deletion of {}", batch);
+      batch.forEach(this::reap);
+    }
+  }
+
+  private boolean reapUnlabeledPod(String podName) {
+    if (!unlabeledPods.contains(podName)) {
+      return false;
+    }
+
+    LOG.info("Deleting pod {} by name, it has no execution id label", podName);
+    try {
+      submit("delete-pod",
+             () -> {
+               client.pods().withName(podName).delete();
+               unlabeledPods.remove(podName);
+               return null;
+             },
+             (e) -> LOG.warn("Failed to delete pod {}", podName, e));
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Too many Kubernetes pod operations in flight, deferring deletion of {}", podName);
+      reap(podName);
+    }
+    return true;
+  }
+
+  /**
+   * Runs a Kubernetes API request on the submit executor, throttled by the client-side rate limit
+   * and retried on throttling and server errors. Retries are scheduled on {@link #executor}, so no
+   * submit thread is held while backing off.
+   *
+   * @throws RejectedExecutionException if the first attempt can not be queued on the submit executor
+   */
+  private <T> void submit(
+      String operation,
+      FnWithException<T, IOException> request,
+      Consumer<Throwable> onFailure) {
+    stats.podOperationsInFlight(id, podOperationsInFlight.incrementAndGet());
+    final Stopwatch stopwatch = Stopwatch.createStarted();
+    final CompletionStage<T> result;
+    try {
+      result = apiRetryPolicy.callAsync(
+          () -> attempt(request), KubernetesDockerRunner::isRetryable, executor);
+    } catch (RejectedExecutionException e) {
+      podOperationsInFlight.decrementAndGet();
+      throw e;
+    }
+
+    result.whenComplete((value, e) -> {
+      try {
+        if (e != null) {
+          onFailure.accept(e);
+        }
+      } finally {
+        stats.dockerRunnerOperation(id, operation, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        podOperationsInFlight.decrementAndGet();
+      }
+    });
+  }
+
+  private <T> CompletionStage<T> attempt(FnWithException<T, IOException> request) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    submitExecutor.execute(() -> {
+      try {
+        apiRateLimiter.acquire();
+        result.complete(request.apply());
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Sends an event about a pod operation that styx itself started, which is never rejected for a
+   * full event queue as there is no later resync that would send it again.
+   */
+  private void emit(Event event) {
+    try {
+      stateManager.receive(event);
+    } catch (StateManager.IsClosed isClosed) {
+      LOG.warn("Could not send {}", event, isClosed);
+    }
   }
 
   @Override
   public void close() throws IOException {
+    closed = true;
+    if (resync != null) {
+      resync.cancel(false);
+    }
+    if (reaper != null) {
+      reaper.cancel(false);
+    }
     if (watch != null) {
       watch.close();
     }
+    executor.shutdown();
+    submitExecutor.shutdown();
   }
 
   public void init() {
-    EXECUTOR.scheduleWithFixedDelay(
-        this::pollPods,
-        POLL_PODS_INTERVAL_SECONDS,
-        POLL_PODS_INTERVAL_SECONDS,
+    resync = executor.scheduleWithFixedDelay(
+        this::resyncPods,
+        RESYNC_PODS_INTERVAL_SECONDS,
+        RESYNC_PODS_INTERVAL_SECONDS,
         TimeUnit.SECONDS);
+    reaper = executor.scheduleWithFixedDelay(
+        this::reapPods,
+        REAPER_INTERVAL_MILLIS,
+        REAPER_INTERVAL_MILLIS,
+        TimeUnit.MILLISECONDS);
 
-    final String resourceVersion = client.pods().list().getMetadata().getResourceVersion();
-    watch = client.pods()
+    // label pods from before pods were labeled first, so that the watch below sees them
+    try {
+      labelUnlabeledPods();
+    } catch (Throwable t) {
+      LOG.warn("Error while labeling pre-existing styx pods", t);
+    }
+
+    final String resourceVersion = client.pods()
+        .withLabel(STYX_RUN, STYX_RUN_LABEL_VALUE)
+        .list().getMetadata().getResourceVersion();
+    watch = watchPods(resourceVersion, new PodWatcher(resourceVersion));
+  }
+
+  private Watch watchPods(String resourceVersion, Watcher<Pod> watcher) {
+    return client.pods()
+        .withLabel(STYX_RUN, STYX_RUN_LABEL_VALUE)
         .withResourceVersion(resourceVersion)
-        .watch(new PodWatcher(Integer.parseInt(resourceVersion)));
+        .watch(watcher);
+  }
+
+  /**
+   * Lists all styx pods and inspects the ones that changed since the watch last saw them. This
+   * catches up on events that the watch missed while reconnecting or that could not be admitted to
+   * a full event queue.
+   */
+  @VisibleForTesting
+  void resyncPods() {
+    try {
+      relistPods();
+    } catch (Throwable t) {
+      LOG.warn("Error while resyncing pods", t);
+    }
+  }
+
+  /**
+   * Adds the styx labels to styx pods that were created before pods were labeled, and inspects
+   * them. The watch and the resync only select labeled pods, so without this they would not see
+   * executions that were already running when the scheduler was upgraded.
+   *
+   * <p>This lists all pods in the namespace, so it only runs once on startup. Pods that can not be
+   * labeled are inspected once and deleted by name when their execution is done.
+   *
+   * @return true if no unlabeled styx pods are left
+   */
+  @VisibleForTesting
+  boolean labelUnlabeledPods() {
+    boolean allLabeled = true;
+    for (Pod pod : client.pods().list().getItems()) {
+      if (isLabeled(pod) || !workflowInstance(pod).isPresent()) {
+        continue;
+      }
+
+      final String podName = pod.getMetadata().getName();
+      if (labelPod(podName)) {
+        LOG.info("Labeled pre-existing styx pod {}", podName);
+      } else {
+        unlabeledPods.add(podName);
+        allLabeled = false;
+      }
+
+      inspectPod(Watcher.Action.MODIFIED, pod);
+    }
+    return allLabeled;
+  }
+
+  /**
+   * Patches the styx labels onto a pod, leaving the rest of it as is so that concurrent changes to
+   * the pod do not conflict with the patch.
+   */
+  private boolean labelPod(String podName) {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        apiRateLimiter.acquire();
+        client.pods().withName(podName).edit()
+            .editMetadata()
+            .addToLabels(STYX_RUN, STYX_RUN_LABEL_VALUE)
+            .addToLabels(STYX_EXECUTION_ID_LABEL, podName)
+            .endMetadata()
+            .done();
+        return true;
+      } catch (KubernetesClientException e) {
+        if (attempt >= LABEL_ATTEMPTS || !isRetryable(e)) {
+          LOG.warn("Failed to label pre-existing styx pod {}, it will be deleted by name", podName, e);
+          return false;
+        }
+        LOG.debug("Failed to label pre-existing styx pod {}, retrying", podName, e);
+      }
+    }
+  }
+
+  private static boolean isLabeled(Pod pod) {
+    final Map<String, String> labels = pod.getMetadata().getLabels();
+    return labels != null
+           && STYX_RUN_LABEL_VALUE.equals(labels.get(STYX_RUN))
+           && labels.containsKey(STYX_EXECUTION_ID_LABEL);
   }
 
-  private void pollPods() {
+  /**
+   * Lists and inspects all styx pods, and queues the orphaned ones for deletion.
+   *
+   * @return the resource version of the list, to watch from
+   */
+  private String relistPods() {
+    final Stopwatch stopwatch = Stopwatch.createStarted();
     try {
-      final PodList list = client.pods().list();
+      final PodList list = client.pods()
+          .withLabel(STYX_RUN, STYX_RUN_LABEL_VALUE)
+          .list();
+      final Set<String> podNames = new HashSet<>();
+      int orphans = 0;
       for (Pod pod : list.getItems()) {
+        final String podName = pod.getMetadata().getName();
+        podNames.add(podName);
+        if (isOrphan(pod)) {
+          LOG.info("Deleting orphaned pod {}", podName);
+          orphans++;
+          reap(podName);
+          continue;
+        }
         inspectPod(Watcher.Action.MODIFIED, pod);
       }
-    } catch (Throwable t) {
-      LOG.warn("Error while polling pods", t);
+      podCache.retainAll(podNames);
+      stats.podOrphans(orphans);
+      return list.getMetadata().getResourceVersion();
+    } finally {
+      stats.podResync(stopwatch.elapsed(TimeUnit.MILLISECONDS));
+      stats.podCacheSize(podCache.size());
     }
   }
 
-  private void inspectPod(Watcher.Action action, Pod pod) {
+  /**
+   * A pod is orphaned if its workflow instance is no longer active, e.g. because the styx
+   * scheduler was restarted before the pod could be cleaned up. Recently created pods are left
+   * alone to not race with the instance being initialized.
+   */
+  private boolean isOrphan(Pod pod) {
+    final ObjectMeta metadata = pod.getMetadata();
+    if (metadata.getDeletionTimestamp() != null || pendingReaps.contains(metadata.getName())) {
+      return false;
+    }
+
+    final Optional<WorkflowInstance> workflowInstance = workflowInstance(pod);
+    if (!workflowInstance.isPresent() || stateManager.get(workflowInstance.get()) != null) {
+      return false;
+    }
+
+    return parseTimestamp(metadata.getCreationTimestamp())
+        .map(created -> created.plus(ORPHAN_GRACE_PERIOD).isBefore(time.get()))
+        .orElse(true);
+  }
+
+  private static Optional<WorkflowInstance> workflowInstance(Pod pod) {
     final Map<String, String> annotations = pod.getMetadata().getAnnotations();
-    if (!annotations.containsKey(KubernetesDockerRunner.STYX_WORKFLOW_INSTANCE_ANNOTATION)) {
-      LOG.warn("Got pod without workflow instance annotation {}", pod.getMetadata().getName());
+    if (annotations == null || !annotations.containsKey(STYX_WORKFLOW_INSTANCE_ANNOTATION)) {
+      return Optional.empty();
+    }
+    return Optional.of(WorkflowInstance.parseKey(annotations.get(STYX_WORKFLOW_INSTANCE_ANNOTATION)));
+  }
+
+  private void inspectPod(Watcher.Action action, Pod pod) {
+    final String podName = pod.getMetadata().getName();
+    if (action == Watcher.Action.DELETED) {
+      podCache.remove(podName);
+      return;
+    }
+
+    final Optional<WorkflowInstance> workflowInstanceOpt = workflowInstance(pod);
+    if (!workflowInstanceOpt.isPresent()) {
+      LOG.warn("Got pod without workflow instance annotation {}", podName);
       return;
     }
 
-    final WorkflowInstance workflowInstance = WorkflowInstance.parseKey(
-        annotations.get(KubernetesDockerRunner.STYX_WORKFLOW_INSTANCE_ANNOTATION));
+    final WorkflowInstance workflowInstance = workflowInstanceOpt.get();
 
     final RunState runState = stateManager.get(workflowInstance);
     if (runState == null) {
@@ -206,6 +608,12 @@ class KubernetesDockerRunner implements DockerRunner {
       return;
     }
 
+    if (!podCache.changed(pod, runState.state())) {
+      LOG.debug("Pod {} unchanged since resource version {}", podName, podCache.resourceVersion(podName));
+      stats.podEventSuppressed();
+      return;
+    }
+
     final List<Event> events = translate(workflowInstance, runState, action, pod);
 
     for (Event event : events) {
@@ -213,23 +621,114 @@ class KubernetesDockerRunner implements DockerRunner {
         stats.pullImageError();
       }
 
+      // slow the watcher down on a backlogged instance, and if there is still no room forget the
+      // pod so that the next resync translates its status again
       try {
-        stateManager.receive(event);
+        if (!stateManager.offer(event, EVENT_ADMISSION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          LOG.warn("Event queue for {} is full, leaving {} to the next resync", workflowInstance, event);
+          podCache.remove(podName);
+          return;
+        }
       } catch (StateManager.IsClosed isClosed) {
         LOG.warn("Could not receive kubernetes event", isClosed);
         throw Throwables.propagate(isClosed);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        podCache.remove(podName);
+        return;
       }
     }
+
+    if (events.isEmpty()) {
+      podCache.update(pod, runState.state());
+      return;
+    }
+
+    lastTransitionTime(pod).ifPresent(
+        transitionTime -> stats.podEventLag(Duration.between(transitionTime, time.get()).toMillis()));
+
+    // the transitions may still be illegal or fail to persist, so inspect the pod again until its
+    // status no longer translates into events
+    podCache.pending(pod);
+  }
+
+  /**
+   * Returns the most recent transition timestamp in the status of a pod, i.e. when the status that
+   * is being translated into events was observed by Kubernetes.
+   */
+  @VisibleForTesting
+  static Optional<Instant> lastTransitionTime(Pod pod) {
+    final PodStatus status = pod.getStatus();
+    if (status == null) {
+      return Optional.empty();
+    }
+
+    final Stream<String> conditionTimes = Optional.ofNullable(status.getConditions())
+        .orElse(Collections.emptyList()).stream()
+        .map(PodCondition::getLastTransitionTime);
+    final Stream<String> containerTimes = Optional.ofNullable(status.getContainerStatuses())
+        .orElse(Collections.emptyList()).stream()
+        .filter(cs -> STYX_RUN.equals(cs.getName()) && cs.getState() != null)
+        .flatMap(cs -> Stream.of(
+            cs.getState().getRunning() == null ? null : cs.getState().getRunning().getStartedAt(),
+            cs.getState().getTerminated() == null ? null : cs.getState().getTerminated().getFinishedAt()));
+
+    return Stream.concat(conditionTimes, containerTimes)
+        .map(KubernetesDockerRunner::parseTimestamp)
+        .filter(Optional::isPresent)
+        .map(Optional::get)
+        .max(Comparator.naturalOrder());
   }
 
+  private static Optional<Instant> parseTimestamp(String timestamp) {
+    if (Strings.isNullOrEmpty(timestamp)) {
+      return Optional.empty();
+    }
+    try {
+      return Optional.of(Instant.parse(timestamp));
+    } catch (DateTimeParseException e) {
+      return Optional.empty();
+    }
+  }
+
+  private static long reconnectDelayMillis(int attempts) {
+    final long capped = Math.min(
+        MAX_RECONNECT_BACKOFF.toMillis(),
+        BASE_RECONNECT_BACKOFF.toMillis() << Math.min(attempts - 1, 16));
+    // equal jitter: keep half of the delay and randomize the other half
+    final long halfMillis = capped / 2;
+    return halfMillis + ThreadLocalRandom.current().nextLong(halfMillis + 1);
+  }
+
+  private static boolean isRetryable(Throwable e) {
+    if (!(e instanceof KubernetesClientException)) {
+      return false;
+    }
+    final int code = ((KubernetesClientException) e).getCode();
+    return code == HTTP_TOO_MANY_REQUESTS || code >= HttpURLConnection.HTTP_INTERNAL_ERROR;
+  }
+
+  private static boolean isGone(KubernetesClientException e) {
+    // older api servers drop the connection instead of answering 410 Gone
+    return e != null
+           && (e.getCode() == HttpURLConnection.HTTP_GONE || e.getCause() instanceof ProtocolException);
+  }
+
+  /**
+   * Watches styx pods from a resource version, which is treated as opaque. When the watch closes it
+   * is re-established from the last seen resource version with a bounded, jittered backoff. If
+   * that version is gone from the API server, all pods are relisted before watching again so that
+   * no transitions are lost.
+   */
   public class PodWatcher implements Watcher<Pod> {
 
-    private static final int RECONNECT_DELAY_SECONDS = 1;
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
 
-    private int lastResourceVersion;
+    private volatile String lastResourceVersion;
+    private volatile boolean relist;
 
-    PodWatcher(int resourceVersion) {
-      this.lastResourceVersion = resourceVersion;
+    PodWatcher(String resourceVersion) {
+      this.lastResourceVersion = Objects.requireNonNull(resourceVersion);
     }
 
     @Override
@@ -238,26 +737,36 @@ class KubernetesDockerRunner implements DockerRunner {
         return;
       }
 
+      reconnectAttempts.set(0);
+
       final String podName = pod.getMetadata().getName();
-      LOG.info("Pod event for {} at resource version {}", podName, lastResourceVersion);
+      LOG.info("Pod event for {} at resource version {}", podName, pod.getMetadata().getResourceVersion());
       LOG.info("Action: {}", action);
 
       try {
         inspectPod(action, pod);
       } finally {
-        // fixme: this breaks the kubernetes api convention of not interpreting the resource version
-        // https://github.com/kubernetes/kubernetes/blob/release-1.2/docs/devel/api-conventions.md#metadata
-        lastResourceVersion = Integer.parseInt(pod.getMetadata().getResourceVersion());
+        lastResourceVersion = pod.getMetadata().getResourceVersion();
       }
     }
 
     private void reconnect() {
-      LOG.warn("Re-establishing watching from {}", lastResourceVersion);
+      if (closed) {
+        return;
+      }
 
       try {
-        client.pods()
-            .withResourceVersion(Integer.toString(lastResourceVersion))
-            .watch(this);
+        if (relist) {
+          lastResourceVersion = relistPods();
+          relist = false;
+        }
+
+        LOG.warn("Re-establishing watching from {}", lastResourceVersion);
+        watch = watchPods(lastResourceVersion, this);
+        if (closed) {
+          // lost the race with close()
+          watch.close();
+        }
       } catch (Throwable e) {
         LOG.warn("Retry threw", e);
         scheduleReconnect();
@@ -265,18 +774,24 @@ class KubernetesDockerRunner implements DockerRunner {
     }
 
     private void scheduleReconnect() {
-      EXECUTOR.schedule(this::reconnect, RECONNECT_DELAY_SECONDS, TimeUnit.SECONDS);
+      final long delayMillis = reconnectDelayMillis(reconnectAttempts.incrementAndGet());
+      executor.schedule(this::reconnect, delayMillis, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public void onClose(KubernetesClientException e) {
+      if (closed) {
+        return;
+      }
+
       LOG.warn("Watch closed", e);
 
-      // kube seems to gc old resource versions
-      if (e != null && e.getCause() instanceof ProtocolException) {
-        // todo: this is racy : more events can be purged while we're playing catch up
-        lastResourceVersion++;
-        reconnect();
+      if (isGone(e)) {
+        // the resource version was compacted away, events since then can only be recovered by a relist
+        LOG.warn("Resource version {} is gone, relisting pods", lastResourceVersion);
+        stats.podWatchGap();
+        relist = true;
+        executor.execute(this::reconnect);
       } else {
         scheduleReconnect();
       }
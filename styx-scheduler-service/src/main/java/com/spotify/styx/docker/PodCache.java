@@ -0,0 +1,136 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.docker;
+
+import com.spotify.styx.state.RunState;
+import io.fabric8.kubernetes.api.model.ContainerState;
+import io.fabric8.kubernetes.api.model.ContainerStatus;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.PodStatus;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A local cache of the styx pods seen by {@link KubernetesDockerRunner}, keyed by pod name.
+ *
+ * <p>Each entry remembers the resource version of the pod, the parts of its status that
+ * {@link KubernetesPodEventTranslator} looks at, and the {@link RunState.State} of the workflow
+ * instance when the pod was last inspected. A pod only needs to be inspected again when either of
+ * those has changed, which lets the periodic resync skip the pods the watch has already handled.
+ *
+ * <p>A pod whose status was translated into events is only recorded as pending, since the
+ * transitions of those events may still fail. It keeps being inspected until its status no longer
+ * translates into any events, i.e. until it is reflected in the state of its workflow instance.
+ */
+class PodCache {
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Returns true if the pod or the state of its workflow instance changed since the pod was last
+   * recorded with {@link #update(Pod, RunState.State)}, or if it was recorded as pending.
+   */
+  boolean changed(Pod pod, RunState.State state) {
+    final Entry entry = entries.get(pod.getMetadata().getName());
+    return entry == null
+           || entry.state != state
+           || !entry.statusKey.equals(statusKey(pod));
+  }
+
+  void update(Pod pod, RunState.State state) {
+    entries.put(
+        pod.getMetadata().getName(),
+        new Entry(pod.getMetadata().getResourceVersion(), statusKey(pod), state));
+  }
+
+  /**
+   * Records a pod whose status was translated into events that have not taken effect yet.
+   */
+  void pending(Pod pod) {
+    entries.put(
+        pod.getMetadata().getName(),
+        new Entry(pod.getMetadata().getResourceVersion(), statusKey(pod), null));
+  }
+
+  void remove(String podName) {
+    entries.remove(podName);
+  }
+
+  /**
+   * Drops the entries of all pods that are not in the given set, e.g. pods that were deleted while
+   * the watch was reconnecting.
+   */
+  void retainAll(Set<String> podNames) {
+    entries.keySet().retainAll(podNames);
+  }
+
+  String resourceVersion(String podName) {
+    final Entry entry = entries.get(podName);
+    return entry == null ? null : entry.resourceVersion;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  private static String statusKey(Pod pod) {
+    final PodStatus status = pod.getStatus();
+    if (status == null) {
+      return "";
+    }
+
+    final StringBuilder key = new StringBuilder(Objects.toString(status.getPhase()));
+    final List<ContainerStatus> containerStatuses = status.getContainerStatuses();
+    if (containerStatuses != null) {
+      for (ContainerStatus cs : containerStatuses) {
+        if (!KubernetesDockerRunner.STYX_RUN.equals(cs.getName())) {
+          continue;
+        }
+        key.append('/').append(cs.getReady());
+        final ContainerState containerState = cs.getState();
+        if (containerState != null && containerState.getWaiting() != null) {
+          key.append("/waiting:").append(containerState.getWaiting().getReason());
+        }
+        if (containerState != null && containerState.getTerminated() != null) {
+          key.append("/terminated:").append(containerState.getTerminated().getExitCode());
+        }
+      }
+    }
+    return key.toString();
+  }
+
+  private static class Entry {
+
+    final String resourceVersion;
+    final String statusKey;
+    // null while pending
+    final RunState.State state;
+
+    Entry(String resourceVersion, String statusKey, RunState.State state) {
+      this.resourceVersion = resourceVersion;
+      this.statusKey = statusKey;
+      this.state = state;
+    }
+  }
+}
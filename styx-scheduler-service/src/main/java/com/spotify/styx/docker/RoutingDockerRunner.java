@@ -20,10 +20,15 @@
 
 package com.spotify.styx.docker;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
 import com.google.common.collect.Maps;
 import com.google.common.io.Closer;
 import com.spotify.styx.model.WorkflowInstance;
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
@@ -32,14 +37,30 @@ import java.util.function.Supplier;
  * A {@link DockerRunner} that routes to several underlying instances that are created using the
  * injected {@link com.spotify.styx.docker.DockerRunner.DockerRunnerFactory}.
  *
- * <p>Current implementation only creates one runner with the default id.
+ * <p>The runner id is read from the runnerId supplier on each routing decision. It is either a
+ * single id, or a comma separated list of weighted ids such as {@code "gke-a:3,gke-b:1"}. New
+ * executions are spread over the listed runners in proportion to their weights, using smooth
+ * weighted round-robin. A runner with weight 0 gets no new executions, but is still used to clean
+ * up executions that it started.
+ *
+ * <p>Executions are cleaned up on the runner that started them. Executions that this instance did
+ * not start, e.g. because the scheduler was restarted, are cleaned up on all listed runners.
  */
 class RoutingDockerRunner implements DockerRunner {
 
+  private static final Splitter RUNNER_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+  private static final Splitter WEIGHT_SPLITTER = Splitter.on(':').trimResults();
+
   private final DockerRunnerFactory dockerRunnerFactory;
   private final Supplier<String> runnerId;
 
   private final ConcurrentMap<String, DockerRunner> dockerRunners = Maps.newConcurrentMap();
+  private final ConcurrentMap<String, String> executionRunners = Maps.newConcurrentMap();
+
+  // guarded by this
+  private String spec;
+  private Map<String, Integer> weights;
+  private final Map<String, Integer> currentWeights = Maps.newHashMap();
 
   RoutingDockerRunner(DockerRunnerFactory dockerRunnerFactory, Supplier<String> runnerId) {
     this.dockerRunnerFactory = Objects.requireNonNull(dockerRunnerFactory);
@@ -48,12 +69,34 @@ class RoutingDockerRunner implements DockerRunner {
 
   @Override
   public String start(WorkflowInstance workflowInstance, RunSpec runSpec) throws IOException {
-    return runner().start(workflowInstance, runSpec);
+    final String id;
+    try {
+      id = nextRunnerId();
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Could not choose a docker runner", e);
+    }
+
+    final String executionId = runner(id).start(workflowInstance, runSpec);
+    executionRunners.put(executionId, id);
+    return executionId;
   }
 
   @Override
   public void cleanup(String executionId) {
-    runner().cleanup(executionId);
+    final String id = executionRunners.remove(executionId);
+    if (id != null) {
+      runner(id).cleanup(executionId);
+      return;
+    }
+
+    final Map<String, Integer> weights;
+    try {
+      weights = weights();
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Could not clean up execution {}", executionId, e);
+      return;
+    }
+    weights.keySet().forEach(configuredId -> runner(configuredId).cleanup(executionId));
   }
 
   @Override
@@ -63,7 +106,71 @@ class RoutingDockerRunner implements DockerRunner {
     closer.close();
   }
 
-  private DockerRunner runner() {
-    return dockerRunners.computeIfAbsent(runnerId.get(), dockerRunnerFactory);
+  private DockerRunner runner(String id) {
+    return dockerRunners.computeIfAbsent(id, dockerRunnerFactory);
+  }
+
+  private synchronized String nextRunnerId() {
+    final Map<String, Integer> weights = weights();
+
+    String selected = null;
+    int totalWeight = 0;
+    for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+      final int weight = entry.getValue();
+      totalWeight += weight;
+      final int currentWeight = currentWeights.merge(entry.getKey(), weight, Integer::sum);
+      if (weight > 0 && (selected == null || currentWeight > currentWeights.get(selected))) {
+        selected = entry.getKey();
+      }
+    }
+
+    if (selected == null) {
+      throw new IllegalArgumentException("No docker runner with a positive weight in '" + spec + "'");
+    }
+    currentWeights.merge(selected, -totalWeight, Integer::sum);
+    return selected;
+  }
+
+  private synchronized Map<String, Integer> weights() {
+    final String currentSpec = runnerId.get();
+    if (!currentSpec.equals(spec)) {
+      weights = parseWeights(currentSpec);
+      spec = currentSpec;
+      currentWeights.clear();
+    }
+    return weights;
+  }
+
+  /**
+   * Parses a runner spec such as {@code "gke-a:3,gke-b:1"} into runner weights. Runners without
+   * an explicit weight get a weight of 1.
+   *
+   * @throws IllegalArgumentException if the spec is malformed
+   */
+  @VisibleForTesting
+  static Map<String, Integer> parseWeights(String spec) {
+    final Map<String, Integer> weights = new LinkedHashMap<>();
+    for (String runner : RUNNER_SPLITTER.split(spec)) {
+      final List<String> parts = WEIGHT_SPLITTER.splitToList(runner);
+      if (parts.size() > 2 || parts.get(0).isEmpty()) {
+        throw new IllegalArgumentException("Invalid docker runner '" + runner + "' in '" + spec + "'");
+      }
+
+      final int weight;
+      try {
+        weight = parts.size() == 2 ? Integer.parseInt(parts.get(1)) : 1;
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid docker runner weight in '" + spec + "'", e);
+      }
+      if (weight < 0) {
+        throw new IllegalArgumentException("Negative docker runner weight in '" + spec + "'");
+      }
+      weights.put(parts.get(0), weight);
+    }
+
+    if (weights.isEmpty()) {
+      throw new IllegalArgumentException("No docker runner in '" + spec + "'");
+    }
+    return weights;
   }
 }
@@ -22,12 +22,16 @@ package com.spotify.styx.monitoring;
 
 import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.state.RunStateSnapshot;
 import com.spotify.styx.storage.EventStorage;
+import com.spotify.styx.util.RetryPolicy;
 import com.spotify.styx.util.Time;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
 
 public final class MeteredEventStorage extends MeteredBase implements EventStorage {
@@ -37,6 +41,7 @@ public final class MeteredEventStorage extends MeteredBase implements EventStora
   public MeteredEventStorage(EventStorage delegate, Stats stats, Time time) {
     super(stats, time);
     this.delegate = Objects.requireNonNull(delegate);
+    delegate.retryPolicies().forEach(stats::registerRetryPolicy);
   }
 
   @Override
@@ -49,6 +54,11 @@ public final class MeteredEventStorage extends MeteredBase implements EventStora
     timedStorage("writeEvent", () -> delegate.writeEvent(sequenceEvent));
   }
 
+  @Override
+  public void writeEvents(List<SequenceEvent> sequenceEvents) throws IOException {
+    timedStorage("writeEvents", () -> delegate.writeEvents(sequenceEvents));
+  }
+
   @Override
   public Optional<Long> getLatestStoredCounter(WorkflowInstance workflowInstance)
       throws IOException {
@@ -60,11 +70,21 @@ public final class MeteredEventStorage extends MeteredBase implements EventStora
     timedStorage("writeActiveState", () -> delegate.writeActiveState(workflowInstance, counter));
   }
 
+  @Override
+  public void writeActiveStates(Map<WorkflowInstance, RunStateSnapshot> snapshots) throws IOException {
+    timedStorage("writeActiveStates", () -> delegate.writeActiveStates(snapshots));
+  }
+
   @Override
   public void deleteActiveState(WorkflowInstance workflowInstance) throws IOException {
     timedStorage("deleteActiveState", () -> delegate.deleteActiveState(workflowInstance));
   }
 
+  @Override
+  public void deleteActiveStates(Set<WorkflowInstance> workflowInstances) throws IOException {
+    timedStorage("deleteActiveStates", () -> delegate.deleteActiveStates(workflowInstances));
+  }
+
   @Override
   public Map<WorkflowInstance, Long> readActiveWorkflowInstances() throws IOException {
     return timedStorage("readActiveWorkflowInstances", () -> delegate.readActiveWorkflowInstances());
@@ -74,4 +94,14 @@ public final class MeteredEventStorage extends MeteredBase implements EventStora
   public Map<WorkflowInstance, Long> readActiveWorkflowInstances(String componentId) throws IOException {
     return timedStorage("readActiveWorkflowInstances", () -> delegate.readActiveWorkflowInstances(componentId));
   }
+
+  @Override
+  public Map<WorkflowInstance, RunStateSnapshot> readActiveStateSnapshots() throws IOException {
+    return timedStorage("readActiveStateSnapshots", () -> delegate.readActiveStateSnapshots());
+  }
+
+  @Override
+  public List<RetryPolicy> retryPolicies() {
+    return delegate.retryPolicies();
+  }
 }
@@ -20,12 +20,14 @@
 
 package com.spotify.styx.monitoring;
 
+import com.spotify.styx.model.StyxConfig;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import com.spotify.styx.model.WorkflowInstanceExecutionData;
 import com.spotify.styx.model.WorkflowState;
 import com.spotify.styx.storage.Storage;
+import com.spotify.styx.util.RetryPolicy;
 import com.spotify.styx.util.Time;
 import java.io.IOException;
 import java.time.Instant;
@@ -42,6 +44,7 @@ public final class MeteredStorage extends MeteredBase implements Storage {
   public MeteredStorage(Storage delegate, Stats stats, Time time) {
     super(stats, time);
     this.delegate = Objects.requireNonNull(delegate);
+    delegate.retryPolicies().forEach(stats::registerRetryPolicy);
   }
 
   @Override
@@ -59,6 +62,11 @@ public final class MeteredStorage extends MeteredBase implements Storage {
     return timedStorage("globalDockerRunnerId", delegate::globalDockerRunnerId);
   }
 
+  @Override
+  public StyxConfig config() throws IOException {
+    return timedStorage("config", delegate::config);
+  }
+
   @Override
   public void store(Workflow workflow) throws IOException {
     timedStorage("storeWorkflow", () -> delegate.store(workflow));
@@ -80,6 +88,12 @@ public final class MeteredStorage extends MeteredBase implements Storage {
         () -> delegate.updateNextNaturalTrigger(workflowId, nextNaturalTrigger));
   }
 
+  @Override
+  public void updateNextNaturalTriggers(Map<WorkflowId, Instant> nextNaturalTriggers) throws IOException {
+    timedStorage("updateNextNaturalTriggers",
+        () -> delegate.updateNextNaturalTriggers(nextNaturalTriggers));
+  }
+
   @Override
   public Map<Workflow, Optional<Instant>> workflowsWithNextNaturalTrigger()
       throws IOException {
@@ -98,6 +112,17 @@ public final class MeteredStorage extends MeteredBase implements Storage {
     return timedStorage("executionData", () -> delegate.executionData(workflowId));
   }
 
+  @Override
+  public List<WorkflowInstanceExecutionData> executionData(
+      WorkflowId workflowId,
+      Optional<String> start,
+      Optional<String> end,
+      Optional<String> after,
+      int limit) throws IOException {
+    return timedStorage(
+        "executionData", () -> delegate.executionData(workflowId, start, end, after, limit));
+  }
+
   @Override
   public boolean enabled(WorkflowId workflowId) throws IOException {
     return timedStorage("enabled", () -> delegate.enabled(workflowId));
@@ -127,4 +152,9 @@ public final class MeteredStorage extends MeteredBase implements Storage {
   public WorkflowState workflowState(WorkflowId workflowId) throws IOException {
     return timedStorage("workflowState", () -> delegate.workflowState(workflowId));
   }
+
+  @Override
+  public List<RetryPolicy> retryPolicies() {
+    return delegate.retryPolicies();
+  }
 }
@@ -26,6 +26,7 @@ import com.codahale.metrics.Meter;
 import com.spotify.metrics.core.MetricId;
 import com.spotify.metrics.core.SemanticMetricRegistry;
 import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.util.RetryPolicy;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -53,6 +54,10 @@ public final class MetricsStats implements Stats {
       .tagged("what", "workflow-count")
       .tagged("unit", "workflow");
 
+  private static final MetricId CONFIG_STALENESS = BASE
+      .tagged("what", "config-staleness")
+      .tagged("unit", UNIT_MILLISECOND);
+
   private static final MetricId STORAGE_DURATION = BASE
       .tagged("what", "storage-operation-duration")
       .tagged("unit", UNIT_MILLISECOND);
@@ -77,26 +82,204 @@ public final class MetricsStats implements Stats {
       .tagged("what", "pull-image-error-rate")
       .tagged("unit", UNIT_FREQUENCY);
 
+  private static final MetricId TIMER_SCAN_COUNT = BASE
+      .tagged("what", "timer-scan-count")
+      .tagged("unit", "timer");
+
+  private static final MetricId TIMER_FIRING_SKEW = BASE
+      .tagged("what", "timer-firing-skew")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId TRIGGER_TICK_DURATION = BASE
+      .tagged("what", "trigger-tick-duration")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId TRIGGER_TICK_SCANNED = BASE
+      .tagged("what", "trigger-tick-scanned-count")
+      .tagged("unit", "workflow");
+
+  private static final MetricId TRIGGER_COMMIT_DURATION = BASE
+      .tagged("what", "trigger-commit-duration")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId TRIGGER_COMMIT_SIZE = BASE
+      .tagged("what", "trigger-commit-size")
+      .tagged("unit", "workflow");
+
+  private static final MetricId CACHE_HIT_RATE = BASE
+      .tagged("what", "cache-hit-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId CACHE_MISS_RATE = BASE
+      .tagged("what", "cache-miss-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId CACHE_LOAD_DURATION = BASE
+      .tagged("what", "cache-load-duration")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId EVENT_QUEUE_DEPTH = BASE
+      .tagged("what", "event-queue-depth")
+      .tagged("unit", "event");
+
+  private static final MetricId EVENT_ADMISSION_WAIT = BASE
+      .tagged("what", "event-admission-wait")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId EVENT_REJECTED_RATE = BASE
+      .tagged("what", "event-rejected-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId OUTPUT_HANDLER_QUEUE_DEPTH = BASE
+      .tagged("what", "output-handler-queue-depth")
+      .tagged("unit", "transition");
+
+  private static final MetricId OUTPUT_HANDLER_LATENCY = BASE
+      .tagged("what", "output-handler-latency")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId OUTPUT_HANDLER_TIMEOUT_RATE = BASE
+      .tagged("what", "output-handler-timeout-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId OUTPUT_HANDLER_SATURATED_RATE = BASE
+      .tagged("what", "output-handler-saturated-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId OUTPUT_HANDLER_REJECTED_RATE = BASE
+      .tagged("what", "output-handler-rejected-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId PUBLISHER_OUTBOX_SIZE = BASE
+      .tagged("what", "publisher-outbox-size")
+      .tagged("unit", "event");
+
+  private static final MetricId PUBLISHER_OUTBOX_AGE = BASE
+      .tagged("what", "publisher-outbox-oldest-age")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId PUBLISHER_OUTBOX_DROPPED_RATE = BASE
+      .tagged("what", "publisher-outbox-dropped-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId STORAGE_RETRY_COUNT = BASE
+      .tagged("what", "storage-retry-count")
+      .tagged("unit", "retry");
+
+  private static final MetricId STORAGE_CIRCUIT_STATE = BASE
+      .tagged("what", "storage-circuit-state")
+      .tagged("unit", "state");
+
+  private static final MetricId POD_CACHE_SIZE = BASE
+      .tagged("what", "pod-cache-size")
+      .tagged("unit", "pod");
+
+  private static final MetricId POD_RESYNC_DURATION = BASE
+      .tagged("what", "pod-resync-duration")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId POD_EVENT_SUPPRESSED_RATE = BASE
+      .tagged("what", "pod-event-suppressed-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId POD_WATCH_GAP_RATE = BASE
+      .tagged("what", "pod-watch-gap-rate")
+      .tagged("unit", UNIT_FREQUENCY);
+
+  private static final MetricId POD_EVENT_LAG = BASE
+      .tagged("what", "pod-event-lag")
+      .tagged("unit", UNIT_MILLISECOND);
+
+  private static final MetricId POD_OPERATIONS_IN_FLIGHT = BASE
+      .tagged("what", "pod-operations-in-flight")
+      .tagged("unit", "operation");
+
+  private static final MetricId POD_REAPER_BACKLOG = BASE
+      .tagged("what", "pod-reaper-backlog")
+      .tagged("unit", "pod");
+
+  private static final MetricId POD_ORPHANS = BASE
+      .tagged("what", "pod-orphans")
+      .tagged("unit", "pod");
+
   private final SemanticMetricRegistry registry;
 
   private final Histogram submitToRunning;
   private final Meter pullImageErrorMeter;
+  private final Histogram triggerTickDuration;
+  private final Histogram triggerTickScanned;
+  private final Histogram triggerCommitDuration;
+  private final Histogram triggerCommitSize;
+  private final Histogram eventQueueDepth;
+  private final Histogram eventAdmissionWait;
+  private final Meter eventRejectedMeter;
+  private final Meter publisherOutboxDroppedMeter;
+  private final Histogram podCacheSize;
+  private final Histogram podResyncDuration;
+  private final Meter podEventSuppressedMeter;
+  private final Meter podWatchGapMeter;
+  private final Histogram podEventLag;
+  private final Histogram podReaperBacklog;
+  private final Histogram podOrphans;
   private final ConcurrentMap<String, Histogram> storageOperationHistograms;
   private final ConcurrentMap<String, Meter> storageOperationMeters;
   private final ConcurrentMap<String, Histogram> dockerOperationHistograms;
   private final ConcurrentMap<String, Meter> dockerOperationMeters;
+  private final ConcurrentMap<MetricId, Histogram> dockerRunnerOperationHistograms;
+  private final ConcurrentMap<MetricId, Meter> dockerRunnerOperationMeters;
+  private final ConcurrentMap<String, Histogram> podOperationsInFlightHistograms;
   private final ConcurrentHashMap<WorkflowId, Gauge> activeStatesPerWorkflowGauges;
+  private final ConcurrentMap<String, Histogram> timerScanCountHistograms;
+  private final ConcurrentMap<String, Histogram> timerFiringSkewHistograms;
+  private final ConcurrentMap<String, Meter> cacheHitMeters;
+  private final ConcurrentMap<String, Meter> cacheMissMeters;
+  private final ConcurrentMap<String, Histogram> cacheLoadHistograms;
+  private final ConcurrentMap<String, Histogram> outputHandlerQueueDepthHistograms;
+  private final ConcurrentMap<String, Histogram> outputHandlerLatencyHistograms;
+  private final ConcurrentMap<String, Meter> outputHandlerTimeoutMeters;
+  private final ConcurrentMap<String, Meter> outputHandlerSaturatedMeters;
+  private final ConcurrentMap<String, Meter> outputHandlerRejectedMeters;
+  private final ConcurrentMap<String, RetryPolicy> retryPolicies;
 
   public MetricsStats(SemanticMetricRegistry registry) {
     this.registry = Objects.requireNonNull(registry);
 
     this.submitToRunning = registry.histogram(TRANSITIONING_DURATION);
     this.pullImageErrorMeter = registry.meter(PULL_IMAGE_ERROR_RATE);
+    this.triggerTickDuration = registry.histogram(TRIGGER_TICK_DURATION);
+    this.triggerTickScanned = registry.histogram(TRIGGER_TICK_SCANNED);
+    this.triggerCommitDuration = registry.histogram(TRIGGER_COMMIT_DURATION);
+    this.triggerCommitSize = registry.histogram(TRIGGER_COMMIT_SIZE);
+    this.eventQueueDepth = registry.histogram(EVENT_QUEUE_DEPTH);
+    this.eventAdmissionWait = registry.histogram(EVENT_ADMISSION_WAIT);
+    this.eventRejectedMeter = registry.meter(EVENT_REJECTED_RATE);
+    this.publisherOutboxDroppedMeter = registry.meter(PUBLISHER_OUTBOX_DROPPED_RATE);
+    this.podCacheSize = registry.histogram(POD_CACHE_SIZE);
+    this.podResyncDuration = registry.histogram(POD_RESYNC_DURATION);
+    this.podEventSuppressedMeter = registry.meter(POD_EVENT_SUPPRESSED_RATE);
+    this.podWatchGapMeter = registry.meter(POD_WATCH_GAP_RATE);
+    this.podEventLag = registry.histogram(POD_EVENT_LAG);
+    this.podReaperBacklog = registry.histogram(POD_REAPER_BACKLOG);
+    this.podOrphans = registry.histogram(POD_ORPHANS);
     this.storageOperationHistograms = new ConcurrentHashMap<>();
     this.storageOperationMeters = new ConcurrentHashMap<>();
     this.dockerOperationHistograms = new ConcurrentHashMap<>();
     this.dockerOperationMeters = new ConcurrentHashMap<>();
+    this.dockerRunnerOperationHistograms = new ConcurrentHashMap<>();
+    this.dockerRunnerOperationMeters = new ConcurrentHashMap<>();
+    this.podOperationsInFlightHistograms = new ConcurrentHashMap<>();
     this.activeStatesPerWorkflowGauges = new ConcurrentHashMap<>();
+    this.timerScanCountHistograms = new ConcurrentHashMap<>();
+    this.timerFiringSkewHistograms = new ConcurrentHashMap<>();
+    this.cacheHitMeters = new ConcurrentHashMap<>();
+    this.cacheMissMeters = new ConcurrentHashMap<>();
+    this.cacheLoadHistograms = new ConcurrentHashMap<>();
+    this.outputHandlerQueueDepthHistograms = new ConcurrentHashMap<>();
+    this.outputHandlerLatencyHistograms = new ConcurrentHashMap<>();
+    this.outputHandlerTimeoutMeters = new ConcurrentHashMap<>();
+    this.outputHandlerSaturatedMeters = new ConcurrentHashMap<>();
+    this.outputHandlerRejectedMeters = new ConcurrentHashMap<>();
+    this.retryPolicies = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -111,6 +294,16 @@ public final class MetricsStats implements Stats {
     dockerOpMeter(operation).mark();
   }
 
+  @Override
+  public void dockerRunnerOperation(String runner, String operation, long durationMillis) {
+    dockerRunnerOperationHistograms.computeIfAbsent(
+        DOCKER_DURATION.tagged("runner", runner, "operation", operation), registry::histogram)
+        .update(durationMillis);
+    dockerRunnerOperationMeters.computeIfAbsent(
+        DOCKER_RATE.tagged("runner", runner, "operation", operation), registry::meter)
+        .mark();
+  }
+
   @Override
   public void submitToRunningTime(long durationSeconds) {
     submitToRunning.update(durationSeconds);
@@ -140,11 +333,183 @@ public final class MetricsStats implements Stats {
     registry.register(WORKFLOW_COUNT.tagged("status", status), workflowCount);
   }
 
+  @Override
+  public void registerConfigStaleness(Gauge<Long> stalenessMillis) {
+    registry.register(CONFIG_STALENESS, stalenessMillis);
+  }
+
   @Override
   public void pullImageError() {
     pullImageErrorMeter.mark();
   }
 
+  @Override
+  public void timerScanCount(String timer, long scannedCount) {
+    timerScanCountHistograms.computeIfAbsent(
+        timer, (t) -> registry.histogram(TIMER_SCAN_COUNT.tagged("timer", t)))
+        .update(scannedCount);
+  }
+
+  @Override
+  public void timerFiringSkew(String timer, long skewMillis) {
+    timerFiringSkewHistograms.computeIfAbsent(
+        timer, (t) -> registry.histogram(TIMER_FIRING_SKEW.tagged("timer", t)))
+        .update(skewMillis);
+  }
+
+  @Override
+  public void triggerTick(long durationMillis, long scannedWorkflows) {
+    triggerTickDuration.update(durationMillis);
+    triggerTickScanned.update(scannedWorkflows);
+  }
+
+  @Override
+  public void triggerCommit(long durationMillis, long chunkSize) {
+    triggerCommitDuration.update(durationMillis);
+    triggerCommitSize.update(chunkSize);
+  }
+
+  @Override
+  public void cacheHit(String cache) {
+    cacheHitMeters.computeIfAbsent(
+        cache, (c) -> registry.meter(CACHE_HIT_RATE.tagged("cache", c)))
+        .mark();
+  }
+
+  @Override
+  public void cacheMiss(String cache) {
+    cacheMissMeters.computeIfAbsent(
+        cache, (c) -> registry.meter(CACHE_MISS_RATE.tagged("cache", c)))
+        .mark();
+  }
+
+  @Override
+  public void cacheLoad(String cache, long durationMillis) {
+    cacheLoadHistograms.computeIfAbsent(
+        cache, (c) -> registry.histogram(CACHE_LOAD_DURATION.tagged("cache", c)))
+        .update(durationMillis);
+  }
+
+  @Override
+  public void eventQueueDepth(long depth) {
+    eventQueueDepth.update(depth);
+  }
+
+  @Override
+  public void eventAdmissionWait(long durationMillis) {
+    eventAdmissionWait.update(durationMillis);
+  }
+
+  @Override
+  public void eventRejected() {
+    eventRejectedMeter.mark();
+  }
+
+  @Override
+  public void outputHandlerQueueDepth(String handler, long depth) {
+    outputHandlerQueueDepthHistograms.computeIfAbsent(
+        handler, (h) -> registry.histogram(OUTPUT_HANDLER_QUEUE_DEPTH.tagged("handler", h)))
+        .update(depth);
+  }
+
+  @Override
+  public void outputHandlerLatency(String handler, long durationMillis) {
+    outputHandlerLatencyHistograms.computeIfAbsent(
+        handler, (h) -> registry.histogram(OUTPUT_HANDLER_LATENCY.tagged("handler", h)))
+        .update(durationMillis);
+  }
+
+  @Override
+  public void outputHandlerTimeout(String handler) {
+    outputHandlerTimeoutMeters.computeIfAbsent(
+        handler, (h) -> registry.meter(OUTPUT_HANDLER_TIMEOUT_RATE.tagged("handler", h)))
+        .mark();
+  }
+
+  @Override
+  public void outputHandlerSaturated(String handler) {
+    outputHandlerSaturatedMeters.computeIfAbsent(
+        handler, (h) -> registry.meter(OUTPUT_HANDLER_SATURATED_RATE.tagged("handler", h)))
+        .mark();
+  }
+
+  @Override
+  public void outputHandlerRejected(String handler) {
+    outputHandlerRejectedMeters.computeIfAbsent(
+        handler, (h) -> registry.meter(OUTPUT_HANDLER_REJECTED_RATE.tagged("handler", h)))
+        .mark();
+  }
+
+  @Override
+  public void registerPublisherOutboxSize(Gauge<Long> outboxSize) {
+    registry.register(PUBLISHER_OUTBOX_SIZE, outboxSize);
+  }
+
+  @Override
+  public void registerPublisherOutboxAge(Gauge<Long> oldestEntryAgeMillis) {
+    registry.register(PUBLISHER_OUTBOX_AGE, oldestEntryAgeMillis);
+  }
+
+  @Override
+  public void publisherOutboxDropped() {
+    publisherOutboxDroppedMeter.mark();
+  }
+
+  @Override
+  public void registerRetryPolicy(RetryPolicy retryPolicy) {
+    // the same storage can be wrapped both as Storage and as EventStorage
+    if (retryPolicies.putIfAbsent(retryPolicy.name(), retryPolicy) != null) {
+      return;
+    }
+    final String backend = retryPolicy.name();
+    registry.register(STORAGE_RETRY_COUNT.tagged("backend", backend),
+                      (Gauge<Long>) retryPolicy::retries);
+    registry.register(STORAGE_CIRCUIT_STATE.tagged("backend", backend),
+                      (Gauge<Integer>) () -> retryPolicy.circuitState().ordinal());
+  }
+
+  @Override
+  public void podCacheSize(long size) {
+    podCacheSize.update(size);
+  }
+
+  @Override
+  public void podResync(long durationMillis) {
+    podResyncDuration.update(durationMillis);
+  }
+
+  @Override
+  public void podEventSuppressed() {
+    podEventSuppressedMeter.mark();
+  }
+
+  @Override
+  public void podWatchGap() {
+    podWatchGapMeter.mark();
+  }
+
+  @Override
+  public void podEventLag(long lagMillis) {
+    podEventLag.update(lagMillis);
+  }
+
+  @Override
+  public void podOperationsInFlight(String runner, long count) {
+    podOperationsInFlightHistograms.computeIfAbsent(
+        runner, (r) -> registry.histogram(POD_OPERATIONS_IN_FLIGHT.tagged("runner", r)))
+        .update(count);
+  }
+
+  @Override
+  public void podReaperBacklog(long size) {
+    podReaperBacklog.update(size);
+  }
+
+  @Override
+  public void podOrphans(long count) {
+    podOrphans.update(count);
+  }
+
   private Histogram storageOpHistogram(String operation) {
     return storageOperationHistograms.computeIfAbsent(
         operation, (op) -> registry.histogram(STORAGE_DURATION.tagged("operation", op)));
@@ -22,6 +22,7 @@ package com.spotify.styx.monitoring;
 
 import com.codahale.metrics.Gauge;
 import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.util.RetryPolicy;
 
 final class NoopStats implements Stats {
 
@@ -33,6 +34,10 @@ final class NoopStats implements Stats {
   public void dockerOperation(String operation, long durationMillis) {
   }
 
+  @Override
+  public void dockerRunnerOperation(String runner, String operation, long durationMillis) {
+  }
+
   @Override
   public void submitToRunningTime(long durationSeconds) {
   }
@@ -53,7 +58,119 @@ final class NoopStats implements Stats {
   public void registerWorkflowCount(String status, Gauge<Long> workflowCount) {
   }
 
+  @Override
+  public void registerConfigStaleness(Gauge<Long> stalenessMillis) {
+  }
+
   @Override
   public void pullImageError() {
   }
+
+  @Override
+  public void timerScanCount(String timer, long scannedCount) {
+  }
+
+  @Override
+  public void timerFiringSkew(String timer, long skewMillis) {
+  }
+
+  @Override
+  public void triggerTick(long durationMillis, long scannedWorkflows) {
+  }
+
+  @Override
+  public void triggerCommit(long durationMillis, long chunkSize) {
+  }
+
+  @Override
+  public void cacheHit(String cache) {
+  }
+
+  @Override
+  public void cacheMiss(String cache) {
+  }
+
+  @Override
+  public void cacheLoad(String cache, long durationMillis) {
+  }
+
+  @Override
+  public void eventQueueDepth(long depth) {
+  }
+
+  @Override
+  public void eventAdmissionWait(long durationMillis) {
+  }
+
+  @Override
+  public void eventRejected() {
+  }
+
+  @Override
+  public void outputHandlerQueueDepth(String handler, long depth) {
+  }
+
+  @Override
+  public void outputHandlerLatency(String handler, long durationMillis) {
+  }
+
+  @Override
+  public void outputHandlerTimeout(String handler) {
+  }
+
+  @Override
+  public void outputHandlerSaturated(String handler) {
+  }
+
+  @Override
+  public void outputHandlerRejected(String handler) {
+  }
+
+  @Override
+  public void registerPublisherOutboxSize(Gauge<Long> outboxSize) {
+  }
+
+  @Override
+  public void registerPublisherOutboxAge(Gauge<Long> oldestEntryAgeMillis) {
+  }
+
+  @Override
+  public void publisherOutboxDropped() {
+  }
+
+  @Override
+  public void registerRetryPolicy(RetryPolicy retryPolicy) {
+  }
+
+  @Override
+  public void podCacheSize(long size) {
+  }
+
+  @Override
+  public void podResync(long durationMillis) {
+  }
+
+  @Override
+  public void podEventSuppressed() {
+  }
+
+  @Override
+  public void podWatchGap() {
+  }
+
+  @Override
+  public void podEventLag(long lagMillis) {
+  }
+
+  @Override
+  public void podOperationsInFlight(String runner, long count) {
+  }
+
+  @Override
+  public void podReaperBacklog(long size) {
+  }
+
+  @Override
+  public void podOrphans(long count) {
+  }
 }
@@ -22,6 +22,7 @@ package com.spotify.styx.monitoring;
 
 import com.codahale.metrics.Gauge;
 import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.util.RetryPolicy;
 
 /**
  * Interface for collecting statistics from throughout the Styx service
@@ -32,6 +33,8 @@ public interface Stats {
 
   void dockerOperation(String operation, long durationMillis);
 
+  void dockerRunnerOperation(String runner, String operation, long durationMillis);
+
   void submitToRunningTime(long durationSeconds);
 
   void registerQueuedEvents(Gauge<Long> queuedEventsCount);
@@ -42,7 +45,63 @@ public interface Stats {
 
   void registerWorkflowCount(String status, Gauge<Long> workflowCount);
 
+  void registerConfigStaleness(Gauge<Long> stalenessMillis);
+
   void pullImageError();
 
+  void timerScanCount(String timer, long scannedCount);
+
+  void timerFiringSkew(String timer, long skewMillis);
+
+  void triggerTick(long durationMillis, long scannedWorkflows);
+
+  void triggerCommit(long durationMillis, long chunkSize);
+
+  void cacheHit(String cache);
+
+  void cacheMiss(String cache);
+
+  void cacheLoad(String cache, long durationMillis);
+
+  void eventQueueDepth(long depth);
+
+  void eventAdmissionWait(long durationMillis);
+
+  void eventRejected();
+
+  void outputHandlerQueueDepth(String handler, long depth);
+
+  void outputHandlerLatency(String handler, long durationMillis);
+
+  void outputHandlerTimeout(String handler);
+
+  void outputHandlerSaturated(String handler);
+
+  void outputHandlerRejected(String handler);
+
+  void registerPublisherOutboxSize(Gauge<Long> outboxSize);
+
+  void registerPublisherOutboxAge(Gauge<Long> oldestEntryAgeMillis);
+
+  void publisherOutboxDropped();
+
+  void registerRetryPolicy(RetryPolicy retryPolicy);
+
+  void podCacheSize(long size);
+
+  void podResync(long durationMillis);
+
+  void podEventSuppressed();
+
+  void podWatchGap();
+
+  void podEventLag(long lagMillis);
+
+  void podOperationsInFlight(String runner, long count);
+
+  void podReaperBacklog(long size);
+
+  void podOrphans(long count);
+
   Stats NOOP = new NoopStats();
 }
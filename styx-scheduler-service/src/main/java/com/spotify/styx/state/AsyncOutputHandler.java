@@ -0,0 +1,227 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.styx.state;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.styx.monitoring.Stats;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link OutputHandler} that invokes a delegate on its own bounded executor, so that a slow
+ * handler does not hold up the event workers of the {@link QueuedStateManager} or other handlers.
+ *
+ * <p>The executor is made up of a number of single threaded lanes. All transitions of a
+ * {@link com.spotify.styx.model.WorkflowInstance} go to the same lane, which keeps them in order.
+ * An invocation that runs for longer than the timeout is interrupted. If the queue of a lane is
+ * full the caller waits for room, which slows the event workers down to the rate of the handler
+ * while keeping transitions in order and never losing one. As invocations time out, a lane always
+ * frees up eventually. The delegate is never invoked on the calling thread.
+ *
+ * <p>The queue depth at submission, the latency from submission to completion, timeouts,
+ * saturation and rejections are reported per handler name.
+ */
+public class AsyncOutputHandler implements OutputHandler, Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AsyncOutputHandler.class);
+
+  static final int SHUTDOWN_GRACE_PERIOD_SECONDS = 5;
+
+  public static final int DEFAULT_THREADS = 8;
+  public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+  private final String name;
+  private final OutputHandler delegate;
+  private final ScheduledExecutorService timer;
+  private final long timeoutMillis;
+  private final Stats stats;
+  private final ThreadPoolExecutor[] lanes;
+
+  public AsyncOutputHandler(
+      String name,
+      OutputHandler delegate,
+      ScheduledExecutorService timer,
+      Duration timeout,
+      Stats stats) {
+    this(name, delegate, timer, timeout, stats, DEFAULT_THREADS, DEFAULT_QUEUE_SIZE);
+  }
+
+  public AsyncOutputHandler(
+      String name,
+      OutputHandler delegate,
+      ScheduledExecutorService timer,
+      Duration timeout,
+      Stats stats,
+      int threads,
+      int queueSize) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+    this.name = Objects.requireNonNull(name);
+    this.delegate = Objects.requireNonNull(delegate);
+    this.timer = Objects.requireNonNull(timer);
+    this.timeoutMillis = Objects.requireNonNull(timeout).toMillis();
+    this.stats = Objects.requireNonNull(stats);
+
+    final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("styx-output-" + name + "-%d")
+        .build();
+    final RejectedExecutionHandler awaitRoom = awaitRoom(name, stats);
+    this.lanes = new ThreadPoolExecutor[threads];
+    for (int i = 0; i < threads; i++) {
+      lanes[i] = new ThreadPoolExecutor(
+          1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize), threadFactory,
+          awaitRoom);
+    }
+  }
+
+  /**
+   * Waits for room in the queue of a full lane. Only rejects if the lane is closed, or if the
+   * caller is interrupted while waiting.
+   */
+  private static RejectedExecutionHandler awaitRoom(String name, Stats stats) {
+    return (invocation, lane) -> {
+      if (lane.isShutdown()) {
+        throw new RejectedExecutionException("Output handler " + name + " is closed");
+      }
+      stats.outputHandlerSaturated(name);
+      try {
+        lane.getQueue().put(invocation);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException("Interrupted waiting for output handler " + name);
+      }
+      // the lane may have been closed while waiting, and would then never run the invocation
+      if (lane.isShutdown() && lane.remove(invocation)) {
+        throw new RejectedExecutionException("Output handler " + name + " is closed");
+      }
+    };
+  }
+
+  @Override
+  public void transitionInto(RunState state) {
+    final ThreadPoolExecutor lane =
+        lanes[Math.floorMod(state.workflowInstance().hashCode(), lanes.length)];
+    final Invocation invocation = new Invocation(state);
+
+    try {
+      lane.execute(invocation);
+    } catch (RejectedExecutionException e) {
+      if (lane.isShutdown()) {
+        LOG.warn("Output handler {} is closed, dropping transition into {}", name, state);
+        return;
+      }
+      LOG.error("Interrupted waiting for output handler {}, dropping transition into {}", name, state);
+      stats.outputHandlerRejected(name);
+      return;
+    }
+
+    stats.outputHandlerQueueDepth(name, lane.getQueue().size());
+  }
+
+  @Override
+  public void close() {
+    for (ThreadPoolExecutor lane : lanes) {
+      lane.shutdown();
+    }
+
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_GRACE_PERIOD_SECONDS);
+    int dropped = 0;
+    for (ThreadPoolExecutor lane : lanes) {
+      try {
+        lane.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      dropped += lane.shutdownNow().size();
+    }
+
+    if (dropped > 0) {
+      LOG.warn("{} transition(s) in output handler {} were not handled", dropped, name);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AsyncOutputHandler{" + name + ": " + delegate + "}";
+  }
+
+  /**
+   * A single invocation of the delegate, interrupted by the {@link #timer} if it runs for too long.
+   */
+  private class Invocation extends FutureTask<Void> {
+
+    private final RunState state;
+    private final long submittedNanos = System.nanoTime();
+
+    Invocation(RunState state) {
+      super(() -> delegate.transitionInto(state), null);
+      this.state = state;
+    }
+
+    @Override
+    public void run() {
+      final ScheduledFuture<?> watchdog =
+          timer.schedule(this::timeOut, timeoutMillis, TimeUnit.MILLISECONDS);
+      try {
+        super.run();
+      } finally {
+        watchdog.cancel(false);
+        stats.outputHandlerLatency(
+            name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedNanos));
+      }
+    }
+
+    @Override
+    protected void done() {
+      if (isCancelled()) {
+        return;
+      }
+      try {
+        get();
+      } catch (ExecutionException e) {
+        LOG.warn("Output handler {} threw", name, e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    private void timeOut() {
+      if (cancel(true)) {
+        LOG.warn("Output handler {} timed out after {}ms on {}", name, timeoutMillis, state);
+        stats.outputHandlerTimeout(name);
+      }
+    }
+  }
+}
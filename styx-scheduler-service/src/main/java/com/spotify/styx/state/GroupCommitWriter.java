@@ -0,0 +1,215 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.state;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.storage.EventStorage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists the {@link SequenceEvent}s produced by {@link QueuedStateManager} transitions in group
+ * commits.
+ *
+ * <p>Writes are queued and flushed from a single thread. A flush collects up to
+ * {@code maxBatchSize} writes, waiting at most {@code flushInterval} after the first one, and
+ * stores them with one {@link EventStorage#writeEvents(List)} call. Active state updates for the
+ * same {@link WorkflowInstance} within a flush are coalesced so that only the last
+ * {@link RunStateSnapshot} is stored, using {@link EventStorage#writeActiveStates(Map)} and
+ * {@link EventStorage#deleteActiveStates(Set)}.
+ *
+ * <p>The {@link CompletionStage} returned by {@link #write(SequenceEvent, RunState)} completes once
+ * the whole flush it was part of is durable, or exceptionally if any part of it failed.
+ */
+class GroupCommitWriter implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+  static final String FLUSHER_THREAD_NAME = "styx-event-flusher";
+  static final int POLL_TIMEOUT_MILLIS = 10;
+  static final int SHUTDOWN_GRACE_PERIOD_SECONDS = 5;
+
+  private static final long POLL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(POLL_TIMEOUT_MILLIS);
+
+  private final EventStorage storage;
+  private final int maxBatchSize;
+  private final long flushIntervalNanos;
+
+  private final BlockingQueue<PendingWrite> pendingWrites = new LinkedBlockingQueue<>();
+
+  private final Thread flusherThread;
+  private final CountDownLatch closedLatch = new CountDownLatch(1);
+  private volatile boolean running = true;
+
+  GroupCommitWriter(EventStorage storage, int maxBatchSize, Duration flushInterval) {
+    this.storage = Objects.requireNonNull(storage);
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("maxBatchSize must be positive");
+    }
+    this.maxBatchSize = maxBatchSize;
+    this.flushIntervalNanos = Objects.requireNonNull(flushInterval).toNanos();
+
+    this.flusherThread = new Thread(this::flushLoop);
+    flusherThread.setName(FLUSHER_THREAD_NAME);
+    flusherThread.start();
+  }
+
+  /**
+   * Queue a {@link SequenceEvent} and the matching active state update for the next flush.
+   *
+   * @param sequenceEvent  The event to store
+   * @param nextState      The state resulting from the event. If terminal the workflow instance
+   *                       stops being tracked as active, otherwise it is snapshotted
+   * @return a stage that completes when the write is durable
+   */
+  CompletionStage<Void> write(SequenceEvent sequenceEvent, RunState nextState) {
+    final PendingWrite write = nextState.state().isTerminal()
+        ? new PendingWrite(sequenceEvent, Optional.empty())
+        : new PendingWrite(sequenceEvent, Optional.of(RunStateSnapshot.of(nextState, sequenceEvent.counter())));
+    pendingWrites.add(write);
+    return write.future;
+  }
+
+  int getPendingWritesCount() {
+    return pendingWrites.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!running) {
+      return;
+    }
+    running = false;
+
+    try {
+      if (!closedLatch.await(SHUTDOWN_GRACE_PERIOD_SECONDS, TimeUnit.SECONDS)) {
+        flusherThread.interrupt();
+        throw new IOException(
+            "Graceful shutdown failed, " + getPendingWritesCount() + " writes were not flushed");
+      }
+    } catch (InterruptedException e) {
+      flusherThread.interrupt();
+      throw new IOException(e);
+    }
+  }
+
+  private void flushLoop() {
+    final List<PendingWrite> batch = Lists.newArrayListWithCapacity(maxBatchSize);
+    while (running || !pendingWrites.isEmpty()) {
+      try {
+        final PendingWrite first = pendingWrites.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+
+        final long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < maxBatchSize) {
+          // stop lingering as soon as we are closed, but still take what is already queued
+          final long remaining = running ? deadline - System.nanoTime() : 0;
+          final PendingWrite next = remaining > 0
+              ? pendingWrites.poll(Math.min(remaining, POLL_TIMEOUT_NANOS), TimeUnit.NANOSECONDS)
+              : pendingWrites.poll();
+          if (next != null) {
+            batch.add(next);
+          } else if (remaining <= 0) {
+            break;
+          }
+        }
+      } catch (InterruptedException e) {
+        batch.forEach(write -> write.future.completeExceptionally(e));
+        break;
+      }
+
+      flush(batch);
+      batch.clear();
+    }
+
+    closedLatch.countDown();
+  }
+
+  private void flush(List<PendingWrite> batch) {
+    final List<SequenceEvent> events = Lists.newArrayListWithCapacity(batch.size());
+    final Map<WorkflowInstance, RunStateSnapshot> activations = Maps.newLinkedHashMap();
+    final Set<WorkflowInstance> deactivations = Sets.newLinkedHashSet();
+
+    for (PendingWrite write : batch) {
+      final SequenceEvent sequenceEvent = write.sequenceEvent;
+      final WorkflowInstance workflowInstance = sequenceEvent.event().workflowInstance();
+      events.add(sequenceEvent);
+
+      // only the last update per instance needs to reach storage
+      if (write.snapshot.isPresent()) {
+        deactivations.remove(workflowInstance);
+        activations.put(workflowInstance, write.snapshot.get());
+      } else {
+        activations.remove(workflowInstance);
+        deactivations.add(workflowInstance);
+      }
+    }
+
+    try {
+      storage.writeEvents(events);
+      if (!activations.isEmpty()) {
+        storage.writeActiveStates(activations);
+      }
+      if (!deactivations.isEmpty()) {
+        storage.deleteActiveStates(deactivations);
+      }
+    } catch (Throwable e) {
+      LOG.warn("Failed to flush {} events", batch.size(), e);
+      batch.forEach(write -> write.future.completeExceptionally(e));
+      return;
+    }
+
+    batch.forEach(write -> write.future.complete(null));
+  }
+
+  private static class PendingWrite {
+
+    final SequenceEvent sequenceEvent;
+    final Optional<RunStateSnapshot> snapshot;
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    PendingWrite(SequenceEvent sequenceEvent, Optional<RunStateSnapshot> snapshot) {
+      this.sequenceEvent = sequenceEvent;
+      this.snapshot = snapshot;
+    }
+  }
+}
@@ -27,19 +27,30 @@ import com.spotify.styx.model.Event;
 import com.spotify.styx.model.SequenceEvent;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.monitoring.Stats;
 import com.spotify.styx.storage.EventStorage;
 import com.spotify.styx.util.AlreadyInitializedException;
 import com.spotify.styx.util.Time;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 import java.util.Objects;
-import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,8 +62,34 @@ import org.slf4j.LoggerFactory;
  * {@link WorkflowInstance}. This allows event processing to scale across many separate workflow
  * instances while guaranteeing that each state machine progresses sequentially.
  *
+ * <p>Workflow instances are partitioned by hash across a number of shards. Each shard owns the
+ * states of its instances, a ready queue and a dispatcher thread, so that dispatching scales with
+ * the number of shards and receiving an event only touches the shard of its instance. The
+ * counting methods aggregate across all shards.
+ *
+ * <p>Instances with pending events are tracked on the ready queue of their shard. An instance is
+ * put on the ready queue when its event queue goes from empty to non-empty, and stays off it while
+ * one of its events is being processed. The cost of dispatching is thus proportional to the number
+ * of events, not to the number of active instances.
+ *
+ * <p>Events and active state updates are persisted through a {@link GroupCommitWriter}, which
+ * batches the writes of many concurrent transitions into group commits. A workflow instance does
+ * not process its next event until the write for the previous one is durable, and output handlers
+ * are only invoked once their transition has been persisted.
+ *
  * <p>All {@link RunState#outputHandler()} transitions are also executed on the injected
  * {@link Executor}.
+ *
+ * <p>Timeout and retry deadlines are tracked in {@link TimingWheel}s. A deadline is scheduled
+ * whenever an instance enters a new state and cancelled on its next transition, so that
+ * {@link #triggerTimeouts()} and {@link #triggerRetries()} only visit the instances that are due.
+ *
+ * <p>The event queue of each instance is bounded. {@link #offer(Event, long, TimeUnit)} waits for
+ * room so that producers are slowed down to the rate at which events are processed, while
+ * {@link #receive(Event)} does not wait: past the bound it admits up to
+ * {@link #EVENT_QUEUE_OVERDRAFT} more events, whose room is paid back before offered events are
+ * let in again, and rejects events beyond that. Fired deadlines never wait, they are instead
+ * rescheduled to fire again on a later tick.
  */
 public class QueuedStateManager implements StateManager, StaleStateReaper, StateRetrier {
 
@@ -60,21 +97,33 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
 
   static final String DISPATCHER_THREAD_NAME = "styx-event-dispatcher";
   static final int EVENT_QUEUE_SIZE = 1024;
+  static final int EVENT_QUEUE_OVERDRAFT = EVENT_QUEUE_SIZE;
   static final int POLL_TIMEOUT_MILLIS = 10;
   static final int SHUTDOWN_GRACE_PERIOD_SECONDS = 5;
   static final long NO_EVENTS_PROCESSED = -1L;
+  public static final int TIMER_TICK_MILLIS = 100;
+  static final int TIMER_WHEEL_SIZE = 64;
+  static final int TIMER_WHEEL_LEVELS = 4;
+  static final String TIMEOUT_TIMER = "state-timeout";
+  static final String RETRY_TIMER = "state-retry";
+
+  public static final int DEFAULT_FLUSH_MAX_BATCH_SIZE = 500;
+  public static final int DEFAULT_SHARDS = Runtime.getRuntime().availableProcessors();
+  public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ZERO;
+
+  private static final CompletionStage<Void> COMPLETED = CompletableFuture.completedFuture(null);
 
   private final TimeoutConfig ttls;
   private final Time time;
   private final Executor workerPool;
   private final EventStorage storage;
+  private final Stats stats;
+  private final GroupCommitWriter writer;
+  private final TimingWheel<InstanceState> timeoutWheel;
+  private final TimingWheel<InstanceState> retryWheel;
 
-  private final ConcurrentMap<WorkflowInstance, InstanceState> states = Maps.newConcurrentMap();
+  private final Shard[] shards;
 
-  private final Thread dispatcherThread;
-  private final CountDownLatch closedLatch = new CountDownLatch(1);
-  private final Object signal = new Object();
-  private AtomicInteger activeEvents = new AtomicInteger(0);
   private volatile boolean running = true;
 
   public QueuedStateManager(
@@ -82,14 +131,50 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
       Time time,
       Executor workerPool,
       EventStorage storage) {
+    this(ttls, time, workerPool, storage, DEFAULT_FLUSH_MAX_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL,
+         Stats.NOOP);
+  }
+
+  public QueuedStateManager(
+      TimeoutConfig ttls,
+      Time time,
+      Executor workerPool,
+      EventStorage storage,
+      int flushMaxBatchSize,
+      Duration flushInterval,
+      Stats stats) {
+    this(ttls, time, workerPool, storage, flushMaxBatchSize, flushInterval, stats, DEFAULT_SHARDS);
+  }
+
+  public QueuedStateManager(
+      TimeoutConfig ttls,
+      Time time,
+      Executor workerPool,
+      EventStorage storage,
+      int flushMaxBatchSize,
+      Duration flushInterval,
+      Stats stats,
+      int shards) {
+    if (shards < 1) {
+      throw new IllegalArgumentException("shards must be positive");
+    }
     this.ttls = Objects.requireNonNull(ttls);
     this.time = Objects.requireNonNull(time);
     this.workerPool = Objects.requireNonNull(workerPool);
     this.storage = Objects.requireNonNull(storage);
-
-    this.dispatcherThread = new Thread(this::dispatch);
-    dispatcherThread.setName(DISPATCHER_THREAD_NAME);
-    dispatcherThread.start();
+    this.stats = Objects.requireNonNull(stats);
+    this.writer = new GroupCommitWriter(storage, flushMaxBatchSize, flushInterval);
+
+    final long now = time.get().toEpochMilli();
+    this.timeoutWheel = new TimingWheel<>(
+        TIMEOUT_TIMER, stats, TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE, TIMER_WHEEL_LEVELS, now);
+    this.retryWheel = new TimingWheel<>(
+        RETRY_TIMER, stats, TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE, TIMER_WHEEL_LEVELS, now);
+
+    this.shards = new Shard[shards];
+    for (int i = 0; i < shards; i++) {
+      this.shards[i] = new Shard(DISPATCHER_THREAD_NAME + "-" + i);
+    }
   }
 
   @Override
@@ -97,7 +182,7 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
     ensureRunning();
 
     final WorkflowInstance workflowInstance = runState.workflowInstance();
-    if (states.containsKey(workflowInstance)) {
+    if (shardOf(workflowInstance).states.containsKey(workflowInstance)) {
       throw new AlreadyInitializedException("RunState initialization called on active instance "
                                             + workflowInstance.toKey());
     }
@@ -110,63 +195,88 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
       throw Throwables.propagate(e);
     }
 
-    states.computeIfAbsent(workflowInstance, (wfi) -> new InstanceState(wfi, runState, counter + 1));
+    activate(workflowInstance, runState, counter + 1);
   }
 
   @Override
   public void restore(RunState runState, long count) {
     final WorkflowInstance workflowInstance = runState.workflowInstance();
-    if (states.containsKey(workflowInstance)) {
+    if (shardOf(workflowInstance).states.containsKey(workflowInstance)) {
       throw new RuntimeException("RunState initialization called on active instance "
                                  + workflowInstance.toKey());
     }
 
-    states.computeIfAbsent(workflowInstance, (wfi) -> new InstanceState(wfi, runState, count + 1));
+    activate(workflowInstance, runState, count + 1);
   }
 
   @Override
   public void receive(Event event) throws IsClosed {
     ensureRunning();
 
-    final InstanceState state = states.get(event.workflowInstance());
+    final WorkflowInstance workflowInstance = event.workflowInstance();
+    final InstanceState state = shardOf(workflowInstance).states.get(workflowInstance);
     if (state == null) {
       LOG.warn("Received event for unknown workflow instance: {}", event);
       return;
     }
 
-    state.enqueue(() -> transition(state, event));
-    signalDispatcher();
+    state.enqueueAsync(() -> transition(state, event));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Events for unknown workflow instances are dropped, as with {@link #receive(Event)}, and
+   * count as accepted.
+   */
+  @Override
+  public boolean offer(Event event, long timeout, TimeUnit unit) throws IsClosed, InterruptedException {
+    ensureRunning();
+
+    final WorkflowInstance workflowInstance = event.workflowInstance();
+    final InstanceState state = shardOf(workflowInstance).states.get(workflowInstance);
+    if (state == null) {
+      LOG.warn("Received event for unknown workflow instance: {}", event);
+      return true;
+    }
+
+    return state.offer(() -> transition(state, event), unit.toNanos(timeout));
   }
 
   @Override
   public long getActiveStatesCount() {
-    return states.size();
+    long count = 0;
+    for (Shard shard : shards) {
+      count += shard.states.size();
+    }
+    return count;
   }
 
   @Override
   public long getQueuedEventsCount() {
-    return states.values().stream()
-        .mapToInt(queue -> queue.queue.size())
-        .sum();
+    long count = 0;
+    for (Shard shard : shards) {
+      count += shard.queuedEvents.get();
+    }
+    return count;
   }
 
   @Override
   public long getActiveStatesCount(WorkflowId workflowId) {
-    return states
-        .keySet()
-        .stream()
+    return Stream.of(shards)
+        .flatMap(shard -> shard.states.keySet().stream())
         .filter(workflowInstance -> workflowInstance.workflowId().equals(workflowId))
         .count();
   }
 
   @Override
   public boolean isActiveWorkflowInstance(WorkflowInstance workflowInstance) {
-    return states.containsKey(workflowInstance);
+    return shardOf(workflowInstance).states.containsKey(workflowInstance);
   }
 
   @Override
   public RunState get(WorkflowInstance workflowInstance) {
-    final InstanceState instanceState = states.get(workflowInstance);
+    final InstanceState instanceState = shardOf(workflowInstance).states.get(workflowInstance);
     return instanceState != null ? instanceState.runState : null;
   }
 
@@ -179,15 +289,21 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
 
     LOG.info("Shutting down, waiting for queued events to process");
 
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(SHUTDOWN_GRACE_PERIOD_SECONDS);
     try {
-      if (!closedLatch.await(SHUTDOWN_GRACE_PERIOD_SECONDS, TimeUnit.SECONDS)) {
-        dispatcherThread.interrupt();
-        throw new IOException(
-            "Graceful shutdown failed, event loop did not finish within grace period");
+      for (Shard shard : shards) {
+        final long remaining = deadline - System.nanoTime();
+        if (!shard.closedLatch.await(remaining, TimeUnit.NANOSECONDS)) {
+          interruptDispatchers();
+          throw new IOException(
+              "Graceful shutdown failed, event loop did not finish within grace period");
+        }
       }
     } catch (InterruptedException e) {
-      dispatcherThread.interrupt();
+      interruptDispatchers();
       throw new IOException(e);
+    } finally {
+      writer.close();
     }
 
     LOG.info("Shutdown was clean, {} events left in queue", getQueuedEventsCount());
@@ -199,17 +315,15 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
       return;
     }
 
-    states.entrySet().stream()
-        .filter(entry -> hasTimedOut(entry.getValue().runState))
-        .forEach(entry -> entry.getValue().enqueue(() -> {
+    final List<InstanceState> due = timeoutWheel.advance(time.get().toEpochMilli());
+    due.stream()
+        .filter(InstanceState::isActive)
+        .forEach(state -> fire(state, state::deferTimeout, () -> {
           // check again from transition loop
-          RunState currentState = states.get(entry.getKey()).runState;
+          RunState currentState = state.runState;
           if (hasTimedOut(currentState)) {
             LOG.info("Found stale state, triggering timeout for {}", currentState);
-            try {
-              receive(Event.timeout(entry.getKey()));
-            } catch (IsClosed ignored) {
-            }
+            receiveFromDeadline(state, Event.timeout(state.workflowInstance));
           }
         }));
   }
@@ -220,61 +334,53 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
       return;
     }
 
-    states.entrySet().stream()
-        .filter(entry -> shouldRetry(entry.getValue().runState))
-        .forEach(entry -> entry.getValue().enqueue(() -> {
-          final WorkflowInstance key = entry.getKey();
+    final List<InstanceState> due = retryWheel.advance(time.get().toEpochMilli());
+    due.stream()
+        .filter(InstanceState::isActive)
+        .forEach(state -> fire(state, state::deferRetry, () -> {
+          final WorkflowInstance key = state.workflowInstance;
           // check again from transition loop
-          RunState currentState = states.get(key).runState;
+          RunState currentState = state.runState;
           if (shouldRetry(currentState)) {
             LOG.info("{} triggering retry #{}", key.toKey(), currentState.tries());
-            try {
-              receive(Event.retry(key));
-            } catch (IsClosed ignored) {
-            }
+            receiveFromDeadline(state, Event.retry(key));
           }
         }));
   }
 
   /**
-   * Dispatch loop, continuously running on {@link #dispatcherThread}. Mainly calling
-   * {@link InstanceState#mutexPoll()} on all active states.
-   *
-   * <p>The dispatch loop will make a call to {@link #waitForSignal()} between each loop. It does
-   * so to prevent a busy spin that would hog up a full core. The signalling on the other hand
-   * eliminates a systematic latency in event processing.
+   * Enqueue the check of a fired deadline. If the event queue of the instance is full the deadline
+   * is deferred to the next tick, since the scanning thread must not block.
    */
-  private void dispatch() {
-    while (running || getQueuedEventsCount() > 0) {
-      states.values().forEach(InstanceState::mutexPoll);
-      waitForSignal();
+  private void fire(InstanceState state, LongConsumer defer, Runnable check) {
+    if (!state.offer(check)) {
+      LOG.debug("Event queue for {} is full, deferring deadline", state.workflowInstance.toKey());
+      defer.accept(time.get().toEpochMilli() + TIMER_TICK_MILLIS);
     }
-
-    closedLatch.countDown();
   }
 
   /**
-   * Sends a signal to the dispatcher thread in order to unblock it's timed wait. Calling this
-   * method is not crucial for the dispatcher thread to do its work, but will unblock it in case
-   * it's waiting.
-   *
-   * <p>This should be called from all methods that receive a new event.
+   * Enqueue an event from within the sequential transitions of its own instance. Waiting for room
+   * would never succeed as the queue is not drained until the current transition completes, so if
+   * the queue is full the deadlines are rescheduled to fire again instead.
    */
-  private void signalDispatcher() {
-    synchronized (signal) {
-      signal.notifyAll();
+  private void receiveFromDeadline(InstanceState state, Event event) {
+    if (!running) {
+      return;
+    }
+    if (!state.offer(() -> transition(state, event))) {
+      LOG.debug("Event queue for {} is full, deferring {}", state.workflowInstance.toKey(), event);
+      state.scheduleDeadlines();
     }
   }
 
-  /**
-   * Block (up to {@link #POLL_TIMEOUT_MILLIS} on a call to {@link #signalDispatcher()}.
-   */
-  private void waitForSignal() {
-    synchronized (signal) {
-      try {
-        signal.wait(POLL_TIMEOUT_MILLIS);
-      } catch (InterruptedException ignored) {
-      }
+  private Shard shardOf(WorkflowInstance workflowInstance) {
+    return shards[Math.floorMod(workflowInstance.hashCode(), shards.length)];
+  }
+
+  private void interruptDispatchers() {
+    for (Shard shard : shards) {
+      shard.dispatcherThread.interrupt();
     }
   }
 
@@ -287,63 +393,77 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
   /**
    * Transition a state with the given event.
    *
-   * <p>This method is only called from within a {@link InstanceState#enqueue(Runnable)} block
+   * <p>This method is only called from within a transition queued on the {@link InstanceState},
    * which means there will only be at most one concurrent call for each {@link InstanceState}.
    *
+   * <p>The state is advanced and the output handler invoked only after the {@link SequenceEvent}
+   * has been persisted by the {@link #writer}.
+   *
    * @param state  The state to transition
    * @param event  The event to transition the state with
+   * @return a stage that completes when the transition has been persisted
    */
-  private void transition(InstanceState state, Event event) {
+  private CompletionStage<Void> transition(InstanceState state, Event event) {
     LOG.debug("Event {} -> {}", event, state);
+    final RunState nextState;
     try {
-      final RunState nextState = state.runState.transition(event);
-      final WorkflowInstance key = state.workflowInstance;
+      nextState = state.runState.transition(event);
+    } catch (IllegalStateException e) {
+      LOG.warn("Illegal state transition", e);
+      // the event might have come from a fired deadline, make sure it fires again
+      state.scheduleDeadlines();
+      return COMPLETED;
+    }
 
-      final long currentCount = state.counter;
-      final SequenceEvent sequenceEvent = SequenceEvent.create(
-          event,
-          currentCount,
-          time.get().toEpochMilli());
-      storeEvent(sequenceEvent);
+    final WorkflowInstance key = state.workflowInstance;
+    final long currentCount = state.counter;
+    final SequenceEvent sequenceEvent = SequenceEvent.create(
+        event,
+        currentCount,
+        time.get().toEpochMilli());
+
+    return writer.write(sequenceEvent, nextState).handle((ignored, e) -> {
+      if (e != null) {
+        LOG.error("Failed to read/write from/to Storage", e);
+        state.scheduleDeadlines();
+        return null;
+      }
 
       if (nextState.state().isTerminal()) {
-        states.remove(key); // racy when states are re-initialized concurrent with termination
-        storeDeactivation(key);
+        // only removed once durable, so that a re-initialization can not race the deactivation
+        state.shard.states.remove(key);
+        state.cancelDeadlines();
       } else {
         state.runState = nextState;
         state.counter++;
-        storeActivation(key, currentCount);
+        state.scheduleDeadlines();
       }
 
+      final AtomicInteger activeEvents = state.shard.activeEvents;
       activeEvents.incrementAndGet();
       workerPool.execute(() -> {
         try {
           nextState.outputHandler().transitionInto(nextState);
-        } catch (Throwable e) {
-          LOG.warn("Output handler threw", e);
+        } catch (Throwable t) {
+          LOG.warn("Output handler threw", t);
         } finally {
           activeEvents.decrementAndGet();
         }
       });
-    } catch (IllegalStateException e) {
-      LOG.warn("Illegal state transition", e);
-    } catch (IOException e) {
-      LOG.error("Failed to read/write from/to Storage", e);
-    }
+      return null;
+    });
   }
 
-  private void storeEvent(SequenceEvent sequenceEvent) throws IOException {
-    storage.writeEvent(sequenceEvent);
+  private void activate(WorkflowInstance workflowInstance, RunState runState, long counter) {
+    final Shard shard = shardOf(workflowInstance);
+    shard.states.computeIfAbsent(workflowInstance, (wfi) -> new InstanceState(shard, wfi, runState, counter))
+        .scheduleDeadlines();
   }
 
   private void storeActivation(WorkflowInstance workflowInstance, long lastProcessedCount) throws IOException {
     storage.writeActiveState(workflowInstance, lastProcessedCount);
   }
 
-  private void storeDeactivation(WorkflowInstance workflowInstance) throws IOException {
-    storage.deleteActiveState(workflowInstance);
-  }
-
   private boolean hasTimedOut(RunState runState) {
     if (runState.state().isTerminal()) {
       return false;
@@ -368,84 +488,297 @@ public class QueuedStateManager implements StateManager, StaleStateReaper, State
   @VisibleForTesting
   boolean awaitIdle(long timeoutMillis) {
     final long t0 = time.get().toEpochMilli();
-    while (activeEvents.get() > 0 && (time.get().toEpochMilli() - t0) < timeoutMillis) {
+    while (activeEventsCount() > 0 && (time.get().toEpochMilli() - t0) < timeoutMillis) {
       Thread.yield();
     }
 
     return (time.get().toEpochMilli() - t0) < timeoutMillis;
   }
 
+  private long activeEventsCount() {
+    long count = 0;
+    for (Shard shard : shards) {
+      count += shard.activeEvents.get();
+    }
+    return count;
+  }
+
+  /**
+   * A partition of the active workflow instances, with its own dispatcher thread.
+   */
+  private class Shard {
+
+    final ConcurrentMap<WorkflowInstance, InstanceState> states = Maps.newConcurrentMap();
+    final BlockingQueue<InstanceState> readyQueue = new LinkedBlockingQueue<>();
+
+    // events are counted until their transition has been persisted, not only until dequeued
+    final AtomicLong queuedEvents = new AtomicLong(0);
+    final AtomicInteger activeEvents = new AtomicInteger(0);
+
+    final Thread dispatcherThread;
+    final CountDownLatch closedLatch = new CountDownLatch(1);
+
+    Shard(String dispatcherThreadName) {
+      this.dispatcherThread = new Thread(this::dispatch);
+      dispatcherThread.setName(dispatcherThreadName);
+      dispatcherThread.start();
+    }
+
+    /**
+     * Dispatch loop, continuously running on {@link #dispatcherThread}. Takes
+     * {@link InstanceState}s off the {@link #readyQueue} and hands them to the {@link #workerPool}.
+     *
+     * <p>The blocking take is bounded by {@link #POLL_TIMEOUT_MILLIS} only so that the loop can
+     * observe {@link #running} being cleared. Wakeups are otherwise driven by
+     * {@link InstanceState#schedule()}.
+     */
+    private void dispatch() {
+      while (running || queuedEvents.get() > 0) {
+        final InstanceState state;
+        try {
+          state = readyQueue.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+          break;
+        }
+
+        if (state != null) {
+          state.dispatch();
+        }
+      }
+
+      closedLatch.countDown();
+    }
+  }
+
   private class InstanceState {
 
+    final Shard shard;
     final WorkflowInstance workflowInstance;
-    final Queue<Runnable> queue = new LinkedBlockingQueue<>(EVENT_QUEUE_SIZE);
-    final Semaphore mutex = new Semaphore(1);
+    final BlockingQueue<Supplier<CompletionStage<Void>>> queue = new LinkedBlockingQueue<>();
+    // room left in the queue for offered transitions, and room owed by transitions received past it
+    final Semaphore room = new Semaphore(EVENT_QUEUE_SIZE);
+    final AtomicInteger overdrawn = new AtomicInteger();
+    final AtomicBoolean scheduled = new AtomicBoolean(false);
 
     volatile RunState runState;
     volatile long counter;
 
-    InstanceState(WorkflowInstance workflowInstance, RunState runState, long counter) {
+    // guarded by this
+    private TimingWheel<InstanceState>.Timeout timeout;
+    private TimingWheel<InstanceState>.Timeout retry;
+
+    InstanceState(Shard shard, WorkflowInstance workflowInstance, RunState runState, long counter) {
+      this.shard = shard;
       this.workflowInstance = workflowInstance;
       this.runState = runState;
       this.counter = counter;
     }
 
-    void enqueue(Runnable transition) {
-      if (queue.offer(transition)) {
-        activeEvents.incrementAndGet();
-      } else {
-        throw new RuntimeException("Transition queue for " + workflowInstance.toKey() + " is full");
+    /**
+     * Whether this is still the state of its workflow instance, i.e. the instance has not been
+     * deactivated, or re-activated with a new state, since.
+     */
+    boolean isActive() {
+      return shard.states.get(workflowInstance) == this;
+    }
+
+    /**
+     * Schedule the timeout and retry deadlines of the current {@link #runState}, replacing any
+     * that were scheduled for a previous state.
+     */
+    synchronized void scheduleDeadlines() {
+      cancelDeadlines();
+
+      final RunState current = runState;
+      if (current.state().isTerminal()) {
+        return;
+      }
+
+      final long ttlMillis = ttls.ttlOf(current.state()).toMillis();
+      timeout = timeoutWheel.schedule(this, current.timestamp() + ttlMillis);
+      if (current.state() == RunState.State.AWAITING_RETRY) {
+        retry = retryWheel.schedule(this, current.timestamp() + current.retryDelayMillis());
+      }
+    }
+
+    synchronized void cancelDeadlines() {
+      if (timeout != null) {
+        timeout.cancel();
+        timeout = null;
+      }
+      if (retry != null) {
+        retry.cancel();
+        retry = null;
       }
     }
 
     /**
-     * Poll the next {@link Runnable} off the {@link #queue} and invoke it on the
-     * {@link #workerPool}, or do nothing if the queue is empty.
+     * Fire the timeout deadline again at {@code deadlineMillis}, unless a transition has replaced or
+     * cancelled it since it fired.
+     */
+    synchronized void deferTimeout(long deadlineMillis) {
+      if (timeout != null && !timeout.isPending()) {
+        timeout = timeoutWheel.schedule(this, deadlineMillis);
+      }
+    }
+
+    /**
+     * Fire the retry deadline again at {@code deadlineMillis}, unless a transition has replaced or
+     * cancelled it since it fired.
+     */
+    synchronized void deferRetry(long deadlineMillis) {
+      if (retry != null && !retry.isPending()) {
+        retry = retryWheel.schedule(this, deadlineMillis);
+      }
+    }
+
+    boolean offer(Runnable transition) {
+      return offer(() -> {
+        transition.run();
+        return COMPLETED;
+      });
+    }
+
+    /**
+     * Enqueue a transition without waiting. If the {@link #queue} is full the transition is
+     * admitted past the bound, up to {@link #EVENT_QUEUE_OVERDRAFT} transitions, and the room it
+     * takes is paid back as the queue drains.
      *
-     * <p>The whole operation is guarded with a mutex, so concurrent calls are safe. Only one
-     * queued {@link Runnable} will be invoked at any point time, effectively making the queue
-     * consumed in a synchronized fashion.
+     * @throws RejectedExecutionException if the overdraft is used up as well
+     */
+    void enqueueAsync(Supplier<CompletionStage<Void>> transition) {
+      if (!room.tryAcquire()) {
+        final int owed = overdrawn.getAndUpdate(o -> o < EVENT_QUEUE_OVERDRAFT ? o + 1 : o);
+        if (owed >= EVENT_QUEUE_OVERDRAFT) {
+          admitted(false);
+          throw new RejectedExecutionException("Event queue for " + workflowInstance.toKey() + " is full");
+        }
+        LOG.debug("Event queue for {} is full, admitting past the bound", workflowInstance.toKey());
+      }
+      queue.add(transition);
+      admitted(true);
+    }
+
+    boolean offer(Supplier<CompletionStage<Void>> transition) {
+      if (!room.tryAcquire()) {
+        return admitted(false);
+      }
+      queue.add(transition);
+      return admitted(true);
+    }
+
+    /**
+     * Offer a transition, waiting up to {@code timeoutNanos} for room in the {@link #queue}.
+     */
+    boolean offer(Supplier<CompletionStage<Void>> transition, long timeoutNanos)
+        throws InterruptedException {
+      if (offer(transition)) {
+        return true;
+      }
+
+      final long t0 = System.nanoTime();
+      final boolean admitted = room.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+      stats.eventAdmissionWait(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+      if (admitted) {
+        queue.add(transition);
+      }
+      return admitted(admitted);
+    }
+
+    private boolean admitted(boolean admitted) {
+      if (!admitted) {
+        stats.eventRejected();
+        return false;
+      }
+
+      shard.activeEvents.incrementAndGet();
+      shard.queuedEvents.incrementAndGet();
+      stats.eventQueueDepth(queue.size());
+      schedule();
+      return true;
+    }
+
+    /**
+     * Give back the room of a transition taken off the {@link #queue}, unless it pays back room
+     * owed by a transition that was admitted past the bound.
+     */
+    private void freeRoom() {
+      if (overdrawn.getAndUpdate(owed -> owed > 0 ? owed - 1 : 0) == 0) {
+        room.release();
+      }
+    }
+
+    /**
+     * Put this state on the {@link Shard#readyQueue} unless it is already there or being processed.
+     */
+    void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        shard.readyQueue.add(this);
+      }
+    }
+
+    /**
+     * Poll the next transition off the {@link #queue} and invoke it on the {@link #workerPool}.
      *
-     * <p>After each invocation has completed, the task on the {@link #workerPool} will call
-     * {@code mutexPoll()} again to ensure immediate consequent consumption of the queue.
+     * <p>This is only called for states taken off the {@link Shard#readyQueue}. Since a state is on
+     * the ready queue at most once, and is not put back until the invoked transition has completed,
+     * only one queued transition will be in progress at any point in time, effectively making the
+     * queue consumed in a synchronized fashion.
      */
-    void mutexPoll() {
-      if (queue.isEmpty()) {
+    void dispatch() {
+      try {
+        workerPool.execute(this::invokeNext);
+      } catch (Throwable e) {
+        LOG.error("Failed to submit event worker task", e);
+        shard.readyQueue.add(this);
+      }
+    }
+
+    private void invokeNext() {
+      final Supplier<CompletionStage<Void>> poll = queue.poll();
+      if (poll == null) {
+        next();
         return;
       }
+      freeRoom();
 
-      if (mutex.tryAcquire()) {
-        try {
-          // poll and invoke on executor pool
-          workerPool.execute(() -> {
-            try {
-              final Runnable poll = queue.poll();
-              if (poll != null) {
-                try {
-                  invoke(poll);
-                } finally {
-                  activeEvents.decrementAndGet();
-                }
-              }
-            } finally {
-              mutex.release();
-            }
-
-            // continue to consume queue
-            mutexPoll();
-          });
-        } catch (Throwable e) {
-          LOG.error("Failed to submit event worker task", e);
-          mutex.release();
+      final CompletionStage<Void> done;
+      if (isActive()) {
+        done = invoke(poll);
+      } else {
+        LOG.debug("Dropping event for inactive workflow instance {}", workflowInstance.toKey());
+        done = COMPLETED;
+      }
+
+      done.whenComplete((ignored, e) -> {
+        if (e != null) {
+          LOG.warn("Exception in event transition for {}", workflowInstance.toKey(), e);
+        }
+        shard.queuedEvents.decrementAndGet();
+        shard.activeEvents.decrementAndGet();
+        next();
+      });
+    }
+
+    private void next() {
+      // continue to consume queue
+      if (!queue.isEmpty()) {
+        shard.readyQueue.add(this);
+      } else {
+        scheduled.set(false);
+        // an event might have been enqueued after the check above but before the flag was cleared
+        if (!queue.isEmpty()) {
+          schedule();
         }
       }
     }
 
-    void invoke(Runnable transition) {
+    CompletionStage<Void> invoke(Supplier<CompletionStage<Void>> transition) {
       try {
-        transition.run();
+        return transition.get();
       } catch (Throwable e) {
         LOG.warn("Exception in event runnable for {}", workflowInstance.toKey(), e);
+        return COMPLETED;
       }
     }
   }
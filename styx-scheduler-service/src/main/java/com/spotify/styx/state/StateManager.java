@@ -24,6 +24,8 @@ import com.spotify.styx.model.Event;
 import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
 import java.io.Closeable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,11 +54,35 @@ public interface StateManager extends Closeable {
    * Receive an {@link Event} and route it to the corresponding active {@link RunState} based on
    * the {@link Event#workflowInstance()} key of the event.
    *
+   * <p>Implementations with bounded event queues may admit events past the bound, since the caller
+   * is not waiting for room, but reject them once a hard limit is reached.
+   *
    * @param event The event to receive
    * @throws IsClosed if the state receiver is closed and can not handle events
+   * @throws RejectedExecutionException if the event queue of the {@link WorkflowInstance} is full
    */
   void receive(Event event) throws IsClosed;
 
+  /**
+   * Like {@link #receive(Event)}, but applies backpressure instead of failing when the event queue
+   * of the {@link WorkflowInstance} is full. The caller is blocked for up to the given timeout
+   * while waiting for room in the queue.
+   *
+   * <p>Producers that can slow down, such as pollers and watchers, should prefer this over
+   * {@link #receive(Event)}.
+   *
+   * @param event   The event to receive
+   * @param timeout How long to wait for room in the queue
+   * @param unit    The unit of the timeout
+   * @return true if the event was accepted, false if the queue was still full after the timeout
+   * @throws IsClosed if the state receiver is closed and can not handle events
+   * @throws InterruptedException if interrupted while waiting
+   */
+  default boolean offer(Event event, long timeout, TimeUnit unit) throws IsClosed, InterruptedException {
+    receive(event);
+    return true;
+  }
+
   /**
    * Returns the number of current active {@link RunState}.
    */
@@ -0,0 +1,258 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.state;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.spotify.styx.monitoring.Stats;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A hierarchical timing wheel keeping track of deadlines for payloads of type {@code T}.
+ *
+ * <p>Time is divided into ticks of {@code tickMillis}. Level 0 has one slot per tick, and every
+ * level above it covers {@code wheelSize} times the span of the one below. A deadline is placed in
+ * the lowest level that can hold it, and is cascaded down into finer levels as the wheel advances.
+ * Scheduling and cancelling are O(1), and {@link #advance(long)} only touches the entries that are
+ * due or being cascaded, rather than every scheduled deadline.
+ *
+ * <p>Deadlines are fired exactly: an entry is only returned once {@code nowMillis} has reached its
+ * deadline, even if it shares a tick with the current time. Deadlines that are already due when
+ * scheduled fire on the next {@link #advance(long)}.
+ *
+ * @param <T> The payload type
+ */
+class TimingWheel<T> {
+
+  private final String name;
+  private final Stats stats;
+  private final long tickMillis;
+  private final int wheelSize;
+  private final long[] levelTicks;
+  private final long maxSteps;
+  private final List<List<Set<Timeout>>> slots;
+  private final Set<Timeout> due = Sets.newLinkedHashSet();
+
+  private long currentTick;
+
+  /**
+   * @param name        Name used when reporting metrics
+   * @param stats       Receives the scan count and firing skew of each {@link #advance(long)}
+   * @param tickMillis  The resolution of the wheel
+   * @param wheelSize   The number of slots per level
+   * @param levels      The number of levels
+   * @param startMillis The time at which the wheel starts
+   */
+  TimingWheel(String name, Stats stats, long tickMillis, int wheelSize, int levels, long startMillis) {
+    if (tickMillis < 1 || wheelSize < 2 || levels < 1) {
+      throw new IllegalArgumentException("Invalid timing wheel dimensions");
+    }
+    this.name = Objects.requireNonNull(name);
+    this.stats = Objects.requireNonNull(stats);
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+    this.maxSteps = (long) wheelSize * wheelSize;
+
+    this.levelTicks = new long[levels];
+    this.slots = Lists.newArrayListWithCapacity(levels);
+    long ticks = 1;
+    for (int level = 0; level < levels; level++) {
+      levelTicks[level] = ticks;
+      ticks *= wheelSize;
+
+      final List<Set<Timeout>> levelSlots = Lists.newArrayListWithCapacity(wheelSize);
+      for (int slot = 0; slot < wheelSize; slot++) {
+        levelSlots.add(Sets.newLinkedHashSet());
+      }
+      slots.add(levelSlots);
+    }
+
+    this.currentTick = Math.floorDiv(startMillis, tickMillis);
+  }
+
+  /**
+   * Schedule a deadline for a payload.
+   *
+   * @param payload        The payload to return from {@link #advance(long)} once due
+   * @param deadlineMillis The deadline, in epoch millis
+   * @return a handle that can be used to cancel the deadline
+   */
+  synchronized Timeout schedule(T payload, long deadlineMillis) {
+    final Timeout timeout = new Timeout(Objects.requireNonNull(payload), deadlineMillis);
+    place(timeout);
+    return timeout;
+  }
+
+  /**
+   * Advance the wheel to the given time, returning the payloads of all deadlines that have passed.
+   *
+   * @param nowMillis The current time, in epoch millis
+   * @return the payloads that are due, in deadline tick order
+   */
+  synchronized List<T> advance(long nowMillis) {
+    final List<T> fired = Lists.newArrayList();
+    final long nowTick = Math.floorDiv(nowMillis, tickMillis);
+
+    int scanned = 0;
+    if (nowTick - currentTick > maxSteps) {
+      // the clock jumped far ahead, placing everything again is cheaper than stepping through
+      final List<Timeout> entries = Lists.newArrayList();
+      for (List<Set<Timeout>> level : slots) {
+        for (Set<Timeout> slot : level) {
+          entries.addAll(slot);
+          slot.clear();
+        }
+      }
+      currentTick = nowTick;
+      entries.forEach(this::place);
+      scanned += entries.size();
+    }
+
+    while (currentTick < nowTick) {
+      currentTick++;
+
+      // cascade coarser levels first, so that their entries can land in the finer slots below
+      for (int level = levelTicks.length - 1; level > 0; level--) {
+        if (Math.floorMod(currentTick, levelTicks[level]) == 0) {
+          scanned += cascade(slotOf(level, currentTick));
+        }
+      }
+
+      final Set<Timeout> slot = slotOf(0, currentTick);
+      scanned += slot.size();
+      moveAll(slot, due);
+    }
+
+    final Iterator<Timeout> iterator = due.iterator();
+    while (iterator.hasNext()) {
+      final Timeout timeout = iterator.next();
+      scanned++;
+      if (timeout.deadlineMillis <= nowMillis) {
+        iterator.remove();
+        timeout.slot = null;
+        fired.add(timeout.payload);
+        stats.timerFiringSkew(name, nowMillis - timeout.deadlineMillis);
+      }
+    }
+
+    stats.timerScanCount(name, scanned);
+    return fired;
+  }
+
+  synchronized int size() {
+    int size = due.size();
+    for (List<Set<Timeout>> level : slots) {
+      for (Set<Timeout> slot : level) {
+        size += slot.size();
+      }
+    }
+    return size;
+  }
+
+  private int cascade(Set<Timeout> slot) {
+    final List<Timeout> entries = Lists.newArrayList(slot);
+    slot.clear();
+    entries.forEach(this::place);
+    return entries.size();
+  }
+
+  private void moveAll(Set<Timeout> from, Set<Timeout> to) {
+    for (Timeout timeout : from) {
+      timeout.slot = to;
+      to.add(timeout);
+    }
+    from.clear();
+  }
+
+  private void place(Timeout timeout) {
+    final long deadlineTick = Math.floorDiv(timeout.deadlineMillis, tickMillis);
+    final long delta = deadlineTick - currentTick;
+
+    final Set<Timeout> slot;
+    if (delta <= 0) {
+      slot = due;
+    } else {
+      final int topLevel = levelTicks.length - 1;
+      int level = 0;
+      while (level < topLevel && delta >= levelTicks[level] * wheelSize) {
+        level++;
+      }
+
+      if (delta >= levelTicks[topLevel] * wheelSize) {
+        // beyond the span of the wheel, park for a full revolution and place again when cascaded
+        slot = slotOf(topLevel, currentTick);
+      } else {
+        slot = slotOf(level, deadlineTick);
+      }
+    }
+
+    timeout.slot = slot;
+    slot.add(timeout);
+  }
+
+  private Set<Timeout> slotOf(int level, long tick) {
+    final long levelTick = Math.floorDiv(tick, levelTicks[level]);
+    return slots.get(level).get((int) Math.floorMod(levelTick, (long) wheelSize));
+  }
+
+  /**
+   * A handle for a scheduled deadline.
+   */
+  class Timeout {
+
+    private final T payload;
+    private final long deadlineMillis;
+    private Set<Timeout> slot;
+
+    private Timeout(T payload, long deadlineMillis) {
+      this.payload = payload;
+      this.deadlineMillis = deadlineMillis;
+    }
+
+    long deadlineMillis() {
+      return deadlineMillis;
+    }
+
+    /**
+     * Whether this deadline is still scheduled, i.e. it has neither fired nor been cancelled.
+     */
+    boolean isPending() {
+      synchronized (TimingWheel.this) {
+        return slot != null;
+      }
+    }
+
+    /**
+     * Cancel this deadline. Has no effect if it has already fired or been cancelled.
+     */
+    void cancel() {
+      synchronized (TimingWheel.this) {
+        if (slot != null) {
+          slot.remove(this);
+          slot = null;
+        }
+      }
+    }
+  }
+}
@@ -20,64 +20,257 @@
 
 package com.spotify.styx.state.handlers;
 
-import com.google.common.base.Preconditions;
 import com.spotify.styx.model.ExecutionDescription;
 import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.monitoring.Stats;
 import com.spotify.styx.publisher.Publisher;
 import com.spotify.styx.state.OutputHandler;
 import com.spotify.styx.state.RunState;
-import com.spotify.styx.util.Retrier;
+import com.spotify.styx.util.Time;
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * An {@link OutputHandler} that integrates {@link RunState.State} values with a {@link Publisher}.
+ *
+ * <p>Transitions never block on publishing. Events are put on a bounded outbox which is drained
+ * in order by a loop on the injected {@link ScheduledExecutorService}. When publishing fails the
+ * loop backs off exponentially, with jitter, before retrying the same event, and an event is
+ * given up on after {@link #MAX_ATTEMPTS} attempts. Events are dropped when the outbox is full.
+ *
+ * <p>The loop is started by {@link #start()}. {@link #close()} stops it and makes a last attempt
+ * to publish what is left in the outbox.
  */
-public class PublisherHandler implements OutputHandler {
+public class PublisherHandler implements OutputHandler, Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(PublisherHandler.class);
 
-  private static final int MAX_RETRIES = 420;
-  private static final Retrier RETRIER = Retrier.builder()
-      .errorMessage("publish deploy event")
-      .retryDelay(Duration.ofSeconds(1))
-      .maxRetries(MAX_RETRIES)
-      .build();
+  static final int MAX_ATTEMPTS = 20;
+  static final int MAX_DRAIN_BATCH_SIZE = 100;
+  static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+  static final Duration BASE_BACKOFF = Duration.ofSeconds(1);
+  static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+  static final Duration CLOSE_FLUSH_TIMEOUT = Duration.ofSeconds(5);
+
+  public static final int DEFAULT_OUTBOX_SIZE = 10_000;
 
   private final Publisher publisher;
+  private final ScheduledExecutorService executor;
+  private final Time time;
+  private final Stats stats;
+  private final BlockingQueue<OutboxEntry> outbox;
+
+  private final Object drainLock = new Object();
+
+  // guarded by drainLock
+  private int failures;
+
+  private volatile boolean closed;
 
-  public PublisherHandler(Publisher publisher) {
+  public PublisherHandler(
+      Publisher publisher,
+      ScheduledExecutorService executor,
+      Time time,
+      Stats stats) {
+    this(publisher, executor, time, stats, DEFAULT_OUTBOX_SIZE);
+  }
+
+  public PublisherHandler(
+      Publisher publisher,
+      ScheduledExecutorService executor,
+      Time time,
+      Stats stats,
+      int outboxSize) {
     this.publisher = Objects.requireNonNull(publisher);
+    this.executor = Objects.requireNonNull(executor);
+    this.time = Objects.requireNonNull(time);
+    this.stats = Objects.requireNonNull(stats);
+    this.outbox = new LinkedBlockingQueue<>(outboxSize);
+  }
+
+  /**
+   * Register the outbox metrics and start the loop publishing the outbox.
+   */
+  public void start() {
+    stats.registerPublisherOutboxSize(() -> (long) outbox.size());
+    stats.registerPublisherOutboxAge(this::oldestEntryAgeMillis);
+    scheduleDrain(POLL_INTERVAL);
+  }
+
+  /**
+   * Stop the loop and try to publish the events left in the outbox once each, for up to
+   * {@link #CLOSE_FLUSH_TIMEOUT}. Events that could not be published are logged as dropped.
+   */
+  @Override
+  public void close() {
+    closed = true;
+
+    final long deadline = System.nanoTime() + CLOSE_FLUSH_TIMEOUT.toNanos();
+    int failed = 0;
+    synchronized (drainLock) {
+      OutboxEntry entry;
+      while (System.nanoTime() < deadline && (entry = outbox.poll()) != null) {
+        final int attempts = entry.attempts;
+        publish(entry);
+        if (entry.attempts > attempts) {
+          failed++;
+        }
+      }
+    }
+
+    final int dropped = failed + outbox.size();
+    outbox.clear();
+    if (dropped > 0) {
+      LOG.warn("Publisher closed, dropped {} unpublished event(s)", dropped);
+    }
   }
 
   @Override
   public void transitionInto(RunState state) {
-    final WorkflowInstance workflowInstance = state.workflowInstance();
     switch (state.state()) {
       case SUBMITTED:
-        try {
-          Preconditions.checkArgument(state.executionDescription().isPresent());
-          final ExecutionDescription executionDescription = state.executionDescription().get();
-          RETRIER.runWithRetries(() -> publisher.deploying(workflowInstance, executionDescription));
-        } catch (Exception e) {
-          LOG.error("Failed to publish event for PREPARE state", e);
-        }
+        enqueue(state, false);
         break;
 
       case RUNNING:
-        try {
-          Preconditions.checkArgument(state.executionDescription().isPresent());
-          final ExecutionDescription executionDescription = state.executionDescription().get();
-          RETRIER.runWithRetries(() -> publisher.deployed(workflowInstance, executionDescription));
-        } catch (Exception e) {
-          LOG.error("Failed to publish event for RUNNING state", e);
-        }
+        enqueue(state, true);
         break;
 
       default:
         // do nothing
     }
   }
+
+  private void enqueue(RunState state, boolean deployed) {
+    if (!state.executionDescription().isPresent()) {
+      LOG.error("Missing execution description, not publishing {}", state);
+      return;
+    }
+
+    final OutboxEntry entry = new OutboxEntry(
+        state.workflowInstance(), state.executionDescription().get(), deployed,
+        time.get().toEpochMilli());
+    if (closed) {
+      LOG.warn("Publisher is closed, dropping {}", entry);
+      stats.publisherOutboxDropped();
+      return;
+    }
+    if (!outbox.offer(entry)) {
+      LOG.error("Publisher outbox is full, dropping {}", entry);
+      stats.publisherOutboxDropped();
+    }
+  }
+
+  private void scheduleDrain(Duration delay) {
+    executor.schedule(this::drain, delay.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Publish the events at the head of the outbox, then schedule the next run of the loop. The
+   * loop runs at {@link #POLL_INTERVAL} while publishing succeeds and backs off while it fails.
+   */
+  private void drain() {
+    try {
+      synchronized (drainLock) {
+        if (closed) {
+          return;
+        }
+        drainBatch();
+      }
+    } catch (Throwable e) {
+      LOG.error("Unexpected exception in publisher loop", e);
+    } finally {
+      if (!closed) {
+        scheduleDrain(failures > 0 ? backoff(failures) : POLL_INTERVAL);
+      }
+    }
+  }
+
+  private void drainBatch() {
+    for (int i = 0; i < MAX_DRAIN_BATCH_SIZE; i++) {
+      final OutboxEntry entry = outbox.peek();
+      if (entry == null) {
+        break;
+      }
+
+      if (!publish(entry)) {
+        failures++;
+        break;
+      }
+      failures = 0;
+      outbox.poll();
+    }
+  }
+
+  /**
+   * Try to publish an entry.
+   *
+   * @return false if the entry should be retried
+   */
+  private boolean publish(OutboxEntry entry) {
+    try {
+      if (entry.deployed) {
+        publisher.deployed(entry.workflowInstance, entry.executionDescription);
+      } else {
+        publisher.deploying(entry.workflowInstance, entry.executionDescription);
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      if (++entry.attempts >= MAX_ATTEMPTS) {
+        LOG.error("Failed to publish {}, giving up after {} attempts", entry, entry.attempts, e);
+        return true;
+      }
+      LOG.warn("Failed to publish {} (attempt #{})", entry, entry.attempts, e);
+      return false;
+    }
+  }
+
+  private static Duration backoff(int failures) {
+    final long cappedMillis = Math.min(
+        MAX_BACKOFF.toMillis(),
+        BASE_BACKOFF.toMillis() << Math.min(failures - 1, 16));
+    // equal jitter: keep half of the delay and randomize the other half
+    final long halfMillis = cappedMillis / 2;
+    return Duration.ofMillis(halfMillis + ThreadLocalRandom.current().nextLong(halfMillis + 1));
+  }
+
+  private long oldestEntryAgeMillis() {
+    final OutboxEntry head = outbox.peek();
+    return head == null ? 0L : time.get().toEpochMilli() - head.enqueuedMillis;
+  }
+
+  private static class OutboxEntry {
+
+    final WorkflowInstance workflowInstance;
+    final ExecutionDescription executionDescription;
+    final boolean deployed;
+    final long enqueuedMillis;
+
+    int attempts;
+
+    OutboxEntry(
+        WorkflowInstance workflowInstance,
+        ExecutionDescription executionDescription,
+        boolean deployed,
+        long enqueuedMillis) {
+      this.workflowInstance = workflowInstance;
+      this.executionDescription = executionDescription;
+      this.deployed = deployed;
+      this.enqueuedMillis = enqueuedMillis;
+    }
+
+    @Override
+    public String toString() {
+      return (deployed ? "deployed " : "deploying ") + workflowInstance.toKey();
+    }
+  }
 }
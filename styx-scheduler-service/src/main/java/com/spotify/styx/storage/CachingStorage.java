@@ -0,0 +1,254 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.storage;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.spotify.styx.model.StyxConfig;
+import com.spotify.styx.model.Workflow;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.model.WorkflowInstanceExecutionData;
+import com.spotify.styx.model.WorkflowState;
+import com.spotify.styx.monitoring.Stats;
+import com.spotify.styx.util.FnWithException;
+import com.spotify.styx.util.RetryPolicy;
+import com.spotify.styx.util.Time;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Storage} decorator that caches the per workflow lookups done when triggering and
+ * submitting workflow instances: {@link #workflow(WorkflowId)}, {@link #workflowState(WorkflowId)}
+ * and {@link #getDockerImage(WorkflowId)}.
+ *
+ * <p>Entries expire after a ttl and the caches are bounded in size. Writes made through this
+ * storage invalidate the affected entries right away, while writes made elsewhere, for example by
+ * the api service, become visible once the entries expire.
+ */
+public final class CachingStorage implements Storage {
+
+  public static final long DEFAULT_MAX_SIZE = 10_000;
+  public static final Duration DEFAULT_TTL = Duration.ofSeconds(10);
+
+  static final String WORKFLOW_CACHE = "workflow";
+  static final String WORKFLOW_STATE_CACHE = "workflow-state";
+  static final String DOCKER_IMAGE_CACHE = "docker-image";
+
+  private final Storage delegate;
+  private final Stats stats;
+  private final Time time;
+
+  private final Cache<WorkflowId, Optional<Workflow>> workflows;
+  private final Cache<WorkflowId, WorkflowState> workflowStates;
+  private final Cache<WorkflowId, Optional<String>> dockerImages;
+
+  // bumped on every invalidation, so that loads racing with a write are not cached
+  private final AtomicLong generation = new AtomicLong();
+
+  public CachingStorage(Storage delegate, Stats stats, Time time) {
+    this(delegate, stats, time, DEFAULT_MAX_SIZE, DEFAULT_TTL);
+  }
+
+  public CachingStorage(Storage delegate, Stats stats, Time time, long maxSize, Duration ttl) {
+    this.delegate = Objects.requireNonNull(delegate);
+    this.stats = Objects.requireNonNull(stats);
+    this.time = Objects.requireNonNull(time);
+
+    this.workflows = cache(maxSize, ttl, time);
+    this.workflowStates = cache(maxSize, ttl, time);
+    this.dockerImages = cache(maxSize, ttl, time);
+  }
+
+  @Override
+  public boolean globalEnabled() throws IOException {
+    return delegate.globalEnabled();
+  }
+
+  @Override
+  public boolean setGlobalEnabled(boolean enabled) throws IOException {
+    return delegate.setGlobalEnabled(enabled);
+  }
+
+  @Override
+  public String globalDockerRunnerId() throws IOException {
+    return delegate.globalDockerRunnerId();
+  }
+
+  @Override
+  public StyxConfig config() throws IOException {
+    return delegate.config();
+  }
+
+  @Override
+  public void store(Workflow workflow) throws IOException {
+    try {
+      delegate.store(workflow);
+    } finally {
+      invalidate(workflow.id());
+    }
+  }
+
+  @Override
+  public Optional<Workflow> workflow(WorkflowId workflowId) throws IOException {
+    return cached(WORKFLOW_CACHE, workflows, workflowId, () -> delegate.workflow(workflowId));
+  }
+
+  @Override
+  public void delete(WorkflowId workflowId) throws IOException {
+    try {
+      delegate.delete(workflowId);
+    } finally {
+      invalidate(workflowId);
+    }
+  }
+
+  @Override
+  public void updateNextNaturalTrigger(WorkflowId workflowId, Instant nextNaturalTrigger) throws IOException {
+    delegate.updateNextNaturalTrigger(workflowId, nextNaturalTrigger);
+  }
+
+  @Override
+  public void updateNextNaturalTriggers(Map<WorkflowId, Instant> nextNaturalTriggers) throws IOException {
+    delegate.updateNextNaturalTriggers(nextNaturalTriggers);
+  }
+
+  @Override
+  public Map<Workflow, Optional<Instant>> workflowsWithNextNaturalTrigger() throws IOException {
+    return delegate.workflowsWithNextNaturalTrigger();
+  }
+
+  @Override
+  public WorkflowInstanceExecutionData executionData(WorkflowInstance workflowInstance) throws IOException {
+    return delegate.executionData(workflowInstance);
+  }
+
+  @Override
+  public List<WorkflowInstanceExecutionData> executionData(WorkflowId workflowId) throws IOException {
+    return delegate.executionData(workflowId);
+  }
+
+  @Override
+  public List<WorkflowInstanceExecutionData> executionData(
+      WorkflowId workflowId,
+      Optional<String> start,
+      Optional<String> end,
+      Optional<String> after,
+      int limit) throws IOException {
+    return delegate.executionData(workflowId, start, end, after, limit);
+  }
+
+  @Override
+  public boolean enabled(WorkflowId workflowId) throws IOException {
+    return delegate.enabled(workflowId);
+  }
+
+  @Override
+  public Set<WorkflowId> enabled() throws IOException {
+    return delegate.enabled();
+  }
+
+  @Override
+  public void patchState(WorkflowId workflowId, WorkflowState state) throws IOException {
+    try {
+      delegate.patchState(workflowId, state);
+    } finally {
+      invalidate(workflowId);
+    }
+  }
+
+  @Override
+  public void patchState(String componentId, WorkflowState state) throws IOException {
+    try {
+      delegate.patchState(componentId, state);
+    } finally {
+      // component level state applies to all workflows of the component
+      generation.incrementAndGet();
+      workflowStates.asMap().keySet().removeIf(id -> id.componentId().equals(componentId));
+      dockerImages.asMap().keySet().removeIf(id -> id.componentId().equals(componentId));
+    }
+  }
+
+  @Override
+  public Optional<String> getDockerImage(WorkflowId workflowId) throws IOException {
+    return cached(DOCKER_IMAGE_CACHE, dockerImages, workflowId, () -> delegate.getDockerImage(workflowId));
+  }
+
+  @Override
+  public WorkflowState workflowState(WorkflowId workflowId) throws IOException {
+    return cached(WORKFLOW_STATE_CACHE, workflowStates, workflowId, () -> delegate.workflowState(workflowId));
+  }
+
+  @Override
+  public List<RetryPolicy> retryPolicies() {
+    return delegate.retryPolicies();
+  }
+
+  private void invalidate(WorkflowId workflowId) {
+    generation.incrementAndGet();
+    workflows.invalidate(workflowId);
+    workflowStates.invalidate(workflowId);
+    dockerImages.invalidate(workflowId);
+  }
+
+  private <V> V cached(String name, Cache<WorkflowId, V> cache, WorkflowId workflowId,
+                       FnWithException<V, IOException> loader) throws IOException {
+    final V cached = cache.getIfPresent(workflowId);
+    if (cached != null) {
+      stats.cacheHit(name);
+      return cached;
+    }
+    stats.cacheMiss(name);
+
+    final long loadGeneration = generation.get();
+    final Instant t0 = time.get();
+    final V value = loader.apply();
+    stats.cacheLoad(name, t0.until(time.get(), ChronoUnit.MILLIS));
+
+    if (generation.get() == loadGeneration) {
+      cache.put(workflowId, value);
+    }
+    return value;
+  }
+
+  private static <V> Cache<WorkflowId, V> cache(long maxSize, Duration ttl, Time time) {
+    return CacheBuilder.newBuilder()
+        .maximumSize(maxSize)
+        .expireAfterWrite(ttl.toMillis(), TimeUnit.MILLISECONDS)
+        .ticker(new Ticker() {
+          @Override
+          public long read() {
+            return TimeUnit.MILLISECONDS.toNanos(time.get().toEpochMilli());
+          }
+        })
+        .build();
+  }
+}
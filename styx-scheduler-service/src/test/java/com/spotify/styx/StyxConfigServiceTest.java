@@ -0,0 +1,176 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import com.spotify.styx.model.StyxConfig;
+import com.spotify.styx.storage.Storage;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StyxConfigServiceTest {
+
+  private static final StyxConfig CONFIG_1 = StyxConfig.create(true, "default");
+  private static final StyxConfig CONFIG_2 = StyxConfig.create(false, "other");
+
+  @Mock
+  Storage storage;
+
+  private final List<Runnable> queuedLoads = Lists.newArrayList();
+  private final Executor executor = queuedLoads::add;
+
+  private Instant now = Instant.parse("2016-10-17T15:00:00Z");
+
+  private StyxConfigService styxConfig;
+
+  @Before
+  public void setUp() throws Exception {
+    styxConfig = new StyxConfigService(storage, executor, () -> now, Duration.ofSeconds(10));
+  }
+
+  @Test
+  public void shouldLoadFirstSnapshotOnCallingThread() throws Exception {
+    when(storage.config()).thenReturn(CONFIG_1);
+
+    assertThat(styxConfig.get(), is(CONFIG_1));
+    assertThat(queuedLoads.size(), is(0));
+    verify(storage).config();
+  }
+
+  @Test
+  public void shouldServeSnapshotWithinRefreshInterval() throws Exception {
+    when(storage.config()).thenReturn(CONFIG_1, CONFIG_2);
+
+    styxConfig.get();
+    now = now.plusSeconds(9);
+
+    assertThat(styxConfig.get(), is(CONFIG_1));
+    assertThat(styxConfig.get(), is(CONFIG_1));
+    assertThat(queuedLoads.size(), is(0));
+    verify(storage).config();
+  }
+
+  @Test
+  public void shouldRefreshStaleSnapshotAsynchronously() throws Exception {
+    when(storage.config()).thenReturn(CONFIG_1, CONFIG_2);
+
+    styxConfig.get();
+    now = now.plusSeconds(11);
+
+    assertThat(styxConfig.get(), is(CONFIG_1));
+    assertThat(queuedLoads.size(), is(1));
+
+    runQueuedLoads();
+
+    assertThat(styxConfig.get(), is(CONFIG_2));
+    verify(storage, times(2)).config();
+  }
+
+  @Test
+  public void shouldRefreshOnlyOnceAtATime() throws Exception {
+    when(storage.config()).thenReturn(CONFIG_1, CONFIG_2);
+
+    styxConfig.get();
+    now = now.plusSeconds(11);
+
+    styxConfig.get();
+    styxConfig.get();
+    final CompletableFuture<StyxConfig> refresh = styxConfig.refresh();
+
+    assertThat(queuedLoads.size(), is(1));
+    assertThat(refresh.isDone(), is(false));
+
+    runQueuedLoads();
+
+    assertThat(refresh.get(), is(CONFIG_2));
+    verify(storage, times(2)).config();
+  }
+
+  @Test
+  public void shouldKeepServingSnapshotWhenRefreshFails() throws Exception {
+    when(storage.config())
+        .thenReturn(CONFIG_1)
+        .thenThrow(new IOException("unavailable"));
+
+    styxConfig.get();
+    now = now.plusSeconds(11);
+
+    final CompletableFuture<StyxConfig> refresh = styxConfig.refresh();
+    runQueuedLoads();
+
+    assertThat(refresh.isCompletedExceptionally(), is(true));
+    assertThat(styxConfig.get(), is(CONFIG_1));
+    assertThat(styxConfig.stalenessMillis(), is(11_000L));
+  }
+
+  @Test
+  public void shouldPropagateFailureWhenNoSnapshotLoaded() throws Exception {
+    when(storage.config()).thenThrow(new IOException("unavailable"));
+
+    try {
+      styxConfig.get();
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e.getCause() instanceof IOException, is(true));
+    }
+  }
+
+  @Test
+  public void shouldReportStaleness() throws Exception {
+    when(storage.config()).thenReturn(CONFIG_1, CONFIG_2);
+
+    now = now.plusSeconds(3);
+    assertThat(styxConfig.stalenessMillis(), is(3_000L));
+
+    styxConfig.get();
+    assertThat(styxConfig.stalenessMillis(), is(0L));
+
+    now = now.plusSeconds(5);
+    assertThat(styxConfig.stalenessMillis(), is(5_000L));
+
+    styxConfig.refresh();
+    runQueuedLoads();
+    assertThat(styxConfig.stalenessMillis(), is(0L));
+  }
+
+  private void runQueuedLoads() {
+    final List<Runnable> loads = Lists.newArrayList(queuedLoads);
+    queuedLoads.clear();
+    loads.forEach(Runnable::run);
+  }
+}
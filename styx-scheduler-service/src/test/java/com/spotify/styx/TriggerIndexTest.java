@@ -0,0 +1,130 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx;
+
+import static com.spotify.styx.testdata.TestData.FULL_DATA_ENDPOINT;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.collect.ImmutableMap;
+import com.spotify.styx.model.Workflow;
+import java.net.URI;
+import java.time.Instant;
+import java.util.Optional;
+import org.junit.Test;
+
+public class TriggerIndexTest {
+
+  private static final Instant NOW = Instant.parse("2016-10-10T13:11:11Z");
+
+  private static final Workflow WORKFLOW_1 =
+      Workflow.create("comp", URI.create("http:/foo"), FULL_DATA_ENDPOINT);
+  private static final Workflow WORKFLOW_2 =
+      Workflow.create("comp2", URI.create("http:/foo"), FULL_DATA_ENDPOINT);
+  private static final Workflow WORKFLOW_3 =
+      Workflow.create("comp3", URI.create("http:/foo"), FULL_DATA_ENDPOINT);
+
+  private TriggerIndex index = new TriggerIndex();
+
+  @Test
+  public void shouldReturnDueWorkflowsInTriggerOrder() throws Exception {
+    index.reconcile(ImmutableMap.of(
+        WORKFLOW_1, Optional.of(NOW.minusSeconds(10)),
+        WORKFLOW_2, Optional.of(NOW.plusSeconds(10)),
+        WORKFLOW_3, Optional.of(NOW.minusSeconds(20))), index.version());
+
+    assertThat(index.due(NOW).keySet(), contains(WORKFLOW_3, WORKFLOW_1));
+    assertThat(index.due(NOW.plusSeconds(10)).keySet(), contains(WORKFLOW_3, WORKFLOW_1, WORKFLOW_2));
+  }
+
+  @Test
+  public void shouldAlwaysReturnWorkflowsWithoutNextNaturalTrigger() throws Exception {
+    index.put(WORKFLOW_1);
+
+    assertThat(index.due(NOW), hasEntry(WORKFLOW_1, Optional.<Instant>empty()));
+  }
+
+  @Test
+  public void shouldMoveWorkflowOnUpdatedNextNaturalTrigger() throws Exception {
+    index.put(WORKFLOW_1);
+    index.updateNextNaturalTrigger(WORKFLOW_1.id(), NOW.plusSeconds(1));
+
+    assertThat(index.due(NOW).isEmpty(), is(true));
+    assertThat(index.due(NOW.plusSeconds(1)), hasEntry(WORKFLOW_1, Optional.of(NOW.plusSeconds(1))));
+  }
+
+  @Test
+  public void shouldKeepNextNaturalTriggerOnChange() throws Exception {
+    index.reconcile(ImmutableMap.of(WORKFLOW_1, Optional.of(NOW.plusSeconds(1))), index.version());
+    index.put(WORKFLOW_1);
+
+    assertThat(index.due(NOW).isEmpty(), is(true));
+    assertThat(index.size(), is(1));
+  }
+
+  @Test
+  public void shouldRemoveWorkflow() throws Exception {
+    index.put(WORKFLOW_1);
+    index.remove(WORKFLOW_1.id());
+
+    assertThat(index.due(NOW).isEmpty(), is(true));
+    assertThat(index.size(), is(0));
+  }
+
+  @Test
+  public void shouldReplaceIndexWithStoredWorkflowsOnReconcile() throws Exception {
+    index.put(WORKFLOW_1);
+    index.put(WORKFLOW_2);
+
+    index.reconcile(ImmutableMap.of(WORKFLOW_2, Optional.of(NOW.minusSeconds(1))), index.version());
+
+    assertThat(index.due(NOW).keySet(), contains(WORKFLOW_2));
+    assertThat(index.size(), is(1));
+  }
+
+  @Test
+  public void shouldKeepChangesMadeDuringReconcile() throws Exception {
+    index.put(WORKFLOW_1);
+    final long readVersion = index.version();
+
+    // changed after storage was read
+    index.put(WORKFLOW_2);
+    index.remove(WORKFLOW_1.id());
+    index.reconcile(ImmutableMap.of(WORKFLOW_1, Optional.of(NOW.minusSeconds(1))), readVersion);
+
+    assertThat(index.due(NOW).keySet(), contains(WORKFLOW_2));
+    assertThat(index.size(), is(1));
+  }
+
+  @Test
+  public void shouldTakeStoredNextNaturalTriggerOfWorkflowPutDuringReconcile() throws Exception {
+    final long readVersion = index.version();
+
+    // put after storage was read, before it was ever indexed
+    index.put(WORKFLOW_1);
+    index.reconcile(ImmutableMap.of(WORKFLOW_1, Optional.of(NOW.plusSeconds(10))), readVersion);
+
+    assertThat(index.due(NOW).isEmpty(), is(true));
+    assertThat(index.due(NOW.plusSeconds(10)), hasEntry(WORKFLOW_1, Optional.of(NOW.plusSeconds(10))));
+  }
+}
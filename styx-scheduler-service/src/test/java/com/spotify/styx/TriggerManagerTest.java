@@ -23,23 +23,32 @@ package com.spotify.styx;
 import static com.spotify.styx.testdata.TestData.FULL_DATA_ENDPOINT;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.stream.Collectors.toSet;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.spotify.styx.model.Workflow;
 import com.spotify.styx.storage.Storage;
 import com.spotify.styx.util.Time;
 import java.io.IOException;
 import java.net.URI;
 import java.time.Instant;
+import java.util.Map;
 import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -79,7 +88,7 @@ public class TriggerManagerTest {
     setupWithNextNaturalTrigger(true, NEXT_EXECUTION);
     triggerManager.tick();
     verify(triggerListener).event(WORKFLOW_DAILY, NATURAL_TRIGGER, NEXT_EXECUTION_MINUS_DAY);
-    verify(storage).updateNextNaturalTrigger(WORKFLOW_DAILY.id(), NEXT_EXECUTION_PLUS_DAY);
+    verify(storage).updateNextNaturalTriggers(ImmutableMap.of(WORKFLOW_DAILY.id(), NEXT_EXECUTION_PLUS_DAY));
   }
 
   @Test
@@ -87,7 +96,7 @@ public class TriggerManagerTest {
     setupWithoutNextNaturalTrigger(true);
     triggerManager.tick();
     verify(triggerListener).event(WORKFLOW_DAILY, "natural-trigger", MANAGER_TIME_MINUS_DAY_TRUNCATED);
-    verify(storage).updateNextNaturalTrigger(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED);
+    verify(storage).updateNextNaturalTriggers(ImmutableMap.of(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED));
   }
 
   @Test
@@ -95,7 +104,7 @@ public class TriggerManagerTest {
     setupWithNextNaturalTrigger(false, MANAGER_TIME_TRUNCATED);
     triggerManager.tick();
     verify(triggerListener, never()).event(any(), any(), any());
-    verify(storage).updateNextNaturalTrigger(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED);
+    verify(storage).updateNextNaturalTriggers(ImmutableMap.of(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED));
   }
 
   @Test
@@ -103,7 +112,7 @@ public class TriggerManagerTest {
     setupWithoutNextNaturalTrigger(false);
     triggerManager.tick();
     verify(triggerListener, never()).event(any(), any(), any());
-    verify(storage).updateNextNaturalTrigger(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED);
+    verify(storage).updateNextNaturalTriggers(ImmutableMap.of(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED));
   }
 
   @Test
@@ -111,7 +120,107 @@ public class TriggerManagerTest {
     setupWithNextNaturalTrigger(true, MANAGER_TIME_TRUNCATED.plus(1, DAYS));
     triggerManager.tick();
     verify(triggerListener, never()).event(any(), any(), any());
-    verify(storage, never()).updateNextNaturalTrigger(any(), any());
+    verify(storage, never()).updateNextNaturalTriggers(any());
+  }
+
+  @Test
+  public void shouldNotReadStorageOnEveryTick() throws IOException {
+    setupWithNextNaturalTrigger(true, MANAGER_TIME_TRUNCATED.plus(1, DAYS));
+    triggerManager.tick();
+    triggerManager.tick();
+    triggerManager.tick();
+    verify(storage, times(1)).workflowsWithNextNaturalTrigger();
+    verify(storage, never()).enabled();
+    verify(triggerListener, never()).event(any(), any(), any());
+  }
+
+  @Test
+  public void shouldOnlyTriggerAgainAtNextNaturalTrigger() throws IOException {
+    setupWithNextNaturalTrigger(true, MANAGER_TIME_TRUNCATED);
+    triggerManager.tick();
+    triggerManager.tick();
+    verify(triggerListener, times(1)).event(WORKFLOW_DAILY, NATURAL_TRIGGER, MANAGER_TIME_MINUS_DAY_TRUNCATED);
+    verify(storage, times(1))
+        .updateNextNaturalTriggers(ImmutableMap.of(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED));
+  }
+
+  @Test
+  public void shouldTriggerChangedWorkflowWithoutReadingStorage() throws IOException {
+    when(storage.enabled()).thenReturn(ImmutableSet.of(WORKFLOW_DAILY.id()));
+    when(storage.workflowsWithNextNaturalTrigger()).thenReturn(ImmutableMap.of());
+    triggerManager.tick();
+
+    triggerManager.workflowChanged(WORKFLOW_DAILY);
+    triggerManager.tick();
+    verify(triggerListener).event(WORKFLOW_DAILY, NATURAL_TRIGGER, MANAGER_TIME_MINUS_DAY_TRUNCATED);
+    verify(storage).updateNextNaturalTriggers(ImmutableMap.of(WORKFLOW_DAILY.id(), MANAGER_TIME_PLUS_DAY_TRUNCATED));
+    verify(storage, times(1)).workflowsWithNextNaturalTrigger();
+  }
+
+  @Test
+  public void shouldNotTriggerRemovedWorkflow() throws IOException {
+    when(storage.enabled()).thenReturn(ImmutableSet.of(WORKFLOW_DAILY.id()));
+    when(storage.workflowsWithNextNaturalTrigger()).thenReturn(ImmutableMap.of());
+    triggerManager.tick();
+
+    triggerManager.workflowChanged(WORKFLOW_DAILY);
+    triggerManager.workflowRemoved(WORKFLOW_DAILY.id());
+    triggerManager.tick();
+    verify(triggerListener, never()).event(any(), any(), any());
+    verify(storage, never()).updateNextNaturalTriggers(any());
+  }
+
+  @Test
+  public void shouldRetryInitialLoadOnFailure() throws IOException {
+    when(storage.enabled()).thenReturn(ImmutableSet.of(WORKFLOW_DAILY.id()));
+    when(storage.workflowsWithNextNaturalTrigger())
+        .thenThrow(new IOException())
+        .thenReturn(ImmutableMap.of(WORKFLOW_DAILY, Optional.of(NEXT_EXECUTION)));
+    triggerManager.tick();
+    verify(triggerListener, never()).event(any(), any(), any());
+
+    triggerManager.tick();
+    verify(triggerListener).event(WORKFLOW_DAILY, NATURAL_TRIGGER, NEXT_EXECUTION_MINUS_DAY);
+  }
+
+  @Test
+  public void shouldCommitNextNaturalTriggersInChunks() throws IOException {
+    final int workflowCount = TriggerManager.COMMIT_CHUNK_SIZE * 2 + 1;
+    final Map<Workflow, Optional<Instant>> workflows = Maps.newHashMap();
+    for (int i = 0; i < workflowCount; i++) {
+      workflows.put(Workflow.create("comp" + i, URI.create("http:/foo"), FULL_DATA_ENDPOINT),
+                    Optional.of(NEXT_EXECUTION));
+    }
+    when(storage.enabled()).thenReturn(ImmutableSet.of());
+    when(storage.workflowsWithNextNaturalTrigger()).thenReturn(workflows);
+
+    triggerManager.tick();
+
+    final ArgumentCaptor<Map> chunks = ArgumentCaptor.forClass(Map.class);
+    verify(storage, times(3)).updateNextNaturalTriggers(chunks.capture());
+    assertThat(chunks.getAllValues().stream().mapToInt(Map::size).sum(), is(workflowCount));
+    assertThat(chunks.getAllValues().get(0).size(), is(TriggerManager.COMMIT_CHUNK_SIZE));
+  }
+
+  @Test
+  public void shouldStopTriggeringWhenCommitFails() throws IOException {
+    final Map<Workflow, Optional<Instant>> workflows = Maps.newHashMap();
+    for (int i = 0; i < TriggerManager.COMMIT_CHUNK_SIZE + 1; i++) {
+      workflows.put(Workflow.create("comp" + i, URI.create("http:/foo"), FULL_DATA_ENDPOINT),
+                    Optional.of(NEXT_EXECUTION));
+    }
+    when(storage.enabled()).thenReturn(workflows.keySet().stream().map(Workflow::id).collect(toSet()));
+    when(storage.workflowsWithNextNaturalTrigger()).thenReturn(workflows);
+    doThrow(new IOException()).when(storage).updateNextNaturalTriggers(any());
+
+    try {
+      triggerManager.tick();
+      fail();
+    } catch (RuntimeException ignored) {
+    }
+
+    verify(storage, times(1)).updateNextNaturalTriggers(any());
+    verify(triggerListener, times(TriggerManager.COMMIT_CHUNK_SIZE)).event(any(), any(), any());
   }
 
   private void setupWithNextNaturalTrigger(boolean enabled, Instant nextNaturalTrigger) throws IOException {
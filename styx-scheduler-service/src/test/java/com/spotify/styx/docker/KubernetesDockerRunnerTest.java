@@ -29,12 +29,20 @@ import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.RateLimiter;
 import com.spotify.styx.docker.DockerRunner.RunSpec;
 import com.spotify.styx.model.Event;
 import com.spotify.styx.model.WorkflowInstance;
@@ -43,21 +51,30 @@ import com.spotify.styx.state.RunState;
 import com.spotify.styx.state.StateManager;
 import com.spotify.styx.state.SyncStateManager;
 import com.spotify.styx.testdata.TestData;
+import com.spotify.styx.util.RetryPolicy;
 import io.fabric8.kubernetes.api.model.DoneablePod;
 import io.fabric8.kubernetes.api.model.EnvVar;
 import io.fabric8.kubernetes.api.model.ListMeta;
 import io.fabric8.kubernetes.api.model.Pod;
 import io.fabric8.kubernetes.api.model.PodList;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.Watch;
 import io.fabric8.kubernetes.client.Watcher;
 import io.fabric8.kubernetes.client.dsl.ClientMixedOperation;
 import io.fabric8.kubernetes.client.dsl.ClientPodResource;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
 import io.fabric8.kubernetes.client.dsl.Watchable;
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -78,12 +95,21 @@ public class KubernetesDockerRunnerTest {
   private static final String POD_NAME = "test-pod-1";
   private static final WorkflowInstance WORKFLOW_INSTANCE = WorkflowInstance.create(TestData.WORKFLOW_ID, "foo");
   private static final RunSpec RUN_SPEC = RunSpec.create("busybox", ImmutableList.of(), Optional.empty());
+  // ten seconds after the container in KubernetesPodEventTranslatorTest.running() started
+  private static final String RUNNER_ID = "test";
+  private static final Instant NOW = Instant.parse("2016-05-30T09:46:58Z");
 
   @Mock KubernetesClient k8sClient;
 
   @Mock ClientMixedOperation<Pod, PodList, DoneablePod, ClientPodResource<Pod, DoneablePod>> pods;
 
+  @Mock FilterWatchListDeletable<Pod, PodList, Boolean, Watch, Watcher<Pod>> styxPods;
+
+  @Mock FilterWatchListDeletable<Pod, PodList, Boolean, Watch, Watcher<Pod>> reapedPods;
+
   @Mock PodList podList;
+  @Mock PodList allPodList;
+  @Mock ClientPodResource<Pod, DoneablePod> namedPod;
   @Mock ListMeta listMeta;
   @Mock Watchable<Watch, Watcher<Pod>> podWatchable;
   @Mock Watch watch;
@@ -103,16 +129,28 @@ public class KubernetesDockerRunnerTest {
   public void setUp() throws Exception {
     when(k8sClient.inNamespace(any(String.class))).thenReturn(k8sClient);
     when(k8sClient.pods()).thenReturn(pods);
+    when(pods.withLabel(KubernetesDockerRunner.STYX_RUN, KubernetesDockerRunner.STYX_RUN_LABEL_VALUE))
+        .thenReturn(styxPods);
 
-    // pods().list().getMetadata().getResourceVersion()
-    when(pods.list()).thenReturn(podList);
+    // pods().withLabel(...).list().getMetadata().getResourceVersion()
+    when(styxPods.list()).thenReturn(podList);
     when(podList.getMetadata()).thenReturn(listMeta);
     when(listMeta.getResourceVersion()).thenReturn("1000");
 
-    when(pods.withResourceVersion("1000")).thenReturn(podWatchable);
+    when(styxPods.withResourceVersion("1000")).thenReturn(podWatchable);
     when(podWatchable.watch(watchCaptor.capture())).thenReturn(watch);
 
-    kdr = new KubernetesDockerRunner(k8sClient, stateManager, stats);
+    // pods().list().getItems(), listing unlabeled pods from before pods were labeled
+    when(pods.list()).thenReturn(allPodList);
+    when(allPodList.getItems()).thenReturn(ImmutableList.of());
+
+    // run pod operations synchronously and retry them with barely any delay
+    final RetryPolicy retryPolicy = RetryPolicy.builder("kubernetes")
+        .maxAttempts(3)
+        .baseDelay(Duration.ofMillis(1))
+        .maxDelay(Duration.ofMillis(1))
+        .build();
+    kdr = createRunner(retryPolicy);
     kdr.init();
 
     podWatcher = watchCaptor.getValue();
@@ -136,6 +174,17 @@ public class KubernetesDockerRunnerTest {
     kdr.close();
   }
 
+  private KubernetesDockerRunner createRunner(RetryPolicy retryPolicy) {
+    return createRunner(stateManager, retryPolicy);
+  }
+
+  private KubernetesDockerRunner createRunner(StateManager stateManager, RetryPolicy retryPolicy) {
+    return new KubernetesDockerRunner(RUNNER_ID, k8sClient, stateManager, stats, () -> NOW,
+                                      Executors.newSingleThreadScheduledExecutor(),
+                                      MoreExecutors.newDirectExecutorService(), retryPolicy,
+                                      RateLimiter.create(1000));
+  }
+
   @Test
   public void shouldReturnEnvironmentVariablesForCreatedPod() throws Exception {
     List<EnvVar> envVars = createdPod.getSpec().getContainers().get(0).getEnv();
@@ -193,6 +242,9 @@ public class KubernetesDockerRunnerTest {
     createdPod.setStatus(podStatusNoContainer("Succeeded"));
     podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
 
+    // from creating the pod in setUp()
+    verify(stats).podOperationsInFlight(RUNNER_ID, 1);
+    verify(stats).dockerRunnerOperation(eq(RUNNER_ID), eq("create-pod"), anyLong());
     verifyNoMoreInteractions(stats);
     assertThat(stateManager.get(WORKFLOW_INSTANCE).state(), is(RunState.State.FAILED));
   }
@@ -239,4 +291,315 @@ public class KubernetesDockerRunnerTest {
     podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
     assertThat(stateManager.get(WORKFLOW_INSTANCE).state(), is(RunState.State.RUNNING));
   }
+
+  @Test
+  public void shouldLabelCreatedPods() throws Exception {
+    assertThat(createdPod.getMetadata().getLabels().get(KubernetesDockerRunner.STYX_RUN),
+               is(KubernetesDockerRunner.STYX_RUN_LABEL_VALUE));
+  }
+
+  @Test
+  public void shouldSuppressPodEventsWithUnchangedStatus() throws Exception {
+    stateManager.initialize(RunState.create(WORKFLOW_INSTANCE, RunState.State.SUBMITTED));
+    createdPod.setStatus(running(/* ready= */ false));
+    podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+
+    createdPod.getMetadata().setResourceVersion("1002");
+    podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+    verify(stats, times(1)).podEventSuppressed();
+
+    createdPod.setStatus(running(/* ready= */ true));
+    createdPod.getMetadata().setResourceVersion("1003");
+    podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+    verify(stats, times(1)).podEventSuppressed();
+    assertThat(stateManager.get(WORKFLOW_INSTANCE).state(), is(RunState.State.RUNNING));
+  }
+
+  @Test
+  public void shouldInspectChangedPodsOnResync() throws Exception {
+    createdPod.setStatus(terminated("Succeeded", 20));
+    when(podList.getItems()).thenReturn(ImmutableList.of(createdPod));
+
+    kdr.resyncPods();
+
+    assertThat(stateManager.get(WORKFLOW_INSTANCE).lastExit(), is(20));
+    verify(stats).podResync(anyLong());
+    verify(stats).podCacheSize(1);
+  }
+
+  @Test
+  public void shouldSkipPodsAlreadySeenByWatchOnResync() throws Exception {
+    stateManager.initialize(RunState.create(WORKFLOW_INSTANCE, RunState.State.SUBMITTED));
+    createdPod.setStatus(running(/* ready= */ false));
+    podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+    when(podList.getItems()).thenReturn(ImmutableList.of(createdPod));
+
+    kdr.resyncPods();
+
+    verify(stats, times(1)).podEventSuppressed();
+  }
+
+  @Test
+  public void shouldInspectPodsAgainUntilTheirEventsTakeEffect() throws Exception {
+    final StateManager dropping = Mockito.spy(stateManager);
+    doReturn(true).when(dropping).offer(any(Event.class), anyLong(), any(TimeUnit.class));
+    final KubernetesDockerRunner runner =
+        createRunner(dropping, RetryPolicy.builder("kubernetes").build());
+    try {
+      runner.init();
+      final Watcher<Pod> watcher = watchCaptor.getValue();
+
+      createdPod.setStatus(terminated("Succeeded", 20));
+      watcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+      when(podList.getItems()).thenReturn(ImmutableList.of(createdPod));
+      runner.resyncPods();
+    } finally {
+      runner.close();
+    }
+
+    verify(dropping, times(2)).offer(any(Event.class), anyLong(), any(TimeUnit.class));
+    verify(stats, never()).podEventSuppressed();
+  }
+
+  @Test
+  public void shouldEvictDeletedPodsFromCache() throws Exception {
+    stateManager.initialize(RunState.create(WORKFLOW_INSTANCE, RunState.State.SUBMITTED));
+    createdPod.setStatus(running(/* ready= */ false));
+    podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+    when(podList.getItems()).thenReturn(ImmutableList.of());
+
+    kdr.resyncPods();
+
+    verify(stats).podCacheSize(0);
+  }
+
+  @Test
+  public void shouldRecordEventLagFromPodStatusTimestamp() throws Exception {
+    stateManager.initialize(RunState.create(WORKFLOW_INSTANCE, RunState.State.SUBMITTED));
+    createdPod.setStatus(running(/* ready= */ true));
+    podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+
+    verify(stats).podEventLag(10_000L);
+  }
+
+  @Test
+  public void shouldResumeWatchFromLastSeenResourceVersion() throws Exception {
+    when(styxPods.withResourceVersion("1001")).thenReturn(podWatchable);
+    createdPod.setStatus(running(/* ready= */ false));
+    podWatcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+
+    podWatcher.onClose(null);
+
+    verify(podWatchable, timeout(5_000).times(2)).watch(podWatcher);
+    verify(styxPods).withResourceVersion("1001");
+    verify(styxPods, times(1)).list();
+  }
+
+  @Test
+  public void shouldRelistAndRewatchWhenResourceVersionIsGone() throws Exception {
+    createdPod.setStatus(terminated("Succeeded", 20));
+    when(podList.getItems()).thenReturn(ImmutableList.of(createdPod));
+
+    podWatcher.onClose(new KubernetesClientException("too old resource version",
+                                                     HttpURLConnection.HTTP_GONE, null));
+
+    verify(podWatchable, timeout(5_000).times(2)).watch(podWatcher);
+    verify(stats).podWatchGap();
+    verify(styxPods, times(2)).list();
+    assertThat(stateManager.get(WORKFLOW_INSTANCE).lastExit(), is(20));
+  }
+
+  @Test
+  public void shouldNotReconnectAfterClose() throws Exception {
+    kdr.close();
+    podWatcher.onClose(null);
+
+    verify(podWatchable, times(1)).watch(podWatcher);
+  }
+
+  @Test
+  public void shouldRetryPodCreationOnServerError() throws Exception {
+    stateManager.initialize(RunState.create(WORKFLOW_INSTANCE, RunState.State.SUBMITTED));
+    when(pods.create(any(Pod.class)))
+        .thenThrow(new KubernetesClientException("unavailable", HttpURLConnection.HTTP_UNAVAILABLE, null))
+        .thenThrow(new KubernetesClientException("slow down", KubernetesDockerRunner.HTTP_TOO_MANY_REQUESTS, null))
+        .thenReturn(createdPod);
+
+    kdr.start(WORKFLOW_INSTANCE, RUN_SPEC);
+
+    verify(pods, timeout(1000).times(4)).create(any(Pod.class));
+    assertThat(stateManager.get(WORKFLOW_INSTANCE).state(), is(RunState.State.SUBMITTED));
+  }
+
+  @Test
+  public void shouldFailWhenPodCreationFails() throws Exception {
+    stateManager.initialize(RunState.create(WORKFLOW_INSTANCE, RunState.State.SUBMITTED));
+    when(pods.create(any(Pod.class)))
+        .thenThrow(new KubernetesClientException("bad pod", HttpURLConnection.HTTP_BAD_REQUEST, null));
+
+    final String executionId = kdr.start(WORKFLOW_INSTANCE, RUN_SPEC);
+
+    // not retried, and the execution id is known before the pod is created
+    verify(pods, times(2)).create(any(Pod.class));
+    assertThat(executionId, matchesPattern(KubernetesDockerRunner.STYX_RUN + "-" + UUID_REGEX));
+    assertThat(stateManager.get(WORKFLOW_INSTANCE).state(), is(RunState.State.FAILED));
+  }
+
+  @Test
+  public void shouldLabelCreatedPodsWithExecutionId() throws Exception {
+    final EnvVar execution = createdPod.getSpec().getContainers().get(0).getEnv().get(4);
+    assertThat(createdPod.getMetadata().getLabels().get(KubernetesDockerRunner.STYX_EXECUTION_ID_LABEL),
+               is(execution.getValue()));
+  }
+
+  @Test
+  public void shouldDeleteCleanedUpPodsInBatches() throws Exception {
+    when(pods.withLabelIn(KubernetesDockerRunner.STYX_EXECUTION_ID_LABEL, POD_NAME, "test-pod-2"))
+        .thenReturn(reapedPods);
+    when(reapedPods.delete())
+        .thenThrow(new KubernetesClientException("unavailable", HttpURLConnection.HTTP_UNAVAILABLE, null))
+        .thenReturn(true);
+
+    kdr.cleanup(POD_NAME);
+    kdr.cleanup("test-pod-2");
+    kdr.cleanup(POD_NAME);
+    kdr.reapPods();
+
+    verify(stats).podReaperBacklog(2);
+    verify(reapedPods, timeout(1000).times(2)).delete();
+    verify(stats, timeout(1000)).dockerRunnerOperation(eq(RUNNER_ID), eq("delete-pods"), anyLong());
+  }
+
+  @Test
+  public void shouldReapOrphanedPodsOnResync() throws Exception {
+    final WorkflowInstance inactive = WorkflowInstance.create(TestData.WORKFLOW_ID, "bar");
+    createdPod.getMetadata().getAnnotations()
+        .put(KubernetesDockerRunner.STYX_WORKFLOW_INSTANCE_ANNOTATION, inactive.toKey());
+    when(podList.getItems()).thenReturn(ImmutableList.of(createdPod));
+    when(pods.withLabelIn(KubernetesDockerRunner.STYX_EXECUTION_ID_LABEL, POD_NAME))
+        .thenReturn(reapedPods);
+
+    kdr.resyncPods();
+    kdr.reapPods();
+
+    verify(stats).podOrphans(1);
+    verify(reapedPods).delete();
+  }
+
+  @Test
+  public void shouldNotReapRecentlyCreatedOrphans() throws Exception {
+    final WorkflowInstance inactive = WorkflowInstance.create(TestData.WORKFLOW_ID, "bar");
+    createdPod.getMetadata().getAnnotations()
+        .put(KubernetesDockerRunner.STYX_WORKFLOW_INSTANCE_ANNOTATION, inactive.toKey());
+    createdPod.getMetadata().setCreationTimestamp(NOW.minusSeconds(60).toString());
+    when(podList.getItems()).thenReturn(ImmutableList.of(createdPod));
+
+    kdr.resyncPods();
+
+    verify(stats).podOrphans(0);
+  }
+
+  @Test
+  public void shouldLabelAndInspectUnlabeledPodsOnStartup() throws Exception {
+    final Pod legacyPod = KubernetesDockerRunner.createPod(WORKFLOW_INSTANCE, RUN_SPEC);
+    legacyPod.getMetadata().setLabels(null);
+    legacyPod.getMetadata().setAnnotations(createdPod.getMetadata().getAnnotations());
+    legacyPod.getMetadata().setName("legacy-pod");
+    legacyPod.getMetadata().setResourceVersion("999");
+    legacyPod.setStatus(terminated("Succeeded", 20));
+    when(allPodList.getItems()).thenReturn(ImmutableList.of(legacyPod));
+    when(pods.withName("legacy-pod")).thenReturn(namedPod);
+    final AtomicReference<Pod> patched = new AtomicReference<>();
+    when(namedPod.edit()).thenAnswer(invocation -> new DoneablePod(legacyPod, pod -> {
+      patched.set(pod);
+      return pod;
+    }));
+
+    final KubernetesDockerRunner restarted = createRunner(RetryPolicy.builder("kubernetes").build());
+    try {
+      restarted.init();
+    } finally {
+      restarted.close();
+    }
+
+    verify(namedPod, never()).replace(any(Pod.class));
+    assertThat(patched.get().getMetadata().getLabels().get(KubernetesDockerRunner.STYX_RUN),
+               is(KubernetesDockerRunner.STYX_RUN_LABEL_VALUE));
+    assertThat(patched.get().getMetadata().getLabels().get(KubernetesDockerRunner.STYX_EXECUTION_ID_LABEL),
+               is("legacy-pod"));
+    assertThat(stateManager.get(WORKFLOW_INSTANCE).lastExit(), is(20));
+  }
+
+  @Test
+  public void shouldOnlyLookForUnlabeledPodsOnStartup() throws Exception {
+    final Pod legacyPod = KubernetesDockerRunner.createPod(WORKFLOW_INSTANCE, RUN_SPEC);
+    legacyPod.getMetadata().setLabels(null);
+    legacyPod.getMetadata().setAnnotations(createdPod.getMetadata().getAnnotations());
+    legacyPod.getMetadata().setName("legacy-pod");
+    when(allPodList.getItems()).thenReturn(ImmutableList.of(legacyPod));
+    when(pods.withName("legacy-pod")).thenReturn(namedPod);
+    when(namedPod.edit())
+        .thenThrow(new KubernetesClientException("unavailable", HttpURLConnection.HTTP_UNAVAILABLE, null));
+
+    final KubernetesDockerRunner restarted = createRunner(RetryPolicy.builder("kubernetes").build());
+    try {
+      restarted.init();
+      restarted.resyncPods();
+      restarted.resyncPods();
+    } finally {
+      restarted.close();
+    }
+
+    verify(namedPod, times(KubernetesDockerRunner.LABEL_ATTEMPTS)).edit();
+    // once for the runner started in setUp and once for the restarted one
+    verify(pods, times(2)).list();
+  }
+
+  @Test
+  public void shouldDeletePodsWithoutExecutionIdLabelByName() throws Exception {
+    final Pod legacyPod = KubernetesDockerRunner.createPod(WORKFLOW_INSTANCE, RUN_SPEC);
+    legacyPod.getMetadata().setLabels(null);
+    legacyPod.getMetadata().setAnnotations(createdPod.getMetadata().getAnnotations());
+    legacyPod.getMetadata().setName("legacy-pod");
+    when(allPodList.getItems()).thenReturn(ImmutableList.of(legacyPod));
+    when(pods.withName("legacy-pod")).thenReturn(namedPod);
+    when(namedPod.edit())
+        .thenThrow(new KubernetesClientException("forbidden", HttpURLConnection.HTTP_FORBIDDEN, null));
+    assertThat(kdr.labelUnlabeledPods(), is(false));
+
+    kdr.cleanup("legacy-pod");
+    kdr.reapPods();
+
+    verify(namedPod).edit();
+    verify(namedPod).delete();
+    verify(pods, never()).withLabelIn(eq(KubernetesDockerRunner.STYX_EXECUTION_ID_LABEL), anyVararg());
+    verify(stats).dockerRunnerOperation(eq(RUNNER_ID), eq("delete-pod"), anyLong());
+  }
+
+  @Test
+  public void shouldLeaveRejectedPodEventsToNextResync() throws Exception {
+    final StateManager backlogged = Mockito.spy(stateManager);
+    doReturn(false).doCallRealMethod()
+        .when(backlogged).offer(any(Event.class), anyLong(), any(TimeUnit.class));
+    final KubernetesDockerRunner runner =
+        createRunner(backlogged, RetryPolicy.builder("kubernetes").build());
+    try {
+      runner.init();
+      final Watcher<Pod> watcher = watchCaptor.getValue();
+
+      createdPod.setStatus(terminated("Succeeded", 20));
+      watcher.eventReceived(Watcher.Action.MODIFIED, createdPod);
+      verify(backlogged).offer(any(Event.class),
+                               eq((long) KubernetesDockerRunner.EVENT_ADMISSION_TIMEOUT_SECONDS),
+                               eq(TimeUnit.SECONDS));
+      assertThat(stateManager.get(WORKFLOW_INSTANCE).state(), is(RunState.State.RUNNING));
+
+      when(podList.getItems()).thenReturn(ImmutableList.of(createdPod));
+      runner.resyncPods();
+    } finally {
+      runner.close();
+    }
+
+    assertThat(stateManager.get(WORKFLOW_INSTANCE).lastExit(), is(20));
+  }
 }
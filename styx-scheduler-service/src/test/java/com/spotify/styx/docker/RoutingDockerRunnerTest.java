@@ -20,11 +20,13 @@
 
 package com.spotify.styx.docker;
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -38,7 +40,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.Supplier;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
 
 public class RoutingDockerRunnerTest {
@@ -55,6 +59,9 @@ public class RoutingDockerRunnerTest {
 
   DockerRunner dockerRunner;
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   @Before
   public void setUp() throws Exception {
     dockerRunner = new RoutingDockerRunner(this::create, dockerId);
@@ -119,6 +126,63 @@ public class RoutingDockerRunnerTest {
     }
   }
 
+  @Test
+  public void testSpreadsStartsByWeight() throws Exception {
+    when(dockerId.get()).thenReturn("id-1:2, id-2:1, id-3:0");
+    for (int i = 0; i < 6; i++) {
+      dockerRunner.start(WORKFLOW_INSTANCE, RUN_SPEC);
+    }
+
+    verify(createdRunners.get("id-1"), times(4)).start(WORKFLOW_INSTANCE, RUN_SPEC);
+    verify(createdRunners.get("id-2"), times(2)).start(WORKFLOW_INSTANCE, RUN_SPEC);
+    assertThat(createdRunners.keySet(), hasSize(2));
+  }
+
+  @Test
+  public void testCleansUpOnRunnerThatStartedExecution() throws Exception {
+    when(dockerId.get()).thenReturn("id-1", "id-2");
+    dockerRunner.start(WORKFLOW_INSTANCE, RUN_SPEC);
+    dockerRunner.cleanup(MOCK_EXEC_ID);
+
+    verify(createdRunners.get("id-1")).cleanup(MOCK_EXEC_ID);
+    assertThat(createdRunners.keySet(), contains("id-1"));
+  }
+
+  @Test
+  public void testCleansUpUnknownExecutionOnAllRunners() throws Exception {
+    when(dockerId.get()).thenReturn("id-1:1,id-2:0");
+    dockerRunner.cleanup(MOCK_EXEC_ID);
+
+    verify(createdRunners.get("id-1")).cleanup(MOCK_EXEC_ID);
+    verify(createdRunners.get("id-2")).cleanup(MOCK_EXEC_ID);
+  }
+
+  @Test
+  public void testFailsStartWithoutPositiveWeight() throws Exception {
+    when(dockerId.get()).thenReturn("id-1:0");
+
+    thrown.expect(IOException.class);
+    dockerRunner.start(WORKFLOW_INSTANCE, RUN_SPEC);
+  }
+
+  @Test
+  public void testFailsStartOnInvalidWeight() throws Exception {
+    when(dockerId.get()).thenReturn("id-1:many");
+
+    thrown.expect(IOException.class);
+    dockerRunner.start(WORKFLOW_INSTANCE, RUN_SPEC);
+  }
+
+  @Test
+  public void testParsesWeights() throws Exception {
+    final Map<String, Integer> weights = RoutingDockerRunner.parseWeights("a, b:3,c:0");
+
+    assertThat(weights.keySet(), contains("a", "b", "c"));
+    assertThat(weights.get("a"), is(1));
+    assertThat(weights.get("b"), is(3));
+    assertThat(weights.get("c"), is(0));
+  }
+
   private DockerRunner create(String id) {
     DockerRunner mock = mock(DockerRunner.class);
     createCounter++;
@@ -0,0 +1,179 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+package com.spotify.styx.state;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.monitoring.Stats;
+import com.spotify.styx.testdata.TestData;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncOutputHandlerTest {
+
+  private static final WorkflowInstance INSTANCE = WorkflowInstance.create(
+      TestData.WORKFLOW_ID, "2016-05-01");
+
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+  private final Stats stats = mock(Stats.class);
+
+  private AsyncOutputHandler outputHandler;
+
+  @After
+  public void tearDown() throws Exception {
+    if (outputHandler != null) {
+      outputHandler.close();
+    }
+    timer.shutdownNow();
+  }
+
+  @Test
+  public void shouldInvokeDelegateOffCallingThread() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final CountDownLatch invoked = new CountDownLatch(1);
+    final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+    outputHandler = new AsyncOutputHandler("test", state -> {
+      threads.add(Thread.currentThread());
+      invoked.countDown();
+    }, timer, Duration.ofSeconds(5), stats);
+
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.SUBMITTING));
+
+    assertTrue(invoked.await(5, TimeUnit.SECONDS));
+    assertThat(threads.get(0), is(not(caller)));
+    verify(stats, timeout(5000)).outputHandlerLatency(eq("test"), anyLong());
+  }
+
+  @Test
+  public void shouldKeepOrderPerWorkflowInstance() throws Exception {
+    final List<RunState.State> handled = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch done = new CountDownLatch(3);
+    outputHandler = new AsyncOutputHandler("test", state -> {
+      handled.add(state.state());
+      done.countDown();
+    }, timer, Duration.ofSeconds(5), stats);
+
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.SUBMITTING));
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.RUNNING));
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.TERMINATED));
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertThat(handled, contains(
+        RunState.State.SUBMITTING, RunState.State.RUNNING, RunState.State.TERMINATED));
+  }
+
+  @Test
+  public void shouldInterruptDelegateOnTimeout() throws Exception {
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    outputHandler = new AsyncOutputHandler("test", state -> {
+      try {
+        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+    }, timer, Duration.ofMillis(50), stats);
+
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.SUBMITTING));
+
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    verify(stats, timeout(5000)).outputHandlerTimeout("test");
+  }
+
+  @Test
+  public void shouldOnlyRejectWhenInterruptedWhileSaturated() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<RunState.State> handled = Collections.synchronizedList(new ArrayList<>());
+    final Thread caller = Thread.currentThread();
+    final List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+    outputHandler = new AsyncOutputHandler("test", state -> {
+      threads.add(Thread.currentThread());
+      try {
+        release.await();
+      } catch (InterruptedException ignored) {
+      }
+      handled.add(state.state());
+    }, timer, Duration.ofSeconds(5), stats, 1, 1);
+
+    try {
+      // one running, one queued, and the third has no room left
+      outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.SUBMITTING));
+      outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.RUNNING));
+      Thread.currentThread().interrupt();
+      outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.TERMINATED));
+
+      assertThat(Thread.interrupted(), is(true));
+      assertThat(threads, not(hasItem(caller)));
+      verify(stats).outputHandlerSaturated("test");
+      verify(stats).outputHandlerRejected("test");
+    } finally {
+      release.countDown();
+    }
+
+    verify(stats, timeout(1000).times(2)).outputHandlerLatency(eq("test"), anyLong());
+    assertThat(handled, contains(RunState.State.SUBMITTING, RunState.State.RUNNING));
+  }
+
+  @Test
+  public void shouldWaitForRoomWhenSaturated() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<RunState.State> handled = Collections.synchronizedList(new ArrayList<>());
+    outputHandler = new AsyncOutputHandler("test", state -> {
+      try {
+        release.await();
+      } catch (InterruptedException ignored) {
+      }
+      handled.add(state.state());
+    }, timer, Duration.ofSeconds(5), stats, 1, 1);
+
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.SUBMITTING));
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.RUNNING));
+    timer.schedule(release::countDown, 100, TimeUnit.MILLISECONDS);
+    outputHandler.transitionInto(RunState.create(INSTANCE, RunState.State.TERMINATED));
+
+    verify(stats).outputHandlerSaturated("test");
+    verify(stats, timeout(1000).times(3)).outputHandlerLatency(eq("test"), anyLong());
+    assertThat(handled, contains(
+        RunState.State.SUBMITTING, RunState.State.RUNNING, RunState.State.TERMINATED));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNonPositiveThreads() throws Exception {
+    new AsyncOutputHandler("test", OutputHandler.NOOP, timer, Duration.ofSeconds(5), stats, 0, 1);
+  }
+}
@@ -0,0 +1,137 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.state;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.styx.model.Event;
+import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.storage.EventStorage;
+import com.spotify.styx.testdata.TestData;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class GroupCommitWriterTest {
+
+  private static final WorkflowInstance INSTANCE1 = WorkflowInstance.create(
+      TestData.WORKFLOW_ID, "2016-05-01");
+  private static final WorkflowInstance INSTANCE2 = WorkflowInstance.create(
+      TestData.WORKFLOW_ID, "2016-05-02");
+
+  private static final SequenceEvent EVENT1_0 =
+      SequenceEvent.create(Event.triggerExecution(INSTANCE1, "trig"), 0L, 0L);
+  private static final SequenceEvent EVENT1_1 =
+      SequenceEvent.create(Event.created(INSTANCE1, "exec", "img"), 1L, 1L);
+  private static final SequenceEvent EVENT2_5 =
+      SequenceEvent.create(Event.halt(INSTANCE2), 5L, 2L);
+
+  private static final RunState PREPARE1 = RunState.create(INSTANCE1, RunState.State.PREPARE);
+  private static final RunState SUBMITTED1 = RunState.create(INSTANCE1, RunState.State.SUBMITTED);
+  private static final RunState ERROR2 = RunState.create(INSTANCE2, RunState.State.ERROR);
+
+  private EventStorage storage = mock(EventStorage.class);
+  private GroupCommitWriter writer;
+
+  @After
+  public void tearDown() throws Exception {
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  @Test
+  public void shouldWriteEventsInOneBatch() throws Exception {
+    writer = new GroupCommitWriter(storage, 3, Duration.ofMinutes(1));
+
+    final CompletableFuture<Void> f1 = writer.write(EVENT1_0, PREPARE1).toCompletableFuture();
+    final CompletableFuture<Void> f2 = writer.write(EVENT1_1, SUBMITTED1).toCompletableFuture();
+    final CompletableFuture<Void> f3 = writer.write(EVENT2_5, ERROR2).toCompletableFuture();
+    CompletableFuture.allOf(f1, f2, f3).get(5, TimeUnit.SECONDS);
+
+    verify(storage).writeEvents(ImmutableList.of(EVENT1_0, EVENT1_1, EVENT2_5));
+  }
+
+  @Test
+  public void shouldCoalesceActiveStatesPerInstance() throws Exception {
+    writer = new GroupCommitWriter(storage, 3, Duration.ofMinutes(1));
+
+    writer.write(EVENT1_0, PREPARE1);
+    writer.write(EVENT1_1, SUBMITTED1);
+    writer.write(EVENT2_5, ERROR2).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+    verify(storage).writeActiveStates(ImmutableMap.of(INSTANCE1, RunStateSnapshot.of(SUBMITTED1, 1L)));
+    verify(storage).deleteActiveStates(ImmutableSet.of(INSTANCE2));
+    verify(storage, never()).writeActiveState(any(WorkflowInstance.class), anyLong());
+  }
+
+  @Test
+  public void shouldFailAllWritesInBatchIfStorageFails() throws Exception {
+    doThrow(new IOException("boom")).when(storage).writeEvents(anyListOf(SequenceEvent.class));
+    writer = new GroupCommitWriter(storage, 2, Duration.ofMinutes(1));
+
+    final CompletableFuture<Void> f1 = writer.write(EVENT1_0, PREPARE1).toCompletableFuture();
+    final CompletableFuture<Void> f2 = writer.write(EVENT2_5, ERROR2).toCompletableFuture();
+
+    assertFailed(f1);
+    assertFailed(f2);
+    verify(storage, never()).deleteActiveStates(any());
+  }
+
+  @Test
+  public void shouldFlushPendingWritesOnClose() throws Exception {
+    writer = new GroupCommitWriter(storage, 100, Duration.ofMinutes(1));
+
+    final CompletableFuture<Void> f1 = writer.write(EVENT1_0, PREPARE1).toCompletableFuture();
+    writer.close();
+
+    assertTrue(f1.isDone());
+    verify(storage, times(1)).writeEvents(ImmutableList.of(EVENT1_0));
+  }
+
+  private static void assertFailed(CompletableFuture<Void> future) throws Exception {
+    try {
+      future.get(5, TimeUnit.SECONDS);
+    } catch (ExecutionException e) {
+      assertThat(e.getCause() instanceof IOException, is(true));
+      return;
+    }
+    throw new AssertionError("expected write to fail");
+  }
+}
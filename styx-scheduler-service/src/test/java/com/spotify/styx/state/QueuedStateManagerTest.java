@@ -38,23 +38,31 @@ import com.spotify.styx.RepeatRule;
 import com.spotify.styx.model.Event;
 import com.spotify.styx.model.ExecutionDescription;
 import com.spotify.styx.model.SequenceEvent;
+import com.spotify.styx.model.WorkflowId;
 import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.monitoring.Stats;
 import com.spotify.styx.storage.InMemStorage;
 import com.spotify.styx.testdata.TestData;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.SortedSet;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.IntFunction;
 import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 public class QueuedStateManagerTest {
 
@@ -74,6 +82,9 @@ public class QueuedStateManagerTest {
   @Rule
   public RepeatRule repeatRule = new RepeatRule();
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   private void setUp(long timeoutMillis) throws Exception {
     setUp(timeoutMillis, RunState.fresh(INSTANCE, transitions::push));
   }
@@ -114,6 +125,20 @@ public class QueuedStateManagerTest {
     assertThat(storage.getCounterFromActiveStates(INSTANCE).isPresent(), is(false));
   }
 
+  @Test
+  public void shouldNotProcessEventsQueuedAfterTerminalState() throws Exception {
+    setUp(0);
+
+    stateManager.receive(Event.triggerExecution(INSTANCE, "trig"));
+    stateManager.receive(Event.halt(INSTANCE));
+    stateManager.receive(Event.timeout(INSTANCE));
+
+    assertTrue(stateManager.awaitIdle(1000));
+    assertThat(storage.writtenEvents, hasSize(2));
+    assertThat(storage.activeStatesMap.containsKey(INSTANCE), is(false));
+    assertThat(stateManager.getQueuedEventsCount(), is(0L));
+  }
+
   @Test
   public void shouldInitializeWFInstanceFromNextCounter() throws Exception {
     setUp(0);
@@ -179,6 +204,27 @@ public class QueuedStateManagerTest {
     assertThat(transitions, hasSize(0));
   }
 
+  @Test
+  public void shouldRetryAwaitingRetryState() throws Exception {
+    setUp(20_000, RunState.create(INSTANCE, RunState.State.AWAITING_RETRY, transitions::push));
+
+    stateManager.triggerRetries();
+
+    assertTrue(stateManager.awaitIdle(1000));
+    assertThat(transitions, hasSize(1));
+    assertThat(transitions.pop().state(), is(RunState.State.PREPARE));
+  }
+
+  @Test
+  public void shouldNotRetryOtherStates() throws Exception {
+    setUp(20_000);
+
+    stateManager.triggerRetries();
+
+    assertTrue(stateManager.awaitIdle(1000));
+    assertThat(transitions, hasSize(0));
+  }
+
   @Test(expected = StateManager.IsClosed.class)
   public void shouldRejectInitializeIfClosed() throws Exception {
     setUp(0);
@@ -268,6 +314,20 @@ public class QueuedStateManagerTest {
     assertThat(storage.activeStatesMap.values(), is(empty()));
   }
 
+  @Test
+  public void shouldStoreStateSnapshotWithActiveState() throws Exception {
+    setUp(0);
+
+    stateManager.receive(Event.timeTrigger(INSTANCE));          // 0
+    stateManager.receive(Event.started(INSTANCE));              // 1
+
+    assertTrue(stateManager.awaitIdle(1000));
+    RunStateSnapshot snapshot = storage.activeStateSnapshots.get(INSTANCE);
+    assertThat(snapshot.counter(), is(1L));
+    assertThat(snapshot.state(), is(RunState.State.RUNNING));
+    assertThat(RunStateSnapshot.of(stateManager.get(INSTANCE), 1L), is(snapshot));
+  }
+
   @Test
   public void shouldNotStoreEventOnIllegalStateTransition() throws Exception {
     setUp(0);
@@ -322,6 +382,134 @@ public class QueuedStateManagerTest {
     assertTrue(stateManager.awaitIdle(5000));
   }
 
+  @Test
+  public void shouldAggregateCountsAcrossShards() throws Exception {
+    stateManager = new QueuedStateManager(
+        createWithDefaultTtl(ofMillis(0)), Instant::now, POOL, storage,
+        QueuedStateManager.DEFAULT_FLUSH_MAX_BATCH_SIZE, QueuedStateManager.DEFAULT_FLUSH_INTERVAL,
+        Stats.NOOP, 4);
+
+    final WorkflowId otherWorkflowId = WorkflowId.create("other-component", "other-endpoint");
+    final List<WorkflowInstance> instances = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      instances.add(WorkflowInstance.create(TestData.WORKFLOW_ID, "param-" + i));
+      instances.add(WorkflowInstance.create(otherWorkflowId, "param-" + i));
+    }
+    for (WorkflowInstance instance : instances) {
+      stateManager.initialize(RunState.fresh(instance, transitions::push));
+      stateManager.receive(Event.triggerExecution(instance, "trig"));
+    }
+
+    assertTrue(stateManager.awaitIdle(1000));
+    assertThat(stateManager.getActiveStatesCount(), is(40L));
+    assertThat(stateManager.getActiveStatesCount(TestData.WORKFLOW_ID), is(20L));
+    assertThat(stateManager.getActiveStatesCount(otherWorkflowId), is(20L));
+    for (WorkflowInstance instance : instances) {
+      assertThat(stateManager.get(instance).state(), is(RunState.State.PREPARE));
+    }
+
+    for (WorkflowInstance instance : instances) {
+      stateManager.receive(Event.halt(instance));
+    }
+
+    assertTrue(stateManager.awaitIdle(1000));
+    assertThat(stateManager.getActiveStatesCount(), is(0L));
+    assertThat(stateManager.getQueuedEventsCount(), is(0L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectNonPositiveShards() throws Exception {
+    new QueuedStateManager(
+        createWithDefaultTtl(ofMillis(0)), Instant::now, POOL, storage,
+        QueuedStateManager.DEFAULT_FLUSH_MAX_BATCH_SIZE, QueuedStateManager.DEFAULT_FLUSH_INTERVAL,
+        Stats.NOOP, 0);
+  }
+
+  @Test
+  public void shouldRejectOfferWhenEventQueueStaysFull() throws Exception {
+    final GatedExecutor executor = new GatedExecutor();
+    stateManager = new QueuedStateManager(
+        createWithDefaultTtl(ofMillis(0)), Instant::now, executor, storage);
+    stateManager.initialize(RunState.fresh(INSTANCE, transitions::push));
+    fillEventQueue();
+
+    try {
+      assertThat(stateManager.offer(Event.halt(INSTANCE), 10, TimeUnit.MILLISECONDS), is(false));
+    } finally {
+      executor.open();
+    }
+  }
+
+  @Test
+  public void shouldAdmitReceivedEventsPastFullEventQueue() throws Exception {
+    final GatedExecutor executor = new GatedExecutor();
+    stateManager = new QueuedStateManager(
+        createWithDefaultTtl(ofMillis(0)), Instant::now, executor, storage);
+    stateManager.initialize(RunState.fresh(INSTANCE, transitions::push));
+    fillEventQueue();
+
+    try {
+      stateManager.receive(Event.halt(INSTANCE));
+      assertThat(stateManager.getQueuedEventsCount(), is(QueuedStateManager.EVENT_QUEUE_SIZE + 1L));
+      assertThat(stateManager.offer(Event.halt(INSTANCE), 10, TimeUnit.MILLISECONDS), is(false));
+    } finally {
+      executor.open();
+    }
+
+    assertTrue(stateManager.awaitIdle(1000));
+    assertThat(stateManager.getQueuedEventsCount(), is(0L));
+  }
+
+  @Test
+  public void shouldRejectReceivedEventsPastOverdraft() throws Exception {
+    final GatedExecutor executor = new GatedExecutor();
+    stateManager = new QueuedStateManager(
+        createWithDefaultTtl(ofMillis(0)), Instant::now, executor, storage);
+    stateManager.initialize(RunState.fresh(INSTANCE, transitions::push));
+    fillEventQueue();
+
+    try {
+      for (int i = 0; i < QueuedStateManager.EVENT_QUEUE_OVERDRAFT; i++) {
+        stateManager.receive(Event.halt(INSTANCE));
+      }
+      thrown.expect(RejectedExecutionException.class);
+      stateManager.receive(Event.halt(INSTANCE));
+    } finally {
+      executor.open();
+    }
+  }
+
+  @Test
+  public void shouldAdmitOfferOnceEventQueueDrains() throws Exception {
+    final GatedExecutor executor = new GatedExecutor();
+    stateManager = new QueuedStateManager(
+        createWithDefaultTtl(ofMillis(0)), Instant::now, executor, storage);
+    stateManager.initialize(RunState.fresh(INSTANCE, transitions::push));
+    fillEventQueue();
+
+    final CompletableFuture<Boolean> admitted = CompletableFuture.supplyAsync(() -> {
+      try {
+        return stateManager.offer(Event.halt(INSTANCE), 5, TimeUnit.SECONDS);
+      } catch (StateManager.IsClosed | InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    Thread.sleep(50);
+    assertThat(admitted.isDone(), is(false));
+
+    executor.open();
+    assertThat(admitted.get(5, TimeUnit.SECONDS), is(true));
+    assertTrue(stateManager.awaitIdle(1000));
+    assertThat(stateManager.getQueuedEventsCount(), is(0L));
+  }
+
+  private void fillEventQueue() throws Exception {
+    for (int i = 0; i < QueuedStateManager.EVENT_QUEUE_SIZE; i++) {
+      stateManager.receive(Event.halt(INSTANCE));
+    }
+  }
+
   @Test
   public void testGetActiveWorkflowInstance() throws Exception {
     stateManager = new QueuedStateManager(
@@ -404,4 +592,28 @@ public class QueuedStateManagerTest {
       assertThat(instance.toKey(), runState.tries(), is(100));
     }
   }
+
+  /**
+   * Holds on to all tasks until opened, so that event queues can be filled up.
+   */
+  private static class GatedExecutor implements Executor {
+
+    private final List<Runnable> held = new ArrayList<>();
+    private boolean open;
+
+    @Override
+    public synchronized void execute(Runnable command) {
+      if (open) {
+        POOL.execute(command);
+      } else {
+        held.add(command);
+      }
+    }
+
+    synchronized void open() {
+      open = true;
+      held.forEach(POOL::execute);
+      held.clear();
+    }
+  }
 }
@@ -0,0 +1,157 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.state;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.spotify.styx.monitoring.Stats;
+import org.junit.Test;
+
+public class TimingWheelTest {
+
+  private static final long START = 1_000_000L;
+  private static final long TICK = 10L;
+  private static final int SIZE = 4;
+  private static final int LEVELS = 3;
+
+  private Stats stats = mock(Stats.class);
+  private TimingWheel<String> wheel = new TimingWheel<>("test", stats, TICK, SIZE, LEVELS, START);
+
+  @Test
+  public void shouldFireWhenDeadlinePasses() throws Exception {
+    wheel.schedule("a", START + 25);
+
+    assertThat(wheel.advance(START + 24), is(empty()));
+    assertThat(wheel.advance(START + 25), contains("a"));
+    assertThat(wheel.advance(START + 100), is(empty()));
+    assertThat(wheel.size(), is(0));
+  }
+
+  @Test
+  public void shouldNotFireBeforeDeadlineWithinTick() throws Exception {
+    wheel.schedule("a", START + 17);
+
+    assertThat(wheel.advance(START + 12), is(empty()));
+    assertThat(wheel.advance(START + 16), is(empty()));
+    assertThat(wheel.advance(START + 17), contains("a"));
+  }
+
+  @Test
+  public void shouldFireOverdueOnNextAdvance() throws Exception {
+    wheel.schedule("a", START - 500);
+    wheel.schedule("b", START);
+
+    assertThat(wheel.advance(START), contains("a", "b"));
+  }
+
+  @Test
+  public void shouldFireInDeadlineOrderAcrossTicks() throws Exception {
+    wheel.schedule("c", START + 35);
+    wheel.schedule("a", START + 11);
+    wheel.schedule("b", START + 22);
+
+    assertThat(wheel.advance(START + 40), contains("a", "b", "c"));
+  }
+
+  @Test
+  public void shouldCascadeFromHigherLevels() throws Exception {
+    // level 0 spans 4 ticks, level 1 spans 16 and level 2 spans 64
+    wheel.schedule("l1", START + 9 * TICK + 3);
+    wheel.schedule("l2", START + 40 * TICK + 7);
+
+    for (long now = START; now < START + 9 * TICK + 3; now += 3) {
+      assertThat(wheel.advance(now), is(empty()));
+    }
+    assertThat(wheel.advance(START + 9 * TICK + 3), contains("l1"));
+
+    for (long now = START + 9 * TICK + 3; now < START + 40 * TICK + 7; now += 3) {
+      assertThat(wheel.advance(now), is(empty()));
+    }
+    assertThat(wheel.advance(START + 40 * TICK + 7), contains("l2"));
+  }
+
+  @Test
+  public void shouldHandleDeadlinesBeyondWheelSpan() throws Exception {
+    final long deadline = START + 200 * TICK + 5;
+    wheel.schedule("far", deadline);
+
+    for (long now = START; now < deadline; now += TICK) {
+      assertThat(wheel.advance(now), is(empty()));
+    }
+    assertThat(wheel.advance(deadline), contains("far"));
+  }
+
+  @Test
+  public void shouldHandleClockJumps() throws Exception {
+    wheel.schedule("a", START + 1_000 * TICK);
+    wheel.schedule("b", START + 10_000 * TICK);
+
+    assertThat(wheel.advance(START + 5_000 * TICK), contains("a"));
+    assertThat(wheel.advance(START + 9_999 * TICK), is(empty()));
+    assertThat(wheel.advance(START + 10_000 * TICK), contains("b"));
+  }
+
+  @Test
+  public void shouldNotFireCancelled() throws Exception {
+    final TimingWheel<String>.Timeout a = wheel.schedule("a", START + 25);
+    final TimingWheel<String>.Timeout b = wheel.schedule("b", START - 5);
+    wheel.schedule("c", START + 25);
+
+    a.cancel();
+    b.cancel();
+    b.cancel();
+
+    assertThat(wheel.size(), is(1));
+    assertThat(wheel.advance(START + 30), contains("c"));
+  }
+
+  @Test
+  public void shouldOnlyBePendingUntilFiredOrCancelled() throws Exception {
+    final TimingWheel<String>.Timeout a = wheel.schedule("a", START + 5);
+    final TimingWheel<String>.Timeout b = wheel.schedule("b", START + 25);
+    assertThat(a.isPending(), is(true));
+    assertThat(b.isPending(), is(true));
+
+    wheel.advance(START + 10);
+    b.cancel();
+
+    assertThat(a.isPending(), is(false));
+    assertThat(b.isPending(), is(false));
+  }
+
+  @Test
+  public void shouldReportScanCountAndSkew() throws Exception {
+    wheel.schedule("a", START + 5);
+    wheel.schedule("b", START + 35);
+
+    wheel.advance(START + 15);
+
+    verify(stats).timerFiringSkew("test", 10L);
+    verify(stats).timerScanCount(eq("test"), anyLong());
+  }
+}
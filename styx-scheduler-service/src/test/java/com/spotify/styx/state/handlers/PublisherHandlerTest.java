@@ -23,87 +23,194 @@ package com.spotify.styx.state.handlers;
 import static com.spotify.styx.testdata.TestData.WORKFLOW_INSTANCE;
 import static java.util.Collections.emptyList;
 import static java.util.Optional.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
+import com.codahale.metrics.Gauge;
 import com.spotify.styx.model.ExecutionDescription;
 import com.spotify.styx.model.WorkflowInstance;
+import com.spotify.styx.monitoring.Stats;
 import com.spotify.styx.publisher.Publisher;
-import com.spotify.styx.state.OutputHandler;
 import com.spotify.styx.state.RunState;
+import com.spotify.styx.testdata.TestData;
 import java.io.IOException;
+import java.time.Instant;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.jmock.lib.concurrent.DeterministicScheduler;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 public class PublisherHandlerTest {
 
   private static final String COMMIT_SHA = "cc9f6ca490e106ca9324bd34de5e3ad935b91bd6";
   private static final String DOCKER_IMAGE = "busybox:1.1";
 
+  private static final ExecutionDescription EXECUTION_DESCRIPTION =
+      ExecutionDescription.create(DOCKER_IMAGE, emptyList(), empty(), Optional.of(COMMIT_SHA));
+
+  private final DeterministicScheduler executor = new DeterministicScheduler();
+  private final Stats stats = mock(Stats.class);
+
+  private Instant now = Instant.parse("2016-12-01T10:00:00Z");
   private Publisher publisher;
-  private OutputHandler outputHandler;
+  private PublisherHandler outputHandler;
 
   @Before
   public void setUp() throws Exception {
     publisher = mock(Publisher.class);
-    outputHandler = new PublisherHandler(publisher);
+    outputHandler = start(new PublisherHandler(publisher, executor, () -> now, stats));
   }
 
   @Test
   public void testPublishesRollingOutStateOnSubmitted() throws Exception {
-    ExecutionDescription executionDescription =
-        ExecutionDescription.create(DOCKER_IMAGE, emptyList(), empty(), Optional.of(COMMIT_SHA));
     RunState runState = RunState.newSubmitted(
         WORKFLOW_INSTANCE,
         "exec1",
-        executionDescription);
+        EXECUTION_DESCRIPTION);
     outputHandler.transitionInto(runState);
 
-    verify(publisher).deploying(WORKFLOW_INSTANCE, executionDescription);
+    verify(publisher, never()).deploying(any(), any());
+    tick(PublisherHandler.POLL_INTERVAL.toMillis());
+    verify(publisher).deploying(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
   }
 
   @Test
   public void testPublishesDoneStateOnRunning() throws Exception {
-    ExecutionDescription executionDescription =
-        ExecutionDescription.create("busybox:1.1", emptyList(), empty(), Optional.of(COMMIT_SHA));
     RunState runState = RunState.newRunning(
         WORKFLOW_INSTANCE,
         "exec1",
-        executionDescription);
+        EXECUTION_DESCRIPTION);
     outputHandler.transitionInto(runState);
 
-    verify(publisher).deployed(WORKFLOW_INSTANCE, executionDescription);
+    tick(PublisherHandler.POLL_INTERVAL.toMillis());
+    verify(publisher).deployed(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
   }
 
   @Test
   public void shouldRetryPublishesOnSubmitted() throws Exception {
-    outputHandler = new PublisherHandler(new FailingPublisher(publisher, 2));
+    outputHandler = start(new PublisherHandler(
+        new FailingPublisher(publisher, 2), executor, () -> now, stats));
 
-    ExecutionDescription executionDescription =
-        ExecutionDescription.create(DOCKER_IMAGE, emptyList(), empty(), Optional.of(COMMIT_SHA));
     RunState runState = RunState.newSubmitted(
         WORKFLOW_INSTANCE,
         "exec1",
-        executionDescription);
+        EXECUTION_DESCRIPTION);
     outputHandler.transitionInto(runState);
 
-    verify(publisher).deploying(WORKFLOW_INSTANCE, executionDescription);
+    tick(PublisherHandler.POLL_INTERVAL.toMillis());
+    verify(publisher, never()).deploying(any(), any());
+
+    tick(2 * PublisherHandler.MAX_BACKOFF.toMillis());
+    verify(publisher).deploying(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
   }
 
   @Test
   public void shouldRetryPublishesOnRunning() throws Exception {
-    outputHandler = new PublisherHandler(new FailingPublisher(publisher, 2));
+    outputHandler = start(new PublisherHandler(
+        new FailingPublisher(publisher, 2), executor, () -> now, stats));
 
-    ExecutionDescription executionDescription =
-        ExecutionDescription.create(DOCKER_IMAGE, emptyList(), empty(), Optional.of(COMMIT_SHA));
     RunState runState = RunState.newRunning(
         WORKFLOW_INSTANCE,
         "exec1",
-        executionDescription);
+        EXECUTION_DESCRIPTION);
     outputHandler.transitionInto(runState);
 
-    verify(publisher).deployed(WORKFLOW_INSTANCE, executionDescription);
+    tick(PublisherHandler.POLL_INTERVAL.toMillis() + 2 * PublisherHandler.MAX_BACKOFF.toMillis());
+    verify(publisher).deployed(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
+  }
+
+  @Test
+  public void shouldGiveUpAfterMaxAttemptsAndPublishNext() throws Exception {
+    final WorkflowInstance other = WorkflowInstance.create(TestData.WORKFLOW_ID, "2016-05-02");
+    outputHandler = start(new PublisherHandler(
+        new FailingPublisher(publisher, PublisherHandler.MAX_ATTEMPTS), executor, () -> now, stats));
+
+    outputHandler.transitionInto(RunState.newSubmitted(WORKFLOW_INSTANCE, "exec1", EXECUTION_DESCRIPTION));
+    outputHandler.transitionInto(RunState.newSubmitted(other, "exec2", EXECUTION_DESCRIPTION));
+
+    tick(PublisherHandler.MAX_ATTEMPTS * PublisherHandler.MAX_BACKOFF.toMillis());
+    verify(publisher, never()).deploying(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
+    verify(publisher).deploying(other, EXECUTION_DESCRIPTION);
+  }
+
+  @Test
+  public void shouldDropWhenOutboxIsFull() throws Exception {
+    final WorkflowInstance other = WorkflowInstance.create(TestData.WORKFLOW_ID, "2016-05-02");
+    outputHandler = start(new PublisherHandler(publisher, executor, () -> now, stats, 1));
+
+    outputHandler.transitionInto(RunState.newSubmitted(WORKFLOW_INSTANCE, "exec1", EXECUTION_DESCRIPTION));
+    outputHandler.transitionInto(RunState.newSubmitted(other, "exec2", EXECUTION_DESCRIPTION));
+    verify(stats).publisherOutboxDropped();
+
+    tick(PublisherHandler.POLL_INTERVAL.toMillis());
+    verify(publisher).deploying(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
+    verify(publisher, never()).deploying(other, EXECUTION_DESCRIPTION);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void shouldExportOutboxSizeAndAge() throws Exception {
+    final ArgumentCaptor<Gauge> size = ArgumentCaptor.forClass(Gauge.class);
+    final ArgumentCaptor<Gauge> age = ArgumentCaptor.forClass(Gauge.class);
+    verify(stats).registerPublisherOutboxSize(size.capture());
+    verify(stats).registerPublisherOutboxAge(age.capture());
+
+    outputHandler.transitionInto(RunState.newSubmitted(WORKFLOW_INSTANCE, "exec1", EXECUTION_DESCRIPTION));
+    now = now.plusSeconds(3);
+
+    assertThat(size.getValue().getValue(), is(1L));
+    assertThat(age.getValue().getValue(), is(3000L));
+
+    tick(PublisherHandler.POLL_INTERVAL.toMillis());
+    assertThat(size.getValue().getValue(), is(0L));
+    assertThat(age.getValue().getValue(), is(0L));
+  }
+
+  @Test
+  public void shouldFlushOutboxOnClose() throws Exception {
+    outputHandler.transitionInto(RunState.newSubmitted(WORKFLOW_INSTANCE, "exec1", EXECUTION_DESCRIPTION));
+
+    outputHandler.close();
+    verify(publisher).deploying(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
+  }
+
+  @Test
+  public void shouldDropWhatFailsToPublishOnClose() throws Exception {
+    final WorkflowInstance other = WorkflowInstance.create(TestData.WORKFLOW_ID, "2016-05-02");
+    outputHandler = start(new PublisherHandler(
+        new FailingPublisher(publisher, 1), executor, () -> now, stats));
+
+    outputHandler.transitionInto(RunState.newSubmitted(WORKFLOW_INSTANCE, "exec1", EXECUTION_DESCRIPTION));
+    outputHandler.transitionInto(RunState.newSubmitted(other, "exec2", EXECUTION_DESCRIPTION));
+
+    outputHandler.close();
+    verify(publisher, never()).deploying(WORKFLOW_INSTANCE, EXECUTION_DESCRIPTION);
+    verify(publisher).deploying(other, EXECUTION_DESCRIPTION);
+  }
+
+  @Test
+  public void shouldStopPublishingAfterClose() throws Exception {
+    outputHandler.close();
+
+    outputHandler.transitionInto(RunState.newSubmitted(WORKFLOW_INSTANCE, "exec1", EXECUTION_DESCRIPTION));
+    tick(PublisherHandler.POLL_INTERVAL.toMillis());
+    verify(publisher, never()).deploying(any(), any());
+    verify(stats).publisherOutboxDropped();
+  }
+
+  private PublisherHandler start(PublisherHandler publisherHandler) {
+    publisherHandler.start();
+    return publisherHandler;
+  }
+
+  private void tick(long millis) {
+    executor.tick(millis, TimeUnit.MILLISECONDS);
   }
 
   private class FailingPublisher implements Publisher {
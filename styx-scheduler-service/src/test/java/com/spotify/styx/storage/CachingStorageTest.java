@@ -0,0 +1,162 @@
+/*-
+ * -\-\-
+ * Spotify Styx Scheduler Service
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.styx.storage;
+
+import static com.spotify.styx.testdata.TestData.FULL_DATA_ENDPOINT;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.spotify.styx.model.Workflow;
+import com.spotify.styx.model.WorkflowId;
+import com.spotify.styx.model.WorkflowState;
+import com.spotify.styx.monitoring.Stats;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingStorageTest {
+
+  private static final Workflow WORKFLOW =
+      Workflow.create("comp", URI.create("http://foo"), FULL_DATA_ENDPOINT);
+  private static final WorkflowId WORKFLOW_ID = WORKFLOW.id();
+  private static final WorkflowState STATE =
+      WorkflowState.create(Optional.of(true), Optional.of("busybox"), Optional.empty());
+  private static final Duration TTL = Duration.ofSeconds(10);
+
+  private Storage delegate = mock(Storage.class);
+  private Stats stats = mock(Stats.class);
+  private Instant now = Instant.parse("2016-10-10T10:00:00Z");
+
+  private CachingStorage storage;
+
+  @Before
+  public void setUp() throws Exception {
+    when(delegate.workflow(WORKFLOW_ID)).thenReturn(Optional.of(WORKFLOW));
+    when(delegate.workflowState(WORKFLOW_ID)).thenReturn(STATE);
+    when(delegate.getDockerImage(WORKFLOW_ID)).thenReturn(Optional.of("busybox"));
+
+    storage = new CachingStorage(delegate, stats, () -> now, 100, TTL);
+  }
+
+  @Test
+  public void shouldReadThrough() throws Exception {
+    assertThat(storage.workflow(WORKFLOW_ID), is(Optional.of(WORKFLOW)));
+    assertThat(storage.workflow(WORKFLOW_ID), is(Optional.of(WORKFLOW)));
+    assertThat(storage.workflowState(WORKFLOW_ID), is(STATE));
+    assertThat(storage.workflowState(WORKFLOW_ID), is(STATE));
+    assertThat(storage.getDockerImage(WORKFLOW_ID), is(Optional.of("busybox")));
+    assertThat(storage.getDockerImage(WORKFLOW_ID), is(Optional.of("busybox")));
+
+    verify(delegate, times(1)).workflow(WORKFLOW_ID);
+    verify(delegate, times(1)).workflowState(WORKFLOW_ID);
+    verify(delegate, times(1)).getDockerImage(WORKFLOW_ID);
+  }
+
+  @Test
+  public void shouldCacheMissingWorkflow() throws Exception {
+    final WorkflowId missing = WorkflowId.create("comp", "missing");
+    when(delegate.workflow(missing)).thenReturn(Optional.empty());
+
+    assertThat(storage.workflow(missing), is(Optional.empty()));
+    assertThat(storage.workflow(missing), is(Optional.empty()));
+
+    verify(delegate, times(1)).workflow(missing);
+  }
+
+  @Test
+  public void shouldExpireAfterTtl() throws Exception {
+    storage.workflowState(WORKFLOW_ID);
+    now = now.plus(TTL).minusMillis(1);
+    storage.workflowState(WORKFLOW_ID);
+    verify(delegate, times(1)).workflowState(WORKFLOW_ID);
+
+    now = now.plusMillis(1);
+    storage.workflowState(WORKFLOW_ID);
+    verify(delegate, times(2)).workflowState(WORKFLOW_ID);
+  }
+
+  @Test
+  public void shouldInvalidateOnStore() throws Exception {
+    storage.workflow(WORKFLOW_ID);
+    storage.getDockerImage(WORKFLOW_ID);
+
+    storage.store(WORKFLOW);
+    storage.workflow(WORKFLOW_ID);
+    storage.getDockerImage(WORKFLOW_ID);
+
+    verify(delegate, times(2)).workflow(WORKFLOW_ID);
+    verify(delegate, times(2)).getDockerImage(WORKFLOW_ID);
+  }
+
+  @Test
+  public void shouldInvalidateOnDelete() throws Exception {
+    storage.workflow(WORKFLOW_ID);
+
+    storage.delete(WORKFLOW_ID);
+    storage.workflow(WORKFLOW_ID);
+
+    verify(delegate, times(2)).workflow(WORKFLOW_ID);
+  }
+
+  @Test
+  public void shouldInvalidateOnPatchState() throws Exception {
+    storage.workflowState(WORKFLOW_ID);
+
+    storage.patchState(WORKFLOW_ID, WorkflowState.patchDockerImage("busybox:1"));
+    storage.workflowState(WORKFLOW_ID);
+
+    verify(delegate, times(2)).workflowState(WORKFLOW_ID);
+  }
+
+  @Test
+  public void shouldInvalidateComponentOnPatchState() throws Exception {
+    final WorkflowId otherComponent = WorkflowId.create("other", "endpoint");
+    when(delegate.workflowState(otherComponent)).thenReturn(STATE);
+    storage.workflowState(WORKFLOW_ID);
+    storage.workflowState(otherComponent);
+
+    storage.patchState(WORKFLOW_ID.componentId(), WorkflowState.patchDockerImage("busybox:1"));
+    storage.workflowState(WORKFLOW_ID);
+    storage.workflowState(otherComponent);
+
+    verify(delegate, times(2)).workflowState(WORKFLOW_ID);
+    verify(delegate, times(1)).workflowState(otherComponent);
+  }
+
+  @Test
+  public void shouldReportHitsMissesAndLoads() throws Exception {
+    storage.workflowState(WORKFLOW_ID);
+    storage.workflowState(WORKFLOW_ID);
+
+    verify(stats).cacheMiss(CachingStorage.WORKFLOW_STATE_CACHE);
+    verify(stats).cacheHit(CachingStorage.WORKFLOW_STATE_CACHE);
+    verify(stats).cacheLoad(eq(CachingStorage.WORKFLOW_STATE_CACHE), anyLong());
+  }
+}
@@ -22,6 +22,7 @@ package com.spotify.styx.storage;
 
 import static java.util.stream.Collectors.toList;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -93,6 +94,9 @@ public class BigtableMocker {
     for (Map.Entry<TableName, List<Cell>> tableEntry : tableCells.entrySet()) {
       TableName tableName = tableEntry.getKey();
       List<Cell> cells = tableEntry.getValue();
+      List<Cell> sortedCells = cells.stream()
+          .sorted((a, b) -> Bytes.compareTo(a.getRowArray(), b.getRowArray()))
+          .collect(toList());
 
       Table table = mock(Table.class);
       when(bigtable.getTable(tableName)).thenReturn(table);
@@ -106,7 +110,7 @@ public class BigtableMocker {
               invocation.getArgumentAt(0, byte[].class),
               invocation.getArgumentAt(1, byte[].class)));
       when(table.getScanner(any(Scan.class)))
-          .thenAnswer(invocation -> resultOfScan(cells, invocation.getArgumentAt(0, Scan.class)));
+          .thenAnswer(invocation -> resultOfScan(sortedCells, invocation.getArgumentAt(0, Scan.class)));
       doAnswer(invocation -> {
         if (numFailures > 0) {
           numFailures--;
@@ -124,6 +128,24 @@ public class BigtableMocker {
         addRowsToTable(tableName, list);
         return null;
       }).when(table).put(any(Put.class));
+      doAnswer(invocation -> {
+        if (numFailures > 0) {
+          numFailures--;
+          throw new IOException("Something went wrong in performing put operation");
+        }
+        @SuppressWarnings("unchecked")
+        List<Put> puts = invocation.getArgumentAt(0, List.class);
+        List<Cell> list = Lists.newArrayList();
+
+        puts.forEach(put -> put.getFamilyCellMap()
+            .values()
+            .forEach((list2) -> list2.forEach((kv) -> {
+              Cell cell = getCell(kv);
+              list.add(cell);
+            })));
+        addRowsToTable(tableName, list);
+        return null;
+      }).when(table).put(anyListOf(Put.class));
       doAnswer(invocation -> {
         if (numFailures > 0) {
           numFailures--;
@@ -181,15 +203,30 @@ public class BigtableMocker {
         .orElseGet(() -> Result.create(Collections.emptyList()));
   }
 
-  private ResultScanner resultOfScan(List<Cell> cells, Scan scan) {
+  private ResultScanner resultOfScan(List<Cell> sortedCells, Scan scan) {
     byte[] startRow = scan.getStartRow();
     byte[] stopRow = scan.getStopRow();
 
-    List<Result> inRangeResults = cells.stream().filter(
-        cell -> Bytes.compareTo(startRow, cell.getRowArray()) <= 0
-                && Bytes.compareTo(stopRow, cell.getRowArray()) > 0)
-        .map(cell -> Result.create(new Cell[] {cell}))
-        .collect(toList());
+    // binary search for the first row not before the start row, like a real tablet would
+    int low = 0;
+    int high = sortedCells.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Bytes.compareTo(sortedCells.get(mid).getRowArray(), startRow) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    List<Result> inRangeResults = Lists.newArrayList();
+    for (int i = low; i < sortedCells.size(); i++) {
+      Cell cell = sortedCells.get(i);
+      if (Bytes.compareTo(stopRow, cell.getRowArray()) <= 0) {
+        break;
+      }
+      inRangeResults.add(Result.create(new Cell[] {cell}));
+    }
 
     ResultScanner resultScanner = mock(ResultScanner.class);
     when(resultScanner.iterator()).thenReturn(inRangeResults.iterator());